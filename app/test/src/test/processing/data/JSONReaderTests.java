@@ -0,0 +1,47 @@
+package test.processing.data;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import processing.data.JSONArray;
+import processing.data.JSONReader;
+
+public class JSONReaderTests {
+
+  @Test
+  public void longMaxValue() {
+    assertEquals(Long.MAX_VALUE,
+                 new JSONReader(String.valueOf(Long.MAX_VALUE)).nextLong());
+  }
+
+  @Test
+  public void longMinValue() {
+    assertEquals(Long.MIN_VALUE,
+                 new JSONReader(String.valueOf(Long.MIN_VALUE)).nextLong());
+  }
+
+  @Test
+  public void nineteenDigits() {
+    assertEquals(3401191820732033217L,
+                 new JSONReader("3401191820732033217").nextLong());
+  }
+
+  @Test
+  public void sameTypesAsParse() {
+    String json = "[9223372036854775807,-9223372036854775808," +
+      "3401191820732033217,-3401191820732033217,12,-12,1.5]";
+    // Longs and Doubles are written differently, so this checks the types
+    assertEquals(JSONArray.parse(json).format(-1),
+                 new JSONReader(json).nextJSONArray().format(-1));
+  }
+
+  @Test
+  public void tooLargeForLong() {
+    JSONReader reader = new JSONReader("[9223372036854775808,-9223372036854775809]");
+    reader.beginArray();
+    assertEquals(Double.class, reader.nextValue().getClass());
+    assertEquals(-9.223372036854775809e18, reader.nextDouble(), 0);
+    reader.endArray();
+  }
+}
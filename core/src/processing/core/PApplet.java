@@ -6393,6 +6393,10 @@ public class PApplet extends Applet
    * (in terms of speed and memory usage) for loading and parsing tables. The
    * dictionary file can only be tab separated values (.tsv) and its extension
    * will be ignored. This option was added in Processing 2.0.2.
+   *
+   * Without a dictionary, the "infer" option will pick the column types
+   * based on the first 1000 rows of the file (or "infer=100" for the first
+   * 100), so that numbers are stored as numbers instead of text.
    */
   public Table loadTable(String filename, String options) {
     try {
@@ -6405,6 +6409,16 @@ public class PApplet extends Applet
           dictionary = loadTable(opt.substring(opt.indexOf('=') + 1), "tsv");
           return dictionary.typedParse(createInput(filename), optionStr);
         }
+        if (opt.equals("bin")) {
+          // columnar binary tables are memory-mapped when a local file exists
+          File file = dataFile(filename);
+          if (!file.isFile()) {
+            file = sketchFile(filename);
+          }
+          if (file.isFile()) {
+            return new Table(file, options);
+          }
+        }
       }
       return new Table(createInput(filename), optionStr);
 
@@ -6415,6 +6429,37 @@ public class PApplet extends Applet
   }
 
 
+  /**
+   * Read the rows of a table one at a time, for files too large to load
+   * with loadTable(). Takes the same options as loadTable(), including
+   * "dictionary=" for setting the column types. The same TableRow object is
+   * reused for each row, and the rows can only be iterated once.
+   */
+  public Iterable<TableRow> loadTableRows(String filename) {
+    return loadTableRows(filename, null);
+  }
+
+
+  public Iterable<TableRow> loadTableRows(String filename, String options) {
+    try {
+      String optionStr = Table.extensionOptions(true, filename, options);
+      String[] optionList = trim(split(optionStr, ','));
+
+      for (String opt : optionList) {
+        if (opt.startsWith("dictionary=")) {
+          Table dictionary = loadTable(opt.substring(opt.indexOf('=') + 1), "tsv");
+          return dictionary.typedStream(createInput(filename), optionStr);
+        }
+      }
+      return Table.stream(createInput(filename), optionStr);
+
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+
   /**
    * @webref output:files
    * @param table the Table object to save to a file
@@ -6428,7 +6473,9 @@ public class PApplet extends Applet
 
 
   /**
-   * @param options can be one of "tsv", "csv", "bin", or "html"
+   * @param options can be one of "tsv", "csv", "bin", or "html". Add
+   * "columnar" to a .bin file to save it column by column, so that it can
+   * be memory-mapped when loaded and only the columns in use are read.
    */
   public boolean saveTable(Table table, String filename, String options) {
 //    String ext = checkExtension(filename);
@@ -15603,6 +15650,9 @@ public class PApplet extends Applet
    * extent of the blurring. If no level parameter is used, the blur is
    * equivalent to Guassian blur of radius 1<br />
    * <br />
+   * FAST_BLUR - an approximation of BLUR that takes the same time
+   * no matter how large the level parameter is, for large blurs<br />
+   * <br />
    * OPAQUE - sets the alpha channel to entirely opaque<br />
    * <br />
    * ERODE - reduces the light areas with the amount defined by the level
@@ -15617,6 +15667,7 @@ public class PApplet extends Applet
    * <P>
    * <UL>
    * <LI>filter(BLUR) provides a basic blur.
+   * <LI>filter(FAST_BLUR, radius) approximates BLUR with box blurs.
    * <LI>filter(GRAY) converts the image to grayscale based on luminance.
    * <LI>filter(INVERT) will invert the color components in the image.
    * <LI>filter(OPAQUE) set all the high bits in the image to opaque
@@ -15633,7 +15684,7 @@ public class PApplet extends Applet
    * @webref image:pixels
    * @brief Converts the image to grayscale or black and white
    * @usage web_application
-   * @param kind Either THRESHOLD, GRAY, OPAQUE, INVERT, POSTERIZE, BLUR, ERODE, or DILATE
+   * @param kind Either THRESHOLD, GRAY, OPAQUE, INVERT, POSTERIZE, BLUR, FAST_BLUR, ERODE, or DILATE
    * @param param unique for each, see above
    */
   public void filter(int kind, float param) {
@@ -227,6 +227,7 @@ public interface PConstants {
   static final int THRESHOLD = 16;
   static final int ERODE     = 17;
   static final int DILATE    = 18;
+  static final int FAST_BLUR = 19;
 
 
   // blend mode keyword definitions
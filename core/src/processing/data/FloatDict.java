@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 
 import processing.core.PApplet;
@@ -23,7 +22,7 @@ public class FloatDict {
   protected float[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<String, Integer>();
+  private KeyIndex indices = new KeyIndex();
 
 
   public FloatDict() {
@@ -80,9 +79,7 @@ public class FloatDict {
     this.keys = keys;
     this.values = values;
     count = keys.length;
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
-    }
+    indices.rebuild(keys, count);
   }
 
   /**
@@ -102,7 +99,7 @@ public class FloatDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<String, Integer>();
+    indices.clear();
   }
 
 
@@ -469,8 +466,7 @@ public class FloatDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    return indices.get(keys, what);
   }
 
 
@@ -479,8 +475,8 @@ public class FloatDict {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
     }
-    indices.put(what, new Integer(count));
     keys[count] = what;
+    indices.put(keys, what, count);
     values[count] = much;
     count++;
   }
@@ -505,12 +501,10 @@ public class FloatDict {
     }
     String key = keys[index];
     //System.out.println("index is " + which + " and " + keys[which]);
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
+    indices.remove(keys, key);
+    System.arraycopy(keys, index+1, keys, index, count-index-1);
+    System.arraycopy(values, index+1, values, index, count-index-1);
+    indices.shiftDown(index);
     count--;
     keys[count] = null;
     values[count] = 0;
@@ -519,15 +513,13 @@ public class FloatDict {
 
 
   public void swap(int a, int b) {
+    indices.swap(keys, a, b);
     String tkey = keys[a];
     float tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-    indices.put(keys[a], new Integer(a));
-    indices.put(keys[b], new Integer(b));
   }
 
 
@@ -651,6 +643,11 @@ public class FloatDict {
 
 
   protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    // sort a list of positions, then move the entries over in one go
+    final int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -658,15 +655,17 @@ public class FloatDict {
       }
 
       @Override
-      public float compare(int a, int b) {
-        float diff = 0;
+      public int compare(int a, int b) {
+        a = order[a];
+        b = order[b];
+        int diff = 0;
         if (useKeys) {
           diff = keys[a].compareToIgnoreCase(keys[b]);
           if (diff == 0) {
-            return values[a] - values[b];
+            return Float.compare(values[a], values[b]);
           }
         } else {  // sort values
-          diff = values[a] - values[b];
+          diff = Float.compare(values[a], values[b]);
           if (diff == 0) {
             diff = keys[a].compareToIgnoreCase(keys[b]);
           }
@@ -676,10 +675,30 @@ public class FloatDict {
 
       @Override
       public void swap(int a, int b) {
-        FloatDict.this.swap(a, b);
+        int temp = order[a];
+        order[a] = order[b];
+        order[b] = temp;
       }
     };
     s.run();
+    permute(order);
+  }
+
+
+  /**
+   * Rearrange the entries so that the entry at order[i] ends up at i,
+   * then rebuild the index in a single pass.
+   */
+  private void permute(int[] order) {
+    String[] newKeys = new String[keys.length];
+    float[] newValues = new float[values.length];
+    for (int i = 0; i < count; i++) {
+      newKeys[i] = keys[order[i]];
+      newValues[i] = values[order[i]];
+    }
+    keys = newKeys;
+    values = newValues;
+    indices.rebuild(keys, count);
   }
 
 
@@ -707,10 +726,8 @@ public class FloatDict {
     FloatDict outgoing = new FloatDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
     outgoing.count = count;
+    outgoing.indices.rebuild(outgoing.keys, count);
     return outgoing;
   }
 
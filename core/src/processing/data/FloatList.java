@@ -451,6 +451,167 @@ public class FloatList implements Iterable<Float> {
   }
 
 
+  // The whole-list operations below are written as plain loops over local
+  // copies of data and count, so that the JIT can unroll and vectorize them.
+
+
+  /** Add the same amount to every value in the list. */
+  public void addAll(float amount) {
+    float[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] += amount;
+    }
+  }
+
+
+  /** Subtract the same amount from every value in the list. */
+  public void subAll(float amount) {
+    addAll(-amount);
+  }
+
+
+  /** Multiply every value in the list by the same amount. */
+  public void multAll(float amount) {
+    float[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] *= amount;
+    }
+  }
+
+
+  private void checkSameSize(String functionName, FloatList list) {
+    if (list.count != count) {
+      String msg =
+        String.format("%s() needs a list with %d values, not %d.",
+                      functionName, count, list.count);
+      throw new IllegalArgumentException(msg);
+    }
+  }
+
+
+  /** Add each value of another list (of the same size) to this one. */
+  public void add(FloatList list) {
+    checkSameSize("add", list);
+    float[] d = data;
+    float[] other = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] += other[i];
+    }
+  }
+
+
+  /** Subtract each value of another list (of the same size) from this one. */
+  public void sub(FloatList list) {
+    checkSameSize("sub", list);
+    float[] d = data;
+    float[] other = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] -= other[i];
+    }
+  }
+
+
+  /** Multiply each value by the matching value of another list. */
+  public void mult(FloatList list) {
+    checkSameSize("mult", list);
+    float[] d = data;
+    float[] other = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] *= other[i];
+    }
+  }
+
+
+  /** Divide each value by the matching value of another list. */
+  public void div(FloatList list) {
+    checkSameSize("div", list);
+    float[] d = data;
+    float[] other = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] /= other[i];
+    }
+  }
+
+
+  /**
+   * Move each value part of the way toward the matching value in another
+   * list, same as calling lerp() on each pair. An amount of 0 leaves this
+   * list unchanged, 1 makes it a copy of the other.
+   */
+  public void lerp(FloatList target, float amt) {
+    checkSameSize("lerp", target);
+    float[] d = data;
+    float[] other = target.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] += (other[i] - d[i]) * amt;
+    }
+  }
+
+
+  /** Constrain every value in the list to the range [low, high]. */
+  public void clamp(float low, float high) {
+    float[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] = Math.min(Math.max(d[i], low), high);
+    }
+  }
+
+
+  /**
+   * Re-map every value from one range to another, same as calling map()
+   * on each of them.
+   */
+  public void map(float start1, float stop1, float start2, float stop2) {
+    float scale = (stop2 - start2) / (stop1 - start1);
+    float[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] = start2 + (d[i] - start1) * scale;
+    }
+  }
+
+
+  /**
+   * Replace each value with the sum of itself and all the values before it
+   * (a prefix sum), so the last entry becomes the sum() of the list. The
+   * running total is kept as a double to limit rounding error.
+   */
+  public void accumulate() {
+    float[] d = data;
+    int n = count;
+    double total = 0;
+    for (int i = 0; i < n; i++) {
+      total += d[i];
+      d[i] = (float) total;
+    }
+  }
+
+
+  /**
+   * Sum of the products of each value with the matching value in another
+   * list of the same size.
+   */
+  public float dot(FloatList list) {
+    checkSameSize("dot", list);
+    float[] d = data;
+    float[] other = list.data;
+    int n = count;
+    double outgoing = 0;
+    for (int i = 0; i < n; i++) {
+      outgoing += d[i] * other[i];
+    }
+    return (float) outgoing;
+  }
+
+
   private void checkMinMax(String functionName) {
     if (count == 0) {
       String msg =
@@ -549,7 +710,11 @@ public class FloatList implements Iterable<Float> {
    * @brief Sorts an array, lowest to highest
    */
   public void sort() {
-    Arrays.sort(data, 0, count);
+    if (count < IntList.RADIX_THRESHOLD) {
+      Arrays.sort(data, 0, count);
+    } else {
+      radixSort(0x80000000);
+    }
   }
 
 
@@ -560,24 +725,31 @@ public class FloatList implements Iterable<Float> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
+    if (count < IntList.RADIX_THRESHOLD) {
+      Arrays.sort(data, 0, count);
+      reverse();
+    } else {
+      radixSort(0x7fffffff);
+    }
+  }
 
-      @Override
-      public float compare(int a, int b) {
-        return data[b] - data[a];
-      }
 
-      @Override
-      public void swap(int a, int b) {
-        float temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
-      }
-    }.run();
+  /**
+   * Sort the bits of each value as ints, flipping the bits (other than the
+   * sign) of negative numbers so that they sort the same way as the floats.
+   * Ordered like Arrays.sort(), with -0.0 before 0.0 and NaN last.
+   */
+  private void radixSort(int flip) {
+    int[] bits = new int[count];
+    for (int i = 0; i < count; i++) {
+      int b = Float.floatToIntBits(data[i]);
+      bits[i] = b ^ ((b >> 31) & 0x7fffffff);
+    }
+    IntList.radixSort(bits, count, flip);
+    for (int i = 0; i < count; i++) {
+      int b = bits[i];
+      data[i] = Float.intBitsToFloat(b ^ ((b >> 31) & 0x7fffffff));
+    }
   }
 
 
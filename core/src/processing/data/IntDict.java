@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 
 import processing.core.PApplet;
@@ -23,7 +22,7 @@ public class IntDict {
   protected int[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<String, Integer>();
+  private KeyIndex indices = new KeyIndex();
 
 
 //  /**
@@ -88,7 +87,7 @@ public class IntDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = PApplet.parseInt(pieces[1]);
-        indices.put(pieces[0], count);
+        indices.put(keys, pieces[0], count);
         count++;
       }
     }
@@ -104,9 +103,7 @@ public class IntDict {
     this.keys = keys;
     this.values = values;
     count = keys.length;
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
-    }
+    indices.rebuild(keys, count);
   }
 
   /**
@@ -128,7 +125,7 @@ public class IntDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<String, Integer>();
+    indices.clear();
   }
 
 
@@ -479,8 +476,7 @@ public class IntDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    return indices.get(keys, what);
   }
 
 
@@ -489,8 +485,8 @@ public class IntDict {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
     }
-    indices.put(what, new Integer(count));
     keys[count] = what;
+    indices.put(keys, what, count);
     values[count] = much;
     count++;
   }
@@ -514,12 +510,10 @@ public class IntDict {
     }
     //System.out.println("index is " + which + " and " + keys[which]);
     String key = keys[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
+    indices.remove(keys, key);
+    System.arraycopy(keys, index+1, keys, index, count-index-1);
+    System.arraycopy(values, index+1, values, index, count-index-1);
+    indices.shiftDown(index);
     count--;
     keys[count] = null;
     values[count] = 0;
@@ -528,15 +522,13 @@ public class IntDict {
 
 
   public void swap(int a, int b) {
+    indices.swap(keys, a, b);
     String tkey = keys[a];
     int tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-    indices.put(keys[a], new Integer(a));
-    indices.put(keys[b], new Integer(b));
   }
 
 
@@ -590,6 +582,11 @@ public class IntDict {
 
 
   protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    // sort a list of positions, then move the entries over in one go
+    final int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -597,15 +594,17 @@ public class IntDict {
       }
 
       @Override
-      public float compare(int a, int b) {
+      public int compare(int a, int b) {
+        a = order[a];
+        b = order[b];
         int diff = 0;
         if (useKeys) {
           diff = keys[a].compareToIgnoreCase(keys[b]);
           if (diff == 0) {
-            return values[a] - values[b];
+            return Integer.compare(values[a], values[b]);
           }
         } else {  // sort values
-          diff = values[a] - values[b];
+          diff = Integer.compare(values[a], values[b]);
           if (diff == 0) {
             diff = keys[a].compareToIgnoreCase(keys[b]);
           }
@@ -615,10 +614,30 @@ public class IntDict {
 
       @Override
       public void swap(int a, int b) {
-        IntDict.this.swap(a, b);
+        int temp = order[a];
+        order[a] = order[b];
+        order[b] = temp;
       }
     };
     s.run();
+    permute(order);
+  }
+
+
+  /**
+   * Rearrange the entries so that the entry at order[i] ends up at i,
+   * then rebuild the index in a single pass.
+   */
+  private void permute(int[] order) {
+    String[] newKeys = new String[keys.length];
+    int[] newValues = new int[values.length];
+    for (int i = 0; i < count; i++) {
+      newKeys[i] = keys[order[i]];
+      newValues[i] = values[order[i]];
+    }
+    keys = newKeys;
+    values = newValues;
+    indices.rebuild(keys, count);
   }
 
 
@@ -646,10 +665,8 @@ public class IntDict {
     IntDict outgoing = new IntDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
     outgoing.count = count;
+    outgoing.indices.rebuild(outgoing.keys, count);
     return outgoing;
   }
 
@@ -0,0 +1,607 @@
+package processing.data;
+
+import java.io.*;
+import java.util.Iterator;
+
+import processing.core.PApplet;
+
+
+/**
+ * A simple class to use an int as a lookup for a float value. Works like
+ * FloatDict, but without converting the keys to Strings or boxing them.
+ *
+ * @webref data:composite
+ * @see FloatDict
+ * @see IntIntDict
+ */
+public class IntFloatDict {
+
+  /** Number of elements in the table */
+  protected int count;
+
+  protected int[] keys;
+  protected float[] values;
+
+  /** Internal implementation for faster lookups */
+  private IntKeyIndex indices = new IntKeyIndex();
+
+
+  public IntFloatDict() {
+    count = 0;
+    keys = new int[10];
+    values = new float[10];
+  }
+
+
+  /**
+   * Create a new lookup with a specific size. This is more efficient than not
+   * specifying a size. Use it when you know the rough size of the thing you're creating.
+   *
+   * @nowebref
+   */
+  public IntFloatDict(int length) {
+    count = 0;
+    keys = new int[length];
+    values = new float[length];
+    indices = new IntKeyIndex(length);
+  }
+
+
+  /**
+   * Read a set of entries from a Reader that has each key/value pair on
+   * a single line, separated by a tab.
+   *
+   * @nowebref
+   */
+  public IntFloatDict(BufferedReader reader) {
+    String[] lines = PApplet.loadStrings(reader);
+    keys = new int[lines.length];
+    values = new float[lines.length];
+
+    for (int i = 0; i < lines.length; i++) {
+      String[] pieces = PApplet.split(lines[i], '\t');
+      if (pieces.length == 2) {
+        keys[count] = PApplet.parseInt(pieces[0]);
+        values[count] = PApplet.parseFloat(pieces[1]);
+        indices.put(keys[count], count);
+        count++;
+      }
+    }
+  }
+
+
+  /**
+   * @nowebref
+   */
+  public IntFloatDict(int[] keys, float[] values) {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("key and value arrays must be the same length");
+    }
+    this.keys = keys;
+    this.values = values;
+    count = keys.length;
+    indices.rebuild(keys, count);
+  }
+
+
+  /**
+   * Returns the number of key/value pairs
+   *
+   * @webref intfloatdict:method
+   * @brief Returns the number of key/value pairs
+   */
+  public int size() {
+    return count;
+  }
+
+
+  /**
+   * Remove all entries.
+   *
+   * @webref intfloatdict:method
+   * @brief Remove all entries
+   */
+  public void clear() {
+    count = 0;
+    indices.clear();
+  }
+
+
+  public int key(int index) {
+    return keys[index];
+  }
+
+
+  // Use this with 'for' loops
+  public Iterable<Integer> keys() {
+    return new Iterable<Integer>() {
+
+      @Override
+      public Iterator<Integer> iterator() {
+        return keyIterator();
+      }
+    };
+  }
+
+
+  // Use this to iterate when you want to be able to remove elements along the way
+  public Iterator<Integer> keyIterator() {
+    return new Iterator<Integer>() {
+      int index = -1;
+
+      public void remove() {
+        removeIndex(index);
+      }
+
+      public Integer next() {
+        return key(++index);
+      }
+
+      public boolean hasNext() {
+        return index+1 < size();
+      }
+    };
+  }
+
+
+  /**
+   * Return a copy of the internal keys array. This array can be modified.
+   *
+   * @webref intfloatdict:method
+   * @brief Return a copy of the internal keys array
+   */
+  public int[] keyArray() {
+    return keyArray(null);
+  }
+
+
+  public int[] keyArray(int[] outgoing) {
+    if (outgoing == null || outgoing.length != count) {
+      outgoing = new int[count];
+    }
+    System.arraycopy(keys, 0, outgoing, 0, count);
+    return outgoing;
+  }
+
+
+  public float value(int index) {
+    return values[index];
+  }
+
+
+  /**
+   * @webref intfloatdict:method
+   * @brief Return the internal array being used to store the values
+   */
+  public Iterable<Float> values() {
+    return new Iterable<Float>() {
+
+      @Override
+      public Iterator<Float> iterator() {
+        return valueIterator();
+      }
+    };
+  }
+
+
+  public Iterator<Float> valueIterator() {
+    return new Iterator<Float>() {
+      int index = -1;
+
+      public void remove() {
+        removeIndex(index);
+      }
+
+      public Float next() {
+        return value(++index);
+      }
+
+      public boolean hasNext() {
+        return index+1 < size();
+      }
+    };
+  }
+
+
+  /**
+   * Create a new array and copy each of the values into it.
+   *
+   * @webref intfloatdict:method
+   * @brief Create a new array and copy each of the values into it
+   */
+  public float[] valueArray() {
+    return valueArray(null);
+  }
+
+
+  /**
+   * Fill an already-allocated array with the values (more efficient than
+   * creating a new array each time). If 'array' is null, or not the same
+   * size as the number of values, a new array will be allocated and returned.
+   *
+   * @param array values to copy into the array
+   */
+  public float[] valueArray(float[] array) {
+    if (array == null || array.length != size()) {
+      array = new float[count];
+    }
+    System.arraycopy(values, 0, array, 0, count);
+    return array;
+  }
+
+
+  /**
+   * Return a value for the specified key.
+   *
+   * @webref intfloatdict:method
+   * @brief Return a value for the specified key
+   */
+  public float get(int key) {
+    int index = index(key);
+    if (index == -1) return 0;
+    return values[index];
+  }
+
+
+  /**
+   * Create a new key/value pair or change the value of one.
+   *
+   * @webref intfloatdict:method
+   * @brief Create a new key/value pair or change the value of one
+   */
+  public void set(int key, float amount) {
+    int index = index(key);
+    if (index == -1) {
+      create(key, amount);
+    } else {
+      values[index] = amount;
+    }
+  }
+
+
+  /**
+   * @webref intfloatdict:method
+   * @brief Check if a key is a part of the data structure
+   */
+  public boolean hasKey(int key) {
+    return index(key) != -1;
+  }
+
+
+  /**
+   * Increase the value associated with a specific key by 1.
+   *
+   * @webref intfloatdict:method
+   * @brief Increase the value of a specific key value by 1
+   */
+  public void increment(int key) {
+    add(key, 1);
+  }
+
+
+  /**
+   * @webref intfloatdict:method
+   * @brief Add to a value
+   */
+  public void add(int key, float amount) {
+    int index = index(key);
+    if (index == -1) {
+      create(key, amount);
+    } else {
+      values[index] += amount;
+    }
+  }
+
+
+  /**
+   * @webref intfloatdict:method
+   * @brief Subtract from a value
+   */
+  public void sub(int key, float amount) {
+    add(key, -amount);
+  }
+
+
+  /**
+   * @webref intfloatdict:method
+   * @brief Multiply a value
+   */
+  public void mult(int key, float amount) {
+    int index = index(key);
+    if (index != -1) {
+      values[index] *= amount;
+    }
+  }
+
+
+  /**
+   * @webref intfloatdict:method
+   * @brief Divide a value
+   */
+  public void div(int key, float amount) {
+    int index = index(key);
+    if (index != -1) {
+      values[index] /= amount;
+    }
+  }
+
+
+  private void checkMinMax(String functionName) {
+    if (count == 0) {
+      String msg =
+        String.format("Cannot use %s() on an empty %s.",
+                      functionName, getClass().getSimpleName());
+      throw new RuntimeException(msg);
+    }
+  }
+
+
+  // return the index of the minimum value
+  public int minIndex() {
+    checkMinMax("minIndex");
+    int index = 0;
+    float value = values[0];
+    for (int i = 1; i < count; i++) {
+      if (values[i] < value) {
+        index = i;
+        value = values[i];
+      }
+    }
+    return index;
+  }
+
+
+  // return the minimum value
+  public float minValue() {
+    checkMinMax("minValue");
+    return values[minIndex()];
+  }
+
+
+  // return the key for the minimum value
+  public int minKey() {
+    checkMinMax("minKey");
+    return keys[minIndex()];
+  }
+
+
+  // return the index of the max value
+  public int maxIndex() {
+    checkMinMax("maxIndex");
+    int index = 0;
+    float value = values[0];
+    for (int i = 1; i < count; i++) {
+      if (values[i] > value) {
+        index = i;
+        value = values[i];
+      }
+    }
+    return index;
+  }
+
+
+  // return the maximum value
+  public float maxValue() {
+    checkMinMax("maxValue");
+    return values[maxIndex()];
+  }
+
+
+  // return the key corresponding to the maximum value
+  public int maxKey() {
+    checkMinMax("maxKey");
+    return keys[maxIndex()];
+  }
+
+
+  public int index(int what) {
+    return indices.get(what);
+  }
+
+
+  protected void create(int what, float much) {
+    if (count == keys.length) {
+      // expand() would leave an empty array at zero length
+      int length = Math.max(10, count << 1);
+      keys = PApplet.expand(keys, length);
+      values = PApplet.expand(values, length);
+    }
+    keys[count] = what;
+    indices.put(what, count);
+    values[count] = much;
+    count++;
+  }
+
+
+  /**
+   * @webref intfloatdict:method
+   * @brief Remove a key/value pair
+   */
+  public int remove(int key) {
+    int index = index(key);
+    if (index != -1) {
+      removeIndex(index);
+    }
+    return index;
+  }
+
+
+  public int removeIndex(int index) {
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    int key = keys[index];
+    indices.remove(key);
+    System.arraycopy(keys, index+1, keys, index, count-index-1);
+    System.arraycopy(values, index+1, values, index, count-index-1);
+    indices.shiftDown(index);
+    count--;
+    keys[count] = 0;
+    values[count] = 0;
+    return key;
+  }
+
+
+  public void swap(int a, int b) {
+    int tkey = keys[a];
+    float tvalue = values[a];
+    keys[a] = keys[b];
+    values[a] = values[b];
+    keys[b] = tkey;
+    values[b] = tvalue;
+
+    indices.put(keys[a], a);
+    indices.put(keys[b], b);
+  }
+
+
+  /**
+   * Sort the keys from lowest to highest.
+   *
+   * @webref intfloatdict:method
+   * @brief Sort the keys from lowest to highest
+   */
+  public void sortKeys() {
+    sortImpl(true, false);
+  }
+
+
+  /**
+   * Sort the keys from highest to lowest.
+   *
+   * @webref intfloatdict:method
+   * @brief Sort the keys from highest to lowest
+   */
+  public void sortKeysReverse() {
+    sortImpl(true, true);
+  }
+
+
+  /**
+   * Sort by values in ascending order. The smallest value will be at [0].
+   *
+   * @webref intfloatdict:method
+   * @brief Sort by values in ascending order
+   */
+  public void sortValues() {
+    sortImpl(false, false);
+  }
+
+
+  /**
+   * Sort by values in descending order. The largest value will be at [0].
+   *
+   * @webref intfloatdict:method
+   * @brief Sort by values in descending order
+   */
+  public void sortValuesReverse() {
+    sortImpl(false, true);
+  }
+
+
+  protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    // sort a list of positions, then move the entries over in one go
+    final int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    Sort s = new Sort() {
+      @Override
+      public int size() {
+        return count;
+      }
+
+      @Override
+      public int compare(int a, int b) {
+        a = order[a];
+        b = order[b];
+        // compare instead of subtracting, which could overflow
+        int diff;
+        if (useKeys) {
+          diff = Integer.compare(keys[a], keys[b]);
+        } else {
+          diff = Float.compare(values[a], values[b]);
+          if (diff == 0) {
+            diff = Integer.compare(keys[a], keys[b]);
+          }
+        }
+        return reverse ? -diff : diff;
+      }
+
+      @Override
+      public void swap(int a, int b) {
+        int temp = order[a];
+        order[a] = order[b];
+        order[b] = temp;
+      }
+    };
+    s.run();
+
+    int[] newKeys = new int[keys.length];
+    float[] newValues = new float[values.length];
+    for (int i = 0; i < count; i++) {
+      newKeys[i] = keys[order[i]];
+      newValues[i] = values[order[i]];
+    }
+    keys = newKeys;
+    values = newValues;
+    indices.rebuild(keys, count);
+  }
+
+
+  /**
+   * Sum all of the values in this dictionary, then return a new IntFloatDict
+   * of each key, divided by the total sum. The total for all values will be ~1.0.
+   * @return a Dict with the original keys, mapped to their pct of the total
+   */
+  public IntFloatDict getPercent() {
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += values[i];
+    }
+    IntFloatDict outgoing = new IntFloatDict(count);
+    for (int i = 0; i < count; i++) {
+      double percent = values[i] / sum;
+      outgoing.set(keys[i], (float) percent);
+    }
+    return outgoing;
+  }
+
+
+  /** Returns a duplicate copy of this object. */
+  public IntFloatDict copy() {
+    IntFloatDict outgoing = new IntFloatDict(count);
+    System.arraycopy(keys, 0, outgoing.keys, 0, count);
+    System.arraycopy(values, 0, outgoing.values, 0, count);
+    outgoing.count = count;
+    outgoing.indices.rebuild(outgoing.keys, count);
+    return outgoing;
+  }
+
+
+  /**
+   * Write tab-delimited entries out to
+   * @param writer
+   */
+  public void write(PrintWriter writer) {
+    for (int i = 0; i < count; i++) {
+      writer.println(keys[i] + "\t" + values[i]);
+    }
+    writer.flush();
+  }
+
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getClass().getSimpleName() + " size=" + size() + " { ");
+    for (int i = 0; i < size(); i++) {
+      if (i != 0) {
+        sb.append(", ");
+      }
+      sb.append(keys[i] + ": " + values[i]);
+    }
+    sb.append(" }");
+    return sb.toString();
+  }
+}
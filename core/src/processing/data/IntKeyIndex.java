@@ -0,0 +1,169 @@
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Open-addressing lookup from int keys to their position in the keys[]
+ * array of IntIntDict and IntFloatDict. Same approach as KeyIndex, but the
+ * keys are stored in the table itself since comparing them is free.
+ */
+class IntKeyIndex {
+  /** position + 1 for each slot, 0 when the slot is empty */
+  int[] slots;
+  /** key stored in each slot */
+  int[] slotKeys;
+  int mask;
+  int size;
+
+
+  IntKeyIndex() {
+    this(8);
+  }
+
+
+  IntKeyIndex(int expected) {
+    int capacity = 8;
+    while (capacity < expected * 2) {
+      capacity <<= 1;
+    }
+    slots = new int[capacity];
+    slotKeys = new int[capacity];
+    mask = capacity - 1;
+  }
+
+
+  static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  /** Position of key in the keys array, or -1 if it's not present. */
+  int get(int key) {
+    int slot = hash(key) & mask;
+    while (slots[slot] != 0) {
+      if (slotKeys[slot] == key) {
+        return slots[slot] - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+
+  /** Set the position for key, adding it if it's not already present. */
+  void put(int key, int position) {
+    int slot = hash(key) & mask;
+    while (slots[slot] != 0) {
+      if (slotKeys[slot] == key) {
+        slots[slot] = position + 1;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = position + 1;
+    slotKeys[slot] = key;
+    size++;
+    if (size * 2 > slots.length) {
+      grow();
+    }
+  }
+
+
+  /** Remove key, returning the position it had, or -1 if it wasn't found. */
+  int remove(int key) {
+    int slot = hash(key) & mask;
+    while (slots[slot] != 0) {
+      if (slotKeys[slot] == key) {
+        int position = slots[slot] - 1;
+        removeSlot(slot);
+        return position;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+
+  /**
+   * Empty a slot, then walk the rest of its probe run and move back any
+   * entry that would no longer be reachable from its home slot.
+   */
+  private void removeSlot(int hole) {
+    size--;
+    int slot = hole;
+    while (true) {
+      slot = (slot + 1) & mask;
+      if (slots[slot] == 0) {
+        break;
+      }
+      int home = hash(slotKeys[slot]) & mask;
+      boolean reachable = (hole <= slot) ?
+        (home > hole && home <= slot) : (home > hole || home <= slot);
+      if (!reachable) {
+        slots[hole] = slots[slot];
+        slotKeys[hole] = slotKeys[slot];
+        hole = slot;
+      }
+    }
+    slots[hole] = 0;
+  }
+
+
+  /** Decrement every stored position after 'position', see KeyIndex. */
+  void shiftDown(int position) {
+    int[] s = slots;
+    int limit = position + 1;
+    for (int i = 0; i < s.length; i++) {
+      if (s[i] > limit) {
+        s[i]--;
+      }
+    }
+  }
+
+
+  /** Replace the contents with the first count entries of keys. */
+  void rebuild(int[] keys, int count) {
+    int capacity = 8;
+    while (capacity < count * 2) {
+      capacity <<= 1;
+    }
+    if (capacity == slots.length) {
+      Arrays.fill(slots, 0);
+    } else {
+      slots = new int[capacity];
+      slotKeys = new int[capacity];
+      mask = capacity - 1;
+    }
+    size = 0;
+    for (int i = 0; i < count; i++) {
+      put(keys[i], i);
+    }
+  }
+
+
+  void clear() {
+    Arrays.fill(slots, 0);
+    size = 0;
+  }
+
+
+  private void grow() {
+    int[] oldSlots = slots;
+    int[] oldKeys = slotKeys;
+    slots = new int[oldSlots.length << 1];
+    slotKeys = new int[oldSlots.length << 1];
+    mask = slots.length - 1;
+    for (int i = 0; i < oldSlots.length; i++) {
+      if (oldSlots[i] != 0) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = oldSlots[i];
+        slotKeys[slot] = oldKeys[i];
+      }
+    }
+  }
+}
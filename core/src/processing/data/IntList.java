@@ -69,8 +69,9 @@ public class IntList implements Iterable<Integer> {
     int count = stop - start;
     IntList newbie = new IntList(count);
     for (int i = 0; i < count; i++) {
-      newbie.set(i, start+i);
+      newbie.data[i] = start+i;
     }
+    newbie.count = count;
     return newbie;
   }
 
@@ -432,6 +433,134 @@ public class IntList implements Iterable<Integer> {
   }
 
 
+  // The whole-list operations below are written as plain loops over local
+  // copies of data and count, so that the JIT can unroll and vectorize them.
+
+
+  /** Add the same amount to every value in the list. */
+  public void addAll(int amount) {
+    int[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] += amount;
+    }
+  }
+
+
+  /** Subtract the same amount from every value in the list. */
+  public void subAll(int amount) {
+    addAll(-amount);
+  }
+
+
+  /** Multiply every value in the list by the same amount. */
+  public void multAll(int amount) {
+    int[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] *= amount;
+    }
+  }
+
+
+  private void checkSameSize(String functionName, IntList list) {
+    if (list.count != count) {
+      String msg =
+        String.format("%s() needs a list with %d values, not %d.",
+                      functionName, count, list.count);
+      throw new IllegalArgumentException(msg);
+    }
+  }
+
+
+  /** Add each value of another list (of the same size) to this one. */
+  public void add(IntList list) {
+    checkSameSize("add", list);
+    int[] d = data;
+    int[] other = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] += other[i];
+    }
+  }
+
+
+  /** Subtract each value of another list (of the same size) from this one. */
+  public void sub(IntList list) {
+    checkSameSize("sub", list);
+    int[] d = data;
+    int[] other = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] -= other[i];
+    }
+  }
+
+
+  /** Multiply each value by the matching value of another list. */
+  public void mult(IntList list) {
+    checkSameSize("mult", list);
+    int[] d = data;
+    int[] other = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] *= other[i];
+    }
+  }
+
+
+  /** Divide each value by the matching value of another list. */
+  public void div(IntList list) {
+    checkSameSize("div", list);
+    int[] d = data;
+    int[] other = list.data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] /= other[i];
+    }
+  }
+
+
+  /** Constrain every value in the list to the range [low, high]. */
+  public void clamp(int low, int high) {
+    int[] d = data;
+    int n = count;
+    for (int i = 0; i < n; i++) {
+      d[i] = Math.min(Math.max(d[i], low), high);
+    }
+  }
+
+
+  /**
+   * Replace each value with the sum of itself and all the values before it
+   * (a prefix sum), so the last entry becomes the sum() of the list.
+   */
+  public void accumulate() {
+    int[] d = data;
+    int n = count;
+    for (int i = 1; i < n; i++) {
+      d[i] += d[i-1];
+    }
+  }
+
+
+  /**
+   * Sum of the products of each value with the matching value in another
+   * list of the same size. Returned as a long, since it overflows easily.
+   */
+  public long dot(IntList list) {
+    checkSameSize("dot", list);
+    int[] d = data;
+    int[] other = list.data;
+    int n = count;
+    long outgoing = 0;
+    for (int i = 0; i < n; i++) {
+      outgoing += (long) d[i] * other[i];
+    }
+    return outgoing;
+  }
+
+
   private void checkMinMax(String functionName) {
     if (count == 0) {
       String msg =
@@ -518,7 +647,11 @@ public class IntList implements Iterable<Integer> {
    * @brief Sorts the array, lowest to highest
    */
   public void sort() {
-    Arrays.sort(data, 0, count);
+    if (count < RADIX_THRESHOLD) {
+      Arrays.sort(data, 0, count);
+    } else {
+      radixSort(data, count, 0x80000000);
+    }
   }
 
 
@@ -529,24 +662,94 @@ public class IntList implements Iterable<Integer> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
+    if (count < RADIX_THRESHOLD) {
+      Arrays.sort(data, 0, count);
+      reverse();
+    } else {
+      radixSort(data, count, 0x7fffffff);
+    }
+  }
+
+
+  /** Below this many values, sorting uses Arrays.sort() instead. */
+  static final int RADIX_THRESHOLD = 1 << 9;
 
-      @Override
-      public float compare(int a, int b) {
-        return data[b] - data[a];
-      }
 
-      @Override
-      public void swap(int a, int b) {
-        int temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
+  /**
+   * LSD radix sort of the first count entries of data, eight bits at a
+   * time. Each value is XORed with 'flip' first so that an unsigned sort
+   * puts them in the right order (0x80000000 for ascending signed values,
+   * 0x7fffffff for descending), and flipped back afterwards. Bytes that
+   * are the same for every value are skipped. Lists with at least
+   * Table.PARALLEL_THRESHOLD values are counted and scattered in blocks on
+   * the shared pool.
+   */
+  static void radixSort(int[] data, final int count, int flip) {
+    for (int i = 0; i < count; i++) {
+      data[i] ^= flip;
+    }
+    int blockCount = 1;
+    if (count >= Table.PARALLEL_THRESHOLD) {
+      blockCount = Table.getParallelPool().getParallelism();
+    }
+    final int blocks = blockCount;
+    final int blockSize = (count + blocks - 1) / blocks;
+    final int[][] counts = new int[blocks][256];
+    int[] src = data;
+    int[] dst = new int[count];
+
+    for (int pass = 0; pass < 32; pass += 8) {
+      final int shift = pass;
+      final int[] from = src;
+      new Table.ParallelBlocks(blocks) {
+        void run(int block) {
+          int[] c = counts[block];
+          Arrays.fill(c, 0);
+          int stop = Math.min(count, (block + 1) * blockSize);
+          for (int i = block * blockSize; i < stop; i++) {
+            c[(from[i] >>> shift) & 0xff]++;
+          }
+        }
+      }.runBlocks();
+
+      // turn the counts into starting offsets, digit by digit, then block
+      int total = 0;
+      boolean trivial = false;
+      for (int digit = 0; digit < 256; digit++) {
+        int digitTotal = 0;
+        for (int block = 0; block < blocks; block++) {
+          int c = counts[block][digit];
+          counts[block][digit] = total;
+          total += c;
+          digitTotal += c;
+        }
+        if (digitTotal == count) {
+          trivial = true;  // every value has the same byte here
+        }
+      }
+      if (trivial) {
+        continue;
       }
-    }.run();
+
+      final int[] to = dst;
+      new Table.ParallelBlocks(blocks) {
+        void run(int block) {
+          int[] offset = counts[block];
+          int stop = Math.min(count, (block + 1) * blockSize);
+          for (int i = block * blockSize; i < stop; i++) {
+            to[offset[(from[i] >>> shift) & 0xff]++] = from[i];
+          }
+        }
+      }.runBlocks();
+      dst = src;
+      src = to;
+    }
+    if (src != data) {
+      System.arraycopy(src, 0, data, 0, count);
+    }
+    for (int i = 0; i < count; i++) {
+      data[i] ^= flip;
+    }
   }
 
 
@@ -43,6 +43,7 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import processing.core.PApplet;
 
@@ -101,9 +102,21 @@ import processing.core.PApplet;
 public class JSONArray {
 
   /**
-   * The arrayList where the JSONArray's properties are kept.
+   * The arrayList where the JSONArray's properties are kept. Set to null
+   * while the values are packed into one of the primitive arrays below.
    */
-  private final ArrayList<Object> myArrayList;
+  private ArrayList<Object> myArrayList;
+
+  /**
+   * Arrays made up only of numbers are stored without boxing each element,
+   * in exactly one of these arrays, until something else is added.
+   * A mix of ints and decimal values is unpacked, so that each keeps its
+   * own type.
+   */
+  private int[] intValues;
+  private float[] floatValues;
+  private double[] doubleValues;
+  private int packedCount;
 
 
   /**
@@ -139,10 +152,10 @@ public class JSONArray {
       for (;;) {
         if (x.nextClean() == ',') {
           x.back();
-          myArrayList.add(JSONObject.NULL);
+          add(JSONObject.NULL);
         } else {
           x.back();
-          myArrayList.add(x.nextValue());
+          add(x.nextValue());
         }
         switch (x.nextClean()) {
         case ';':
@@ -166,10 +179,8 @@ public class JSONArray {
    * @nowebref
    */
   public JSONArray(IntList list) {
-    myArrayList = new ArrayList<Object>();
-    for (int item : list.values()) {
-      myArrayList.add(new Integer(item));
-    }
+    intValues = list.array();
+    packedCount = intValues.length;
   }
 
 
@@ -177,10 +188,8 @@ public class JSONArray {
    * @nowebref
    */
   public JSONArray(FloatList list) {
-    myArrayList = new ArrayList<Object>();
-    for (float item : list.values()) {
-      myArrayList.add(new Float(item));
-    }
+    floatValues = list.array();
+    packedCount = floatValues.length;
   }
 
 
@@ -254,10 +263,35 @@ public class JSONArray {
     if (index < 0 || index >= this.size()) {
       return null;
     }
+    if (myArrayList == null) {
+      if (intValues != null) {
+        return Integer.valueOf(intValues[index]);
+      } else if (floatValues != null) {
+        return Float.valueOf(floatValues[index]);
+      }
+      return Double.valueOf(doubleValues[index]);
+    }
     return myArrayList.get(index);
   }
 
 
+  /**
+   * Get a value from the packed arrays without boxing it. Ints and floats
+   * are both exact as doubles, so this works for getInt() and getLong() too.
+   */
+  private double getPacked(int index) {
+    if (index < 0 || index >= packedCount) {
+      throw new RuntimeException("JSONArray[" + index + "] not found.");
+    }
+    if (intValues != null) {
+      return intValues[index];
+    } else if (floatValues != null) {
+      return floatValues[index];
+    }
+    return doubleValues[index];
+  }
+
+
   /**
    * Get the object value associated with an index.
    * @param index must be between 0 and length() - 1
@@ -321,6 +355,9 @@ public class JSONArray {
    * @see JSONArray#getBoolean(int)
    */
   public int getInt(int index) {
+    if (myArrayList == null) {
+      return (int) getPacked(index);
+    }
     Object object = this.get(index);
     try {
       return object instanceof Number
@@ -358,6 +395,9 @@ public class JSONArray {
    *  be converted to a number.
    */
   public long getLong(int index) {
+    if (myArrayList == null) {
+      return (long) getPacked(index);
+    }
     Object object = this.get(index);
     try {
       return object instanceof Number
@@ -420,6 +460,9 @@ public class JSONArray {
    *  be converted to a number.
    */
   public double getDouble(int index) {
+    if (myArrayList == null) {
+      return getPacked(index);
+    }
     Object object = this.get(index);
     try {
       return object instanceof Number
@@ -576,12 +619,21 @@ public class JSONArray {
 
   /**
    * Get this entire array as an int array. Everything must be an int.
+   * If the array holds nothing but ints, no copy is made: the array returned
+   * is the one used inside this JSONArray, and changes to it will show up
+   * here as well.
    *
    * @webref jsonarray:method
    * @brief Gets the entire array as array of ints
    * @see JSONArray#getStringArray()
    */
   public int[] getIntArray() {
+    if (intValues != null) {
+      if (intValues.length != packedCount) {
+        intValues = Arrays.copyOf(intValues, packedCount);
+      }
+      return intValues;
+    }
     int[] outgoing = new int[size()];
     for (int i = 0; i < size(); i++) {
       outgoing[i] = getInt(i);
@@ -600,8 +652,19 @@ public class JSONArray {
   }
 
 
-  /** Get this entire array as a float array. Everything must be an float. */
+  /**
+   * Get this entire array as a float array. Everything must be an float.
+   * Like getIntArray(), an array built from floats (such as a FloatList)
+   * is returned without making a copy. Parsed decimal values are stored
+   * as doubles, and converted in a single pass.
+   */
   public float[] getFloatArray() {
+    if (floatValues != null) {
+      if (floatValues.length != packedCount) {
+        floatValues = Arrays.copyOf(floatValues, packedCount);
+      }
+      return floatValues;
+    }
     float[] outgoing = new float[size()];
     for (int i = 0; i < size(); i++) {
       outgoing[i] = getFloat(i);
@@ -610,8 +673,17 @@ public class JSONArray {
   }
 
 
-  /** Get this entire array as a double array. Everything must be an double. */
+  /**
+   * Get this entire array as a double array. Everything must be an double.
+   * Returned without a copy when the array is made up of decimal values.
+   */
   public double[] getDoubleArray() {
+    if (doubleValues != null) {
+      if (doubleValues.length != packedCount) {
+        doubleValues = Arrays.copyOf(doubleValues, packedCount);
+      }
+      return doubleValues;
+    }
     double[] outgoing = new double[size()];
     for (int i = 0; i < size(); i++) {
       outgoing[i] = getDouble(i);
@@ -620,6 +692,18 @@ public class JSONArray {
   }
 
 
+  /** Get a copy of this array as an IntList. Everything must be an int. */
+  public IntList toIntList() {
+    return new IntList(getIntArray());
+  }
+
+
+  /** Get a copy of this array as a FloatList. Everything must be a float. */
+  public FloatList toFloatList() {
+    return new FloatList(getFloatArray());
+  }
+
+
   /** Get this entire array as a boolean array. Everything must be a boolean. */
   public boolean[] getBooleanArray() {
     boolean[] outgoing = new boolean[size()];
@@ -718,7 +802,11 @@ public class JSONArray {
    * @return this.
    */
   public JSONArray append(int value) {
-    this.append(new Integer(value));
+    if (intValues != null) {
+      addPacked(value);
+    } else {
+      this.append(new Integer(value));
+    }
     return this;
   }
 
@@ -745,6 +833,14 @@ public class JSONArray {
    * @return this.
    */
   public JSONArray append(float value) {
+    if (floatValues != null) {
+      // already holding floats, so keep them packed
+      if (Float.isInfinite(value) || Float.isNaN(value)) {
+        throw new RuntimeException("JSON does not allow non-finite numbers.");
+      }
+      addPacked(value);
+      return this;
+    }
     return append((double) value);
   }
 
@@ -758,9 +854,14 @@ public class JSONArray {
    * @return this.
    */
   public JSONArray append(double value) {
-    Double d = new Double(value);
-    JSONObject.testValidity(d);
-    this.append(d);
+    if (Double.isInfinite(value) || Double.isNaN(value)) {
+      throw new RuntimeException("JSON does not allow non-finite numbers.");
+    }
+    if (doubleValues != null) {
+      addPacked(value);
+    } else {
+      this.append(new Double(value));
+    }
     return this;
   }
 
@@ -805,7 +906,7 @@ public class JSONArray {
    * @param value a JSONArray value
    */
   public JSONArray append(JSONArray value) {
-    myArrayList.add(value);
+    add(value);
     return this;
   }
 
@@ -814,7 +915,7 @@ public class JSONArray {
    * @param value a JSONObject value
    */
   public JSONArray append(JSONObject value) {
-    myArrayList.add(value);
+    add(value);
     return this;
   }
 
@@ -827,11 +928,95 @@ public class JSONArray {
    * @return this.
    */
   protected JSONArray append(Object value) {
-    myArrayList.add(value);
+    add(value);
     return this;
   }
 
 
+  /**
+   * Add a value to the end, keeping the values packed when they're all
+   * numbers of the same kind.
+   */
+  private void add(Object value) {
+    if (myArrayList == null) {
+      if (value instanceof Integer && intValues != null) {
+        addPacked(((Integer) value).intValue());
+        return;
+      } else if (value instanceof Double && doubleValues != null) {
+        addPacked(((Double) value).doubleValue());
+        return;
+      } else if (value instanceof Float && floatValues != null) {
+        addPacked(((Float) value).floatValue());
+        return;
+      }
+      unpack();
+
+    } else if (myArrayList.isEmpty()) {
+      if (value instanceof Integer) {
+        myArrayList = null;
+        intValues = new int[10];
+        addPacked(((Integer) value).intValue());
+        return;
+      } else if (value instanceof Double) {
+        myArrayList = null;
+        doubleValues = new double[10];
+        addPacked(((Double) value).doubleValue());
+        return;
+      } else if (value instanceof Float) {
+        myArrayList = null;
+        floatValues = new float[10];
+        addPacked(((Float) value).floatValue());
+        return;
+      }
+    }
+    myArrayList.add(value);
+  }
+
+
+  /** Add to the int values. */
+  private void addPacked(int value) {
+    if (packedCount == intValues.length) {
+      intValues = Arrays.copyOf(intValues, Math.max(10, packedCount << 1));
+    }
+    intValues[packedCount++] = value;
+  }
+
+
+  /** Add to the float values. */
+  private void addPacked(float value) {
+    if (packedCount == floatValues.length) {
+      floatValues = Arrays.copyOf(floatValues, Math.max(10, packedCount << 1));
+    }
+    floatValues[packedCount++] = value;
+  }
+
+
+  /** Add to the double values. */
+  private void addPacked(double value) {
+    if (packedCount == doubleValues.length) {
+      doubleValues = Arrays.copyOf(doubleValues, Math.max(10, packedCount << 1));
+    }
+    doubleValues[packedCount++] = value;
+  }
+
+
+  /**
+   * Move the packed values into boxed objects, so that other kinds of values
+   * can be stored alongside them.
+   */
+  private void unpack() {
+    ArrayList<Object> list = new ArrayList<Object>(packedCount + 1);
+    for (int i = 0; i < packedCount; i++) {
+      list.add(opt(i));
+    }
+    myArrayList = list;
+    intValues = null;
+    floatValues = null;
+    doubleValues = null;
+    packedCount = 0;
+  }
+
+
 //  /**
 //   * Put a value in the JSONArray, where the value will be a
 //   * JSONArray which is produced from a Collection.
@@ -1020,6 +1205,21 @@ public class JSONArray {
     if (index < 0) {
       throw new RuntimeException("JSONArray[" + index + "] not found.");
     }
+    if (myArrayList == null) {
+      if (index < packedCount) {
+        if (value instanceof Integer && intValues != null) {
+          intValues[index] = ((Integer) value).intValue();
+          return this;
+        } else if (value instanceof Float && floatValues != null) {
+          floatValues[index] = ((Float) value).floatValue();
+          return this;
+        } else if (value instanceof Double && doubleValues != null) {
+          doubleValues[index] = ((Double) value).doubleValue();
+          return this;
+        }
+      }
+      unpack();
+    }
     if (index < this.size()) {
       this.myArrayList.set(index, value);
     } else {
@@ -1042,7 +1242,7 @@ public class JSONArray {
    * @see JSONArray#remove(int)
    */
   public int size() {
-    return myArrayList.size();
+    return (myArrayList == null) ? packedCount : myArrayList.size();
   }
 
 
@@ -1068,7 +1268,17 @@ public class JSONArray {
    */
   public Object remove(int index) {
     Object o = this.opt(index);
-    this.myArrayList.remove(index);
+    if (myArrayList == null) {
+      if (index < 0 || index >= packedCount) {
+        throw new ArrayIndexOutOfBoundsException(index);
+      }
+      Object array = (intValues != null) ? intValues :
+        (floatValues != null) ? floatValues : doubleValues;
+      System.arraycopy(array, index+1, array, index, packedCount - index - 1);
+      packedCount--;
+    } else {
+      this.myArrayList.remove(index);
+    }
     return o;
   }
 
@@ -1099,15 +1309,32 @@ public class JSONArray {
   }
 
 
+  /**
+   * Save as JSON text, indented by two spaces. Use "compact" in the options
+   * to leave out the indents and newlines.
+   */
   public boolean save(File file, String options) {
-    return save(PApplet.createWriter(file));
+    PrintWriter writer = PApplet.createWriter(file);
+    boolean success = write(writer, JSONObject.indentOption(options));
+    writer.close();
+    return success;
   }
 
 
   public boolean save(PrintWriter output) {
-    output.print(format(2));
+    return write(output, 2);
+  }
+
+
+  /**
+   * Write the JSON text straight to the output, without first building the
+   * entire thing as a String in memory.
+   * @param indentFactor spaces per level of indentation, or -1 for compact
+   */
+  public boolean write(PrintWriter output, int indentFactor) {
+    write(output, indentFactor, 0);
     output.flush();
-    return true;
+    return !output.checkError();
   }
 
 
@@ -1181,8 +1408,7 @@ public class JSONArray {
       int thisFactor = (indentFactor == -1) ? 0 : indentFactor;
 
       if (length == 1) {
-        JSONObject.writeValue(writer, this.myArrayList.get(0),
-                              indentFactor, indent);
+        writeElement(writer, 0, indentFactor, indent);
 //                              thisFactor, indent);
       } else if (length != 0) {
         final int newIndent = indent + thisFactor;
@@ -1197,8 +1423,7 @@ public class JSONArray {
           JSONObject.indent(writer, newIndent);
 //          JSONObject.writeValue(writer, this.myArrayList.get(i),
 //                                thisFactor, newIndent);
-          JSONObject.writeValue(writer, this.myArrayList.get(i),
-                                indentFactor, newIndent);
+          writeElement(writer, i, indentFactor, newIndent);
           commanate = true;
         }
         if (indentFactor != -1) {
@@ -1214,6 +1439,36 @@ public class JSONArray {
   }
 
 
+  private void writeElement(Writer writer, int index,
+                            int indentFactor, int indent) throws IOException {
+    if (myArrayList != null) {
+      JSONObject.writeValue(writer, myArrayList.get(index), indentFactor, indent);
+    } else {
+      writer.write(packedToString(index));
+    }
+  }
+
+
+  /**
+   * Same text as JSONObject.numberToString(), without boxing the value.
+   * A FloatList passed to the constructor isn't checked, so NaN and
+   * infinity are caught here, the same as numberToString() does.
+   */
+  private String packedToString(int index) {
+    if (intValues != null) {
+      return String.valueOf(intValues[index]);
+    }
+    double value = (floatValues != null) ? floatValues[index] : doubleValues[index];
+    if (Double.isInfinite(value) || Double.isNaN(value)) {
+      throw new RuntimeException("JSON does not allow non-finite numbers.");
+    }
+    if (floatValues != null) {
+      return JSONObject.shaveZeros(String.valueOf(floatValues[index]));
+    }
+    return JSONObject.shaveZeros(String.valueOf(doubleValues[index]));
+  }
+
+
   /**
    * Make a string from the contents of this JSONArray. The
    * <code>separator</code> string is inserted between each element.
@@ -1230,7 +1485,11 @@ public class JSONArray {
       if (i > 0) {
         sb.append(separator);
       }
-      sb.append(JSONObject.valueToString(this.myArrayList.get(i)));
+      if (myArrayList == null) {
+        sb.append(packedToString(i));
+      } else {
+        sb.append(JSONObject.valueToString(this.myArrayList.get(i)));
+      }
     }
     return sb.toString();
   }
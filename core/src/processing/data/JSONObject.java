@@ -45,6 +45,7 @@ import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -112,18 +113,19 @@ import processing.core.PApplet;
  */
 public class JSONObject {
   /**
-   * The maximum number of keys in the key pool.
+   * The default maximum number of keys in the key pool.
    */
-  private static final int keyPoolSize = 100;
+  static final int DEFAULT_KEY_POOL_SIZE = 1024;
 
   /**
    * Key pooling is like string interning, but without permanently tying up
    * memory. To help conserve memory, storage of duplicated key strings in
    * JSONObjects will be avoided by using a key pool to manage unique key
    * string objects. This is used by JSONObject.put(string, object).
+   * The pool is shared by every thread that's parsing JSON, so it is safe
+   * to load several files at once.
    */
-  private static HashMap<String, Object> keyPool =
-    new HashMap<String, Object>(keyPoolSize);
+  private static volatile KeyPool keyPool = new KeyPool(DEFAULT_KEY_POOL_SIZE);
 
 
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
@@ -969,10 +971,14 @@ public class JSONObject {
       throw new RuntimeException("Null pointer");
     }
     testValidity(number);
+    return shaveZeros(number.toString());
+  }
 
-    // Shave off trailing zeros and decimal point, if possible.
 
-    String string = number.toString();
+  /**
+   * Shave off trailing zeros and decimal point, if possible.
+   */
+  static String shaveZeros(String string) {
     if (string.indexOf('.') > 0 && string.indexOf('e') < 0 &&
       string.indexOf('E') < 0) {
       while (string.endsWith("0")) {
@@ -1300,23 +1306,13 @@ public class JSONObject {
    * @throws JSONException If the value is non-finite number
    *  or if the key is null.
    */
-  private JSONObject put(String key, Object value) {
-    String pooled;
+  JSONObject put(String key, Object value) {
     if (key == null) {
       throw new RuntimeException("Null key.");
     }
     if (value != null) {
       testValidity(value);
-      pooled = (String)keyPool.get(key);
-      if (pooled == null) {
-        if (keyPool.size() >= keyPoolSize) {
-          keyPool = new HashMap<String, Object>(keyPoolSize);
-        }
-        keyPool.put(key, key);
-      } else {
-        key = pooled;
-      }
-      this.map.put(key, value);
+      this.map.put(keyPool.intern(key), value);
     } else {
       this.remove(key);
     }
@@ -1553,15 +1549,45 @@ public class JSONObject {
 //  }
 
 
+  /**
+   * Save as JSON text, indented by two spaces. Use "compact" in the options
+   * to leave out the indents and newlines.
+   */
   public boolean save(File file, String options) {
-    return write(PApplet.createWriter(file));
+    PrintWriter writer = PApplet.createWriter(file);
+    boolean success = write(writer, indentOption(options));
+    writer.close();
+    return success;
   }
 
 
   public boolean write(PrintWriter output) {
-    output.print(format(2));
+    return write(output, 2);
+  }
+
+
+  /**
+   * Write the JSON text straight to the output, without first building the
+   * entire thing as a String in memory.
+   * @param indentFactor spaces per level of indentation, or -1 for compact
+   */
+  public boolean write(PrintWriter output, int indentFactor) {
+    write(output, indentFactor, 0);
     output.flush();
-    return true;
+    return !output.checkError();
+  }
+
+
+  /** Returns -1 (no indents or newlines) if the options include "compact". */
+  static protected int indentOption(String options) {
+    if (options != null) {
+      for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+        if (opt.equals("compact")) {
+          return -1;
+        }
+      }
+    }
+    return 2;
   }
 
 
@@ -1785,7 +1811,7 @@ public class JSONObject {
 
       if (length == 1) {
         Object key = keys.next();
-        writer.write(quote(key.toString()));
+        quote(key.toString(), writer);
         writer.write(':');
         if (actualFactor > 0) {
           writer.write(' ');
@@ -1803,7 +1829,7 @@ public class JSONObject {
             writer.write('\n');
           }
           indent(writer, newIndent);
-          writer.write(quote(key.toString()));
+          quote(key.toString(), writer);
           writer.write(':');
           if (actualFactor > 0) {
             writer.write(' ');
@@ -2238,4 +2264,130 @@ public class JSONObject {
 //        this.line + "]";
 //    }
 //  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Set the maximum number of distinct keys kept in the pool that's shared
+   * by all JSONObjects. Use a larger number when loading documents with
+   * many different keys, or 0 to turn pooling off. This also resets the
+   * statistics.
+   */
+  static public void setKeyPoolSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Key pool size cannot be negative");
+    }
+    keyPool = new KeyPool(size);
+  }
+
+
+  static public int getKeyPoolSize() {
+    return keyPool.capacity;
+  }
+
+
+  /** Number of keys that were found in the pool and reused. */
+  static public long getKeyPoolHits() {
+    return keyPool.getStats()[0];
+  }
+
+
+  /** Number of keys that weren't in the pool yet. */
+  static public long getKeyPoolMisses() {
+    return keyPool.getStats()[1];
+  }
+
+
+  /** Number of keys dropped from the pool to make room for new ones. */
+  static public long getKeyPoolEvictions() {
+    return keyPool.getStats()[2];
+  }
+
+
+  /**
+   * A bounded pool of key strings, split into segments that each have their
+   * own lock so that threads parsing at the same time rarely wait on each
+   * other. Each segment drops its least recently used key when it's full,
+   * so keys that keep showing up stay in the pool.
+   */
+  static class KeyPool {
+    final int capacity;
+    final Segment[] segments;
+    final int shift;
+
+
+    KeyPool(int capacity) {
+      this.capacity = capacity;
+      int count = 1;
+      // up to 16 segments, without making any of them tiny
+      while (count < 16 && count * 32 <= capacity) {
+        count <<= 1;
+      }
+      segments = new Segment[count];
+      int perSegment = (capacity + count - 1) / count;
+      for (int i = 0; i < count; i++) {
+        segments[i] = new Segment(perSegment);
+      }
+      shift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+
+    /** Return the pooled copy of this key, adding it if necessary. */
+    String intern(String key) {
+      if (capacity == 0) {
+        return key;
+      }
+      // use the high bits of the hash, HashMap uses the low ones
+      int hash = key.hashCode() * 0x9E3779B9;
+      Segment segment = segments[shift == 32 ? 0 : hash >>> shift];
+      synchronized (segment) {
+        String pooled = segment.get(key);
+        if (pooled != null) {
+          segment.hits++;
+          return pooled;
+        }
+        segment.misses++;
+        segment.put(key, key);
+        return key;
+      }
+    }
+
+
+    /** Returns { hits, misses, evictions } across all segments. */
+    long[] getStats() {
+      long[] outgoing = new long[3];
+      for (Segment segment : segments) {
+        synchronized (segment) {
+          outgoing[0] += segment.hits;
+          outgoing[1] += segment.misses;
+          outgoing[2] += segment.evictions;
+        }
+      }
+      return outgoing;
+    }
+
+
+    @SuppressWarnings("serial")
+    static class Segment extends LinkedHashMap<String, String> {
+      final int maximum;
+      long hits, misses, evictions;
+
+      Segment(int maximum) {
+        // access order, so the eldest entry is the least recently used
+        super(16, 0.75f, true);
+        this.maximum = maximum;
+      }
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        if (size() > maximum) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    }
+  }
 }
@@ -0,0 +1,822 @@
+package processing.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+
+
+/**
+ * Reads JSON one token at a time, without building a tree of JSONObject
+ * and JSONArray nodes. Only a small buffer is held in memory, so it can be
+ * used with files of any size. Numbers are decoded straight to primitive
+ * values without creating Integer or Double objects along the way.
+ * <pre>
+ * JSONReader reader = new JSONReader(createReader("features.json"));
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *   String name = reader.nextName();
+ *   if (name.equals("count")) {
+ *     int count = reader.nextInt();
+ *   } else {
+ *     reader.skipValue();
+ *   }
+ * }
+ * reader.endObject();
+ * </pre>
+ * Files with several values one after another, such as newline-delimited
+ * JSON logs, can be read by calling hasNext() at the top level, and then
+ * nextJSONObject() to read each entry into a regular JSONObject.
+ *
+ * @see JSONObject
+ * @see JSONArray
+ */
+public class JSONReader {
+  // token types returned by peek()
+  static public final int BEGIN_OBJECT = 0;
+  static public final int END_OBJECT = 1;
+  static public final int BEGIN_ARRAY = 2;
+  static public final int END_ARRAY = 3;
+  static public final int NAME = 4;
+  static public final int STRING = 5;
+  static public final int NUMBER = 6;
+  static public final int BOOLEAN = 7;
+  static public final int NULL = 8;
+  static public final int END_DOCUMENT = 9;
+
+  // what's happening at each level of nesting
+  static final int EMPTY_DOCUMENT = 0;
+  static final int NONEMPTY_DOCUMENT = 1;
+  static final int EMPTY_ARRAY = 2;
+  static final int NONEMPTY_ARRAY = 3;
+  static final int EMPTY_OBJECT = 4;
+  static final int DANGLING_NAME = 5;  // name read, value not yet
+  static final int NONEMPTY_OBJECT = 6;
+
+  // peeked tokens that need more detail than the public types
+  static final int PEEKED_NONE = -1;
+  static final int PEEKED_TRUE = 100;
+  static final int PEEKED_FALSE = 101;
+  static final int PEEKED_LONG = 102;  // whole number, already in peekedLong
+
+  // largest power of ten that a double holds exactly
+  static final double[] POWERS_OF_TEN = new double[23];
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10;
+    }
+  }
+
+  Reader reader;
+  char[] buffer = new char[8192];
+  int pos;
+  int limit;
+  /** Characters that came before the start of the buffer */
+  long offset;
+
+  int[] stack = new int[32];
+  int depth;
+
+  int peeked = PEEKED_NONE;
+  long peekedLong;
+  /** Length of a NUMBER token, starting at pos */
+  int numberLength;
+  /** Quote character of a peeked NAME or STRING */
+  char quote;
+
+  StringBuilder builder = new StringBuilder();
+
+
+  public JSONReader(Reader reader) {
+    this.reader = reader;
+    stack[depth++] = EMPTY_DOCUMENT;
+  }
+
+
+  /** Read from a stream of UTF-8 text. */
+  public JSONReader(InputStream input) {
+    this(new InputStreamReader(input, Charset.forName("UTF-8")));
+  }
+
+
+  public JSONReader(String json) {
+    this(new StringReader(json));
+  }
+
+
+  public void close() {
+    peeked = PEEKED_NONE;
+    stack[0] = NONEMPTY_DOCUMENT;
+    depth = 1;
+    try {
+      reader.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public void beginObject() {
+    expect(BEGIN_OBJECT, "an object");
+    push(EMPTY_OBJECT);
+    peeked = PEEKED_NONE;
+  }
+
+
+  public void endObject() {
+    expect(END_OBJECT, "the end of an object");
+    depth--;
+    peeked = PEEKED_NONE;
+  }
+
+
+  public void beginArray() {
+    expect(BEGIN_ARRAY, "an array");
+    push(EMPTY_ARRAY);
+    peeked = PEEKED_NONE;
+  }
+
+
+  public void endArray() {
+    expect(END_ARRAY, "the end of an array");
+    depth--;
+    peeked = PEEKED_NONE;
+  }
+
+
+  /**
+   * True if the current object or array has another element. At the top
+   * level, true if there's another value before the end of the input.
+   */
+  public boolean hasNext() {
+    int p = peekToken();
+    return p != END_OBJECT && p != END_ARRAY && p != END_DOCUMENT;
+  }
+
+
+  /**
+   * Type of the next token, without reading it: one of BEGIN_OBJECT,
+   * END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN,
+   * NULL, or END_DOCUMENT.
+   */
+  public int peek() {
+    int p = peekToken();
+    if (p == PEEKED_TRUE || p == PEEKED_FALSE) {
+      return BOOLEAN;
+    }
+    if (p == PEEKED_LONG) {
+      return NUMBER;
+    }
+    return p;
+  }
+
+
+  public String nextName() {
+    expect(NAME, "a name");
+    String name = readQuoted(quote);
+    peeked = PEEKED_NONE;
+    return name;
+  }
+
+
+  /** Read a String, or the text of a number. */
+  public String nextString() {
+    int p = peekToken();
+    String outgoing;
+    if (p == STRING) {
+      outgoing = readQuoted(quote);
+    } else if (p == PEEKED_LONG || p == NUMBER) {
+      outgoing = new String(buffer, pos, numberLength);
+      pos += numberLength;
+    } else {
+      throw unexpected("a String");
+    }
+    peeked = PEEKED_NONE;
+    return outgoing;
+  }
+
+
+  public boolean nextBoolean() {
+    int p = peekToken();
+    if (p == PEEKED_TRUE) {
+      pos += 4;
+    } else if (p == PEEKED_FALSE) {
+      pos += 5;
+    } else {
+      throw unexpected("a boolean");
+    }
+    peeked = PEEKED_NONE;
+    return p == PEEKED_TRUE;
+  }
+
+
+  public void nextNull() {
+    expect(NULL, "null");
+    pos += 4;
+    peeked = PEEKED_NONE;
+  }
+
+
+  /**
+   * Read a number as an int. Numbers with a fraction or exponent are only
+   * accepted if they're whole (like 3.0), and Strings that contain a number
+   * are converted.
+   */
+  public int nextInt() {
+    long value = nextLong();
+    if (value != (int) value) {
+      throw error("Number " + value + " is too large for an int");
+    }
+    return (int) value;
+  }
+
+
+  public long nextLong() {
+    int p = peekToken();
+    if (p == PEEKED_LONG) {
+      pos += numberLength;
+      peeked = PEEKED_NONE;
+      return peekedLong;
+    }
+    if (p != NUMBER && p != STRING) {
+      throw unexpected("a number");
+    }
+    double value = nextDouble();
+    long whole = (long) value;
+    if (whole != value) {
+      throw error("Expected a whole number but found " + value);
+    }
+    return whole;
+  }
+
+
+  public float nextFloat() {
+    return (float) nextDouble();
+  }
+
+
+  public double nextDouble() {
+    int p = peekToken();
+    double value;
+    if (p == PEEKED_LONG) {
+      pos += numberLength;
+      value = peekedLong;
+    } else if (p == NUMBER) {
+      value = parseDouble(buffer, pos, numberLength);
+      pos += numberLength;
+    } else if (p == STRING) {
+      String text = readQuoted(quote);
+      try {
+        value = Double.parseDouble(text);
+      } catch (NumberFormatException nfe) {
+        throw error("Expected a number but found \"" + text + "\"");
+      }
+    } else {
+      throw unexpected("a number");
+    }
+    peeked = PEEKED_NONE;
+    return value;
+  }
+
+
+  /**
+   * Skip the next value, including everything inside it if it's an object
+   * or array. If the next token is a name, the name and its value are both
+   * skipped.
+   */
+  public void skipValue() {
+    if (peekToken() == NAME) {
+      skipQuoted(quote);
+      peeked = PEEKED_NONE;
+    }
+    int level = 0;
+    do {
+      int p = peekToken();
+      switch (p) {
+      case BEGIN_OBJECT:
+        push(EMPTY_OBJECT);
+        level++;
+        break;
+      case BEGIN_ARRAY:
+        push(EMPTY_ARRAY);
+        level++;
+        break;
+      case END_OBJECT:
+      case END_ARRAY:
+        if (level == 0) {
+          throw unexpected("a value");
+        }
+        depth--;
+        level--;
+        break;
+      case NAME:
+      case STRING:
+        skipQuoted(quote);
+        break;
+      case PEEKED_LONG:
+      case NUMBER:
+        pos += numberLength;
+        break;
+      case PEEKED_TRUE:
+      case NULL:
+        pos += 4;
+        break;
+      case PEEKED_FALSE:
+        pos += 5;
+        break;
+      case END_DOCUMENT:
+        throw unexpected("a value");
+      }
+      peeked = PEEKED_NONE;
+    } while (level != 0);
+  }
+
+
+  /**
+   * Read the next value as a regular JSONObject. Handy for reading one
+   * record at a time out of a large file.
+   */
+  public JSONObject nextJSONObject() {
+    JSONObject outgoing = new JSONObject();
+    beginObject();
+    while (hasNext()) {
+      String name = nextName();
+      outgoing.put(name, nextValue());
+    }
+    endObject();
+    return outgoing;
+  }
+
+
+  public JSONArray nextJSONArray() {
+    JSONArray outgoing = new JSONArray();
+    beginArray();
+    while (hasNext()) {
+      // numbers go straight into the packed arrays, without boxing
+      int token = peekToken();
+      if (token == PEEKED_LONG) {
+        long value = nextLong();
+        if (value == (int) value) {
+          outgoing.append((int) value);
+        } else {
+          outgoing.append(value);
+        }
+      } else if (token == NUMBER) {
+        outgoing.append(nextDouble());
+      } else {
+        outgoing.append(nextValue());
+      }
+    }
+    endArray();
+    return outgoing;
+  }
+
+
+  /**
+   * Read the next value as the same kind of object used by JSONObject and
+   * JSONArray: String, Integer, Long, Double, Boolean, JSONObject.NULL,
+   * JSONObject, or JSONArray.
+   */
+  public Object nextValue() {
+    switch (peekToken()) {
+    case BEGIN_OBJECT:
+      return nextJSONObject();
+    case BEGIN_ARRAY:
+      return nextJSONArray();
+    case STRING:
+      return nextString();
+    case PEEKED_LONG:
+      long value = nextLong();
+      if (value == (int) value) {
+        return Integer.valueOf((int) value);
+      }
+      return Long.valueOf(value);
+    case NUMBER:
+      return Double.valueOf(nextDouble());
+    case PEEKED_TRUE:
+    case PEEKED_FALSE:
+      return Boolean.valueOf(nextBoolean());
+    case NULL:
+      nextNull();
+      return JSONObject.NULL;
+    }
+    throw unexpected("a value");
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  void push(int scope) {
+    if (depth == stack.length) {
+      int[] temp = new int[depth << 1];
+      System.arraycopy(stack, 0, temp, 0, depth);
+      stack = temp;
+    }
+    stack[depth++] = scope;
+  }
+
+
+  void expect(int token, String what) {
+    if (peekToken() != token) {
+      throw unexpected(what);
+    }
+  }
+
+
+  /**
+   * Work out what the next token is, reading past any punctuation that
+   * comes before it (commas, colons, whitespace). The token itself is left
+   * in the buffer, starting at pos.
+   */
+  int peekToken() {
+    if (peeked != PEEKED_NONE) {
+      return peeked;
+    }
+    int scope = stack[depth - 1];
+    int c;
+    switch (scope) {
+    case EMPTY_ARRAY:
+    case NONEMPTY_ARRAY:
+      stack[depth - 1] = NONEMPTY_ARRAY;
+      c = nextNonWhitespace();
+      if (c == ']') {
+        pos++;
+        return peeked = END_ARRAY;
+      }
+      if (scope == NONEMPTY_ARRAY) {
+        if (c != ',') {
+          throw error("Expected ',' or ']' in an array");
+        }
+        pos++;
+      }
+      break;
+
+    case EMPTY_OBJECT:
+    case NONEMPTY_OBJECT:
+      stack[depth - 1] = DANGLING_NAME;
+      c = nextNonWhitespace();
+      if (c == '}') {
+        pos++;
+        return peeked = END_OBJECT;
+      }
+      if (scope == NONEMPTY_OBJECT) {
+        if (c != ',') {
+          throw error("Expected ',' or '}' in an object");
+        }
+        pos++;
+        c = nextNonWhitespace();
+      }
+      if (c != '"' && c != '\'') {
+        throw error("Expected a quoted name");
+      }
+      quote = (char) c;
+      pos++;
+      return peeked = NAME;
+
+    case DANGLING_NAME:
+      stack[depth - 1] = NONEMPTY_OBJECT;
+      if (nextNonWhitespace() != ':') {
+        throw error("Expected ':' after a name");
+      }
+      pos++;
+      break;
+
+    case EMPTY_DOCUMENT:
+    case NONEMPTY_DOCUMENT:
+      stack[depth - 1] = NONEMPTY_DOCUMENT;
+      if (nextNonWhitespace() == -1) {
+        return peeked = END_DOCUMENT;
+      }
+      break;
+    }
+
+    c = nextNonWhitespace();
+    switch (c) {
+    case '{':
+      pos++;
+      return peeked = BEGIN_OBJECT;
+    case '[':
+      pos++;
+      return peeked = BEGIN_ARRAY;
+    case '"':
+    case '\'':
+      quote = (char) c;
+      pos++;
+      return peeked = STRING;
+    case 't':
+      return peeked = peekWord("true", PEEKED_TRUE);
+    case 'f':
+      return peeked = peekWord("false", PEEKED_FALSE);
+    case 'n':
+      return peeked = peekWord("null", NULL);
+    case -1:
+      throw error("Unexpected end of input");
+    }
+    if (c == '-' || (c >= '0' && c <= '9')) {
+      return peeked = peekNumber();
+    }
+    throw error("Unexpected character '" + (char) c + "'");
+  }
+
+
+  int peekWord(String word, int token) {
+    int length = word.length();
+    if (!fill(length)) {
+      throw error("Unexpected end of input");
+    }
+    for (int i = 0; i < length; i++) {
+      if (buffer[pos + i] != word.charAt(i)) {
+        throw error("Unexpected value, was expecting " + word);
+      }
+    }
+    return token;
+  }
+
+
+  /**
+   * Find the length of the number at pos. Whole numbers that fit in a long
+   * are converted right away, anything else is parsed when it's read.
+   */
+  int peekNumber() {
+    int length = 0;
+    boolean whole = true;
+    for (;;) {
+      if (pos + length == limit) {
+        if (length == buffer.length) {
+          throw error("Number is too long");
+        }
+        if (!fill(length + 1)) {
+          break;
+        }
+      }
+      char c = buffer[pos + length];
+      if (c >= '0' && c <= '9' || c == '-') {
+        length++;
+      } else if (c == '.' || c == 'e' || c == 'E' || c == '+') {
+        whole = false;
+        length++;
+      } else {
+        break;
+      }
+    }
+    numberLength = length;
+    int start = (buffer[pos] == '-') ? 1 : 0;
+    if (length == start || buffer[pos + start] < '0' || buffer[pos + start] > '9') {
+      // a sign on its own, or followed by something other than a digit
+      throw error("Malformed number");
+    }
+    if (whole) {
+      // summed as a negative number, since Long.MIN_VALUE has no positive
+      long value = 0;
+      boolean fits = true;
+      for (int i = pos + start; i < pos + length; i++) {
+        char c = buffer[i];
+        if (c == '-') {
+          throw error("Malformed number");
+        }
+        int digit = c - '0';
+        if (value < Long.MIN_VALUE / 10 ||
+            value * 10 < Long.MIN_VALUE + digit) {
+          fits = false;  // read as a double instead
+        }
+        value = value * 10 - digit;
+      }
+      if (start == 0) {
+        value = -value;
+        if (value < 0) {
+          fits = false;  // one past Long.MAX_VALUE
+        }
+      }
+      if (fits) {
+        peekedLong = value;
+        return PEEKED_LONG;
+      }
+    }
+    return NUMBER;
+  }
+
+
+  /**
+   * Convert a decimal number. When the digits fit in a long and the power
+   * of ten is small enough to be exact, one multiply or divide gives the
+   * correctly rounded result. Everything else goes to Double.parseDouble().
+   */
+  double parseDouble(char[] chars, int start, int length) {
+    int stop = start + length;
+    int i = start;
+    boolean negative = false;
+    if (i < stop && chars[i] == '-') {
+      negative = true;
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int scale = 0;
+    boolean fraction = false;
+    boolean simple = true;
+    for (; i < stop; i++) {
+      char c = chars[i];
+      if (c >= '0' && c <= '9') {
+        if (mantissa != 0 || c != '0') {
+          digits++;
+        }
+        mantissa = mantissa * 10 + (c - '0');
+        if (fraction) {
+          scale--;
+        }
+      } else if (c == '.' && !fraction) {
+        fraction = true;
+      } else if (c == 'e' || c == 'E') {
+        int exponent = 0;
+        boolean negativeExponent = false;
+        i++;
+        if (i < stop && (chars[i] == '-' || chars[i] == '+')) {
+          negativeExponent = chars[i] == '-';
+          i++;
+        }
+        if (i == stop) {
+          simple = false;
+        }
+        for (; i < stop; i++) {
+          c = chars[i];
+          if (c < '0' || c > '9' || exponent > 1000) {
+            simple = false;
+            break;
+          }
+          exponent = exponent * 10 + (c - '0');
+        }
+        scale += negativeExponent ? -exponent : exponent;
+        break;
+      } else {
+        simple = false;
+        break;
+      }
+    }
+    if (simple && digits <= 15 && scale >= -22 && scale <= 22) {
+      double value = mantissa;
+      value = (scale < 0) ? value / POWERS_OF_TEN[-scale] : value * POWERS_OF_TEN[scale];
+      return negative ? -value : value;
+    }
+    try {
+      return Double.parseDouble(new String(chars, start, length));
+    } catch (NumberFormatException nfe) {
+      throw error("Malformed number " + new String(chars, start, length));
+    }
+  }
+
+
+  /** Read a quoted String, after the opening quote has been consumed. */
+  String readQuoted(char quote) {
+    builder.setLength(0);
+    for (;;) {
+      int start = pos;
+      while (pos < limit) {
+        char c = buffer[pos++];
+        if (c == quote) {
+          if (builder.length() == 0) {
+            return new String(buffer, start, pos - start - 1);
+          }
+          builder.append(buffer, start, pos - start - 1);
+          return builder.toString();
+        } else if (c == '\\') {
+          builder.append(buffer, start, pos - start - 1);
+          builder.append(readEscape());
+          start = pos;
+        } else if (c == '\n' || c == '\r') {
+          throw error("Unterminated string");
+        }
+      }
+      builder.append(buffer, start, pos - start);
+      if (!fill(1)) {
+        throw error("Unterminated string");
+      }
+    }
+  }
+
+
+  void skipQuoted(char quote) {
+    for (;;) {
+      while (pos < limit) {
+        char c = buffer[pos++];
+        if (c == quote) {
+          return;
+        } else if (c == '\\') {
+          readEscape();
+        }
+      }
+      if (!fill(1)) {
+        throw error("Unterminated string");
+      }
+    }
+  }
+
+
+  char readEscape() {
+    if (!fill(1)) {
+      throw error("Unterminated escape sequence");
+    }
+    char c = buffer[pos++];
+    switch (c) {
+    case 'b': return '\b';
+    case 't': return '\t';
+    case 'n': return '\n';
+    case 'f': return '\f';
+    case 'r': return '\r';
+    case '"':
+    case '\'':
+    case '\\':
+    case '/':
+      return c;
+    case 'u':
+      if (!fill(4)) {
+        throw error("Unterminated escape sequence");
+      }
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        int digit = JSONTokener.dehexchar(buffer[pos++]);
+        if (digit == -1) {
+          throw error("Illegal escape.");
+        }
+        value = (value << 4) | digit;
+      }
+      return (char) value;
+    }
+    throw error("Illegal escape.");
+  }
+
+
+  /** Next character that isn't whitespace, left at pos. -1 at the end. */
+  int nextNonWhitespace() {
+    for (;;) {
+      while (pos < limit) {
+        char c = buffer[pos];
+        if (c > ' ') {
+          return c;
+        }
+        pos++;
+      }
+      if (!fill(1)) {
+        return -1;
+      }
+    }
+  }
+
+
+  /**
+   * Make sure at least 'minimum' characters are available starting at pos,
+   * moving what's left to the front of the buffer first. Returns false if
+   * the input ends before then.
+   */
+  boolean fill(int minimum) {
+    if (limit - pos >= minimum) {
+      return true;
+    }
+    offset += pos;
+    System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+    limit -= pos;
+    pos = 0;
+    try {
+      while (limit < minimum) {
+        int count = reader.read(buffer, limit, buffer.length - limit);
+        if (count == -1) {
+          return false;
+        }
+        limit += count;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return true;
+  }
+
+
+  RuntimeException unexpected(String what) {
+    int p = peek();
+    String found;
+    switch (p) {
+    case BEGIN_OBJECT: found = "an object"; break;
+    case END_OBJECT: found = "the end of an object"; break;
+    case BEGIN_ARRAY: found = "an array"; break;
+    case END_ARRAY: found = "the end of an array"; break;
+    case NAME: found = "a name"; break;
+    case STRING: found = "a String"; break;
+    case NUMBER: found = "a number"; break;
+    case BOOLEAN: found = "a boolean"; break;
+    case NULL: found = "null"; break;
+    default: found = "the end of the input";
+    }
+    return error("Expected " + what + " but found " + found);
+  }
+
+
+  RuntimeException error(String message) {
+    return new RuntimeException(message + " at character " + (offset + pos));
+  }
+}
@@ -0,0 +1,384 @@
+package processing.data;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+
+/**
+ * Writes JSON text one value at a time, straight to a Writer or an
+ * OutputStream, so that large documents (or a steady log of small ones)
+ * never have to exist as a JSONObject tree or a String in memory. Numbers
+ * are written from primitive values without boxing them first.
+ * <pre>
+ * JSONWriter writer = new JSONWriter(createOutput("points.json"), 2);
+ * writer.beginArray();
+ * for (PVector p : points) {
+ *   writer.beginObject();
+ *   writer.name("x").value(p.x);
+ *   writer.name("y").value(p.y);
+ *   writer.endObject();
+ * }
+ * writer.endArray();
+ * writer.close();
+ * </pre>
+ * Several values may be written one after another at the top level. They
+ * are separated by newlines, which gives newline-delimited JSON when the
+ * writer is compact, and can be read back with JSONReader.
+ *
+ * @see JSONReader
+ * @see JSONObject
+ * @see JSONArray
+ */
+public class JSONWriter {
+  // scopes on the stack
+  static final int EMPTY_DOCUMENT = 0;
+  static final int NONEMPTY_DOCUMENT = 1;
+  static final int EMPTY_ARRAY = 2;
+  static final int NONEMPTY_ARRAY = 3;
+  static final int EMPTY_OBJECT = 4;
+  static final int DANGLING_NAME = 5;
+  static final int NONEMPTY_OBJECT = 6;
+
+  Writer writer;
+  int indentFactor;
+
+  int[] stack = new int[32];
+  int depth;
+
+  /** scratch space for writing int and long values */
+  char[] digits = new char[20];
+
+
+  /**
+   * Compact output, with no indents or newlines.
+   */
+  public JSONWriter(Writer writer) {
+    this(writer, -1);
+  }
+
+
+  /**
+   * @param indentFactor spaces per level of indentation, or -1 for compact
+   */
+  public JSONWriter(Writer writer, int indentFactor) {
+    this.writer = writer;
+    this.indentFactor = indentFactor;
+    stack[depth++] = EMPTY_DOCUMENT;
+  }
+
+
+  /**
+   * Compact UTF-8 output, with no indents or newlines.
+   */
+  public JSONWriter(OutputStream output) {
+    this(output, -1);
+  }
+
+
+  /**
+   * UTF-8 output to a stream, which is buffered internally.
+   * @param indentFactor spaces per level of indentation, or -1 for compact
+   */
+  public JSONWriter(OutputStream output, int indentFactor) {
+    this(new BufferedWriter(new OutputStreamWriter(output, Charset.forName("UTF-8"))),
+         indentFactor);
+  }
+
+
+  public JSONWriter beginObject() {
+    beforeValue();
+    write('{');
+    push(EMPTY_OBJECT);
+    return this;
+  }
+
+
+  public JSONWriter endObject() {
+    return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+  }
+
+
+  public JSONWriter beginArray() {
+    beforeValue();
+    write('[');
+    push(EMPTY_ARRAY);
+    return this;
+  }
+
+
+  public JSONWriter endArray() {
+    return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+  }
+
+
+  /**
+   * Write the name of the next member of the current object.
+   */
+  public JSONWriter name(String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("JSON names cannot be null");
+    }
+    int scope = stack[depth-1];
+    if (scope == NONEMPTY_OBJECT) {
+      write(',');
+    } else if (scope != EMPTY_OBJECT) {
+      throw new RuntimeException("name() can only be used inside an object");
+    }
+    newline(depth - 1);
+    stack[depth-1] = DANGLING_NAME;
+    try {
+      JSONObject.quote(name, writer);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    write(':');
+    if (indentFactor > 0) {
+      write(' ');
+    }
+    return this;
+  }
+
+
+  public JSONWriter value(String value) {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    try {
+      JSONObject.quote(value, writer);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  public JSONWriter value(boolean value) {
+    beforeValue();
+    write(value ? "true" : "false");
+    return this;
+  }
+
+
+  public JSONWriter value(int value) {
+    return value((long) value);
+  }
+
+
+  public JSONWriter value(long value) {
+    beforeValue();
+    if (value == Long.MIN_VALUE) {
+      write(String.valueOf(value));
+      return this;
+    }
+    boolean negative = value < 0;
+    if (negative) {
+      value = -value;
+    }
+    int index = digits.length;
+    do {
+      digits[--index] = (char) ('0' + (value % 10));
+      value /= 10;
+    } while (value != 0);
+    if (negative) {
+      digits[--index] = '-';
+    }
+    try {
+      writer.write(digits, index, digits.length - index);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  /**
+   * Written the same way as a float stored in a JSONObject, with trailing
+   * zeros removed, so that 3.0 is written as 3.
+   */
+  public JSONWriter value(float value) {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      throw new RuntimeException("JSON does not allow non-finite numbers.");
+    }
+    if (value == (int) value) {
+      return value((int) value);
+    }
+    beforeValue();
+    write(JSONObject.shaveZeros(Float.toString(value)));
+    return this;
+  }
+
+
+  public JSONWriter value(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new RuntimeException("JSON does not allow non-finite numbers.");
+    }
+    if (value == (long) value && Math.abs(value) < 1e15) {
+      return value((long) value);
+    }
+    beforeValue();
+    write(JSONObject.shaveZeros(Double.toString(value)));
+    return this;
+  }
+
+
+  public JSONWriter nullValue() {
+    beforeValue();
+    write("null");
+    return this;
+  }
+
+
+  /**
+   * Write an entire JSONObject as the next value, indented to match.
+   */
+  public JSONWriter value(JSONObject value) {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    value.write(writer, indentFactor, currentIndent());
+    return this;
+  }
+
+
+  /**
+   * Write an entire JSONArray as the next value, indented to match.
+   */
+  public JSONWriter value(JSONArray value) {
+    if (value == null) {
+      return nullValue();
+    }
+    beforeValue();
+    value.write(writer, indentFactor, currentIndent());
+    return this;
+  }
+
+
+  public void flush() {
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  /**
+   * Flush and close the output. Throws an exception if an object or array
+   * has been left open.
+   */
+  public void close() {
+    try {
+      writer.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (depth > 1 || stack[0] != NONEMPTY_DOCUMENT) {
+      throw new RuntimeException("Incomplete JSON document");
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Add the separator and indent (if any) that comes before a value,
+   * and mark the current scope as no longer empty.
+   */
+  private void beforeValue() {
+    switch (stack[depth-1]) {
+    case EMPTY_DOCUMENT:
+      stack[depth-1] = NONEMPTY_DOCUMENT;
+      break;
+    case NONEMPTY_DOCUMENT:
+      // more than one top-level value, as in newline-delimited JSON
+      write('\n');
+      break;
+    case EMPTY_ARRAY:
+      stack[depth-1] = NONEMPTY_ARRAY;
+      newline(depth - 1);
+      break;
+    case NONEMPTY_ARRAY:
+      write(',');
+      newline(depth - 1);
+      break;
+    case DANGLING_NAME:
+      stack[depth-1] = NONEMPTY_OBJECT;
+      break;
+    default:
+      throw new RuntimeException("Use name() before each value inside an object");
+    }
+  }
+
+
+  private JSONWriter close(int empty, int nonempty, char bracket) {
+    int scope = stack[depth-1];
+    if (scope != empty && scope != nonempty) {
+      if (scope == DANGLING_NAME) {
+        throw new RuntimeException("Missing value after name()");
+      }
+      throw new RuntimeException("Nesting problem: cannot close " +
+                                 (bracket == '}' ? "an object" : "an array") +
+                                 " here");
+    }
+    depth--;
+    if (scope == nonempty) {
+      newline(depth - 1);
+    }
+    write(bracket);
+    return this;
+  }
+
+
+  private void push(int scope) {
+    if (depth == stack.length) {
+      int[] temp = new int[depth << 1];
+      System.arraycopy(stack, 0, temp, 0, depth);
+      stack = temp;
+    }
+    stack[depth++] = scope;
+  }
+
+
+  /** The indent used for a value nested at the current depth. */
+  private int currentIndent() {
+    return (indentFactor > 0) ? (depth - 1) * indentFactor : 0;
+  }
+
+
+  /** Start a new line indented for the given level, unless compact. */
+  private void newline(int level) {
+    if (indentFactor != -1) {
+      write('\n');
+      try {
+        JSONObject.indent(writer, level * Math.max(indentFactor, 0));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+
+  private void write(char c) {
+    try {
+      writer.write(c);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  private void write(String s) {
+    try {
+      writer.write(s);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Open-addressing lookup from String keys to their position in the keys[]
+ * array of IntDict, FloatDict, and StringDict. The dicts keep the keys in
+ * insertion order themselves, so this only maps each key to an int, without
+ * boxing it. Deletion shifts entries back into place instead of leaving
+ * tombstones, so the table never fills up with dead slots.
+ * <p>
+ * The keys array is passed in to each call, since the dicts re-allocate it
+ * as they grow.
+ */
+class KeyIndex {
+  /** position + 1 for each slot, 0 when the slot is empty */
+  int[] slots;
+  /** hash of the key in each slot, so most misses skip equals() */
+  int[] hashes;
+  int mask;
+  int size;
+
+
+  KeyIndex() {
+    this(8);
+  }
+
+
+  KeyIndex(int expected) {
+    int capacity = 8;
+    while (capacity < expected * 2) {
+      capacity <<= 1;
+    }
+    slots = new int[capacity];
+    hashes = new int[capacity];
+    mask = capacity - 1;
+  }
+
+
+  /** Null is allowed as a key, the same as with a HashMap. */
+  static int hash(String key) {
+    if (key == null) {
+      return 0;
+    }
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  static boolean same(String key, String other) {
+    return (key == null) ? other == null : key.equals(other);
+  }
+
+
+  /** Position of key in the keys array, or -1 if it's not present. */
+  int get(String[] keys, String key) {
+    int h = hash(key);
+    int slot = h & mask;
+    while (slots[slot] != 0) {
+      if (hashes[slot] == h && same(key, keys[slots[slot] - 1])) {
+        return slots[slot] - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+
+  /** Set the position for key, adding it if it's not already present. */
+  void put(String[] keys, String key, int position) {
+    int h = hash(key);
+    int slot = h & mask;
+    while (slots[slot] != 0) {
+      if (hashes[slot] == h && same(key, keys[slots[slot] - 1])) {
+        slots[slot] = position + 1;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = position + 1;
+    hashes[slot] = h;
+    size++;
+    if (size * 2 > slots.length) {
+      grow();
+    }
+  }
+
+
+  /** Remove key, returning the position it had, or -1 if it wasn't found. */
+  int remove(String[] keys, String key) {
+    int h = hash(key);
+    int slot = h & mask;
+    while (slots[slot] != 0) {
+      if (hashes[slot] == h && same(key, keys[slots[slot] - 1])) {
+        int position = slots[slot] - 1;
+        removeSlot(slot);
+        return position;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+
+  /**
+   * Exchange the positions stored for the keys at a and b. Call this before
+   * the entries are swapped in the keys array, while each key can still be
+   * found at its old position.
+   */
+  void swap(String[] keys, int a, int b) {
+    int slotA = find(keys, keys[a]);
+    int slotB = find(keys, keys[b]);
+    slots[slotA] = b + 1;
+    slots[slotB] = a + 1;
+  }
+
+
+  /** Slot holding key, or -1 if it's not present. */
+  private int find(String[] keys, String key) {
+    int h = hash(key);
+    int slot = h & mask;
+    while (slots[slot] != 0) {
+      if (hashes[slot] == h && same(key, keys[slots[slot] - 1])) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+
+  /**
+   * Empty a slot, then walk the rest of its probe run and move back any
+   * entry that would no longer be reachable from its home slot.
+   */
+  private void removeSlot(int hole) {
+    size--;
+    int slot = hole;
+    while (true) {
+      slot = (slot + 1) & mask;
+      if (slots[slot] == 0) {
+        break;
+      }
+      int home = hashes[slot] & mask;
+      // move the entry if its home is not cyclically within (hole, slot]
+      boolean reachable = (hole <= slot) ?
+        (home > hole && home <= slot) : (home > hole || home <= slot);
+      if (!reachable) {
+        slots[hole] = slots[slot];
+        hashes[hole] = hashes[slot];
+        hole = slot;
+      }
+    }
+    slots[hole] = 0;
+    hashes[hole] = 0;
+  }
+
+
+  /**
+   * After the entry at 'position' has been removed from the keys array and
+   * everything after it moved down by one, update the stored positions to
+   * match. This is a straight pass over the slots, no hashing.
+   */
+  void shiftDown(int position) {
+    int[] s = slots;
+    int limit = position + 1;
+    for (int i = 0; i < s.length; i++) {
+      if (s[i] > limit) {
+        s[i]--;
+      }
+    }
+  }
+
+
+  /** Replace the contents with the first count entries of keys. */
+  void rebuild(String[] keys, int count) {
+    int capacity = 8;
+    while (capacity < count * 2) {
+      capacity <<= 1;
+    }
+    if (capacity == slots.length) {
+      Arrays.fill(slots, 0);
+      Arrays.fill(hashes, 0);
+    } else {
+      slots = new int[capacity];
+      hashes = new int[capacity];
+      mask = capacity - 1;
+    }
+    size = 0;
+    for (int i = 0; i < count; i++) {
+      put(keys, keys[i], i);
+    }
+  }
+
+
+  void clear() {
+    Arrays.fill(slots, 0);
+    Arrays.fill(hashes, 0);
+    size = 0;
+  }
+
+
+  private void grow() {
+    int[] oldSlots = slots;
+    int[] oldHashes = hashes;
+    slots = new int[oldSlots.length << 1];
+    hashes = new int[oldSlots.length << 1];
+    mask = slots.length - 1;
+    for (int i = 0; i < oldSlots.length; i++) {
+      if (oldSlots[i] != 0) {
+        int slot = oldHashes[i] & mask;
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = oldSlots[i];
+        hashes[slot] = oldHashes[i];
+      }
+    }
+  }
+}
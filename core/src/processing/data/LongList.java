@@ -0,0 +1,605 @@
+package processing.data;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import processing.core.PApplet;
+
+
+/**
+ * Helper class for a list of longs. Lists are designed to have some of the
+ * features of ArrayLists, but to maintain the simplicity and efficiency of
+ * working with arrays. Useful for values like timestamps or IDs that don't
+ * fit into an int.
+ *
+ * Functions like sort() and shuffle() always act on the list itself. To get
+ * a sorted copy, use list.copy().sort().
+ *
+ * @webref data:composite
+ * @see IntList
+ * @see DoubleList
+ */
+public class LongList implements Iterable<Long> {
+  protected int count;
+  protected long[] data;
+
+
+  public LongList() {
+    data = new long[10];
+  }
+
+  /**
+   * @nowebref
+   */
+  public LongList(int length) {
+    data = new long[length];
+  }
+
+  /**
+   * @nowebref
+   */
+  public LongList(long[] source) {
+    count = source.length;
+    data = new long[count];
+    System.arraycopy(source, 0, data, 0, count);
+  }
+
+  /**
+   * @nowebref
+   */
+  public LongList(Iterable<Long> iter) {
+    this(10);
+    for (long v : iter) {
+      append(v);
+    }
+  }
+
+
+  static public LongList fromRange(long stop) {
+    return fromRange(0, stop);
+  }
+
+
+  static public LongList fromRange(long start, long stop) {
+    int count = (int) (stop - start);
+    LongList newbie = new LongList(count);
+    for (int i = 0; i < count; i++) {
+      newbie.data[i] = start+i;
+    }
+    newbie.count = count;
+    return newbie;
+  }
+
+
+  /**
+   * Improve efficiency by removing allocated but unused entries from the
+   * internal array used to store the data.
+   */
+  private void crop() {
+    if (count != data.length) {
+      long[] temp = new long[count];
+      System.arraycopy(data, 0, temp, 0, count);
+      data = temp;
+    }
+  }
+
+
+  /**
+   * Get the length of the list.
+   *
+   * @webref longlist:method
+   * @brief Get the length of the list
+   */
+  public int size() {
+    return count;
+  }
+
+
+  public void resize(int length) {
+    if (length > data.length) {
+      long[] temp = new long[length];
+      System.arraycopy(data, 0, temp, 0, count);
+      data = temp;
+
+    } else if (length > count) {
+      Arrays.fill(data, count, length, 0);
+    }
+    count = length;
+  }
+
+
+  /**
+   * Remove all entries from the list.
+   *
+   * @webref longlist:method
+   * @brief Remove all entries from the list
+   */
+  public void clear() {
+    count = 0;
+  }
+
+
+  /**
+   * Get an entry at a particular index.
+   *
+   * @webref longlist:method
+   * @brief Get an entry at a particular index
+   */
+  public long get(int index) {
+    return data[index];
+  }
+
+
+  /**
+   * Set the entry at a particular index. If the index is past the length of
+   * the list, it'll expand the list to accommodate, and fill the intermediate
+   * entries with 0s.
+   *
+   * @webref longlist:method
+   * @brief Set the entry at a particular index
+   */
+  public void set(int index, long what) {
+    if (index >= count) {
+      data = PApplet.expand(data, index+1);
+      for (int i = count; i < index; i++) {
+        data[i] = 0;
+      }
+      count = index+1;
+    }
+    data[index] = what;
+  }
+
+
+  /**
+   * Remove an element from the specified index
+   *
+   * @webref longlist:method
+   * @brief Remove an element from the specified index
+   */
+  public long remove(int index) {
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    long entry = data[index];
+    for (int i = index; i < count-1; i++) {
+      data[i] = data[i+1];
+    }
+    count--;
+    return entry;
+  }
+
+
+  // Remove the first instance of a particular value,
+  // and return the index at which it was found.
+  public int removeValue(long value) {
+    int index = index(value);
+    if (index != -1) {
+      remove(index);
+      return index;
+    }
+    return -1;
+  }
+
+
+  // Remove all instances of a particular value,
+  // and return the number of values found and removed
+  public int removeValues(long value) {
+    int ii = 0;
+    for (int i = 0; i < count; i++) {
+      if (data[i] != value) {
+        data[ii++] = data[i];
+      }
+    }
+    int removed = count - ii;
+    count = ii;
+    return removed;
+  }
+
+
+  /**
+   * Add a new entry to the list.
+   *
+   * @webref longlist:method
+   * @brief Add a new entry to the list
+   */
+  public void append(long value) {
+    if (count == data.length) {
+      data = PApplet.expand(data);
+    }
+    data[count++] = value;
+  }
+
+
+  public void append(long[] values) {
+    if (count + values.length > data.length) {
+      data = PApplet.expand(data, Math.max(count << 1, count + values.length));
+    }
+    System.arraycopy(values, 0, data, count, values.length);
+    count += values.length;
+  }
+
+
+  public void append(LongList list) {
+    for (long v : list.values()) {  // will concat the list...
+      append(v);
+    }
+  }
+
+
+  // same as splice
+  public void insert(int index, long[] values) {
+    if (index < 0) {
+      throw new IllegalArgumentException("insert() index cannot be negative: it was " + index);
+    }
+    if (index >= data.length) {
+      throw new IllegalArgumentException("insert() index " + index + " is past the end of this list");
+    }
+
+    long[] temp = new long[count + values.length];
+
+    // Copy the old values, but not more than already exist
+    System.arraycopy(data, 0, temp, 0, Math.min(count, index));
+
+    // Copy the new values into the proper place
+    System.arraycopy(values, 0, temp, index, values.length);
+
+    // The index was inside count, so it's a true splice/insert
+    System.arraycopy(data, index, temp, index+values.length, count - index);
+    count = count + values.length;
+    data = temp;
+  }
+
+
+  public void insert(int index, LongList list) {
+    insert(index, list.values());
+  }
+
+
+  /** Return the first index of a particular value. */
+  public int index(long what) {
+    for (int i = 0; i < count; i++) {
+      if (data[i] == what) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * @webref longlist:method
+   * @brief Check if a number is a part of the list
+   */
+  public boolean hasValue(long value) {
+    for (int i = 0; i < count; i++) {
+      if (data[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * @webref longlist:method
+   * @brief Add one to a value
+   */
+  public void increment(int index) {
+    if (count <= index) {
+      resize(index + 1);
+    }
+    data[index]++;
+  }
+
+
+  /**
+   * @webref longlist:method
+   * @brief Add to a value
+   */
+  public void add(int index, long amount) {
+    data[index] += amount;
+  }
+
+
+  /**
+   * @webref longlist:method
+   * @brief Subtract from a value
+   */
+  public void sub(int index, long amount) {
+    data[index] -= amount;
+  }
+
+
+  /**
+   * @webref longlist:method
+   * @brief Multiply a value
+   */
+  public void mult(int index, long amount) {
+    data[index] *= amount;
+  }
+
+
+  /**
+   * @webref longlist:method
+   * @brief Divide a value
+   */
+  public void div(int index, long amount) {
+    data[index] /= amount;
+  }
+
+
+  private void checkMinMax(String functionName) {
+    if (count == 0) {
+      String msg =
+        String.format("Cannot use %s() on an empty %s.",
+                      functionName, getClass().getSimpleName());
+      throw new RuntimeException(msg);
+    }
+  }
+
+
+  /**
+   * @webref longlist:method
+   * @brief Return the smallest value
+   */
+  public long min() {
+    checkMinMax("min");
+    return data[minIndex()];
+  }
+
+
+  // returns the index of the minimum value.
+  // if there are ties, it returns the first one found.
+  public int minIndex() {
+    checkMinMax("minIndex");
+    long value = data[0];
+    int index = 0;
+    for (int i = 1; i < count; i++) {
+      if (data[i] < value) {
+        value = data[i];
+        index = i;
+      }
+    }
+    return index;
+  }
+
+
+  /**
+   * @webref longlist:method
+   * @brief Return the largest value
+   */
+  public long max() {
+    checkMinMax("max");
+    return data[maxIndex()];
+  }
+
+
+  // returns the index of the maximum value.
+  // if there are ties, it returns the first one found.
+  public int maxIndex() {
+    checkMinMax("maxIndex");
+    long value = data[0];
+    int index = 0;
+    for (int i = 1; i < count; i++) {
+      if (data[i] > value) {
+        value = data[i];
+        index = i;
+      }
+    }
+    return index;
+  }
+
+
+  public long sum() {
+    long outgoing = 0;
+    for (int i = 0; i < count; i++) {
+      outgoing += data[i];
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * Sorts the array in place.
+   *
+   * @webref longlist:method
+   * @brief Sorts the array, lowest to highest
+   */
+  public void sort() {
+    Arrays.sort(data, 0, count);
+  }
+
+
+  /**
+   * Reverse sort, orders values from highest to lowest.
+   *
+   * @webref longlist:method
+   * @brief Reverse sort, orders values from highest to lowest
+   */
+  public void sortReverse() {
+    // subtracting longs for a comparison would overflow, so sort and flip
+    sort();
+    reverse();
+  }
+
+
+  /**
+   * @webref longlist:method
+   * @brief Reverse the order of the list elements
+   */
+  public void reverse() {
+    int ii = count - 1;
+    for (int i = 0; i < count/2; i++) {
+      long t = data[i];
+      data[i] = data[ii];
+      data[ii] = t;
+      --ii;
+    }
+  }
+
+
+  /**
+   * Randomize the order of the list elements. Note that this does not
+   * obey the randomSeed() function in PApplet.
+   *
+   * @webref longlist:method
+   * @brief Randomize the order of the list elements
+   */
+  public void shuffle() {
+    Random r = new Random();
+    int num = count;
+    while (num > 1) {
+      int value = r.nextInt(num);
+      num--;
+      long temp = data[num];
+      data[num] = data[value];
+      data[value] = temp;
+    }
+  }
+
+
+  /**
+   * Randomize the list order using the random() function from the specified
+   * sketch, allowing shuffle() to use its current randomSeed() setting.
+   */
+  public void shuffle(PApplet sketch) {
+    int num = count;
+    while (num > 1) {
+      int value = (int) sketch.random(num);
+      num--;
+      long temp = data[num];
+      data[num] = data[value];
+      data[value] = temp;
+    }
+  }
+
+
+  public LongList copy() {
+    LongList outgoing = new LongList(data);
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  /**
+   * Returns the actual array being used to store the data. For advanced users,
+   * this is the fastest way to access a large list. Suitable for iterating
+   * with a for() loop, but modifying the list will have terrible consequences.
+   */
+  public long[] values() {
+    crop();
+    return data;
+  }
+
+
+  @Override
+  public Iterator<Long> iterator() {
+    return new Iterator<Long>() {
+      int index = -1;
+
+      public void remove() {
+        LongList.this.remove(index);
+      }
+
+      public Long next() {
+        return data[++index];
+      }
+
+      public boolean hasNext() {
+        return index+1 < count;
+      }
+    };
+  }
+
+
+  /**
+   * Create a new array with a copy of all the values.
+   *
+   * @return an array sized by the length of the list with each of the values.
+   * @webref longlist:method
+   * @brief Create a new array with a copy of all the values
+   */
+  public long[] array() {
+    return array(null);
+  }
+
+
+  /**
+   * Copy as many values as possible into the specified array.
+   * @param array
+   */
+  public long[] array(long[] array) {
+    if (array == null || array.length != count) {
+      array = new long[count];
+    }
+    System.arraycopy(data, 0, array, 0, count);
+    return array;
+  }
+
+
+  /**
+   * Returns a normalized version of this array. Called getPercent() for
+   * consistency with the Dict classes. Returns a DoubleList because the
+   * percentages can't be stored as longs.
+   */
+  public DoubleList getPercent() {
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += data[i];
+    }
+    DoubleList outgoing = new DoubleList(count);
+    for (int i = 0; i < count; i++) {
+      outgoing.set(i, data[i] / sum);
+    }
+    return outgoing;
+  }
+
+
+  public LongList getSubset(int start) {
+    return getSubset(start, count - start);
+  }
+
+
+  public LongList getSubset(int start, int num) {
+    long[] subset = new long[num];
+    System.arraycopy(data, start, subset, 0, num);
+    return new LongList(subset);
+  }
+
+
+  public String join(String separator) {
+    if (count == 0) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(data[0]);
+    for (int i = 1; i < count; i++) {
+      sb.append(separator);
+      sb.append(data[i]);
+    }
+    return sb.toString();
+  }
+
+
+  public void print() {
+    for (int i = 0; i < size(); i++) {
+      System.out.format("[%d] %d%n", i, data[i]);
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getClass().getSimpleName() + " size=" + size() + " [ ");
+    for (int i = 0; i < size(); i++) {
+      if (i != 0) {
+        sb.append(", ");
+      }
+      sb.append(i + ": " + data[i]);
+    }
+    sb.append(" ]");
+    return sb.toString();
+  }
+}
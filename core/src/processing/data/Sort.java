@@ -4,43 +4,221 @@ package processing.data;
 /**
  * Internal sorter used by several data classes.
  * Advanced users only, not official API.
+ * <p>
+ * Subclasses say how many items there are, how two of them compare, and
+ * how to swap them, so that the data can live in whatever arrays the class
+ * uses. run() is an introsort: quicksort with a median-of-three (or, for
+ * larger ranges, ninther) pivot, insertion sort for short ranges, and a
+ * switch to heapsort if the recursion gets too deep, so it's O(n log n)
+ * even on adversarial input. runStable() keeps equal items in their
+ * original order.
  */
 public abstract class Sort implements Runnable {
 
+  /** Ranges shorter than this are finished with an insertion sort. */
+  static final int INSERTION_THRESHOLD = 16;
+
+  /** Ranges at least this long use a ninther instead of median-of-three. */
+  static final int NINTHER_THRESHOLD = 128;
+
+
   public Sort() { }
 
 
   public void run() {
     int c = size();
     if (c > 1) {
-      sort(0, c - 1);
+      int depth = 0;
+      for (int n = c; n > 1; n >>= 1) {
+        depth += 2;
+      }
+      sort(0, c - 1, depth);
+    }
+  }
+
+
+  /** Sort the range [lo, hi], inclusive. */
+  protected void sort(int lo, int hi, int depth) {
+    while (hi - lo + 1 > INSERTION_THRESHOLD) {
+      if (depth == 0) {
+        heapSort(lo, hi);
+        return;
+      }
+      depth--;
+
+      swap(pivot(lo, hi), hi);
+      int k = partition(lo, hi);
+      // recurse into the smaller side, loop on the larger one,
+      // so the stack never goes deeper than log(n)
+      if (k - lo < hi - k) {
+        sort(lo, k - 1, depth);
+        lo = k + 1;
+      } else {
+        sort(k + 1, hi, depth);
+        hi = k - 1;
+      }
+    }
+    insertionSort(lo, hi);
+  }
+
+
+  /** Position of a good pivot for the range [lo, hi]. */
+  protected int pivot(int lo, int hi) {
+    int mid = (lo + hi) >>> 1;
+    if (hi - lo + 1 < NINTHER_THRESHOLD) {
+      return median(lo, mid, hi);
+    }
+    int step = (hi - lo) / 8;
+    return median(median(lo, lo + step, lo + 2*step),
+                  median(mid - step, mid, mid + step),
+                  median(hi - 2*step, hi - step, hi));
+  }
+
+
+  private int median(int a, int b, int c) {
+    if (compare(a, b) < 0) {
+      if (compare(b, c) < 0) return b;
+      return (compare(a, c) < 0) ? c : a;
+    }
+    if (compare(a, c) < 0) return a;
+    return (compare(b, c) < 0) ? c : b;
+  }
+
+
+  /**
+   * Partition [lo, hi] around the pivot at hi, and return its final
+   * position. Both scans stop on items equal to the pivot, so runs of
+   * equal items are split evenly instead of going quadratic.
+   */
+  protected int partition(int lo, int hi) {
+    int i = lo - 1;
+    int j = hi;
+    while (true) {
+      while (compare(++i, hi) < 0) ;
+      while (compare(hi, --j) < 0) {
+        if (j == lo) break;
+      }
+      if (i >= j) break;
+      swap(i, j);
+    }
+    swap(i, hi);
+    return i;
+  }
+
+
+  protected void insertionSort(int lo, int hi) {
+    for (int i = lo + 1; i <= hi; i++) {
+      for (int j = i; j > lo && compare(j - 1, j) > 0; --j) {
+        swap(j - 1, j);
+      }
+    }
+  }
+
+
+  protected void heapSort(int lo, int hi) {
+    int n = hi - lo + 1;
+    for (int i = n/2 - 1; i >= 0; --i) {
+      siftDown(lo, i, n);
+    }
+    for (int end = n - 1; end > 0; --end) {
+      swap(lo, lo + end);
+      siftDown(lo, 0, end);
+    }
+  }
+
+
+  private void siftDown(int lo, int root, int n) {
+    while (true) {
+      int child = 2*root + 1;
+      if (child >= n) break;
+      if (child + 1 < n && compare(lo + child, lo + child + 1) < 0) {
+        child++;
+      }
+      if (compare(lo + root, lo + child) >= 0) break;
+      swap(lo + root, lo + child);
+      root = child;
     }
   }
 
 
-  protected void sort(int i, int j) {
-    int pivotIndex = (i+j)/2;
-    swap(pivotIndex, j);
-    int k = partition(i-1, j);
-    swap(k, j);
-    if ((k-i) > 1) sort(i, k-1);
-    if ((j-k) > 1) sort(k+1, j);
+  /**
+   * Sort so that items that compare as equal stay in the same order they
+   * started in. This merge sorts a list of positions (using compare() on
+   * the data, which isn't touched until the end), then makes at most one
+   * swap() per item to move everything into place.
+   */
+  public void runStable() {
+    int c = size();
+    if (c < 2) {
+      return;
+    }
+    int[] order = new int[c];
+    for (int i = 0; i < c; i++) {
+      order[i] = i;
+    }
+    mergeSort(order.clone(), order, 0, c);
+
+    // at[p] is the original item now at position p, where[o] is the
+    // current position of original item o
+    int[] at = new int[c];
+    int[] where = new int[c];
+    for (int i = 0; i < c; i++) {
+      at[i] = i;
+      where[i] = i;
+    }
+    for (int k = 0; k < c; k++) {
+      int wanted = order[k];
+      int from = where[wanted];
+      if (from != k) {
+        swap(k, from);
+        int moved = at[k];
+        at[from] = moved;
+        where[moved] = from;
+        at[k] = wanted;
+        where[wanted] = k;
+      }
+    }
   }
 
 
-  protected int partition(int left, int right) {
-    int pivot = right;
-    do {
-      while (compare(++left, pivot) < 0) ;
-      while ((right != 0) && (compare(--right, pivot) > 0)) ;
-      swap(left, right);
-    } while (left < right);
-    swap(left, right);
-    return left;
+  // sorts src[lo, hi) into dst[lo, hi); both start with the same contents
+  private void mergeSort(int[] src, int[] dst, int lo, int hi) {
+    if (hi - lo < INSERTION_THRESHOLD) {
+      for (int i = lo + 1; i < hi; i++) {
+        int item = dst[i];
+        int j = i;
+        while (j > lo && compare(dst[j - 1], item) > 0) {
+          dst[j] = dst[j - 1];
+          --j;
+        }
+        dst[j] = item;
+      }
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    mergeSort(dst, src, lo, mid);
+    mergeSort(dst, src, mid, hi);
+    if (compare(src[mid - 1], src[mid]) <= 0) {
+      // already in order, nothing to merge
+      System.arraycopy(src, lo, dst, lo, hi - lo);
+      return;
+    }
+    int i = lo, j = mid, k = lo;
+    while (i < mid && j < hi) {
+      dst[k++] = (compare(src[j], src[i]) < 0) ? src[j++] : src[i++];
+    }
+    while (i < mid) dst[k++] = src[i++];
+    while (j < hi) dst[k++] = src[j++];
   }
 
 
   abstract public int size();
-  abstract public float compare(int a, int b);
+
+  /**
+   * Return a negative number, zero, or a positive number when the item at
+   * a sorts before, the same as, or after the item at b.
+   */
+  abstract public int compare(int a, int b);
+
   abstract public void swap(int a, int b);
-}
\ No newline at end of file
+}
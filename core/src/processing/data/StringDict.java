@@ -1,7 +1,6 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 
 import processing.core.PApplet;
@@ -23,7 +22,7 @@ public class StringDict {
   protected String[] values;
 
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<String, Integer>();
+  private KeyIndex indices = new KeyIndex();
 
 
   public StringDict() {
@@ -63,7 +62,7 @@ public class StringDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = pieces[1];
-        indices.put(keys[count], count);
+        indices.put(keys, keys[count], count);
         count++;
       }
     }
@@ -79,9 +78,7 @@ public class StringDict {
     this.keys = keys;
     this.values = values;
     count = keys.length;
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
-    }
+    indices.rebuild(keys, count);
   }
 
   /**
@@ -101,7 +98,7 @@ public class StringDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<String, Integer>();
+    indices.clear();
   }
 
 
@@ -261,8 +258,7 @@ public class StringDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    return indices.get(keys, what);
   }
 
   /**
@@ -279,8 +275,8 @@ public class StringDict {
       keys = PApplet.expand(keys);
       values = PApplet.expand(values);
     }
-    indices.put(key, new Integer(count));
     keys[count] = key;
+    indices.put(keys, key, count);
     values[count] = value;
     count++;
   }
@@ -304,12 +300,10 @@ public class StringDict {
     }
     //System.out.println("index is " + which + " and " + keys[which]);
     String key = keys[index];
-    indices.remove(key);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
+    indices.remove(keys, key);
+    System.arraycopy(keys, index+1, keys, index, count-index-1);
+    System.arraycopy(values, index+1, values, index, count-index-1);
+    indices.shiftDown(index);
     count--;
     keys[count] = null;
     values[count] = null;
@@ -318,15 +312,13 @@ public class StringDict {
 
 
   public void swap(int a, int b) {
+    indices.swap(keys, a, b);
     String tkey = keys[a];
     String tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-    indices.put(keys[a], new Integer(a));
-    indices.put(keys[b], new Integer(b));
   }
 
 
@@ -371,6 +363,11 @@ public class StringDict {
 
 
   protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    // sort a list of positions, then move the entries over in one go
+    final int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -378,7 +375,9 @@ public class StringDict {
       }
 
       @Override
-      public float compare(int a, int b) {
+      public int compare(int a, int b) {
+        a = order[a];
+        b = order[b];
         int diff = 0;
         if (useKeys) {
           diff = keys[a].compareToIgnoreCase(keys[b]);
@@ -396,10 +395,30 @@ public class StringDict {
 
       @Override
       public void swap(int a, int b) {
-        StringDict.this.swap(a, b);
+        int temp = order[a];
+        order[a] = order[b];
+        order[b] = temp;
       }
     };
     s.run();
+    permute(order);
+  }
+
+
+  /**
+   * Rearrange the entries so that the entry at order[i] ends up at i,
+   * then rebuild the index in a single pass.
+   */
+  private void permute(int[] order) {
+    String[] newKeys = new String[keys.length];
+    String[] newValues = new String[values.length];
+    for (int i = 0; i < count; i++) {
+      newKeys[i] = keys[order[i]];
+      newValues[i] = values[order[i]];
+    }
+    keys = newKeys;
+    values = newValues;
+    indices.rebuild(keys, count);
   }
 
 
@@ -408,10 +427,8 @@ public class StringDict {
     StringDict outgoing = new StringDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
     outgoing.count = count;
+    outgoing.indices.rebuild(outgoing.keys, count);
     return outgoing;
   }
 
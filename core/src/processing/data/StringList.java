@@ -432,7 +432,8 @@ public class StringList implements Iterable<String> {
 
 
   /**
-   * Sorts the array in place.
+   * Sorts the array in place, ignoring case. Entries that only differ in
+   * case keep the order they were in.
    *
    * @webref stringlist:method
    * @brief Sorts the array in place
@@ -461,8 +462,8 @@ public class StringList implements Iterable<String> {
       }
 
       @Override
-      public float compare(int a, int b) {
-        float diff = data[a].compareToIgnoreCase(data[b]);
+      public int compare(int a, int b) {
+        int diff = data[a].compareToIgnoreCase(data[b]);
         return reverse ? -diff : diff;
       }
 
@@ -472,7 +473,7 @@ public class StringList implements Iterable<String> {
         data[a] = data[b];
         data[b] = temp;
       }
-    }.run();
+    }.runStable();
   }
 
 
@@ -25,6 +25,10 @@ package processing.data;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -32,12 +36,16 @@ import java.sql.Types;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import processing.core.PApplet;
 import processing.core.PConstants;
@@ -78,6 +86,11 @@ public class Table {
   String[] columnTitles;
   HashMapBlows[] columnCategories;
   HashMap<String, Integer> columnIndices;
+  ColumnIndex[] indexes;  // lookups created with createIndex(), by column
+
+  boolean readOnly;  // true for tables returned by snapshot()
+  // column arrays that a snapshot may still be reading, by identity
+  Set<Object> sharedColumns;
 
   protected Object[] columns;  // [column]
 
@@ -121,8 +134,12 @@ public class Table {
   public Table(File file, String options) throws IOException {
     // uses createInput() to handle .gz (and eventually .bz2) files
     init();
-    parse(PApplet.createInput(file),
-          extensionOptions(true, file.getName(), options));
+    options = extensionOptions(true, file.getName(), options);
+    if (isColumnarFile(file, options)) {
+      loadColumnar(file);
+    } else {
+      parse(PApplet.createInput(file), options);
+    }
   }
 
   /**
@@ -140,6 +157,12 @@ public class Table {
    * <li>tsv - parse the table as tab-separated values
    * <li>newlines - this CSV file contains newlines inside individual cells
    * <li>header - this table has a header (title) row
+   * <li>parallel - split a CSV or TSV file into chunks that are parsed
+   * on several cores at once (cannot be combined with newlines)
+   * <li>infer - pick a type for each column (int, long, float, double, or
+   * category) based on the first 1000 rows, use infer=500 to set how many
+   * <li>compact - store String columns with few different values as
+   * categories, see compact()
    * </ul>
    *
    * @nowebref
@@ -302,9 +325,13 @@ public class Table {
     boolean header = false;
     String extension = null;
     boolean binary = false;
+    boolean parallel = false;
+    int inferRows = 0;
+    boolean compact = false;
 
     String worksheet = null;
     final String sheetParam = "worksheet=";
+    final String inferParam = "infer=";
 
     String[] opts = null;
     if (options != null) {
@@ -324,6 +351,17 @@ public class Table {
           extension = "bin";
         } else if (opt.equals("header")) {
           header = true;
+        } else if (opt.equals("parallel")) {
+          parallel = true;
+        } else if (opt.equals("compact")) {
+          compact = true;
+        } else if (opt.equals("infer")) {
+          inferRows = INFER_SAMPLE_ROWS;
+        } else if (opt.startsWith(inferParam)) {
+          inferRows = PApplet.parseInt(opt.substring(inferParam.length()), -1);
+          if (inferRows <= 0) {
+            throw new IllegalArgumentException("'" + opt + "' needs a number of rows greater than zero");
+          }
         } else if (opt.startsWith(sheetParam)) {
           worksheet = opt.substring(sheetParam.length());
         } else if (opt.startsWith("dictionary=")) {
@@ -338,44 +376,112 @@ public class Table {
       throw new IllegalArgumentException("No extension specified for this Table");
     }
 
+    // columns that already have a type (from a dictionary) are left alone
+    int inferColumn = columns.length;
+
     if (binary) {
       loadBinary(input);
 
     } else if (extension.equals("ods")) {
-      odsParse(input, worksheet);
+      odsParse(input, worksheet, inferRows);
+
+    } else if (parallel && !awfulCSV) {
+      parseParallel(input, header, "tsv".equals(extension));
+      if (inferRows != 0) {
+        inferColumnTypes(inferColumn, rowCount);
+      }
 
     } else {
       BufferedReader reader = PApplet.createReader(input);
       if (awfulCSV) {
         parseAwfulCSV(reader, header);
+        if (inferRows != 0) {
+          inferColumnTypes(inferColumn, rowCount);
+        }
       } else if ("tsv".equals(extension)) {
-        parseBasic(reader, header, true);
+        parseBasic(reader, header, true, inferRows);
       } else if ("csv".equals(extension)) {
-        parseBasic(reader, header, false);
+        parseBasic(reader, header, false, inferRows);
       }
     }
+    inferMissing = null;  // no more widening once the file is loaded
+    if (compact) {
+      compact();
+    }
   }
 
 
   protected void parseBasic(BufferedReader reader,
                             boolean header, boolean tsv) throws IOException {
-    String line = null;
-    int row = 0;
+    parseBasic(reader, header, tsv, 0);
+  }
+
+
+  /**
+   * @param inferRows if not zero, the number of rows to read as Strings
+   * before choosing a type for each new column. After that, values are
+   * parsed straight into the typed columns, and a column is widened
+   * (int to long or double, float to double, or anything to String)
+   * when a later row has a value that doesn't fit.
+   */
+  protected void parseBasic(BufferedReader reader, boolean header,
+                            boolean tsv, int inferRows) throws IOException {
     if (rowCount == 0) {
       setRowCount(10);
     }
+    int inferColumn = columns.length;
+    int row = parseLines(reader, header, tsv, 0, inferRows, inferColumn, false);
+    // shorten or lengthen based on what's left
+    if (row != getRowCount()) {
+      setRowCount(row);
+    }
+    if (inferRows != 0 && row < inferRows) {
+      // fewer rows than the sample size, so use all of them
+      inferColumnTypes(inferColumn, row);
+    }
+  }
+
+
+  /**
+   * Read lines into rows, starting at 'row', and return the row after the
+   * last one that was read. The table is doubled in length whenever it
+   * runs out of rows, so it may have extras at the end for the caller to
+   * remove. When 'row' reaches inferRows (if not zero), the types of the
+   * columns from inferColumn onward are chosen, and rows after that are
+   * set with setRowWidening(). With quotedNewlines, a CSV line that ends
+   * inside a quoted value continues on the next line.
+   */
+  protected int parseLines(BufferedReader reader, boolean header, boolean tsv,
+                           int row, int inferRows, int inferColumn,
+                           boolean quotedNewlines) throws IOException {
+    String line = null;
+    boolean inferring = inferRows != 0;
     //int prev = 0;  //-1;
     try {
       while ((line = reader.readLine()) != null) {
+        if (quotedNewlines && !tsv) {
+          String more;
+          while (insideQuote(line) && (more = reader.readLine()) != null) {
+            line += "\n" + more;
+          }
+        }
         if (row == getRowCount()) {
           setRowCount(row << 1);
         }
-        if (row == 0 && header) {
+        if (header) {
           setColumnTitles(tsv ? PApplet.split(line, '\t') : splitLineCSV(line));
           header = false;
         } else {
-          setRow(row, tsv ? PApplet.split(line, '\t') : splitLineCSV(line));
+          String[] pieces = tsv ? PApplet.split(line, '\t') : splitLineCSV(line);
+          if (inferring && row >= inferRows) {
+            setRowWidening(row, pieces);
+          } else {
+            setRow(row, pieces);
+          }
           row++;
+          if (inferring && row == inferRows) {
+            inferColumnTypes(inferColumn, row);
+          }
         }
 
         // this is problematic unless we're going to calculate rowCount first
@@ -400,878 +506,3639 @@ public class Table {
     } catch (Exception e) {
       throw new RuntimeException("Error reading table on line " + row, e);
     }
-    // shorten or lengthen based on what's left
-    if (row != getRowCount()) {
-      setRowCount(row);
-    }
+    return row;
   }
 
 
-//  public void convertTSV(BufferedReader reader, File outputFile) throws IOException {
-//    convertBasic(reader, true, outputFile);
-//  }
-
-
-  protected void parseAwfulCSV(BufferedReader reader,
-                               boolean header) throws IOException {
-    char[] c = new char[100];
-    int count = 0;
-    boolean insideQuote = false;
-    int row = 0;
-    int col = 0;
-    int ch;
-    while ((ch = reader.read()) != -1) {
-      if (insideQuote) {
-        if (ch == '\"') {
-          // this is either the end of a quoted entry, or a quote character
-          reader.mark(1);
-          if (reader.read() == '\"') {
-            // it's "", which means a quote character
-            if (count == c.length) {
-              c = PApplet.expand(c);
-            }
-            c[count++] = '\"';
-          } else {
-            // nope, just the end of a quoted csv entry
-            reader.reset();
-            insideQuote = false;
-            // TODO nothing here that prevents bad csv data from showing up
-            // after the quote and before the comma...
-//            set(row, col, new String(c, 0, count));
-//            count = 0;
-//            col++;
-//            insideQuote = false;
-          }
-        } else {  // inside a quote, but the character isn't a quote
-          if (count == c.length) {
-            c = PApplet.expand(c);
-          }
-          c[count++] = (char) ch;
-        }
-      } else {  // not inside a quote
-        if (ch == '\"') {
-          insideQuote = true;
-
-        } else if (ch == '\r' || ch == '\n') {
-          if (ch == '\r') {
-            // check to see if next is a '\n'
-            reader.mark(1);
-            if (reader.read() != '\n') {
-              reader.reset();
-            }
-          }
-          setString(row, col, new String(c, 0, count));
-          count = 0;
-          if (row == 0 && header) {
-            // Use internal row removal (efficient because only one row).
-            removeTitleRow();
-            // Un-set the header variable so that next time around, we don't
-            // just get stuck into a loop, removing the 0th row repeatedly.
-            header = false;
-          }
-          row++;
-          col = 0;
-
-        } else if (ch == ',') {
-          setString(row, col, new String(c, 0, count));
-          count = 0;
-          // starting a new column, make sure we have room
-          col++;
-          ensureColumn(col);
-
-        } else {  // just a regular character, add it
-          if (count == c.length) {
-            c = PApplet.expand(c);
-          }
-          c[count++] = (char) ch;
-        }
-      }
-    }
-    // catch any leftovers
-    if (count > 0) {
-      setString(row, col, new String(c, 0, count));
-    }
+  /**
+   * Load a file that's still being written to, like a log, so that new
+   * lines can be added later with refresh(). Only the "csv", "tsv",
+   * "header", and "infer" options are supported. Quoted CSV values may
+   * contain newlines, and a row isn't read until its closing quote and
+   * line ending have been written. Once column types have been inferred,
+   * later rows are parsed straight into the typed columns, and a column
+   * is widened if a value doesn't fit.
+   * <p>
+   * To refresh once per frame, use registerMethod("pre", table).
+   *
+   * @nowebref
+   */
+  static public Table follow(File file, String options) throws IOException {
+    Table table = new Table();
+    table.follower = new Follower(file, extensionOptions(true, file.getName(), options));
+    table.refresh();
+    return table;
   }
 
 
   /**
-   * Parse a line of text as comma-separated values, returning each value as
-   * one entry in an array of String objects. Remove quotes from entries that
-   * begin and end with them, and convert 'escaped' quotes to actual quotes.
-   * @param line line of text to be parsed
-   * @return an array of the individual values formerly separated by commas
+   * Read any lines that were added to a file opened with follow(), and
+   * return the number of new rows. A line that hasn't been finished yet
+   * (no line ending) is left for the next call. If the file has become
+   * shorter, it's assumed to have been replaced, and the rows are read
+   * again from the start.
    */
-  static protected String[] splitLineCSV(String line) {
-    char[] c = line.toCharArray();
-    int rough = 1;  // at least one
+  public int refresh() throws IOException {
+    if (follower == null) {
+      throw new IllegalArgumentException("refresh() only works with a Table created by follow()");
+    }
+    checkWritable();
+    Follower f = follower;
+    long length = f.file.length();
+    if (length < f.position) {
+      f.reset();
+      init();
+      columnTitles = null;
+      columnIndices = null;
+      indexes = null;
+      inferMissing = null;
+      rowCount = 0;
+    }
+    if (length == f.position) {
+      return 0;
+    }
+    long available = length - f.position;
+    if (available > Integer.MAX_VALUE) {
+      throw new IOException(f.file + " has grown by more than 2 GB");
+    }
+    byte[] buffer = new byte[(int) available];
+    RandomAccessFile raf = new RandomAccessFile(f.file, "r");
+    try {
+      raf.seek(f.position);
+      raf.readFully(buffer);
+    } finally {
+      raf.close();
+    }
+
+    // only use complete lines, and for CSV, only up to a line ending
+    // that's outside quotes, since a quoted value can contain newlines
+    int end = 0;
     boolean quote = false;
-    for (int i = 0; i < c.length; i++) {
-      if (!quote && (c[i] == ',')) {
-        rough++;
-      } else if (c[i] == '\"') {
-        quote = !quote;
+    for (int i = 0; i < buffer.length; i++) {
+      if (buffer[i] == '\"') {
+        quote = !quote && !f.tsv;
+      } else if (buffer[i] == '\n' && !quote) {
+        end = i + 1;
       }
     }
-    String[] pieces = new String[rough];
-    int pieceCount = 0;
-    int offset = 0;
-    while (offset < c.length) {
-      int start = offset;
-      int stop = nextComma(c, offset);
-      offset = stop + 1;  // next time around, need to step over the comment
-      if (c[start] == '\"' && c[stop-1] == '\"') {
-        start++;
-        stop--;
-      }
-      int i = start;
-      int ii = start;
-      while (i < stop) {
-        if (c[i] == '\"') {
-          i++;  // skip over pairs of double quotes become one
-        }
-        if (i != ii) {
-          c[ii] = c[i];
-        }
-        i++;
-        ii++;
-      }
-      String s = new String(c, start, ii - start);
-      pieces[pieceCount++] = s;
+    if (end == 0) {
+      return 0;
     }
-    // make any remaining entries blanks instead of nulls
-    for (int i = pieceCount; i < pieces.length; i++) {
-      pieces[i] = "";
+    int lines = 0;
+    for (int i = 0; i < end; i++) {
+      if (buffer[i] == '\n') lines++;
+    }
+    f.position += end;
 
+    int start = rowCount;
+    reserveRows(start + lines);
+    rowCount = start + lines;
+    int row = start;
+    try {
+      BufferedReader reader =
+        PApplet.createReader(new ByteArrayInputStream(buffer, 0, end));
+      row = parseLines(reader, f.header, f.tsv, start, f.inferRows, 0, !f.tsv);
+    } finally {
+      rowCount = row;
     }
-    return pieces;
+    f.header = false;
+    if (f.inferRows != 0 && row < f.inferRows && row > 0) {
+      // use what's here so far, and widen the columns later if needed
+      inferColumnTypes(0, row);
+      f.inferRows = row;
+    }
+    return row - start;
   }
 
 
-  static protected int nextComma(char[] c, int index) {
-    boolean quote = false;
-    for (int i = index; i < c.length; i++) {
-      if (!quote && (c[i] == ',')) {
-        return i;
-      } else if (c[i] == '\"') {
-        quote = !quote;
-      }
+  /**
+   * Calls refresh(), so that registerMethod("pre", table) will read new
+   * lines of a followed file before each frame.
+   */
+  public void pre() {
+    try {
+      refresh();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
-    return c.length;
   }
 
 
   /**
-   * Read a .ods (OpenDoc spreadsheet) zip file from an InputStream, and
-   * return the InputStream for content.xml contained inside.
+   * Make room in the column arrays for 'count' rows without changing the
+   * row count, growing them by at least half so that adding a few rows at
+   * a time doesn't copy every column each time.
    */
-  private InputStream odsFindContentXML(InputStream input) {
-    ZipInputStream zis = new ZipInputStream(input);
-    ZipEntry entry = null;
-    try {
-      while ((entry = zis.getNextEntry()) != null) {
-        if (entry.getName().equals("content.xml")) {
-          return zis;
+  protected void reserveRows(int count) {
+    invalidateIndexes(-1);
+    for (int col = 0; col < columns.length; col++) {
+      Object data = columns[col];
+      int length = Array.getLength(data);
+      if (length < count) {
+        int size = Math.max(count, length + (length >> 1));
+        switch (columnTypes[col]) {
+          case INT: columns[col] = PApplet.expand((int[]) data, size); break;
+          case LONG: columns[col] = PApplet.expand((long[]) data, size); break;
+          case FLOAT: columns[col] = PApplet.expand((float[]) data, size); break;
+          case DOUBLE: columns[col] = PApplet.expand((double[]) data, size); break;
+          case STRING: columns[col] = PApplet.expand((String[]) data, size); break;
+          case CATEGORY: columns[col] = PApplet.expand((int[]) data, size); break;
         }
       }
-    } catch (IOException e) {
-      e.printStackTrace();
     }
-    return null;
   }
 
 
-  protected void odsParse(InputStream input, String worksheet) {
-    try {
-      InputStream contentStream = odsFindContentXML(input);
-      XML xml = new XML(contentStream);
-
-      // table files will have multiple sheets..
-      // <table:table table:name="Sheet1" table:style-name="ta1" table:print="false">
-      // <table:table table:name="Sheet2" table:style-name="ta1" table:print="false">
-      // <table:table table:name="Sheet3" table:style-name="ta1" table:print="false">
-      XML[] sheets =
-        xml.getChildren("office:body/office:spreadsheet/table:table");
-
-      boolean found = false;
-      for (XML sheet : sheets) {
-//        System.out.println(sheet.getAttribute("table:name"));
-        if (worksheet == null || worksheet.equals(sheet.getString("table:name"))) {
-          odsParseSheet(sheet);
-          found = true;
-          if (worksheet == null) {
-            break;  // only read the first sheet
+  Follower follower;  // set by follow()
+  // rows of each inferred number column that were missing in the file,
+  // so they stay missing if the column is widened (only used while loading)
+  BitSet[] inferMissing;
+
+
+  /** Where follow() is in its file, and the options it was opened with. */
+  static class Follower {
+    File file;
+    long position;
+    boolean tsv;
+    boolean header;
+    int inferRows;
+    String options;
+
+    Follower(File file, String options) {
+      this.file = file;
+      this.options = options;
+      reset();
+    }
+
+    /** Go back to the start of the file. */
+    void reset() {
+      position = 0;
+      tsv = false;
+      header = false;
+      inferRows = 0;
+      boolean csv = false;
+      if (options != null) {
+        for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+          if (opt.equals("tsv")) {
+            tsv = true;
+            csv = false;
+          } else if (opt.equals("csv")) {
+            csv = true;
+            tsv = false;
+          } else if (opt.equals("header")) {
+            header = true;
+          } else if (opt.equals("infer")) {
+            inferRows = INFER_SAMPLE_ROWS;
+          } else if (opt.startsWith("infer=")) {
+            inferRows = PApplet.parseInt(opt.substring(6), -1);
+            if (inferRows <= 0) {
+              throw new IllegalArgumentException("'" + opt + "' needs a number of rows greater than zero");
+            }
+          } else {
+            throw new IllegalArgumentException("'" + opt + "' is not a valid option for follow()");
           }
         }
       }
-      if (!found) {
-        if (worksheet == null) {
-          throw new RuntimeException("No worksheets found in the ODS file.");
-        } else {
-          throw new RuntimeException("No worksheet named " + worksheet +
-                                     " found in the ODS file.");
-        }
+      if (!tsv && !csv) {
+        throw new IllegalArgumentException("No extension specified for this Table");
       }
-    } catch (UnsupportedEncodingException e) {
-      e.printStackTrace();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (ParserConfigurationException e) {
-      e.printStackTrace();
-    } catch (SAXException e) {
-      e.printStackTrace();
     }
   }
 
 
-  /**
-   * Parses a single sheet of XML from this file.
-   * @param The XML object for a single worksheet from the ODS file
-   */
-  private void odsParseSheet(XML sheet) {
-    // Extra <p> or <a> tags inside the text tag for the cell will be stripped.
-    // Different from showing formulas, and not quite the same as 'save as
-    // displayed' option when saving from inside OpenOffice. Only time we
-    // wouldn't want this would be so that we could parse hyperlinks and
-    // styling information intact, but that's out of scope for the p5 version.
-    final boolean ignoreTags = true;
-
-    XML[] rows = sheet.getChildren("table:table-row");
-    //xml.getChildren("office:body/office:spreadsheet/table:table/table:table-row");
-
-    int rowIndex = 0;
-    for (XML row : rows) {
-      int rowRepeat = row.getInt("table:number-rows-repeated", 1);
-//      if (rowRepeat != 1) {
-//          System.out.println(rowRepeat + " " + rowCount + " " + (rowCount + rowRepeat));
-//      }
-      boolean rowNotNull = false;
-      XML[] cells = row.getChildren();
-      int columnIndex = 0;
-
-      for (XML cell : cells) {
-        int cellRepeat = cell.getInt("table:number-columns-repeated", 1);
-
-//        <table:table-cell table:formula="of:=SUM([.E7:.E8])" office:value-type="float" office:value="4150">
-//        <text:p>4150.00</text:p>
-//        </table:table-cell>
+  /** Number of rows used to pick column types with the "infer" option. */
+  static final int INFER_SAMPLE_ROWS = 1000;
 
-        String cellData = ignoreTags ? cell.getString("office:value") : null;
 
-        // if there's an office:value in the cell, just roll with that
-        if (cellData == null) {
-          int cellKids = cell.getChildCount();
-          if (cellKids != 0) {
-            XML[] paragraphElements = cell.getChildren("text:p");
-            if (paragraphElements.length != 1) {
-              for (XML el : paragraphElements) {
-                System.err.println(el.toString());
-              }
-              throw new RuntimeException("found more than one text:p element");
-            }
-            XML textp = paragraphElements[0];
-            String textpContent = textp.getContent();
-            // if there are sub-elements, the content shows up as a child element
-            // (for which getName() returns null.. which seems wrong)
-            if (textpContent != null) {
-              cellData = textpContent;  // nothing fancy, the text is in the text:p element
-            } else {
-              XML[] textpKids = textp.getChildren();
-              StringBuffer cellBuffer = new StringBuffer();
-              for (XML kid : textpKids) {
-                String kidName = kid.getName();
-                if (kidName == null) {
-                  odsAppendNotNull(kid, cellBuffer);
-
-                } else if (kidName.equals("text:s")) {
-                  int spaceCount = kid.getInt("text:c", 1);
-                  for (int space = 0; space < spaceCount; space++) {
-                    cellBuffer.append(' ');
-                  }
-                } else if (kidName.equals("text:span")) {
-                  odsAppendNotNull(kid, cellBuffer);
-
-                } else if (kidName.equals("text:a")) {
-                  // <text:a xlink:href="http://blah.com/">blah.com</text:a>
-                  if (ignoreTags) {
-                    cellBuffer.append(kid.getString("xlink:href"));
-                  } else {
-                    odsAppendNotNull(kid, cellBuffer);
-                  }
-
-                } else {
-                  odsAppendNotNull(kid, cellBuffer);
-                  System.err.println(getClass().getName() + ": don't understand: " + kid);
-                  //throw new RuntimeException("I'm not used to this.");
-                }
-              }
-              cellData = cellBuffer.toString();
+  /**
+   * Choose a type for each String column from 'firstColumn' onward, based
+   * on the values in its first 'sampleRows' rows, and convert the column.
+   * Empty and missing values are ignored. Numbers become INT if they're
+   * whole and fit in an int, LONG if they're whole but larger, and FLOAT
+   * if they fit in a float without losing digits, otherwise DOUBLE. Other
+   * columns become CATEGORY if at most half their values are unique,
+   * otherwise they stay STRING.
+   */
+  protected void inferColumnTypes(int firstColumn, int sampleRows) {
+    sampleRows = Math.min(sampleRows, rowCount);
+    for (int col = firstColumn; col < columns.length; col++) {
+      if (columnTypes[col] == STRING) {
+        String[] values = (String[]) columns[col];
+        int type = inferColumnType(values, sampleRows);
+        if (type != STRING && type != CATEGORY) {
+          // a missing int is stored as missingInt, which looks like any
+          // other number, so remember where they were in case of widening
+          BitSet missing = new BitSet();
+          for (int row = 0; row < sampleRows; row++) {
+            if (isMissing(values[row])) {
+              missing.set(row);
             }
-            //setString(rowIndex, columnIndex, c); //text[0].getContent());
-            //columnIndex++;
-          }
-        }
-        for (int r = 0; r < cellRepeat; r++) {
-          if (cellData != null) {
-            //System.out.println("setting " + rowIndex + "," + columnIndex + " to " + cellData);
-            setString(rowIndex, columnIndex, cellData);
           }
-          columnIndex++;
-          if (cellData != null) {
-//            if (columnIndex > columnMax) {
-//              columnMax = columnIndex;
-//            }
-            rowNotNull = true;
+          if (inferMissing == null) {
+            inferMissing = new BitSet[columns.length];
+          } else if (inferMissing.length < columns.length) {
+            inferMissing = Arrays.copyOf(inferMissing, columns.length);
           }
+          inferMissing[col] = missing;
         }
-      }
-      if (rowNotNull && rowRepeat > 1) {
-        String[] rowStrings = getStringRow(rowIndex);
-        for (int r = 1; r < rowRepeat; r++) {
-          addRow(rowStrings);
+        if (type != STRING) {
+          setColumnType(col, type);
         }
       }
-      rowIndex += rowRepeat;
     }
   }
 
 
-  private void odsAppendNotNull(XML kid, StringBuffer buffer) {
-    String content = kid.getContent();
-    if (content != null) {
-      buffer.append(content);
+  protected int inferColumnType(String[] values, int count) {
+    int found = 0;
+    boolean fraction = false;
+    boolean needDouble = false;
+    boolean needLong = false;
+    long maxWhole = 0;
+    boolean numeric = true;
+
+    for (int row = 0; row < count; row++) {
+      String value = values[row];
+      if (isMissing(value)) {
+        continue;
+      }
+      found++;
+      if (numeric) {
+        switch (numberType(value)) {
+        case INT:
+        case LONG:
+          long whole = Long.parseLong(value);
+          if (whole < Integer.MIN_VALUE || whole > Integer.MAX_VALUE) {
+            needLong = true;
+          }
+          maxWhole = Math.max(maxWhole, Math.abs(whole));
+          break;
+        case FLOAT:
+          fraction = true;
+          break;
+        case DOUBLE:
+          fraction = true;
+          needDouble = true;
+          break;
+        default:
+          numeric = false;
+        }
+      }
     }
+    if (found == 0) {
+      return STRING;
+    }
+    if (numeric) {
+      if (!fraction) {
+        return needLong ? LONG : INT;
+      }
+      // whole numbers above 2^24 lose digits as a float
+      return (needDouble || needLong || maxWhole > (1 << 24)) ? DOUBLE : FLOAT;
+    }
+    return isLowCardinality(values, count) ? CATEGORY : STRING;
   }
 
 
-  // A 'Class' object is used here, so the syntax for this function is:
-  // Table t = loadTable("cars3.tsv", "header");
-  // Record[] records = (Record[]) t.parse(Record.class);
-  // While t.parse("Record") might be nicer, the class is likely to be an
-  // inner class (another tab in a PDE sketch) or even inside a package,
-  // so additional information would be needed to locate it. The name of the
-  // inner class would be "SketchName$Record" which isn't acceptable syntax
-  // to make people use. Better to just introduce the '.class' syntax.
-
-  // Unlike the Table class itself, this accepts char and boolean fields in
-  // the target class, since they're much more prevalent, and don't require
-  // a zillion extra methods and special cases in the rest of the class here.
+  /**
+   * Same as setRow(), but if a value doesn't fit in the type of its column,
+   * the column is first converted to a type that can hold it. A column
+   * widened to String keeps the parsed values of earlier rows, so "1.50"
+   * will show up as "1.5". Values that were missing stay missing.
+   */
+  protected void setRowWidening(int row, String[] pieces) {
+    ensureBounds(row, pieces.length - 1);
+    for (int col = 0; col < pieces.length; col++) {
+      int type = columnTypes[col];
+      BitSet missing = (inferMissing != null && col < inferMissing.length) ?
+        inferMissing[col] : null;
+      if (type != STRING && type != CATEGORY) {
+        if (isMissing(pieces[col])) {
+          if (missing != null) {
+            missing.set(row);
+          }
+        } else {
+          int wider = widenType(type, pieces[col]);
+          if (wider != type) {
+            setColumnType(col, wider);
+            if (missing != null) {
+              restoreMissing(col, missing);
+            }
+          }
+        }
+      }
+      setRowCol(row, col, pieces[col]);
+    }
+  }
 
-  // since this is likely an inner class, needs a reference to its parent,
-  // because that's passed to the constructor parameter (inserted by the
-  // compiler) of an inner class by the runtime.
 
-  /** incomplete, do not use */
-  public void parseInto(Object enclosingObject, String fieldName) {
-    Class<?> target = null;
-    Object outgoing = null;
-    Field targetField = null;
-    try {
-      // Object targetObject,
-      // Class target -> get this from the type of fieldName
-//      Class sketchClass = sketch.getClass();
-      Class<?> sketchClass = enclosingObject.getClass();
-      targetField = sketchClass.getDeclaredField(fieldName);
-//      PApplet.println("found " + targetField);
-      Class<?> targetArray = targetField.getType();
-      if (!targetArray.isArray()) {
-        // fieldName is not an array
-      } else {
-        target = targetArray.getComponentType();
-        outgoing = Array.newInstance(target, getRowCount());
+  /** Set the rows in 'missing' back to the missing value for the column. */
+  protected void restoreMissing(int col, BitSet missing) {
+    Object data = columns[col];
+    for (int row = missing.nextSetBit(0); row >= 0 && row < rowCount;
+         row = missing.nextSetBit(row + 1)) {
+      switch (columnTypes[col]) {
+      case INT: ((int[]) data)[row] = missingInt; break;
+      case LONG: ((long[]) data)[row] = missingLong; break;
+      case FLOAT: ((float[]) data)[row] = missingFloat; break;
+      case DOUBLE: ((double[]) data)[row] = missingDouble; break;
+      case STRING: ((String[]) data)[row] = missingString; break;
       }
-    } catch (NoSuchFieldException e) {
-      e.printStackTrace();
-    } catch (SecurityException e) {
-      e.printStackTrace();
     }
+  }
 
-//    Object enclosingObject = sketch;
-//    PApplet.println("enclosing obj is " + enclosingObject);
-    Class<?> enclosingClass = target.getEnclosingClass();
-    Constructor<?> con = null;
 
-    try {
-      if (enclosingClass == null) {
-        con = target.getDeclaredConstructor();  //new Class[] { });
-//        PApplet.println("no enclosing class");
-      } else {
-        con = target.getDeclaredConstructor(new Class[] { enclosingClass });
-//        PApplet.println("enclosed by " + enclosingClass.getName());
+  /** The type that can hold everything in a column of 'type' plus 'value'. */
+  static protected int widenType(int type, String value) {
+    int valueType = numberType(value);
+    if (valueType == STRING) {
+      return STRING;
+    }
+    switch (type) {
+    case INT:
+      if (valueType == INT || valueType == LONG) {
+        return valueType;
       }
-      if (!con.isAccessible()) {
-//        System.out.println("setting constructor to public");
-        con.setAccessible(true);
+      return DOUBLE;  // not FLOAT, since larger ints would lose digits
+    case LONG:
+      return (valueType == INT || valueType == LONG) ? LONG : DOUBLE;
+    case FLOAT:
+      if (valueType == FLOAT ||
+          (valueType == INT && Math.abs(Long.parseLong(value)) <= (1 << 24))) {
+        return FLOAT;
       }
-    } catch (SecurityException e) {
-      e.printStackTrace();
-    } catch (NoSuchMethodException e) {
-      e.printStackTrace();
+      return DOUBLE;
     }
+    return type;
+  }
 
-    Field[] fields = target.getDeclaredFields();
-    ArrayList<Field> inuse = new ArrayList<Field>();
-    for (Field field : fields) {
-      String name = field.getName();
-      if (getColumnIndex(name, false) != -1) {
-//        System.out.println("found field " + name);
-        if (!field.isAccessible()) {
-//          PApplet.println("  changing field access");
-          field.setAccessible(true);
+
+  /**
+   * The narrowest type that holds this number exactly: INT, LONG, FLOAT,
+   * or DOUBLE. Returns STRING for anything that's not a plain decimal
+   * number (Java extras like "NaN", "0x1F", or "1f" don't count).
+   */
+  static protected int numberType(String value) {
+    int length = value.length();
+    int start = (length > 0 && (value.charAt(0) == '-' ||
+                                value.charAt(0) == '+')) ? 1 : 0;
+    boolean whole = true;
+    boolean exponent = false;
+    int digits = 0;  // significant digits before the exponent
+    int zeros = 0;   // zeros that only count if followed by another digit
+    boolean anyDigit = false;
+    for (int i = start; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= '0' && c <= '9') {
+        anyDigit = true;
+        if (!exponent) {
+          if (c == '0') {
+            if (digits != 0) zeros++;
+          } else {
+            digits += zeros + 1;
+            zeros = 0;
+          }
+        }
+      } else if (c == '.' || c == 'e' || c == 'E' || c == '-' || c == '+') {
+        whole = false;
+        if (c == 'e' || c == 'E') {
+          exponent = true;
         }
-        inuse.add(field);
       } else {
-//        System.out.println("skipping field " + name);
+        return STRING;
       }
     }
-
-    int index = 0;
+    if (!anyDigit) {
+      return STRING;
+    }
+    if (whole) {
+      if (length - start < 10) {
+        return INT;
+      }
+      try {
+        long v = Long.parseLong(value);
+        return (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) ? INT : LONG;
+      } catch (NumberFormatException nfe) {
+        return DOUBLE;  // too large even for a long
+      }
+    }
+    double v;
     try {
-      for (TableRow row : rows()) {
-        Object item = null;
-        if (enclosingClass == null) {
-          //item = target.newInstance();
-          item = con.newInstance();
-        } else {
-          item = con.newInstance(new Object[] { enclosingObject });
-        }
-        //Object item = defaultCons.newInstance(new Object[] { });
-        for (Field field : inuse) {
-          String name = field.getName();
-          //PApplet.println("gonna set field " + name);
+      v = Double.parseDouble(value);
+    } catch (NumberFormatException nfe) {
+      return STRING;
+    }
+    double magnitude = Math.abs(v);
+    if (digits > 7 || Double.isInfinite(v) || magnitude > Float.MAX_VALUE ||
+        (magnitude != 0 && magnitude < Float.MIN_NORMAL)) {
+      return DOUBLE;
+    }
+    return FLOAT;
+  }
 
-          if (field.getType() == String.class) {
-            field.set(item, row.getString(name));
 
-          } else if (field.getType() == Integer.TYPE) {
-            field.setInt(item, row.getInt(name));
+  protected boolean isMissing(String value) {
+    return value == null || value.length() == 0 || value.equals(missingString);
+  }
 
-          } else if (field.getType() == Long.TYPE) {
-            field.setLong(item, row.getLong(name));
 
-          } else if (field.getType() == Float.TYPE) {
-            field.setFloat(item, row.getFloat(name));
+  /** Size of the byte ranges handed to each worker by parseParallel(). */
+  static final int PARALLEL_CHUNK_SIZE = 1 << 23;  // 8 MB
 
-          } else if (field.getType() == Double.TYPE) {
-            field.setDouble(item, row.getDouble(name));
+  static ForkJoinPool parallelPool;
 
-          } else if (field.getType() == Boolean.TYPE) {
-            String content = row.getString(name);
-            if (content != null) {
-              // Only bother setting if it's true,
-              // otherwise false by default anyway.
-              if (content.toLowerCase().equals("true") ||
-                  content.equals("1")) {
-                field.setBoolean(item, true);
-              }
-            }
-//            if (content == null) {
-//              field.setBoolean(item, false);  // necessary?
-//            } else if (content.toLowerCase().equals("true")) {
-//              field.setBoolean(item, true);
-//            } else if (content.equals("1")) {
-//              field.setBoolean(item, true);
-//            } else {
-//              field.setBoolean(item, false);  // necessary?
-//            }
-          } else if (field.getType() == Character.TYPE) {
-            String content = row.getString(name);
-            if (content != null && content.length() > 0) {
-              // Otherwise set to \0 anyway
-              field.setChar(item, content.charAt(0));
-            }
-          }
-        }
-//        list.add(item);
-        Array.set(outgoing, index++, item);
-      }
-      if (!targetField.isAccessible()) {
-//        PApplet.println("setting target field to public");
-        targetField.setAccessible(true);
-      }
-      // Set the array in the sketch
-//      targetField.set(sketch, outgoing);
-      targetField.set(enclosingObject, outgoing);
 
-    } catch (InstantiationException e) {
-      e.printStackTrace();
-    } catch (IllegalAccessException e) {
-      e.printStackTrace();
-    } catch (IllegalArgumentException e) {
-      e.printStackTrace();
-    } catch (InvocationTargetException e) {
-      e.printStackTrace();
+  /**
+   * Shared pool used for the multi-threaded parts of this class. Created on
+   * first use, with one worker per available core.
+   */
+  static protected ForkJoinPool getParallelPool() {
+    synchronized (Table.class) {
+      if (parallelPool == null) {
+        parallelPool = new ForkJoinPool();
+      }
+      return parallelPool;
     }
   }
 
 
-  public boolean save(File file, String options) throws IOException {
-    return save(PApplet.createOutput(file),
-                Table.extensionOptions(false, file.getName(), options));
-  }
-
+  /**
+   * Same result as parseBasic(), but reads the stream in large byte ranges
+   * that end on a line break, and parses each range on the shared pool into
+   * a small Table of its own. The pieces are then copied into this table in
+   * their original order. Only a handful of ranges are in flight at once,
+   * so memory use stays bounded regardless of the size of the input.
+   */
+  protected void parseParallel(InputStream input,
+                               boolean header, boolean tsv) throws IOException {
+    ForkJoinPool pool = getParallelPool();
+    int maxPending = pool.getParallelism() * 2;
+    LinkedList<ForkJoinTask<Table>> pending =
+      new LinkedList<ForkJoinTask<Table>>();
 
-  public boolean save(OutputStream output, String options) {
-    PrintWriter writer = PApplet.createWriter(output);
-    String extension = null;
-    if (options == null) {
-      throw new IllegalArgumentException("No extension specified for saving this Table");
+    int row = 0;
+    if (rowCount == 0) {
+      setRowCount(10);
     }
 
-    String[] opts = PApplet.trim(PApplet.split(options, ','));
-    // Only option for save is the extension, so we can safely grab the last
-    extension = opts[opts.length - 1];
-    boolean found = false;
-    for (String ext : saveExtensions) {
-      if (extension.equals(ext)) {
-        found = true;
-        break;
+    byte[] buffer = new byte[PARALLEL_CHUNK_SIZE];
+    int length = 0;  // number of valid bytes in buffer
+    boolean eof = false;
+    while (!eof || length > 0) {
+      // fill the buffer as far as possible
+      while (!eof && length < buffer.length) {
+        int count = input.read(buffer, length, buffer.length - length);
+        if (count == -1) {
+          eof = true;
+        } else {
+          length += count;
+        }
       }
-    }
-    // Not providing a fallback; let's make users specify an extension
-    if (!found) {
-      throw new IllegalArgumentException("'" + extension + "' not available for Table");
-    }
+      int stop = eof ? length : lastLineBreak(buffer, length);
+      if (stop == -1) {
+        // a single line is longer than the buffer, make room and keep reading
+        buffer = PApplet.expand(buffer, buffer.length << 1);
+        continue;
+      }
+      int start = 0;
+      if (header) {
+        int end = nextLineBreak(buffer, 0, stop);
+        String line = new String(buffer, 0, end, "UTF-8");
+        setColumnTitles(tsv ? PApplet.split(line, '\t') : splitLineCSV(line));
+        start = skipLineBreak(buffer, end, stop);
+        header = false;
+      }
+      if (start < stop) {
+        byte[] chunk = new byte[stop - start];
+        System.arraycopy(buffer, start, chunk, 0, chunk.length);
+        pending.add(pool.submit(new ChunkParser(this, chunk, tsv)));
+      }
+      // move the leftover partial line to the front of the buffer
+      System.arraycopy(buffer, stop, buffer, 0, length - stop);
+      length -= stop;
 
-    if (extension.equals("csv")) {
-      writeCSV(writer);
-    } else if (extension.equals("tsv")) {
-      writeTSV(writer);
-    } else if (extension.equals("html")) {
-      writeHTML(writer);
-    } else if (extension.equals("bin")) {
-      try {
-        saveBinary(output);
-      } catch (IOException e) {
-        e.printStackTrace();
-        return false;
+      while (pending.size() > maxPending ||
+             (eof && length == 0 && !pending.isEmpty())) {
+        row = appendChunk(row, pending.removeFirst().join());
       }
     }
-    writer.flush();
-    writer.close();
-    return true;
+    // shorten or lengthen based on what's left
+    if (row != getRowCount()) {
+      setRowCount(row);
+    }
   }
 
 
-  protected void writeTSV(PrintWriter writer) {
-    if (columnTitles != null) {
-      for (int col = 0; col < columns.length; col++) {
-        if (col != 0) {
-          writer.print('\t');
-        }
-        if (columnTitles[col] != null) {
-          writer.print(columnTitles[col]);
-        }
+  /** Index just past the last line break that can safely end a chunk. */
+  static private int lastLineBreak(byte[] buffer, int length) {
+    for (int i = length - 1; i >= 0; --i) {
+      if (buffer[i] == '\n') {
+        return i + 1;
       }
-      writer.println();
     }
-    for (int row = 0; row < rowCount; row++) {
-      for (int col = 0; col < getColumnCount(); col++) {
-        if (col != 0) {
-          writer.print('\t');
-        }
-        String entry = getString(row, col);
-        // just write null entries as blanks, rather than spewing 'null'
-        // all over the spreadsheet file.
-        if (entry != null) {
-          writer.print(entry);
-        }
+    // old-style CR line endings, but avoid splitting a CR LF pair
+    for (int i = length - 2; i >= 0; --i) {
+      if (buffer[i] == '\r') {
+        return i + 1;
       }
-      writer.println();
     }
-    writer.flush();
+    return -1;
   }
 
 
-  protected void writeCSV(PrintWriter writer) {
-    if (columnTitles != null) {
-      for (int col = 0; col < columns.length; col++) {
-        if (col != 0) {
-          writer.print(',');
-        }
-        if (columnTitles[col] != null) {
-          writeEntryCSV(writer, columnTitles[col]);
-        }
-      }
-      writer.println();
+  static private int nextLineBreak(byte[] buffer, int index, int stop) {
+    while (index < stop && buffer[index] != '\n' && buffer[index] != '\r') {
+      index++;
     }
-    for (int row = 0; row < rowCount; row++) {
-      for (int col = 0; col < getColumnCount(); col++) {
-        if (col != 0) {
-          writer.print(',');
+    return index;
+  }
+
+
+  static private int skipLineBreak(byte[] buffer, int index, int stop) {
+    if (index < stop && buffer[index] == '\r') {
+      index++;
+    }
+    if (index < stop && buffer[index] == '\n') {
+      index++;
+    }
+    return index;
+  }
+
+
+  /**
+   * Copy the rows of a parsed chunk onto the end of this table, starting at
+   * 'row'. Category columns are re-indexed, since each chunk has its own
+   * set of categories. Returns the new number of rows.
+   */
+  protected int appendChunk(int row, Table chunk) {
+    checkWritable();
+    if (chunk.parseFailure != null) {
+      throw new RuntimeException("Error reading table on line " +
+                                 (row + chunk.rowCount),
+                                 chunk.parseFailure);
+    }
+    int count = chunk.rowCount;
+    invalidateIndexes(-1);
+    ensureColumn(chunk.getColumnCount() - 1);
+    if (row + count > getRowCount()) {
+      setRowCount(Math.max(row + count, row << 1));
+    }
+    for (int col = 0; col < chunk.getColumnCount(); col++) {
+      Object source = chunk.columns[col];
+      if (columnTypes[col] == CATEGORY) {
+        HashMapBlows categories = chunk.columnCategories[col];
+        int[] remap = new int[categories.size()];
+        for (int i = 0; i < remap.length; i++) {
+          remap[i] = columnCategories[col].index(categories.key(i));
         }
-        String entry = getString(row, col);
-        // just write null entries as blanks, rather than spewing 'null'
-        // all over the spreadsheet file.
-        if (entry != null) {
-          writeEntryCSV(writer, entry);
+        int[] indexData = (int[]) source;
+        int[] target = (int[]) columns[col];
+        for (int i = 0; i < count; i++) {
+          int index = indexData[i];
+          target[row + i] = (index == missingCategory) ? index : remap[index];
         }
+      } else {
+        System.arraycopy(source, 0, columns[col], row, count);
       }
-      // Prints the newline for the row, even if it's missing
-      writer.println();
     }
-    writer.flush();
+    return row + count;
   }
 
 
-  protected void writeEntryCSV(PrintWriter writer, String entry) {
-    if (entry != null) {
-      if (entry.indexOf('\"') != -1) {  // convert quotes to double quotes
-        char[] c = entry.toCharArray();
-        writer.print('\"');
-        for (int i = 0; i < c.length; i++) {
-          if (c[i] == '\"') {
-            writer.print("\"\"");
-          } else {
-            writer.print(c[i]);
-          }
-        }
-        writer.print('\"');
+  /** Set when a chunk handed to ChunkParser could not be read. */
+  Exception parseFailure;
 
-        // add quotes if commas or CR/LF are in the entry
-      } else if (entry.indexOf(',') != -1  ||
-                 entry.indexOf('\n') != -1 ||
-                 entry.indexOf('\r') != -1) {
-        writer.print('\"');
-        writer.print(entry);
-        writer.print('\"');
 
+  /**
+   * Parses one range of lines into a Table that uses the same column types
+   * and missing values as its parent, using the same setRow() path as
+   * parseBasic() so the results are identical.
+   */
+  @SuppressWarnings("serial")
+  static class ChunkParser extends RecursiveTask<Table> {
+    Table parent;
+    byte[] chunk;
+    boolean tsv;
+
+    ChunkParser(Table parent, byte[] chunk, boolean tsv) {
+      this.parent = parent;
+      this.chunk = chunk;
+      this.tsv = tsv;
+    }
+
+    @Override
+    protected Table compute() {
+      Table table = new Table();
+      table.missingString = parent.missingString;
+      table.missingInt = parent.missingInt;
+      table.missingLong = parent.missingLong;
+      table.missingFloat = parent.missingFloat;
+      table.missingDouble = parent.missingDouble;
+      table.missingCategory = parent.missingCategory;
+      if (parent.columnTypes.length != 0) {
+        table.setColumnTypes(parent.columnTypes);
+      }
 
-        // add quotes if leading or trailing space
-      } else if ((entry.length() > 0) &&
-                 (entry.charAt(0) == ' ' ||
-                  entry.charAt(entry.length() - 1) == ' ')) {
-        writer.print('\"');
-        writer.print(entry);
-        writer.print('\"');
+      int lineCount = 0;
+      for (int i = 0; i < chunk.length; i = skipLineBreak(chunk, i, chunk.length)) {
+        i = nextLineBreak(chunk, i, chunk.length);
+        lineCount++;
+      }
+      table.setRowCount(lineCount);
 
-      } else {
-        writer.print(entry);
+      int row = 0;
+      try {
+        String text = new String(chunk, "UTF-8");
+        chunk = null;  // let this go as early as possible
+        int index = 0;
+        int length = text.length();
+        while (index < length) {
+          int stop = index;
+          char c;
+          while (stop < length && (c = text.charAt(stop)) != '\n' && c != '\r') {
+            stop++;
+          }
+          String line = text.substring(index, stop);
+          table.setRow(row, tsv ? PApplet.split(line, '\t') : splitLineCSV(line));
+          row++;
+          if (stop < length && text.charAt(stop) == '\r') {
+            stop++;
+          }
+          if (stop < length && text.charAt(stop) == '\n') {
+            stop++;
+          }
+          index = stop;
+        }
+      } catch (Exception e) {
+        table.parseFailure = e;
       }
+      table.rowCount = row;
+      return table;
     }
   }
 
 
-  protected void writeHTML(PrintWriter writer) {
-    writer.println("<html>");
+  /**
+   * Read the rows of a table one at a time, without loading the whole thing.
+   * The same TableRow object is returned on each step of the iteration, and
+   * its contents are replaced each time, so copy out anything that should be
+   * kept. Supports the same "csv", "tsv", "bin", and "header" options as
+   * loadTable(), but not "newlines" or .ods files, nor binary files saved
+   * with the columnar option. Column types can be set by calling
+   * typedStream() on a dictionary table. The result can only be iterated
+   * once, and the stream is closed after the last row has been read.
+   *
+   * @nowebref
+   */
+  static public Iterable<TableRow> stream(InputStream input,
+                                          String options) throws IOException {
+    return new Table().typedStream(input, options);
+  }
 
-    writer.println("<head>");
-    writer.println("  <meta http-equiv=\"content-type\" content=\"text/html;charset=utf-8\" />");
-    writer.println("</head>");
 
-    writer.println("<body>");
-    writer.println("  <table>");
-    for (int row = 0; row < getRowCount(); row++) {
-      writer.println("    <tr>");
-      for (int col = 0; col < getColumnCount(); col++) {
-        String entry = getString(row, col);
-        writer.print("      <td>");
-        writeEntryHTML(writer, entry);
-        writer.println("      </td>");
-      }
-      writer.println("    </tr>");
-    }
-    writer.println("  </table>");
-    writer.println("</body>");
+  /**
+   * Same as stream(), but uses this table as a dictionary for the column
+   * titles and types, the same way that typedParse() does.
+   *
+   * @nowebref
+   */
+  public Iterable<TableRow> typedStream(InputStream input,
+                                        String options) throws IOException {
+    final Table buffer = new Table();
+    buffer.missingString = missingString;
+    buffer.missingInt = missingInt;
+    buffer.missingLong = missingLong;
+    buffer.missingFloat = missingFloat;
+    buffer.missingDouble = missingDouble;
+    buffer.missingCategory = missingCategory;
+    if (columnTypes.length != 0 && getRowCount() != 0) {
+      buffer.setColumnTypes(this);
+    }
+    final RowStream iterator = new RowStream(buffer, input, options);
 
-    writer.println("</hmtl>");
-    writer.flush();
+    return new Iterable<TableRow>() {
+      boolean used;
+
+      public Iterator<TableRow> iterator() {
+        if (used) {
+          throw new IllegalStateException("The rows of a streamed table can only be read once.");
+        }
+        used = true;
+        return iterator;
+      }
+    };
   }
 
 
-  protected void writeEntryHTML(PrintWriter writer, String entry) {
-    //char[] chars = entry.toCharArray();
-    for (char c : entry.toCharArray()) {  //chars) {
-      if (c == '<') {
-        writer.print("&lt;");
-      } else if (c == '>') {
-        writer.print("&gt;");
-      } else if (c == '&') {
-        writer.print("&amp;");
-      } else if (c == '\'') {
-        writer.print("&apos;");
-      } else if (c == '"') {
-        writer.print("&quot;");
+  /**
+   * Parses one line (or one binary record) at a time into the single row
+   * of a private Table, so that the usual conversions for each column type
+   * are used, and hands out a RowPointer to that row.
+   */
+  static class RowStream implements Iterator<TableRow> {
+    Table buffer;
+    RowPointer rp;
 
-      // not necessary with UTF-8?
-//      } else if (c < 32 || c > 127) {
-//        writer.print("&#");
-//        writer.print((int) c);
-//        writer.print(';');
+    BufferedReader reader;
+    DataInputStream input;
+    boolean tsv;
+
+    String line;  // next line to be parsed, if already read
+    int remaining;  // rows left in a binary file
+    int lineNumber;
+    boolean done;
+
+    RowStream(Table buffer, InputStream stream, String options) throws IOException {
+      this.buffer = buffer;
+
+      boolean header = false;
+      String extension = null;
+      if (options != null) {
+        for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+          if (opt.equals("tsv") || opt.equals("csv") || opt.equals("bin")) {
+            extension = opt;
+          } else if (opt.equals("header")) {
+            header = true;
+          } else if (opt.equals("newlines") || opt.equals("ods")) {
+            throw new IllegalArgumentException("'" + opt + "' tables cannot be streamed, use loadTable() instead");
+          } else if (opt.startsWith("dictionary=") || opt.equals("parallel") ||
+                     opt.equals("infer") || opt.startsWith("infer=") ||
+                     opt.equals("compact")) {
+            // handled elsewhere, or meaningless for one row at a time
+          } else {
+            throw new IllegalArgumentException("'" + opt + "' is not a valid option for loading a Table");
+          }
+        }
+      }
+      if (extension == null) {
+        throw new IllegalArgumentException("No extension specified for this Table");
+      }
+
+      if (extension.equals("bin")) {
+        input = new DataInputStream(new BufferedInputStream(stream));
+        int magic = input.readInt();
+        if (magic == COLUMNAR_MAGIC) {
+          input.close();
+          throw new IllegalArgumentException("Columnar binary tables cannot be streamed, use loadTable() instead");
+        }
+        if (magic != 0x9007AB1E) {
+          input.close();
+          throw new IOException("Not a compatible binary table (magic was " + PApplet.hex(magic) + ")");
+        }
+        remaining = buffer.readBinaryHeader(input);
+        for (int col = 0; col < buffer.getColumnCount(); col++) {
+          buffer.columns[col] = createColumn(buffer.columnTypes[col], 1);
+        }
+        buffer.rowCount = 1;
 
       } else {
-        writer.print(c);
+        tsv = extension.equals("tsv");
+        reader = PApplet.createReader(stream);
+        buffer.setRowCount(1);
+        if (header) {
+          String titles = reader.readLine();
+          if (titles != null) {
+            buffer.setColumnTitles(split(titles));
+          }
+          lineNumber++;
+        }
       }
+      rp = new RowPointer(buffer, 0);
     }
-  }
 
+    String[] split(String line) {
+      return tsv ? PApplet.split(line, '\t') : splitLineCSV(line);
+    }
 
-  protected void saveBinary(OutputStream os) throws IOException {
-    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os));
-    output.writeInt(0x9007AB1E);  // version
-    output.writeInt(getRowCount());
-    output.writeInt(getColumnCount());
-    if (columnTitles != null) {
-      output.writeBoolean(true);
-      for (String title : columnTitles) {
-        output.writeUTF(title);
+    public boolean hasNext() {
+      if (done) {
+        return false;
       }
-    } else {
-      output.writeBoolean(false);
-    }
-    for (int i = 0; i < getColumnCount(); i++) {
-      //System.out.println(i + " is " + columnTypes[i]);
-      output.writeInt(columnTypes[i]);
+      if (input != null) {
+        if (remaining == 0) {
+          close();
+        }
+      } else if (line == null) {
+        try {
+          line = reader.readLine();
+        } catch (IOException e) {
+          throw new RuntimeException("Error reading table on line " + lineNumber, e);
+        }
+        if (line == null) {
+          close();
+        }
+      }
+      return !done;
     }
 
-    for (int i = 0; i < getColumnCount(); i++) {
-      if (columnTypes[i] == CATEGORY) {
-        columnCategories[i].write(output);
+    public TableRow next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
       }
+      clearRow();
+      try {
+        if (input != null) {
+          readBinaryRow();
+          remaining--;
+        } else {
+          buffer.setRow(0, split(line));
+          line = null;
+        }
+      } catch (Exception e) {
+        throw new RuntimeException("Error reading table on line " + lineNumber, e);
+      }
+      lineNumber++;
+      return rp;
     }
-    if (missingString == null) {
-      output.writeBoolean(false);
-    } else {
-      output.writeBoolean(true);
-      output.writeUTF(missingString);
+
+    /** Empty out the previous row, in case the next one is shorter. */
+    void clearRow() {
+      for (int col = 0; col < buffer.columns.length; col++) {
+        switch (buffer.columnTypes[col]) {
+          case STRING: ((String[]) buffer.columns[col])[0] = null; break;
+          case INT:
+          case CATEGORY: ((int[]) buffer.columns[col])[0] = 0; break;
+          case LONG: ((long[]) buffer.columns[col])[0] = 0; break;
+          case FLOAT: ((float[]) buffer.columns[col])[0] = 0; break;
+          case DOUBLE: ((double[]) buffer.columns[col])[0] = 0; break;
+        }
+      }
     }
-    output.writeInt(missingInt);
-    output.writeLong(missingLong);
-    output.writeFloat(missingFloat);
-    output.writeDouble(missingDouble);
-    output.writeInt(missingCategory);
 
-    for (TableRow row : rows()) {
-      for (int col = 0; col < getColumnCount(); col++) {
-        switch (columnTypes[col]) {
+    void readBinaryRow() throws IOException {
+      for (int col = 0; col < buffer.columns.length; col++) {
+        switch (buffer.columnTypes[col]) {
         case STRING:
-          String str = row.getString(col);
-          if (str == null) {
-            output.writeBoolean(false);
-          } else {
-            output.writeBoolean(true);
-            output.writeUTF(str);
+          String str = null;
+          if (input.readBoolean()) {
+            str = input.readUTF();
           }
+          buffer.setString(0, col, str);
           break;
         case INT:
-          output.writeInt(row.getInt(col));
+        case CATEGORY:
+          buffer.setInt(0, col, input.readInt());
           break;
         case LONG:
-          output.writeLong(row.getLong(col));
+          buffer.setLong(0, col, input.readLong());
           break;
         case FLOAT:
-          output.writeFloat(row.getFloat(col));
+          buffer.setFloat(0, col, input.readFloat());
           break;
         case DOUBLE:
-          output.writeDouble(row.getDouble(col));
-          break;
-        case CATEGORY:
-          output.writeInt(columnCategories[col].index(row.getString(col)));
+          buffer.setDouble(0, col, input.readDouble());
           break;
         }
       }
     }
 
-    output.flush();
-    output.close();
-  }
-
-
-  protected void loadBinary(InputStream is) throws IOException {
-    DataInputStream input = new DataInputStream(new BufferedInputStream(is));
-
-    int magic = input.readInt();
-    if (magic != 0x9007AB1E) {
-      throw new IOException("Not a compatible binary table (magic was " + PApplet.hex(magic) + ")");
-    }
-    int rowCount = input.readInt();
-    setRowCount(rowCount);
-    int columnCount = input.readInt();
-    setColumnCount(columnCount);
-
-    boolean hasTitles = input.readBoolean();
-    if (hasTitles) {
-      columnTitles = new String[getColumnCount()];
-      for (int i = 0; i < columnCount; i++) {
-        //columnTitles[i] = input.readUTF();
-        setColumnTitle(i, input.readUTF());
-      }
-    }
-    for (int column = 0; column < columnCount; column++) {
-      int newType = input.readInt();
-      columnTypes[column] = newType;
-      switch (newType) {
-      case INT:
-        columns[column] = new int[rowCount];
-        break;
-      case LONG:
-        columns[column] = new long[rowCount];;
-        break;
-      case FLOAT:
-        columns[column] = new float[rowCount];;
-        break;
-      case DOUBLE:
-        columns[column] = new double[rowCount];;
-        break;
-      case STRING:
-        columns[column] = new String[rowCount];;
-        break;
-      case CATEGORY:
-        columns[column] = new int[rowCount];;
-        break;
-      default:
-        throw new IllegalArgumentException(newType + " is not a valid column type.");
+    void close() {
+      done = true;
+      try {
+        if (reader != null) {
+          reader.close();
+        } else {
+          input.close();
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
       }
     }
 
-    for (int i = 0; i < columnCount; i++) {
-      if (columnTypes[i] == CATEGORY) {
-        columnCategories[i] = new HashMapBlows(input);
-      }
+    public void remove() {
+      throw new IllegalArgumentException("remove() not supported");
     }
+  }
 
-    if (input.readBoolean()) {
-      missingString = input.readUTF();
-    } else {
-      missingString = null;
-    }
-    missingInt = input.readInt();
-    missingLong = input.readLong();
-    missingFloat = input.readFloat();
-    missingDouble = input.readDouble();
-    missingCategory = input.readInt();
 
-    for (int row = 0; row < rowCount; row++) {
-      for (int col = 0; col < columnCount; col++) {
-        switch (columnTypes[col]) {
-        case STRING:
-          String str = null;
-          if (input.readBoolean()) {
-            str = input.readUTF();
+//  public void convertTSV(BufferedReader reader, File outputFile) throws IOException {
+//    convertBasic(reader, true, outputFile);
+//  }
+
+
+  protected void parseAwfulCSV(BufferedReader reader,
+                               boolean header) throws IOException {
+    char[] c = new char[100];
+    int count = 0;
+    boolean insideQuote = false;
+    int row = 0;
+    int col = 0;
+    int ch;
+    while ((ch = reader.read()) != -1) {
+      if (insideQuote) {
+        if (ch == '\"') {
+          // this is either the end of a quoted entry, or a quote character
+          reader.mark(1);
+          if (reader.read() == '\"') {
+            // it's "", which means a quote character
+            if (count == c.length) {
+              c = PApplet.expand(c);
+            }
+            c[count++] = '\"';
+          } else {
+            // nope, just the end of a quoted csv entry
+            reader.reset();
+            insideQuote = false;
+            // TODO nothing here that prevents bad csv data from showing up
+            // after the quote and before the comma...
+//            set(row, col, new String(c, 0, count));
+//            count = 0;
+//            col++;
+//            insideQuote = false;
+          }
+        } else {  // inside a quote, but the character isn't a quote
+          if (count == c.length) {
+            c = PApplet.expand(c);
+          }
+          c[count++] = (char) ch;
+        }
+      } else {  // not inside a quote
+        if (ch == '\"') {
+          insideQuote = true;
+
+        } else if (ch == '\r' || ch == '\n') {
+          if (ch == '\r') {
+            // check to see if next is a '\n'
+            reader.mark(1);
+            if (reader.read() != '\n') {
+              reader.reset();
+            }
+          }
+          setString(row, col, new String(c, 0, count));
+          count = 0;
+          if (row == 0 && header) {
+            // Use internal row removal (efficient because only one row).
+            removeTitleRow();
+            // Un-set the header variable so that next time around, we don't
+            // just get stuck into a loop, removing the 0th row repeatedly.
+            header = false;
+          }
+          row++;
+          col = 0;
+
+        } else if (ch == ',') {
+          setString(row, col, new String(c, 0, count));
+          count = 0;
+          // starting a new column, make sure we have room
+          col++;
+          ensureColumn(col);
+
+        } else {  // just a regular character, add it
+          if (count == c.length) {
+            c = PApplet.expand(c);
+          }
+          c[count++] = (char) ch;
+        }
+      }
+    }
+    // catch any leftovers
+    if (count > 0) {
+      setString(row, col, new String(c, 0, count));
+    }
+  }
+
+
+  /** True if a CSV line ends partway through a quoted value. */
+  static protected boolean insideQuote(String line) {
+    boolean quote = false;
+    for (int i = 0; i < line.length(); i++) {
+      if (line.charAt(i) == '\"') {
+        quote = !quote;
+      }
+    }
+    return quote;
+  }
+
+
+  /**
+   * Parse a line of text as comma-separated values, returning each value as
+   * one entry in an array of String objects. Remove quotes from entries that
+   * begin and end with them, and convert 'escaped' quotes to actual quotes.
+   * @param line line of text to be parsed
+   * @return an array of the individual values formerly separated by commas
+   */
+  static protected String[] splitLineCSV(String line) {
+    char[] c = line.toCharArray();
+    int rough = 1;  // at least one
+    boolean quote = false;
+    for (int i = 0; i < c.length; i++) {
+      if (!quote && (c[i] == ',')) {
+        rough++;
+      } else if (c[i] == '\"') {
+        quote = !quote;
+      }
+    }
+    String[] pieces = new String[rough];
+    int pieceCount = 0;
+    int offset = 0;
+    while (offset < c.length) {
+      int start = offset;
+      int stop = nextComma(c, offset);
+      offset = stop + 1;  // next time around, need to step over the comment
+      if (c[start] == '\"' && c[stop-1] == '\"') {
+        start++;
+        stop--;
+      }
+      int i = start;
+      int ii = start;
+      while (i < stop) {
+        if (c[i] == '\"') {
+          i++;  // skip over pairs of double quotes become one
+        }
+        if (i != ii) {
+          c[ii] = c[i];
+        }
+        i++;
+        ii++;
+      }
+      String s = new String(c, start, ii - start);
+      pieces[pieceCount++] = s;
+    }
+    // make any remaining entries blanks instead of nulls
+    for (int i = pieceCount; i < pieces.length; i++) {
+      pieces[i] = "";
+
+    }
+    return pieces;
+  }
+
+
+  static protected int nextComma(char[] c, int index) {
+    boolean quote = false;
+    for (int i = index; i < c.length; i++) {
+      if (!quote && (c[i] == ',')) {
+        return i;
+      } else if (c[i] == '\"') {
+        quote = !quote;
+      }
+    }
+    return c.length;
+  }
+
+
+  /**
+   * Read a .ods (OpenDoc spreadsheet) zip file from an InputStream, and
+   * return the InputStream for content.xml contained inside.
+   */
+  private InputStream odsFindContentXML(InputStream input) {
+    ZipInputStream zis = new ZipInputStream(input);
+    ZipEntry entry = null;
+    try {
+      while ((entry = zis.getNextEntry()) != null) {
+        if (entry.getName().equals("content.xml")) {
+          return zis;
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return null;
+  }
+
+
+  /**
+   * Read the first worksheet (or the one named by 'worksheet') of an .ods
+   * file. content.xml is read with a pull parser instead of being loaded as
+   * a DOM, other worksheets are skipped without being stored, and each row
+   * goes straight into the (possibly typed) columns as it's read. Repeated
+   * rows and cells are only filled in when they hold a value, so the empty
+   * rows and columns that pad out most sheets cost nothing.
+   *
+   * @param inferRows same as for parseBasic()
+   */
+  protected void odsParse(InputStream input, String worksheet, int inferRows) {
+    InputStream contentStream = odsFindContentXML(input);
+    if (contentStream == null) {
+      throw new RuntimeException("No content.xml found in the ODS file.");
+    }
+    boolean found = false;
+    try {
+      XMLStreamReader reader =
+        XMLReader.createFactory().createXMLStreamReader(contentStream);
+      try {
+        // table files will have multiple sheets..
+        // <table:table table:name="Sheet1" table:style-name="ta1" table:print="false">
+        // <table:table table:name="Sheet2" table:style-name="ta1" table:print="false">
+        // <table:table table:name="Sheet3" table:style-name="ta1" table:print="false">
+        while (!found && reader.hasNext()) {
+          if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+              XMLReader.elementName(reader).equals("table:table")) {
+            String name = XMLReader.getAttribute(reader, "table:name");
+            if (worksheet == null || worksheet.equals(name)) {
+              odsParseSheet(reader, inferRows);
+              found = true;
+            } else {
+              XMLReader.skipElement(reader);
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new RuntimeException("Could not read the ODS file", e);
+    }
+    if (!found) {
+      if (worksheet == null) {
+        throw new RuntimeException("No worksheets found in the ODS file.");
+      } else {
+        throw new RuntimeException("No worksheet named " + worksheet +
+                                   " found in the ODS file.");
+      }
+    }
+  }
+
+
+  /**
+   * Parses a single sheet, starting just after its table:table tag, and
+   * finishing on its end tag.
+   */
+  private void odsParseSheet(XMLStreamReader reader,
+                             int inferRows) throws XMLStreamException {
+    if (rowCount == 0) {
+      setRowCount(10);
+    }
+    int inferColumn = columns.length;
+    boolean inferring = inferRows != 0;
+    boolean widening = false;
+
+    int rowIndex = 0;  // position in the sheet, counting empty rows
+    int usedRows = 0;  // rows up to the last one that had a value
+    String[] cells = new String[10];
+
+    int event;
+    while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+      if (event != XMLStreamConstants.START_ELEMENT) {
+        continue;
+      }
+      if (!XMLReader.elementName(reader).equals("table:table-row")) {
+        XMLReader.skipElement(reader);  // column styles and so on
+        continue;
+      }
+      int rowRepeat = odsRepeat(reader, "table:number-rows-repeated");
+
+      // read the cells, leaving off any empty ones at the end
+      int cellCount = 0;
+      int columnIndex = 0;
+      while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+        int cellRepeat = odsRepeat(reader, "table:number-columns-repeated");
+        String cellData = odsCellContent(reader);
+        if (cellData != null) {
+          int stop = columnIndex + cellRepeat;
+          if (stop > cells.length) {
+            cells = PApplet.expand(cells, Math.max(cells.length << 1, stop));
+          }
+          Arrays.fill(cells, cellCount, columnIndex, null);
+          Arrays.fill(cells, columnIndex, stop, cellData);
+          cellCount = stop;
+        }
+        columnIndex += cellRepeat;
+      }
+
+      if (cellCount != 0) {
+        String[] pieces = PApplet.subset(cells, 0, cellCount);
+        for (int row = rowIndex; row < rowIndex + rowRepeat; row++) {
+          if (row >= getRowCount()) {
+            setRowCount(Math.max(row + 1, getRowCount() << 1));
+          }
+          if (inferring && row >= inferRows) {
+            // the sample is complete, so choose the types
+            inferColumnTypes(inferColumn, inferRows);
+            inferring = false;
+            widening = true;
+          }
+          if (widening) {
+            setRowWidening(row, pieces);
+          } else {
+            setRow(row, pieces);
           }
-          setString(row, col, str);
-          break;
-        case INT:
-          setInt(row, col, input.readInt());
-          break;
-        case LONG:
-          setLong(row, col, input.readLong());
-          break;
-        case FLOAT:
-          setFloat(row, col, input.readFloat());
-          break;
-        case DOUBLE:
-          setDouble(row, col, input.readDouble());
-          break;
-        case CATEGORY:
-          int index = input.readInt();
-          //String name = columnCategories[col].key(index);
-          setInt(row, col, index);
-          break;
         }
+        usedRows = rowIndex + rowRepeat;
       }
+      rowIndex += rowRepeat;
+    }
+
+    // empty rows at the end of the sheet are left off
+    if (usedRows != getRowCount()) {
+      setRowCount(usedRows);
+    }
+    if (inferring) {
+      // fewer rows than the sample size, so use all of them
+      inferColumnTypes(inferColumn, usedRows);
+    }
+  }
+
+
+  private int odsRepeat(XMLStreamReader reader, String attribute) {
+    String repeat = XMLReader.getAttribute(reader, attribute);
+    return (repeat == null) ? 1 : PApplet.parseInt(repeat, 1);
+  }
+
+
+  /**
+   * Get the value for the cell that was just started, and move to its end
+   * tag. If the cell has an office:value, that's used, otherwise it's the
+   * text of its text:p elements (separated by newlines), with any extra
+   * tags inside stripped out. Returns null for an empty cell.
+   */
+  private String odsCellContent(XMLStreamReader reader) throws XMLStreamException {
+    // <table:table-cell table:formula="of:=SUM([.E7:.E8])" office:value-type="float" office:value="4150">
+    // <text:p>4150.00</text:p>
+    // </table:table-cell>
+    String value = XMLReader.getAttribute(reader, "office:value");
+    if (value != null) {
+      XMLReader.skipElement(reader);
+      return value;
+    }
+    StringBuilder text = null;
+    boolean inParagraph = false;
+    int level = 1;
+    while (level != 0) {
+      switch (reader.next()) {
+      case XMLStreamConstants.START_ELEMENT:
+        level++;
+        if (level == 2 && XMLReader.elementName(reader).equals("text:p")) {
+          if (text == null) {
+            text = new StringBuilder();
+          } else {
+            text.append('\n');
+          }
+          inParagraph = true;
+        }
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        level--;
+        if (level == 1) {
+          inParagraph = false;
+        }
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.CDATA:
+      case XMLStreamConstants.SPACE:
+        if (inParagraph) {
+          text.append(reader.getText());
+        }
+        break;
+      }
+    }
+    return (text == null) ? null : text.toString();
+  }
+
+
+  // A 'Class' object is used here, so the syntax for this function is:
+  // Table t = loadTable("cars3.tsv", "header");
+  // Record[] records = (Record[]) t.parse(Record.class);
+  // While t.parse("Record") might be nicer, the class is likely to be an
+  // inner class (another tab in a PDE sketch) or even inside a package,
+  // so additional information would be needed to locate it. The name of the
+  // inner class would be "SketchName$Record" which isn't acceptable syntax
+  // to make people use. Better to just introduce the '.class' syntax.
+
+  // Unlike the Table class itself, this accepts char and boolean fields in
+  // the target class, since they're much more prevalent, and don't require
+  // a zillion extra methods and special cases in the rest of the class here.
+
+  // since this is likely an inner class, needs a reference to its parent,
+  // because that's passed to the constructor parameter (inserted by the
+  // compiler) of an inner class by the runtime.
+
+  /** incomplete, do not use */
+  public void parseInto(Object enclosingObject, String fieldName) {
+    Class<?> target = null;
+    Object outgoing = null;
+    Field targetField = null;
+    try {
+      // Object targetObject,
+      // Class target -> get this from the type of fieldName
+//      Class sketchClass = sketch.getClass();
+      Class<?> sketchClass = enclosingObject.getClass();
+      targetField = sketchClass.getDeclaredField(fieldName);
+//      PApplet.println("found " + targetField);
+      Class<?> targetArray = targetField.getType();
+      if (!targetArray.isArray()) {
+        // fieldName is not an array
+      } else {
+        target = targetArray.getComponentType();
+        outgoing = Array.newInstance(target, getRowCount());
+      }
+    } catch (NoSuchFieldException e) {
+      e.printStackTrace();
+    } catch (SecurityException e) {
+      e.printStackTrace();
+    }
+
+//    Object enclosingObject = sketch;
+//    PApplet.println("enclosing obj is " + enclosingObject);
+    Class<?> enclosingClass = target.getEnclosingClass();
+    Constructor<?> con = null;
+
+    try {
+      if (enclosingClass == null) {
+        con = target.getDeclaredConstructor();  //new Class[] { });
+//        PApplet.println("no enclosing class");
+      } else {
+        con = target.getDeclaredConstructor(new Class[] { enclosingClass });
+//        PApplet.println("enclosed by " + enclosingClass.getName());
+      }
+      if (!con.isAccessible()) {
+//        System.out.println("setting constructor to public");
+        con.setAccessible(true);
+      }
+    } catch (SecurityException e) {
+      e.printStackTrace();
+    } catch (NoSuchMethodException e) {
+      e.printStackTrace();
+    }
+
+    Field[] fields = target.getDeclaredFields();
+    ArrayList<Field> inuse = new ArrayList<Field>();
+    for (Field field : fields) {
+      String name = field.getName();
+      if (getColumnIndex(name, false) != -1) {
+//        System.out.println("found field " + name);
+        if (!field.isAccessible()) {
+//          PApplet.println("  changing field access");
+          field.setAccessible(true);
+        }
+        inuse.add(field);
+      } else {
+//        System.out.println("skipping field " + name);
+      }
+    }
+
+    int index = 0;
+    try {
+      for (TableRow row : rows()) {
+        Object item = null;
+        if (enclosingClass == null) {
+          //item = target.newInstance();
+          item = con.newInstance();
+        } else {
+          item = con.newInstance(new Object[] { enclosingObject });
+        }
+        //Object item = defaultCons.newInstance(new Object[] { });
+        for (Field field : inuse) {
+          String name = field.getName();
+          //PApplet.println("gonna set field " + name);
+
+          if (field.getType() == String.class) {
+            field.set(item, row.getString(name));
+
+          } else if (field.getType() == Integer.TYPE) {
+            field.setInt(item, row.getInt(name));
+
+          } else if (field.getType() == Long.TYPE) {
+            field.setLong(item, row.getLong(name));
+
+          } else if (field.getType() == Float.TYPE) {
+            field.setFloat(item, row.getFloat(name));
+
+          } else if (field.getType() == Double.TYPE) {
+            field.setDouble(item, row.getDouble(name));
+
+          } else if (field.getType() == Boolean.TYPE) {
+            String content = row.getString(name);
+            if (content != null) {
+              // Only bother setting if it's true,
+              // otherwise false by default anyway.
+              if (content.toLowerCase().equals("true") ||
+                  content.equals("1")) {
+                field.setBoolean(item, true);
+              }
+            }
+//            if (content == null) {
+//              field.setBoolean(item, false);  // necessary?
+//            } else if (content.toLowerCase().equals("true")) {
+//              field.setBoolean(item, true);
+//            } else if (content.equals("1")) {
+//              field.setBoolean(item, true);
+//            } else {
+//              field.setBoolean(item, false);  // necessary?
+//            }
+          } else if (field.getType() == Character.TYPE) {
+            String content = row.getString(name);
+            if (content != null && content.length() > 0) {
+              // Otherwise set to \0 anyway
+              field.setChar(item, content.charAt(0));
+            }
+          }
+        }
+//        list.add(item);
+        Array.set(outgoing, index++, item);
+      }
+      if (!targetField.isAccessible()) {
+//        PApplet.println("setting target field to public");
+        targetField.setAccessible(true);
+      }
+      // Set the array in the sketch
+//      targetField.set(sketch, outgoing);
+      targetField.set(enclosingObject, outgoing);
+
+    } catch (InstantiationException e) {
+      e.printStackTrace();
+    } catch (IllegalAccessException e) {
+      e.printStackTrace();
+    } catch (IllegalArgumentException e) {
+      e.printStackTrace();
+    } catch (InvocationTargetException e) {
+      e.printStackTrace();
+    }
+  }
+
+
+  public boolean save(File file, String options) throws IOException {
+    return save(PApplet.createOutput(file),
+                Table.extensionOptions(false, file.getName(), options));
+  }
+
+
+  public boolean save(OutputStream output, String options) {
+    PrintWriter writer = PApplet.createWriter(output);
+    String extension = null;
+    if (options == null) {
+      throw new IllegalArgumentException("No extension specified for saving this Table");
+    }
+
+    String[] opts = PApplet.trim(PApplet.split(options, ','));
+    // Only options for save are the extension and 'columnar' (for the
+    // memory-mappable binary layout), so the extension is the last other one
+    boolean columnar = false;
+    for (String opt : opts) {
+      if (opt.equals("columnar")) {
+        columnar = true;
+      } else {
+        extension = opt;
+      }
+    }
+    if (extension == null) {
+      throw new IllegalArgumentException("No extension specified for saving this Table");
+    }
+    if (columnar && !extension.equals("bin")) {
+      throw new IllegalArgumentException("The columnar option can only be used with bin");
+    }
+    boolean found = false;
+    for (String ext : saveExtensions) {
+      if (extension.equals(ext)) {
+        found = true;
+        break;
+      }
+    }
+    // Not providing a fallback; let's make users specify an extension
+    if (!found) {
+      throw new IllegalArgumentException("'" + extension + "' not available for Table");
+    }
+
+    if (extension.equals("csv")) {
+      writeCSV(writer);
+    } else if (extension.equals("tsv")) {
+      writeTSV(writer);
+    } else if (extension.equals("html")) {
+      writeHTML(writer);
+    } else if (extension.equals("bin")) {
+      try {
+        if (columnar) {
+          saveColumnar(output);
+        } else {
+          saveBinary(output);
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+        return false;
+      }
+    }
+    writer.flush();
+    writer.close();
+    return true;
+  }
+
+
+  protected void writeTSV(PrintWriter writer) {
+    if (columnTitles != null) {
+      for (int col = 0; col < columns.length; col++) {
+        if (col != 0) {
+          writer.print('\t');
+        }
+        if (columnTitles[col] != null) {
+          writer.print(columnTitles[col]);
+        }
+      }
+      writer.println();
+    }
+    for (int row = 0; row < rowCount; row++) {
+      for (int col = 0; col < getColumnCount(); col++) {
+        if (col != 0) {
+          writer.print('\t');
+        }
+        String entry = getString(row, col);
+        // just write null entries as blanks, rather than spewing 'null'
+        // all over the spreadsheet file.
+        if (entry != null) {
+          writer.print(entry);
+        }
+      }
+      writer.println();
+    }
+    writer.flush();
+  }
+
+
+  protected void writeCSV(PrintWriter writer) {
+    if (columnTitles != null) {
+      for (int col = 0; col < columns.length; col++) {
+        if (col != 0) {
+          writer.print(',');
+        }
+        if (columnTitles[col] != null) {
+          writeEntryCSV(writer, columnTitles[col]);
+        }
+      }
+      writer.println();
+    }
+    for (int row = 0; row < rowCount; row++) {
+      for (int col = 0; col < getColumnCount(); col++) {
+        if (col != 0) {
+          writer.print(',');
+        }
+        String entry = getString(row, col);
+        // just write null entries as blanks, rather than spewing 'null'
+        // all over the spreadsheet file.
+        if (entry != null) {
+          writeEntryCSV(writer, entry);
+        }
+      }
+      // Prints the newline for the row, even if it's missing
+      writer.println();
+    }
+    writer.flush();
+  }
+
+
+  protected void writeEntryCSV(PrintWriter writer, String entry) {
+    if (entry != null) {
+      if (entry.indexOf('\"') != -1) {  // convert quotes to double quotes
+        char[] c = entry.toCharArray();
+        writer.print('\"');
+        for (int i = 0; i < c.length; i++) {
+          if (c[i] == '\"') {
+            writer.print("\"\"");
+          } else {
+            writer.print(c[i]);
+          }
+        }
+        writer.print('\"');
+
+        // add quotes if commas or CR/LF are in the entry
+      } else if (entry.indexOf(',') != -1  ||
+                 entry.indexOf('\n') != -1 ||
+                 entry.indexOf('\r') != -1) {
+        writer.print('\"');
+        writer.print(entry);
+        writer.print('\"');
+
+
+        // add quotes if leading or trailing space
+      } else if ((entry.length() > 0) &&
+                 (entry.charAt(0) == ' ' ||
+                  entry.charAt(entry.length() - 1) == ' ')) {
+        writer.print('\"');
+        writer.print(entry);
+        writer.print('\"');
+
+      } else {
+        writer.print(entry);
+      }
+    }
+  }
+
+
+  protected void writeHTML(PrintWriter writer) {
+    writer.println("<html>");
+
+    writer.println("<head>");
+    writer.println("  <meta http-equiv=\"content-type\" content=\"text/html;charset=utf-8\" />");
+    writer.println("</head>");
+
+    writer.println("<body>");
+    writer.println("  <table>");
+    for (int row = 0; row < getRowCount(); row++) {
+      writer.println("    <tr>");
+      for (int col = 0; col < getColumnCount(); col++) {
+        String entry = getString(row, col);
+        writer.print("      <td>");
+        writeEntryHTML(writer, entry);
+        writer.println("      </td>");
+      }
+      writer.println("    </tr>");
+    }
+    writer.println("  </table>");
+    writer.println("</body>");
+
+    writer.println("</hmtl>");
+    writer.flush();
+  }
+
+
+  protected void writeEntryHTML(PrintWriter writer, String entry) {
+    //char[] chars = entry.toCharArray();
+    for (char c : entry.toCharArray()) {  //chars) {
+      if (c == '<') {
+        writer.print("&lt;");
+      } else if (c == '>') {
+        writer.print("&gt;");
+      } else if (c == '&') {
+        writer.print("&amp;");
+      } else if (c == '\'') {
+        writer.print("&apos;");
+      } else if (c == '"') {
+        writer.print("&quot;");
+
+      // not necessary with UTF-8?
+//      } else if (c < 32 || c > 127) {
+//        writer.print("&#");
+//        writer.print((int) c);
+//        writer.print(';');
+
+      } else {
+        writer.print(c);
+      }
+    }
+  }
+
+
+  protected void saveBinary(OutputStream os) throws IOException {
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os));
+    output.writeInt(0x9007AB1E);  // version
+    writeBinaryHeader(output);
+
+    for (TableRow row : rows()) {
+      for (int col = 0; col < getColumnCount(); col++) {
+        switch (columnTypes[col]) {
+        case STRING:
+          String str = row.getString(col);
+          if (str == null) {
+            output.writeBoolean(false);
+          } else {
+            output.writeBoolean(true);
+            output.writeUTF(str);
+          }
+          break;
+        case INT:
+          output.writeInt(row.getInt(col));
+          break;
+        case LONG:
+          output.writeLong(row.getLong(col));
+          break;
+        case FLOAT:
+          output.writeFloat(row.getFloat(col));
+          break;
+        case DOUBLE:
+          output.writeDouble(row.getDouble(col));
+          break;
+        case CATEGORY:
+          output.writeInt(columnCategories[col].index(row.getString(col)));
+          break;
+        }
+      }
+    }
+
+    output.flush();
+    output.close();
+  }
+
+
+  /**
+   * Everything after the magic number that's shared by both binary formats:
+   * the size of the table, titles, types, categories, and missing values.
+   */
+  protected void writeBinaryHeader(DataOutputStream output) throws IOException {
+    output.writeInt(getRowCount());
+    output.writeInt(getColumnCount());
+    if (columnTitles != null) {
+      output.writeBoolean(true);
+      for (String title : columnTitles) {
+        output.writeUTF(title);
+      }
+    } else {
+      output.writeBoolean(false);
+    }
+    for (int i = 0; i < getColumnCount(); i++) {
+      //System.out.println(i + " is " + columnTypes[i]);
+      output.writeInt(columnTypes[i]);
+    }
+
+    for (int i = 0; i < getColumnCount(); i++) {
+      if (columnTypes[i] == CATEGORY) {
+        columnCategories[i].write(output);
+      }
+    }
+    if (missingString == null) {
+      output.writeBoolean(false);
+    } else {
+      output.writeBoolean(true);
+      output.writeUTF(missingString);
+    }
+    output.writeInt(missingInt);
+    output.writeLong(missingLong);
+    output.writeFloat(missingFloat);
+    output.writeDouble(missingDouble);
+    output.writeInt(missingCategory);
+  }
+
+
+  protected void loadBinary(InputStream is) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(is));
+
+    int magic = input.readInt();
+    if (magic == COLUMNAR_MAGIC) {
+      readColumnar(input);
+      return;
+    }
+    if (magic != 0x9007AB1E) {
+      throw new IOException("Not a compatible binary table (magic was " + PApplet.hex(magic) + ")");
+    }
+    int rowCount = readBinaryHeader(input);
+    for (int column = 0; column < getColumnCount(); column++) {
+      columns[column] = createColumn(columnTypes[column], rowCount);
+    }
+    this.rowCount = rowCount;
+    int columnCount = getColumnCount();
+
+    for (int row = 0; row < rowCount; row++) {
+      for (int col = 0; col < columnCount; col++) {
+        switch (columnTypes[col]) {
+        case STRING:
+          String str = null;
+          if (input.readBoolean()) {
+            str = input.readUTF();
+          }
+          setString(row, col, str);
+          break;
+        case INT:
+          setInt(row, col, input.readInt());
+          break;
+        case LONG:
+          setLong(row, col, input.readLong());
+          break;
+        case FLOAT:
+          setFloat(row, col, input.readFloat());
+          break;
+        case DOUBLE:
+          setDouble(row, col, input.readDouble());
+          break;
+        case CATEGORY:
+          int index = input.readInt();
+          //String name = columnCategories[col].key(index);
+          setInt(row, col, index);
+          break;
+        }
+      }
+    }
+
+    input.close();
+  }
+
+
+  /**
+   * Read the portion of the header shared by both binary formats. Sets the
+   * column count, titles, types, categories, and missing values, but leaves
+   * the column data itself unallocated. Returns the number of rows.
+   */
+  protected int readBinaryHeader(DataInputStream input) throws IOException {
+    int rowCount = input.readInt();
+    int columnCount = input.readInt();
+    setColumnCount(columnCount);
+
+    boolean hasTitles = input.readBoolean();
+    if (hasTitles) {
+      columnTitles = new String[getColumnCount()];
+      for (int i = 0; i < columnCount; i++) {
+        //columnTitles[i] = input.readUTF();
+        setColumnTitle(i, input.readUTF());
+      }
+    }
+    for (int column = 0; column < columnCount; column++) {
+      int newType = input.readInt();
+      if (newType < STRING || newType > CATEGORY) {
+        throw new IllegalArgumentException(newType + " is not a valid column type.");
+      }
+      columnTypes[column] = newType;
+    }
+
+    for (int i = 0; i < columnCount; i++) {
+      if (columnTypes[i] == CATEGORY) {
+        columnCategories[i] = new HashMapBlows(input);
+      }
+    }
+
+    if (input.readBoolean()) {
+      missingString = input.readUTF();
+    } else {
+      missingString = null;
+    }
+    missingInt = input.readInt();
+    missingLong = input.readLong();
+    missingFloat = input.readFloat();
+    missingDouble = input.readDouble();
+    missingCategory = input.readInt();
+    return rowCount;
+  }
+
+
+  /** Allocate the array used to store a column of the specified type. */
+  static protected Object createColumn(int type, int length) {
+    switch (type) {
+      case INT: return new int[length];
+      case LONG: return new long[length];
+      case FLOAT: return new float[length];
+      case DOUBLE: return new double[length];
+      case STRING: return new String[length];
+      case CATEGORY: return new int[length];
+      default:
+        throw new IllegalArgumentException(type + " is not a valid column type.");
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  // Column-major binary format, written by save() with the 'columnar' option.
+  // Same header as saveBinary(), followed by a directory with the offset and
+  // length (in bytes) of each column, then the columns themselves. Numeric
+  // columns are stored as raw big-endian arrays that start on 8-byte
+  // boundaries, so they can be memory-mapped and copied out in one step.
+  // String columns are a run of writeBoolean()/writeUTF() pairs.
+
+  static final int COLUMNAR_MAGIC = 0x9007C011;
+
+  /** File holding the columns that haven't been read yet, or null. */
+  File columnarFile;
+  long[] columnarOffsets;
+  long[] columnarLengths;
+
+
+  protected void saveColumnar(OutputStream os) throws IOException {
+    loadAllColumns();
+    int columnCount = getColumnCount();
+
+    ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    DataOutputStream header = new DataOutputStream(headerBytes);
+    header.writeInt(COLUMNAR_MAGIC);
+    writeBinaryHeader(header);
+    header.flush();
+
+    // String columns have to be encoded first to know how long they'll be
+    byte[][] stringBytes = new byte[columnCount][];
+    long[] lengths = new long[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      if (columnTypes[col] == STRING) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        for (int row = 0; row < rowCount; row++) {
+          String str = getString(row, col);
+          if (str == null) {
+            output.writeBoolean(false);
+          } else {
+            output.writeBoolean(true);
+            output.writeUTF(str);
+          }
+        }
+        output.flush();
+        stringBytes[col] = bytes.toByteArray();
+        lengths[col] = stringBytes[col].length;
+      } else {
+        lengths[col] = (long) rowCount * columnarWidth(columnTypes[col]);
+      }
+    }
+
+    long offset = columnarAlign(headerBytes.size() + 16L * columnCount);
+    long[] offsets = new long[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      offsets[col] = offset;
+      offset = columnarAlign(offset + lengths[col]);
+    }
+
+    DataOutputStream output =
+      new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+    headerBytes.writeTo(output);
+    for (int col = 0; col < columnCount; col++) {
+      output.writeLong(offsets[col]);
+      output.writeLong(lengths[col]);
+    }
+    // tracked separately, since output.size() is only an int
+    long position = headerBytes.size() + 16L * columnCount;
+    for (int col = 0; col < columnCount; col++) {
+      while (position < offsets[col]) {
+        output.write(0);
+        position++;
+      }
+      if (columnTypes[col] == STRING) {
+        output.write(stringBytes[col]);
+        stringBytes[col] = null;
+      } else {
+        writeColumnar(output, col);
+      }
+      position += lengths[col];
+    }
+    output.flush();
+    output.close();
+  }
+
+
+  /** Bytes used per row by a numeric column. */
+  static private int columnarWidth(int type) {
+    return (type == LONG || type == DOUBLE) ? 8 : 4;
+  }
+
+
+  static private long columnarAlign(long offset) {
+    return (offset + 7) & ~7L;
+  }
+
+
+  /** Write a numeric column as raw bytes, a block at a time. */
+  private void writeColumnar(DataOutputStream output, int col) throws IOException {
+    Object data = columns[col];
+    int type = columnTypes[col];
+    int width = columnarWidth(type);
+    byte[] block = new byte[1 << 16];
+    int perBlock = block.length / width;
+    for (int start = 0; start < rowCount; start += perBlock) {
+      int count = Math.min(perBlock, rowCount - start);
+      ByteBuffer bb = ByteBuffer.wrap(block);
+      switch (type) {
+        case INT:
+        case CATEGORY: bb.asIntBuffer().put((int[]) data, start, count); break;
+        case LONG: bb.asLongBuffer().put((long[]) data, start, count); break;
+        case FLOAT: bb.asFloatBuffer().put((float[]) data, start, count); break;
+        case DOUBLE: bb.asDoubleBuffer().put((double[]) data, start, count); break;
+      }
+      output.write(block, 0, count * width);
+    }
+  }
+
+
+  /**
+   * True if the options ask for a binary table and the file starts with the
+   * magic number for the column-major layout.
+   */
+  static protected boolean isColumnarFile(File file, String options) throws IOException {
+    if (options == null || !file.isFile() || file.length() < 4) {
+      return false;
+    }
+    boolean binary = false;
+    for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+      if (opt.equals("bin")) {
+        binary = true;
+      }
+    }
+    if (!binary) {
+      return false;
+    }
+    DataInputStream input = new DataInputStream(new FileInputStream(file));
+    try {
+      return input.readInt() == COLUMNAR_MAGIC;
+    } finally {
+      input.close();
+    }
+  }
+
+
+  /**
+   * Read only the header and column directory of a columnar binary file.
+   * The columns themselves are mapped and copied in the first time they're
+   * used, so opening a large file is nearly instant, and columns that are
+   * never touched are never read.
+   */
+  protected void loadColumnar(File file) throws IOException {
+    DataInputStream input =
+      new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      int magic = input.readInt();
+      if (magic != COLUMNAR_MAGIC) {
+        throw new IOException("Not a columnar binary table (magic was " + PApplet.hex(magic) + ")");
+      }
+      rowCount = readBinaryHeader(input);
+      int columnCount = getColumnCount();
+      columnarOffsets = new long[columnCount];
+      columnarLengths = new long[columnCount];
+      for (int col = 0; col < columnCount; col++) {
+        columnarOffsets[col] = input.readLong();
+        columnarLengths[col] = input.readLong();
+        columns[col] = null;  // not loaded yet
+      }
+      columnarFile = file;
+    } finally {
+      input.close();
+    }
+  }
+
+
+  /**
+   * Read a columnar table from a stream, all at once. Used when the data
+   * isn't available as a local file (a URL, or inside a .jar). The magic
+   * number has already been read from the stream.
+   */
+  protected void readColumnar(InputStream is) throws IOException {
+    CountingInputStream counter = new CountingInputStream(is);
+    DataInputStream input = new DataInputStream(counter);
+    rowCount = readBinaryHeader(input);
+    int columnCount = getColumnCount();
+    long[] offsets = new long[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      offsets[col] = input.readLong();
+      input.readLong();  // length, only needed for mapping
+    }
+    for (int col = 0; col < columnCount; col++) {
+      // 4 bytes for the magic number, which was read by the caller
+      long skip = offsets[col] - (4 + counter.count);
+      while (skip > 0) {
+        int skipped = input.skipBytes((int) Math.min(skip, Integer.MAX_VALUE));
+        if (skipped == 0) {
+          // skipBytes() returns 0 at the end of the stream
+          throw new EOFException("Column " + col + " starts past the end of the file");
+        }
+        skip -= skipped;
+      }
+      columns[col] = readColumnar(input, columnTypes[col], rowCount);
+    }
+  }
+
+
+  /** Read a column that starts at the current position of the stream. */
+  static private Object readColumnar(DataInputStream input,
+                                     int type, int count) throws IOException {
+    Object data = createColumn(type, count);
+    if (type == STRING) {
+      String[] stringData = (String[]) data;
+      for (int row = 0; row < count; row++) {
+        if (input.readBoolean()) {
+          stringData[row] = input.readUTF();
+        }
+      }
+    } else {
+      int width = columnarWidth(type);
+      byte[] block = new byte[1 << 16];
+      int perBlock = block.length / width;
+      for (int start = 0; start < count; start += perBlock) {
+        int length = Math.min(perBlock, count - start);
+        input.readFully(block, 0, length * width);
+        copyColumnar(ByteBuffer.wrap(block, 0, length * width), type, data, start, length);
+      }
+    }
+    return data;
+  }
+
+
+  /** Copy 'count' values of a numeric column out of a buffer. */
+  static private void copyColumnar(ByteBuffer bb, int type,
+                                   Object data, int start, int count) {
+    switch (type) {
+      case INT:
+      case CATEGORY: bb.asIntBuffer().get((int[]) data, start, count); break;
+      case LONG: bb.asLongBuffer().get((long[]) data, start, count); break;
+      case FLOAT: bb.asFloatBuffer().get((float[]) data, start, count); break;
+      case DOUBLE: bb.asDoubleBuffer().get((double[]) data, start, count); break;
+    }
+  }
+
+
+  /**
+   * Bring in a column from a columnar file opened with loadColumnar().
+   * Numeric columns are memory-mapped (in pieces, since a single mapping is
+   * limited to 2 GB) and copied straight into the column array.
+   */
+  protected synchronized void loadColumn(int column) {
+    if (columns[column] != null || columnarFile == null) {
+      return;  // another thread got here first
+    }
+    int type = columnTypes[column];
+    long offset = columnarOffsets[column];
+    long length = columnarLengths[column];
+    try {
+      RandomAccessFile raf = new RandomAccessFile(columnarFile, "r");
+      try {
+        FileChannel channel = raf.getChannel();
+        if (type == STRING) {
+          channel.position(offset);
+          InputStream is = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+          columns[column] = readColumnar(new DataInputStream(is), type, rowCount);
+
+        } else {
+          int width = columnarWidth(type);
+          Object data = createColumn(type, rowCount);
+          final long segment = 1L << 30;  // multiple of any width
+          for (long pos = 0; pos < length; pos += segment) {
+            long size = Math.min(segment, length - pos);
+            MappedByteBuffer mapped =
+              channel.map(FileChannel.MapMode.READ_ONLY, offset + pos, size);
+            copyColumnar(mapped, type, data, (int) (pos / width), (int) (size / width));
+          }
+          columns[column] = data;
+        }
+      } finally {
+        raf.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read column " + column +
+                                 " from " + columnarFile, e);
+    }
+    // once everything has been read, there's no need to keep checking
+    for (Object c : columns) {
+      if (c == null) return;
+    }
+    columnarFile = null;
+  }
+
+
+  /**
+   * Make sure that all columns have been read in, before the column arrays
+   * are resized or rearranged wholesale.
+   */
+  protected void loadAllColumns() {
+    if (columnarFile != null) {
+      for (int col = 0; col < columns.length; col++) {
+        if (columns[col] == null) {
+          loadColumn(col);
+        }
+      }
+    }
+  }
+
+
+  static class CountingInputStream extends FilterInputStream {
+    long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int c = super.read();
+      if (c != -1) count++;
+      return c;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) count += n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * @webref table:method
+   * @brief Adds a new column to a table
+   * @see Table#removeColumn(String)
+   */
+  public void addColumn() {
+    addColumn(null, STRING);
+  }
+
+
+  /**
+   * @param title the title to be used for the new column
+   */
+  public void addColumn(String title) {
+    addColumn(title, STRING);
+  }
+
+
+  /**
+   * @param type the type to be used for the new column: INT, LONG, FLOAT, DOUBLE, STRING, or CATEGORY
+   */
+  public void addColumn(String title, int type) {
+    insertColumn(columns.length, title, type);
+  }
+
+
+  public void insertColumn(int index) {
+    insertColumn(index, null, STRING);
+  }
+
+
+  public void insertColumn(int index, String title) {
+    insertColumn(index, title, STRING);
+  }
+
+
+  public void insertColumn(int index, String title, int type) {
+    checkWritable();
+    loadAllColumns();
+    if (title != null && columnTitles == null) {
+      columnTitles = new String[columns.length];
+    }
+    if (columnTitles != null) {
+      columnTitles = PApplet.splice(columnTitles, title, index);
+      columnIndices = null;
+    }
+    columnTypes = PApplet.splice(columnTypes, type, index);
+
+//    columnCategories = (HashMapBlows[])
+//      PApplet.splice(columnCategories, new HashMapBlows(), index);
+    HashMapBlows[] catTemp = new HashMapBlows[columns.length + 1];
+    // Faster than arrayCopy for a dozen or so entries
+    for (int i = 0; i < index; i++) {
+      catTemp[i] = columnCategories[i];
+    }
+    catTemp[index] = new HashMapBlows();
+    for (int i = index; i < columns.length; i++) {
+      catTemp[i+1] = columnCategories[i];
+    }
+    columnCategories = catTemp;
+
+    if (indexes != null) {
+      ColumnIndex[] indexTemp = new ColumnIndex[columns.length + 1];
+      for (int i = 0; i < indexes.length; i++) {
+        if (indexes[i] != null) {
+          int col = (i < index) ? i : i + 1;
+          indexes[i].column = col;
+          indexTemp[col] = indexes[i];
+        }
+      }
+      indexes = indexTemp;
+    }
+
+    Object[] temp = new Object[columns.length + 1];
+    System.arraycopy(columns, 0, temp, 0, index);
+    System.arraycopy(columns, index, temp, index+1, columns.length - index);
+    columns = temp;
+
+    switch (type) {
+      case INT: columns[index] = new int[rowCount]; break;
+      case LONG: columns[index] = new long[rowCount]; break;
+      case FLOAT: columns[index] = new float[rowCount]; break;
+      case DOUBLE: columns[index] = new double[rowCount]; break;
+      case STRING: columns[index] = new String[rowCount]; break;
+      case CATEGORY: columns[index] = new int[rowCount]; break;
+    }
+  }
+
+ /**
+   * @webref table:method
+   * @brief Removes a column from a table
+   * @param columnName the title of the column to be removed
+   * @see Table#addColumn()
+   */
+  public void removeColumn(String columnName) {
+    removeColumn(getColumnIndex(columnName));
+  }
+
+ /**
+   * @param column the index number of the column to be removed
+   */
+  public void removeColumn(int column) {
+    checkWritable();
+    loadAllColumns();
+    int newCount = columns.length - 1;
+
+    Object[] columnsTemp = new Object[newCount];
+    HashMapBlows[] catTemp = new HashMapBlows[newCount];
+
+    for (int i = 0; i < column; i++) {
+      columnsTemp[i] = columns[i];
+      catTemp[i] = columnCategories[i];
+    }
+    for (int i = column; i < newCount; i++) {
+      columnsTemp[i] = columns[i+1];
+      catTemp[i] = columnCategories[i+1];
+    }
+
+    columns = columnsTemp;
+    columnCategories = catTemp;
+
+    if (indexes != null) {
+      ColumnIndex[] indexTemp = new ColumnIndex[newCount];
+      for (int i = 0; i < indexes.length; i++) {
+        if (indexes[i] != null && i != column) {
+          int col = (i < column) ? i : i - 1;
+          indexes[i].column = col;
+          indexTemp[col] = indexes[i];
+        }
+      }
+      indexes = indexTemp;
+    }
+
+    if (columnTitles != null) {
+      String[] titlesTemp = new String[newCount];
+      for (int i = 0; i < column; i++) {
+        titlesTemp[i] = columnTitles[i];
+      }
+      for (int i = column; i < newCount; i++) {
+        titlesTemp[i] = columnTitles[i+1];
+      }
+      columnTitles = titlesTemp;
+      columnIndices = null;
+    }
+  }
+
+  /**
+   * @webref table:method
+   * @brief Gets the number of columns in a table
+   * @see Table#getRowCount()
+   */
+  public int getColumnCount() {
+    return columns.length;
+  }
+
+
+  /**
+   * Change the number of columns in this table. Resizes all rows to ensure
+   * the same number of columns in each row. Entries in the additional (empty)
+   * columns will be set to null.
+   * @param newCount
+   */
+  public void setColumnCount(int newCount) {
+    checkWritable();
+    loadAllColumns();
+    int oldCount = columns.length;
+    if (oldCount != newCount) {
+      columns = (Object[]) PApplet.expand(columns, newCount);
+      // create new columns, default to String as the data type
+      for (int c = oldCount; c < newCount; c++) {
+        columns[c] = new String[rowCount];
+      }
+
+      if (columnTitles != null) {
+        columnTitles = PApplet.expand(columnTitles, newCount);
+      }
+      columnTypes = PApplet.expand(columnTypes, newCount);
+      columnCategories = (HashMapBlows[])
+        PApplet.expand(columnCategories, newCount);
+    }
+  }
+
+
+  public void setColumnType(String columnName, String columnType) {
+    setColumnType(checkColumnIndex(columnName), columnType);
+  }
+
+
+  /**
+   * Set the data type for a column so that using it is more efficient.
+   * @param column the column to change
+   * @param columnType One of int, long, float, double, or String.
+   */
+  public void setColumnType(int column, String columnType) {
+    int type = -1;
+    if (columnType.equals("String")) {
+      type = STRING;
+    } else if (columnType.equals("int")) {
+      type = INT;
+    } else if (columnType.equals("long")) {
+      type = LONG;
+    } else if (columnType.equals("float")) {
+      type = FLOAT;
+    } else if (columnType.equals("double")) {
+      type = DOUBLE;
+    } else if (columnType.equals("category")) {
+      type = CATEGORY;
+    } else {
+      throw new IllegalArgumentException("'" + columnType + "' is not a valid column type.");
+    }
+    setColumnType(column, type);
+  }
+
+
+  public void setColumnType(String columnName, int newType) {
+    setColumnType(checkColumnIndex(columnName), newType);
+  }
+
+
+  /**
+   * Sets the column type. If data already exists, then it'll be converted to
+   * the new type.
+   * @param column the column whose type should be changed
+   * @param newType something fresh, maybe try an int or a float for size?
+   */
+  public void setColumnType(int column, int newType) {
+    checkWritable();
+    switch (newType) {
+      case INT: {
+        int[] intData = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          String s = getString(row, column);
+          intData[row] = (s == null) ? missingInt : PApplet.parseInt(s, missingInt);
+        }
+        columns[column] = intData;
+        break;
+      }
+      case LONG: {
+        long[] longData = new long[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          String s = getString(row, column);
+          try {
+            longData[row] = Long.parseLong(s);
+          } catch (NumberFormatException nfe) {
+            longData[row] = missingLong;
+          }
+        }
+        columns[column] = longData;
+        break;
+      }
+      case FLOAT: {
+        float[] floatData = new float[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          String s = getString(row, column);
+          floatData[row] = (s == null) ? missingFloat : PApplet.parseFloat(s, missingFloat);
+        }
+        columns[column] = floatData;
+        break;
+      }
+      case DOUBLE: {
+        double[] doubleData = new double[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          String s = getString(row, column);
+          try {
+            doubleData[row] = (s == null) ? missingDouble : Double.parseDouble(s);
+          } catch (NumberFormatException nfe) {
+            doubleData[row] = missingDouble;
+          }
+        }
+        columns[column] = doubleData;
+        break;
+      }
+      case STRING: {
+        if (columnTypes[column] != STRING) {
+          String[] stringData = new String[rowCount];
+          for (int row = 0; row < rowCount; row++) {
+            stringData[row] = getString(row, column);
+          }
+          columns[column] = stringData;
+        }
+        break;
+      }
+      case CATEGORY: {
+        int[] indexData = new int[rowCount];
+        HashMapBlows categories = new HashMapBlows();
+        for (int row = 0; row < rowCount; row++) {
+          String s = getString(row, column);
+          indexData[row] = (s == null) ? missingCategory : categories.index(s);
+        }
+        columnCategories[column] = categories;
+        columns[column] = indexData;
+        break;
+      }
+      default: {
+        throw new IllegalArgumentException("That's not a valid column type.");
+      }
+    }
+//    System.out.println("new type is " + newType);
+    columnTypes[column] = newType;
+    if (getIndex(column) != null) {
+      // hash or sorted, depending on the new type
+      indexes[column] = createColumnIndex(column);
+    }
+  }
+
+
+  /**
+   * Set the entire table to a specific data type.
+   */
+  public void setTableType(String type) {
+    for (int col = 0; col < getColumnCount(); col++) {
+      setColumnType(col, type);
+    }
+  }
+
+
+  public void setColumnTypes(int[] types) {
+    ensureColumn(types.length - 1);
+    for (int col = 0; col < types.length; col++) {
+      setColumnType(col, types[col]);
+    }
+  }
+
+
+  /**
+   * Set the titles (and if a second column is present) the data types for
+   * this table based on a file loaded separately. This will look for the
+   * title in column 0, and the type in column 1. Better yet, specify a
+   * column named "title" and another named "type" in the dictionary table
+   * to future-proof the code.
+   * @param dictionary
+   */
+  public void setColumnTypes(final Table dictionary) {
+    ensureColumn(dictionary.getRowCount() - 1);
+    int titleCol = 0;
+    int typeCol = 1;
+    if (dictionary.hasColumnTitles()) {
+      titleCol = dictionary.getColumnIndex("title", true);
+      typeCol = dictionary.getColumnIndex("type", true);
+    }
+    setColumnTitles(dictionary.getStringColumn(titleCol));
+    final String[] typeNames = dictionary.getStringColumn(typeCol);
+
+    if (dictionary.getColumnCount() > 1) {
+      if (getRowCount() > 1000) {
+        int proc = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(proc/2);
+        for (int i = 0; i < dictionary.getRowCount(); i++) {
+          final int col = i;
+          pool.execute(new Runnable() {
+            public void run() {
+              setColumnType(col, typeNames[col]);
+            }
+          });
+        }
+        pool.shutdown();
+        while (!pool.isTerminated()) {
+          Thread.yield();
+        }
+
+      } else {
+        for (int col = 0; col < dictionary.getRowCount(); col++) {
+//          setColumnType(i, dictionary.getString(i, typeCol));
+          setColumnType(col, typeNames[col]);
+        }
+      }
+    }
+  }
+
+
+  public int getColumnType(String columnName) {
+    return getColumnType(getColumnIndex(columnName));
+  }
+
+
+  /** Returns one of Table.STRING, Table.INT, etc... */
+  public int getColumnType(int column) {
+    return columnTypes[column];
+  }
+
+
+  public int[] getColumnTypes() {
+    return columnTypes;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Remove the first row from the data set, and use it as the column titles.
+   * Use loadTable("table.csv", "header") instead.
+   */
+  @Deprecated
+  public String[] removeTitleRow() {
+    String[] titles = getStringRow(0);
+    removeRow(0);
+    setColumnTitles(titles);
+    return titles;
+  }
+
+
+  public void setColumnTitles(String[] titles) {
+    checkWritable();
+    if (titles != null) {
+      ensureColumn(titles.length - 1);
+    }
+    columnTitles = titles;
+    columnIndices = null;  // remove the cache
+  }
+
+
+  public void setColumnTitle(int column, String title) {
+    checkWritable();
+    ensureColumn(column);
+    if (columnTitles == null) {
+      columnTitles = new String[getColumnCount()];
+    }
+    columnTitles[column] = title;
+    columnIndices = null;  // reset these fellas
+  }
+
+
+  public boolean hasColumnTitles() {
+    return columnTitles != null;
+  }
+
+
+  public String[] getColumnTitles() {
+    return columnTitles;
+  }
+
+
+  public String getColumnTitle(int col) {
+    return (columnTitles == null) ? null : columnTitles[col];
+  }
+
+
+  public int getColumnIndex(String columnName) {
+    return getColumnIndex(columnName, true);
+  }
+
+
+  /**
+   * Get the index of a column.
+   * @param name Name of the column.
+   * @param report Whether to throw an exception if the column wasn't found.
+   * @return index of the found column, or -1 if not found.
+   */
+  protected int getColumnIndex(String name, boolean report) {
+    if (columnTitles == null) {
+      if (report) {
+        throw new IllegalArgumentException("This table has no header, so no column titles are set.");
+      }
+      return -1;
+    }
+    // only create this on first get(). subsequent calls to set the title will
+    // also update this array, but only if it exists.
+    if (columnIndices == null) {
+      columnIndices = new HashMap<String, Integer>();
+      for (int col = 0; col < columns.length; col++) {
+        columnIndices.put(columnTitles[col], col);
+      }
+    }
+    Integer index = columnIndices.get(name);
+    if (index == null) {
+      if (report) {
+        // Throws an exception here because the name is known and therefore most useful.
+        // (Rather than waiting for it to fail inside, say, getInt())
+        throw new IllegalArgumentException("This table has no column named '" + name + "'");
+      }
+      return -1;
+    }
+    return index.intValue();
+  }
+
+
+  /**
+   * Same as getColumnIndex(), but creates the column if it doesn't exist.
+   * Named this way to not conflict with checkColumn(), an internal function
+   * used to ensure that a columns exists, and also to denote that it returns
+   * an int for the column index.
+   * @param title column title
+   * @return index of a new or previously existing column
+   */
+  public int checkColumnIndex(String title) {
+    int index = getColumnIndex(title, false);
+    if (index != -1) {
+      return index;
+    }
+    addColumn(title);
+    return getColumnCount() - 1;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+  /**
+   * @webref table:method
+   * @brief Gets the number of rows in a table
+   * @see Table#getColumnCount()
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+
+  public int lastRowIndex() {
+    return getRowCount() - 1;
+  }
+
+
+  /**
+   * @webref table:method
+   * @brief Removes all rows from a table
+   * @see Table#addRow()
+   * @see Table#removeRow(int)
+   */
+  public void clearRows() {
+    setRowCount(0);
+  }
+
+
+  public void setRowCount(int newCount) {
+    checkWritable();
+    loadAllColumns();
+    if (newCount != rowCount) {
+      if (newCount > 1000000) {
+        System.out.print("Note: setting maximum row count to " + PApplet.nfc(newCount));
+      }
+      long t = System.currentTimeMillis();
+      sharedColumns = null;  // every column gets a new array
+      for (int col = 0; col < columns.length; col++) {
+        switch (columnTypes[col]) {
+          case INT: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
+          case LONG: columns[col] = PApplet.expand((long[]) columns[col], newCount); break;
+          case FLOAT: columns[col] = PApplet.expand((float[]) columns[col], newCount); break;
+          case DOUBLE: columns[col] = PApplet.expand((double[]) columns[col], newCount); break;
+          case STRING: columns[col] = PApplet.expand((String[]) columns[col], newCount); break;
+          case CATEGORY: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
+        }
+        if (newCount > 1000000) {
+          try {
+            Thread.sleep(10);  // gc time!
+          } catch (InterruptedException e) {
+            e.printStackTrace();
+          }
+        }
+      }
+      if (newCount > 1000000) {
+        int ms = (int) (System.currentTimeMillis() - t);
+        System.out.println(" (resize took " + PApplet.nfc(ms) + " ms)");
+      }
+      if (indexes != null) {
+        for (ColumnIndex index : indexes) {
+          if (index != null) {
+            index.resize(rowCount, newCount);
+          }
+        }
+      }
+    }
+    rowCount = newCount;
+  }
+
+
+ /**
+   * @webref table:method
+   * @brief Adds a row to a table
+   * @see Table#removeRow(int)
+   * @see Table#clearRows()
+   */
+  public TableRow addRow() {
+    //if (rowIncrement == 0) {
+    setRowCount(rowCount + 1);
+    return new RowPointer(this, rowCount - 1);
+  }
+
+
+ /**
+   * @param source a reference to the original row to be duplicated
+   */
+  public TableRow addRow(TableRow source) {
+    int row = rowCount;
+    // Make sure there are enough columns to add this data
+    ensureBounds(row, source.getColumnCount() - 1);
+
+    for (int col = 0; col < columns.length; col++) {
+      switch (columnTypes[col]) {
+      case CATEGORY:
+      case INT:
+        setInt(row, col, source.getInt(col));
+        break;
+      case LONG:
+        setLong(row, col, source.getLong(col));
+        break;
+      case FLOAT:
+        setFloat(row, col, source.getFloat(col));
+        break;
+      case DOUBLE:
+        setDouble(row, col, source.getDouble(col));
+        break;
+      case STRING:
+        setString(row, col, source.getString(col));
+        break;
+      default:
+        throw new RuntimeException("no types");
+      }
+    }
+    return new RowPointer(this, row);
+  }
+
+
+ /**
+   * @nowebref
+   */
+  public TableRow addRow(Object[] columnData) {
+    setRow(getRowCount(), columnData);
+    return new RowPointer(this, rowCount - 1);
+  }
+
+
+  public void insertRow(int insert, Object[] columnData) {
+    checkWritable();
+    loadAllColumns();
+    invalidateIndexes(-1);
+    for (int col = 0; col < columns.length; col++) {
+      switch (columnTypes[col]) {
+        case CATEGORY:
+        case INT: {
+          int[] intTemp = new int[rowCount+1];
+          System.arraycopy(columns[col], 0, intTemp, 0, insert);
+          System.arraycopy(columns[col], insert, intTemp, insert+1, rowCount - insert);
+          columns[col] = intTemp;
+          break;
+        }
+        case LONG: {
+          long[] longTemp = new long[rowCount+1];
+          System.arraycopy(columns[col], 0, longTemp, 0, insert);
+          System.arraycopy(columns[col], insert, longTemp, insert+1, rowCount - insert);
+          columns[col] = longTemp;
+          break;
+        }
+        case FLOAT: {
+          float[] floatTemp = new float[rowCount+1];
+          System.arraycopy(columns[col], 0, floatTemp, 0, insert);
+          System.arraycopy(columns[col], insert, floatTemp, insert+1, rowCount - insert);
+          columns[col] = floatTemp;
+          break;
+        }
+        case DOUBLE: {
+          double[] doubleTemp = new double[rowCount+1];
+          System.arraycopy(columns[col], 0, doubleTemp, 0, insert);
+          System.arraycopy(columns[col], insert, doubleTemp, insert+1, rowCount - insert);
+          columns[col] = doubleTemp;
+          break;
+        }
+        case STRING: {
+          String[] stringTemp = new String[rowCount+1];
+          System.arraycopy(columns[col], 0, stringTemp, 0, insert);
+          System.arraycopy(columns[col], insert, stringTemp, insert+1, rowCount - insert);
+          columns[col] = stringTemp;
+          break;
+        }
+      }
+    }
+    setRow(insert, columnData);
+    rowCount++;
+  }
+
+  /**
+   * @webref table:method
+   * @brief Removes a row from a table
+   * @param row ID number of the row to remove
+   * @see Table#addRow()
+   * @see Table#clearRows()
+   */
+  public void removeRow(int row) {
+    checkWritable();
+    loadAllColumns();
+    invalidateIndexes(-1);
+    for (int col = 0; col < columns.length; col++) {
+      switch (columnTypes[col]) {
+        case CATEGORY:
+        case INT: {
+          int[] intTemp = new int[rowCount-1];
+//          int[] intData = (int[]) columns[col];
+//          System.arraycopy(intData, 0, intTemp, 0, dead);
+//          System.arraycopy(intData, dead+1, intTemp, dead, (rowCount - dead) + 1);
+          System.arraycopy(columns[col], 0, intTemp, 0, row);
+          System.arraycopy(columns[col], row+1, intTemp, row, (rowCount - row) - 1);
+          columns[col] = intTemp;
+          break;
+        }
+        case LONG: {
+          long[] longTemp = new long[rowCount-1];
+//          long[] longData = (long[]) columns[col];
+//          System.arraycopy(longData, 0, longTemp, 0, dead);
+//          System.arraycopy(longData, dead+1, longTemp, dead, (rowCount - dead) + 1);
+          System.arraycopy(columns[col], 0, longTemp, 0, row);
+          System.arraycopy(columns[col], row+1, longTemp, row, (rowCount - row) - 1);
+          columns[col] = longTemp;
+          break;
+        }
+        case FLOAT: {
+          float[] floatTemp = new float[rowCount-1];
+//          float[] floatData = (float[]) columns[col];
+//          System.arraycopy(floatData, 0, floatTemp, 0, dead);
+//          System.arraycopy(floatData, dead+1, floatTemp, dead, (rowCount - dead) + 1);
+          System.arraycopy(columns[col], 0, floatTemp, 0, row);
+          System.arraycopy(columns[col], row+1, floatTemp, row, (rowCount - row) - 1);
+          columns[col] = floatTemp;
+          break;
+        }
+        case DOUBLE: {
+          double[] doubleTemp = new double[rowCount-1];
+//          double[] doubleData = (double[]) columns[col];
+//          System.arraycopy(doubleData, 0, doubleTemp, 0, dead);
+//          System.arraycopy(doubleData, dead+1, doubleTemp, dead, (rowCount - dead) + 1);
+          System.arraycopy(columns[col], 0, doubleTemp, 0, row);
+          System.arraycopy(columns[col], row+1, doubleTemp, row, (rowCount - row) - 1);
+          columns[col] = doubleTemp;
+          break;
+        }
+        case STRING: {
+          String[] stringTemp = new String[rowCount-1];
+          System.arraycopy(columns[col], 0, stringTemp, 0, row);
+          System.arraycopy(columns[col], row+1, stringTemp, row, (rowCount - row) - 1);
+          columns[col] = stringTemp;
+        }
+      }
+    }
+    rowCount--;
+  }
+
+
+  /*
+  public void setRow(int row, String[] pieces) {
+    checkSize(row, pieces.length - 1);
+    // pieces.length may be less than columns.length, so loop over pieces
+    for (int col = 0; col < pieces.length; col++) {
+      setRowCol(row, col, pieces[col]);
+    }
+  }
+
+
+  protected void setRowCol(int row, int col, String piece) {
+    switch (columnTypes[col]) {
+    case STRING:
+      String[] stringData = (String[]) columns[col];
+      stringData[row] = piece;
+      break;
+    case INT:
+      int[] intData = (int[]) columns[col];
+      intData[row] = PApplet.parseInt(piece, missingInt);
+      break;
+    case LONG:
+      long[] longData = (long[]) columns[col];
+      try {
+        longData[row] = Long.parseLong(piece);
+      } catch (NumberFormatException nfe) {
+        longData[row] = missingLong;
+      }
+      break;
+    case FLOAT:
+      float[] floatData = (float[]) columns[col];
+      floatData[row] = PApplet.parseFloat(piece, missingFloat);
+      break;
+    case DOUBLE:
+      double[] doubleData = (double[]) columns[col];
+      try {
+        doubleData[row] = Double.parseDouble(piece);
+      } catch (NumberFormatException nfe) {
+        doubleData[row] = missingDouble;
+      }
+      break;
+    case CATEGORY:
+      int[] indexData = (int[]) columns[col];
+      indexData[row] = columnCategories[col].index(piece);
+      break;
+    default:
+      throw new IllegalArgumentException("That's not a valid column type.");
+    }
+  }
+  */
+
+
+  public void setRow(int row, Object[] pieces) {
+    ensureBounds(row, pieces.length - 1);
+    // pieces.length may be less than columns.length, so loop over pieces
+    for (int col = 0; col < pieces.length; col++) {
+      setRowCol(row, col, pieces[col]);
+    }
+  }
+
+
+  protected void setRowCol(int row, int col, Object piece) {
+    unindex(row, col);
+    switch (columnTypes[col]) {
+      case STRING:
+        String[] stringData = (String[]) columns[col];
+        if (piece == null) {
+          stringData[row] = null;
+//        } else if (piece instanceof String) {
+//          stringData[row] = (String) piece;
+        } else {
+          // Calls toString() on the object, which is 'return this' for String
+          stringData[row] = String.valueOf(piece);
+        }
+        break;
+      case INT:
+        int[] intData = (int[]) columns[col];
+        //intData[row] = PApplet.parseInt(piece, missingInt);
+        if (piece == null) {
+          intData[row] = missingInt;
+        } else if (piece instanceof Integer) {
+          intData[row] = (Integer) piece;
+        } else {
+          intData[row] = PApplet.parseInt(String.valueOf(piece), missingInt);
+        }
+        break;
+      case LONG:
+        long[] longData = (long[]) columns[col];
+        if (piece == null) {
+          longData[row] = missingLong;
+        } else if (piece instanceof Long) {
+          longData[row] = (Long) piece;
+        } else {
+          try {
+            longData[row] = Long.parseLong(String.valueOf(piece));
+          } catch (NumberFormatException nfe) {
+            longData[row] = missingLong;
+          }
+        }
+        break;
+      case FLOAT:
+        float[] floatData = (float[]) columns[col];
+        if (piece == null) {
+          floatData[row] = missingFloat;
+        } else if (piece instanceof Float) {
+          floatData[row] = (Float) piece;
+        } else {
+          floatData[row] = PApplet.parseFloat(String.valueOf(piece), missingFloat);
+        }
+        break;
+      case DOUBLE:
+        double[] doubleData = (double[]) columns[col];
+        if (piece == null) {
+          doubleData[row] = missingDouble;
+        } else if (piece instanceof Double) {
+          doubleData[row] = (Double) piece;
+        } else {
+          try {
+            doubleData[row] = Double.parseDouble(String.valueOf(piece));
+          } catch (NumberFormatException nfe) {
+            doubleData[row] = missingDouble;
+          }
+        }
+        break;
+      case CATEGORY:
+        int[] indexData = (int[]) columns[col];
+        if (piece == null) {
+          indexData[row] = missingCategory;
+        } else {
+          indexData[row] = columnCategories[col].index(String.valueOf(piece));
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("That's not a valid column type.");
+    }
+    reindex(row, col);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+  /**
+   * @webref table:method
+   * @brief Gets a row from a table
+   * @param row ID number of the row to get
+   * @see Table#rows()
+   * @see Table#findRow(String, int)
+   * @see Table#findRows(String, int)
+   * @see Table#matchRow(String, int)
+   * @see Table#matchRows(String, int)
+   */
+  public TableRow getRow(int row) {
+    return new RowPointer(this, row);
+  }
+
+
+  /**
+   * Note that this one iterator instance is shared by any calls to iterate
+   * the rows of this table. This is very efficient, but not thread-safe.
+   * If you want to iterate in a multi-threaded manner, don't use the iterator.
+   *
+   * @webref table:method
+   * @brief Gets multiple rows from a table
+   * @see Table#getRow(int)
+   * @see Table#findRow(String, int)
+   * @see Table#findRows(String, int)
+   * @see Table#matchRow(String, int)
+   * @see Table#matchRows(String, int)
+   */
+  public Iterable<TableRow> rows() {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        if (readOnly) {
+          // may be used from several threads at once
+          return new RowIterator(Table.this);
+        }
+        if (rowIterator == null) {
+          rowIterator = new RowIterator(Table.this);
+        } else {
+          rowIterator.reset();
+        }
+        return rowIterator;
+      }
+    };
+  }
+
+  /**
+   * @nowebref
+   */
+  public Iterable<TableRow> rows(final int[] indices) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return new RowIndexIterator(Table.this, indices);
+      }
+    };
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  static class RowPointer implements TableRow {
+    Table table;
+    int row;
+
+    public RowPointer(Table table, int row) {
+      this.table = table;
+      this.row = row;
+    }
+
+    public void setRow(int row) {
+      this.row = row;
+    }
+
+    public String getString(int column) {
+      return table.getString(row, column);
+    }
+
+    public String getString(String columnName) {
+      return table.getString(row, columnName);
+    }
+
+    public int getInt(int column) {
+      return table.getInt(row, column);
+    }
+
+    public int getInt(String columnName) {
+      return table.getInt(row, columnName);
+    }
+
+    public long getLong(int column) {
+      return table.getLong(row, column);
+    }
+
+    public long getLong(String columnName) {
+      return table.getLong(row, columnName);
+    }
+
+    public float getFloat(int column) {
+      return table.getFloat(row, column);
+    }
+
+    public float getFloat(String columnName) {
+      return table.getFloat(row, columnName);
+    }
+
+    public double getDouble(int column) {
+      return table.getDouble(row, column);
+    }
+
+    public double getDouble(String columnName) {
+      return table.getDouble(row, columnName);
+    }
+
+    public void setString(int column, String value) {
+      table.setString(row, column, value);
+    }
+
+    public void setString(String columnName, String value) {
+      table.setString(row, columnName, value);
+    }
+
+    public void setInt(int column, int value) {
+      table.setInt(row, column, value);
+    }
+
+    public void setInt(String columnName, int value) {
+      table.setInt(row, columnName, value);
+    }
+
+    public void setLong(int column, long value) {
+      table.setLong(row, column, value);
+    }
+
+    public void setLong(String columnName, long value) {
+      table.setLong(row, columnName, value);
+    }
+
+    public void setFloat(int column, float value) {
+      table.setFloat(row, column, value);
+    }
+
+    public void setFloat(String columnName, float value) {
+      table.setFloat(row, columnName, value);
+    }
+
+    public void setDouble(int column, double value) {
+      table.setDouble(row, column, value);
+    }
+
+    public void setDouble(String columnName, double value) {
+      table.setDouble(row, columnName, value);
+    }
+
+    public int getColumnCount() {
+      return table.getColumnCount();
+    }
+
+    public int getColumnType(String columnName) {
+      return table.getColumnType(columnName);
+    }
+
+    public int getColumnType(int column) {
+      return table.getColumnType(column);
+    }
+
+    public int[] getColumnTypes() {
+      return table.getColumnTypes();
+    }
+  }
+
+
+  static class RowIterator implements Iterator<TableRow> {
+    Table table;
+    RowPointer rp;
+    int row;
+
+    public RowIterator(Table table) {
+      this.table = table;
+      row = -1;
+      rp = new RowPointer(table, row);
+    }
+
+    public void remove() {
+      table.removeRow(row);
+    }
+
+    public TableRow next() {
+      rp.setRow(++row);
+      return rp;
+    }
+
+    public boolean hasNext() {
+      return row+1 < table.getRowCount();
+    }
+
+    public void reset() {
+      row = -1;
+    }
+  }
+
+
+  static class RowIndexIterator implements Iterator<TableRow> {
+    Table table;
+    RowPointer rp;
+    int[] indices;
+    int index;
+
+    public RowIndexIterator(Table table, int[] indices) {
+      this.table = table;
+      this.indices = indices;
+      index = -1;
+      // just set to something arbitrary
+      rp = new RowPointer(table, -1);
+    }
+
+    public void remove() {
+      table.removeRow(indices[index]);
+    }
+
+    public TableRow next() {
+      rp.setRow(indices[++index]);
+      return rp;
+    }
+
+    public boolean hasNext() {
+      //return row+1 < table.getRowCount();
+      return index + 1 < indices.length;
+    }
+
+    public void reset() {
+      index = -1;
+    }
+  }
+
+
+  /*
+  static public Iterator<TableRow> createIterator(final ResultSet rs) {
+    return new Iterator<TableRow>() {
+      boolean already;
+
+      public boolean hasNext() {
+        already = true;
+        try {
+          return rs.next();
+        } catch (SQLException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+
+      public TableRow next() {
+        if (!already) {
+          try {
+            rs.next();
+          } catch (SQLException e) {
+            throw new RuntimeException(e);
+          }
+        } else {
+          already = false;
+        }
+
+        return new TableRow() {
+          public double getDouble(int column) {
+            try {
+              return rs.getDouble(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public double getDouble(String columnName) {
+            try {
+              return rs.getDouble(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public float getFloat(int column) {
+            try {
+              return rs.getFloat(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public float getFloat(String columnName) {
+            try {
+              return rs.getFloat(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public int getInt(int column) {
+            try {
+              return rs.getInt(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public int getInt(String columnName) {
+            try {
+              return rs.getInt(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public long getLong(int column) {
+            try {
+              return rs.getLong(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public long getLong(String columnName) {
+            try {
+              return rs.getLong(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public String getString(int column) {
+            try {
+              return rs.getString(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public String getString(String columnName) {
+            try {
+              return rs.getString(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public void setString(int column, String value) { immutable(); }
+          public void setString(String columnName, String value) { immutable(); }
+          public void setInt(int column, int value) { immutable(); }
+          public void setInt(String columnName, int value) { immutable(); }
+          public void setLong(int column, long value) { immutable(); }
+          public void setLong(String columnName, long value) { immutable(); }
+          public void setFloat(int column, float value) { immutable(); }
+          public void setFloat(String columnName, float value) { immutable(); }
+          public void setDouble(int column, double value) { immutable(); }
+          public void setDouble(String columnName, double value) { immutable(); }
+
+          private void immutable() {
+            throw new IllegalArgumentException("This TableRow cannot be modified.");
+          }
+
+          public int getColumnCount() {
+            try {
+              return rs.getMetaData().getColumnCount();
+            } catch (SQLException e) {
+              e.printStackTrace();
+              return -1;
+            }
+          }
+
+
+          public int getColumnType(String columnName) {
+            // unimplemented
+          }
+
+
+          public int getColumnType(int column) {
+            // unimplemented
+          }
+
+        };
+      }
+
+      public void remove() {
+        throw new IllegalArgumentException("remove() not supported");
+      }
+    };
+  }
+  */
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * @webref table:method
+   * @brief Get an integer value from the specified row and column
+   * @param row ID number of the row to reference
+   * @param column ID number of the column to reference
+   * @see Table#getFloat(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#getStringColumn(String)
+   * @see Table#setInt(int, int, int)
+   * @see Table#setFloat(int, int, float)
+   * @see Table#setString(int, int, String)
+   */
+  public int getInt(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == INT ||
+        columnTypes[column] == CATEGORY) {
+      int[] intData = (int[]) columns[column];
+      return intData[row];
+    }
+    String str = getString(row, column);
+    return (str == null || str.equals(missingString)) ?
+      missingInt : PApplet.parseInt(str, missingInt);
+  }
+
+  /**
+   * @param columnName title of the column to reference
+   */
+  public int getInt(int row, String columnName) {
+    return getInt(row, getColumnIndex(columnName));
+  }
+
+
+  public void setMissingInt(int value) {
+    checkWritable();
+    missingInt = value;
+  }
+
+
+  /**
+   * @webref table:method
+   * @brief Store an integer value in the specified row and column
+   * @param row ID number of the target row
+   * @param column ID number of the target column
+   * @param value value to assign
+   * @see Table#setFloat(int, int, float)
+   * @see Table#setString(int, int, String)
+   * @see Table#getInt(int, int)
+   * @see Table#getFloat(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#getStringColumn(String)
+   */
+  public void setInt(int row, int column, int value) {
+    if (columnTypes[column] == STRING) {
+      setString(row, column, String.valueOf(value));
+
+    } else {
+      ensureBounds(row, column);
+      if (columnTypes[column] != INT &&
+          columnTypes[column] != CATEGORY) {
+        throw new IllegalArgumentException("Column " + column + " is not an int column.");
+      }
+      unindex(row, column);
+      int[] intData = (int[]) columns[column];
+      intData[row] = value;
+      reindex(row, column);
+    }
+  }
+
+  /**
+   * @param columnName title of the target column
+   */
+  public void setInt(int row, String columnName, int value) {
+    setInt(row, getColumnIndex(columnName), value);
+  }
+
+
+
+  public int[] getIntColumn(String name) {
+    int col = getColumnIndex(name);
+    return (col == -1) ? null : getIntColumn(col);
+  }
+
+
+  public int[] getIntColumn(int col) {
+    int[] outgoing = new int[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      outgoing[row] = getInt(row, col);
+    }
+    return outgoing;
+  }
+
+
+  public int[] getIntRow(int row) {
+    int[] outgoing = new int[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      outgoing[col] = getInt(row, col);
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public long getLong(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == LONG) {
+      long[] longData = (long[]) columns[column];
+      return longData[row];
+    }
+    String str = getString(row, column);
+    if (str == null || str.equals(missingString)) {
+      return missingLong;
+    }
+    try {
+      return Long.parseLong(str);
+    } catch (NumberFormatException nfe) {
+      return missingLong;
+    }
+  }
+
+
+  public long getLong(int row, String columnName) {
+    return getLong(row, getColumnIndex(columnName));
+  }
+
+
+  public void setMissingLong(long value) {
+    checkWritable();
+    missingLong = value;
+  }
+
+
+  public void setLong(int row, int column, long value) {
+    if (columnTypes[column] == STRING) {
+      setString(row, column, String.valueOf(value));
+
+    } else {
+      ensureBounds(row, column);
+      if (columnTypes[column] != LONG) {
+        throw new IllegalArgumentException("Column " + column + " is not a 'long' column.");
+      }
+      unindex(row, column);
+      long[] longData = (long[]) columns[column];
+      longData[row] = value;
+      reindex(row, column);
+    }
+  }
+
+
+  public void setLong(int row, String columnName, long value) {
+    setLong(row, getColumnIndex(columnName), value);
+  }
+
+
+  public long[] getLongColumn(String name) {
+    int col = getColumnIndex(name);
+    return (col == -1) ? null : getLongColumn(col);
+  }
+
+
+  public long[] getLongColumn(int col) {
+    long[] outgoing = new long[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      outgoing[row] = getLong(row, col);
+    }
+    return outgoing;
+  }
+
+
+  public long[] getLongRow(int row) {
+    long[] outgoing = new long[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      outgoing[col] = getLong(row, col);
     }
-
-    input.close();
+    return outgoing;
   }
 
 
@@ -1279,460 +4146,679 @@ public class Table {
 
 
   /**
+   * Get a float value from the specified row and column. If the value is null
+   * or not parseable as a float, the "missing" value is returned. By default,
+   * this is Float.NaN, but can be controlled with setMissingFloat().
+   *
    * @webref table:method
-   * @brief Adds a new column to a table
-   * @see Table#removeColumn(String)
+   * @brief Get a float value from the specified row and column
+   * @param row ID number of the row to reference
+   * @param column ID number of the column to reference
+   * @see Table#getInt(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#getStringColumn(String)
+   * @see Table#setInt(int, int, int)
+   * @see Table#setFloat(int, int, float)
+   * @see Table#setString(int, int, String)
    */
-  public void addColumn() {
-    addColumn(null, STRING);
+  public float getFloat(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == FLOAT) {
+      float[] floatData = (float[]) columns[column];
+      return floatData[row];
+    }
+    String str = getString(row, column);
+    if (str == null || str.equals(missingString)) {
+      return missingFloat;
+    }
+    return PApplet.parseFloat(str, missingFloat);
   }
 
-
   /**
-   * @param title the title to be used for the new column
+   * @param columnName title of the column to reference
    */
-  public void addColumn(String title) {
-    addColumn(title, STRING);
+  public float getFloat(int row, String columnName) {
+    return getFloat(row, getColumnIndex(columnName));
+  }
+
+
+  public void setMissingFloat(float value) {
+    checkWritable();
+    missingFloat = value;
   }
 
 
   /**
-   * @param type the type to be used for the new column: INT, LONG, FLOAT, DOUBLE, STRING, or CATEGORY
+   * @webref table:method
+   * @brief Store a float value in the specified row and column
+   * @param row ID number of the target row
+   * @param column ID number of the target column
+   * @param value value to assign
+   * @see Table#setInt(int, int, int)
+   * @see Table#setString(int, int, String)
+   * @see Table#getInt(int, int)
+   * @see Table#getFloat(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#getStringColumn(String)
    */
-  public void addColumn(String title, int type) {
-    insertColumn(columns.length, title, type);
-  }
+  public void setFloat(int row, int column, float value) {
+    if (columnTypes[column] == STRING) {
+      setString(row, column, String.valueOf(value));
 
+    } else {
+      ensureBounds(row, column);
+      if (columnTypes[column] != FLOAT) {
+        throw new IllegalArgumentException("Column " + column + " is not a float column.");
+      }
+      unindex(row, column);
+      float[] floatData = (float[]) columns[column];
+      floatData[row] = value;
+      reindex(row, column);
+    }
+  }
 
-  public void insertColumn(int index) {
-    insertColumn(index, null, STRING);
+  /**
+   * @param columnName title of the target column
+   */
+  public void setFloat(int row, String columnName, float value) {
+    setFloat(row, getColumnIndex(columnName), value);
   }
 
 
-  public void insertColumn(int index, String title) {
-    insertColumn(index, title, STRING);
+  public float[] getFloatColumn(String name) {
+    int col = getColumnIndex(name);
+    return (col == -1) ? null : getFloatColumn(col);
   }
 
 
-  public void insertColumn(int index, String title, int type) {
-    if (title != null && columnTitles == null) {
-      columnTitles = new String[columns.length];
+  public float[] getFloatColumn(int col) {
+    float[] outgoing = new float[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      outgoing[row] = getFloat(row, col);
     }
-    if (columnTitles != null) {
-      columnTitles = PApplet.splice(columnTitles, title, index);
-      columnIndices = null;
+    return outgoing;
+  }
+
+
+  public float[] getFloatRow(int row) {
+    float[] outgoing = new float[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      outgoing[col] = getFloat(row, col);
     }
-    columnTypes = PApplet.splice(columnTypes, type, index);
+    return outgoing;
+  }
 
-//    columnCategories = (HashMapBlows[])
-//      PApplet.splice(columnCategories, new HashMapBlows(), index);
-    HashMapBlows[] catTemp = new HashMapBlows[columns.length + 1];
-    // Faster than arrayCopy for a dozen or so entries
-    for (int i = 0; i < index; i++) {
-      catTemp[i] = columnCategories[i];
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public double getDouble(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == DOUBLE) {
+      double[] doubleData = (double[]) columns[column];
+      return doubleData[row];
     }
-    catTemp[index] = new HashMapBlows();
-    for (int i = index; i < columns.length; i++) {
-      catTemp[i+1] = columnCategories[i];
+    String str = getString(row, column);
+    if (str == null || str.equals(missingString)) {
+      return missingDouble;
     }
-    columnCategories = catTemp;
+    try {
+      return Double.parseDouble(str);
+    } catch (NumberFormatException nfe) {
+      return missingDouble;
+    }
+  }
 
-    Object[] temp = new Object[columns.length + 1];
-    System.arraycopy(columns, 0, temp, 0, index);
-    System.arraycopy(columns, index, temp, index+1, columns.length - index);
-    columns = temp;
 
-    switch (type) {
-      case INT: columns[index] = new int[rowCount]; break;
-      case LONG: columns[index] = new long[rowCount]; break;
-      case FLOAT: columns[index] = new float[rowCount]; break;
-      case DOUBLE: columns[index] = new double[rowCount]; break;
-      case STRING: columns[index] = new String[rowCount]; break;
-      case CATEGORY: columns[index] = new int[rowCount]; break;
+  public double getDouble(int row, String columnName) {
+    return getDouble(row, getColumnIndex(columnName));
+  }
+
+
+  public void setMissingDouble(double value) {
+    checkWritable();
+    missingDouble = value;
+  }
+
+
+  public void setDouble(int row, int column, double value) {
+    if (columnTypes[column] == STRING) {
+      setString(row, column, String.valueOf(value));
+
+    } else {
+      ensureBounds(row, column);
+      if (columnTypes[column] != DOUBLE) {
+        throw new IllegalArgumentException("Column " + column + " is not a 'double' column.");
+      }
+      unindex(row, column);
+      double[] doubleData = (double[]) columns[column];
+      doubleData[row] = value;
+      reindex(row, column);
     }
   }
 
- /**
-   * @webref table:method
-   * @brief Removes a column from a table
-   * @param columnName the title of the column to be removed
-   * @see Table#addColumn()
-   */
-  public void removeColumn(String columnName) {
-    removeColumn(getColumnIndex(columnName));
+
+  public void setDouble(int row, String columnName, double value) {
+    setDouble(row, getColumnIndex(columnName), value);
   }
 
- /**
-   * @param column the index number of the column to be removed
+
+  public double[] getDoubleColumn(String name) {
+    int col = getColumnIndex(name);
+    return (col == -1) ? null : getDoubleColumn(col);
+  }
+
+
+  public double[] getDoubleColumn(int col) {
+    double[] outgoing = new double[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      outgoing[row] = getDouble(row, col);
+    }
+    return outgoing;
+  }
+
+
+  public double[] getDoubleRow(int row) {
+    double[] outgoing = new double[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      outgoing[col] = getDouble(row, col);
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+//public long getTimestamp(String rowName, int column) {
+//return getTimestamp(getRowIndex(rowName), column);
+//}
+
+
+  /**
+   * Returns the time in milliseconds by parsing a SQL Timestamp at this cell.
    */
-  public void removeColumn(int column) {
-    int newCount = columns.length - 1;
+//  public long getTimestamp(int row, int column) {
+//    String str = get(row, column);
+//    java.sql.Timestamp timestamp = java.sql.Timestamp.valueOf(str);
+//    return timestamp.getTime();
+//  }
+
+
+//  public long getExcelTimestamp(int row, int column) {
+//    return parseExcelTimestamp(get(row, column));
+//  }
+
+
+//  static protected DateFormat excelDateFormat;
+
+//  static public long parseExcelTimestamp(String timestamp) {
+//    if (excelDateFormat == null) {
+//      excelDateFormat = new SimpleDateFormat("MM/dd/yy HH:mm");
+//    }
+//    try {
+//      return excelDateFormat.parse(timestamp).getTime();
+//    } catch (ParseException e) {
+//      e.printStackTrace();
+//      return -1;
+//    }
+//  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+//  public void setObject(int row, int column, Object value) {
+//    if (value == null) {
+//      data[row][column] = null;
+//    } else if (value instanceof String) {
+//      set(row, column, (String) value);
+//    } else if (value instanceof Float) {
+//      setFloat(row, column, ((Float) value).floatValue());
+//    } else if (value instanceof Integer) {
+//      setInt(row, column, ((Integer) value).intValue());
+//    } else {
+//      set(row, column, value.toString());
+//    }
+//  }
 
-    Object[] columnsTemp = new Object[newCount];
-    HashMapBlows[] catTemp = new HashMapBlows[newCount];
 
-    for (int i = 0; i < column; i++) {
-      columnsTemp[i] = columns[i];
-      catTemp[i] = columnCategories[i];
-    }
-    for (int i = column; i < newCount; i++) {
-      columnsTemp[i] = columns[i+1];
-      catTemp[i] = columnCategories[i+1];
-    }
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-    columns = columnsTemp;
-    columnCategories = catTemp;
 
-    if (columnTitles != null) {
-      String[] titlesTemp = new String[newCount];
-      for (int i = 0; i < column; i++) {
-        titlesTemp[i] = columnTitles[i];
-      }
-      for (int i = column; i < newCount; i++) {
-        titlesTemp[i] = columnTitles[i+1];
+  /**
+   * Get a String value from the table. If the row is longer than the table
+   *
+   * @webref table:method
+   * @brief Get an String value from the specified row and column
+   * @param row ID number of the row to reference
+   * @param column ID number of the column to reference
+   * @see Table#getInt(int, int)
+   * @see Table#getFloat(int, int)
+   * @see Table#getStringColumn(String)
+   * @see Table#setInt(int, int, int)
+   * @see Table#setFloat(int, int, float)
+   * @see Table#setString(int, int, String)
+   */
+  public String getString(int row, int column) {
+    checkBounds(row, column);
+    if (columnTypes[column] == STRING) {
+      String[] stringData = (String[]) columns[column];
+      return stringData[row];
+    } else if (columnTypes[column] == CATEGORY) {
+      int cat = getInt(row, column);
+      if (cat == missingCategory) {
+        return missingString;
       }
-      columnTitles = titlesTemp;
-      columnIndices = null;
+      return columnCategories[column].key(cat);
+    } else {
+      return String.valueOf(Array.get(columns[column], row));
     }
   }
 
   /**
-   * @webref table:method
-   * @brief Gets the number of columns in a table
-   * @see Table#getRowCount()
+   * @param columnName title of the column to reference
    */
-  public int getColumnCount() {
-    return columns.length;
+  public String getString(int row, String columnName) {
+    return getString(row, getColumnIndex(columnName));
+  }
+
+
+  public void setMissingString(String value) {
+    checkWritable();
+    missingString = value;
   }
 
 
   /**
-   * Change the number of columns in this table. Resizes all rows to ensure
-   * the same number of columns in each row. Entries in the additional (empty)
-   * columns will be set to null.
-   * @param newCount
+   * @webref table:method
+   * @brief Store a String value in the specified row and column
+   * @param row ID number of the target row
+   * @param column ID number of the target column
+   * @param value value to assign
+   * @see Table#setInt(int, int, int)
+   * @see Table#setFloat(int, int, float)
+   * @see Table#getInt(int, int)
+   * @see Table#getFloat(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#getStringColumn(String)
    */
-  public void setColumnCount(int newCount) {
-    int oldCount = columns.length;
-    if (oldCount != newCount) {
-      columns = (Object[]) PApplet.expand(columns, newCount);
-      // create new columns, default to String as the data type
-      for (int c = oldCount; c < newCount; c++) {
-        columns[c] = new String[rowCount];
-      }
-
-      if (columnTitles != null) {
-        columnTitles = PApplet.expand(columnTitles, newCount);
-      }
-      columnTypes = PApplet.expand(columnTypes, newCount);
-      columnCategories = (HashMapBlows[])
-        PApplet.expand(columnCategories, newCount);
+  public void setString(int row, int column, String value) {
+    ensureBounds(row, column);
+    if (columnTypes[column] == CATEGORY) {
+      // same as a String column, but only the index of the value is stored
+      unindex(row, column);
+      int[] indexData = (int[]) columns[column];
+      indexData[row] = (value == null) ?
+        missingCategory : columnCategories[column].index(value);
+      reindex(row, column);
+      return;
+    }
+    if (columnTypes[column] != STRING) {
+      throw new IllegalArgumentException("Column " + column + " is not a String column.");
     }
+    unindex(row, column);
+    String[] stringData = (String[]) columns[column];
+    stringData[row] = value;
+    reindex(row, column);
   }
 
+  /**
+   * @param columnName title of the target column
+   */
+  public void setString(int row, String columnName, String value) {
+    int column = checkColumnIndex(columnName);
+    setString(row, column, value);
+  }
 
-  public void setColumnType(String columnName, String columnType) {
-    setColumnType(checkColumnIndex(columnName), columnType);
+  /**
+   * @webref table:method
+   * @brief Gets all values in the specified column
+   * @param columnName title of the column to search
+   * @see Table#getInt(int, int)
+   * @see Table#getFloat(int, int)
+   * @see Table#getString(int, int)
+   * @see Table#setInt(int, int, int)
+   * @see Table#setFloat(int, int, float)
+   * @see Table#setString(int, int, String)
+   */
+  public String[] getStringColumn(String columnName) {
+    int col = getColumnIndex(columnName);
+    return (col == -1) ? null : getStringColumn(col);
   }
 
 
   /**
-   * Set the data type for a column so that using it is more efficient.
-   * @param column the column to change
-   * @param columnType One of int, long, float, double, or String.
+   * @param column ID number of the column to search
    */
-  public void setColumnType(int column, String columnType) {
-    int type = -1;
-    if (columnType.equals("String")) {
-      type = STRING;
-    } else if (columnType.equals("int")) {
-      type = INT;
-    } else if (columnType.equals("long")) {
-      type = LONG;
-    } else if (columnType.equals("float")) {
-      type = FLOAT;
-    } else if (columnType.equals("double")) {
-      type = DOUBLE;
-    } else if (columnType.equals("category")) {
-      type = CATEGORY;
-    } else {
-      throw new IllegalArgumentException("'" + columnType + "' is not a valid column type.");
+  public String[] getStringColumn(int column) {
+    String[] outgoing = new String[rowCount];
+    for (int i = 0; i < rowCount; i++) {
+      outgoing[i] = getString(i, column);
     }
-    setColumnType(column, type);
+    return outgoing;
   }
 
 
-  public void setColumnType(String columnName, int newType) {
-    setColumnType(checkColumnIndex(columnName), newType);
+  public String[] getStringRow(int row) {
+    String[] outgoing = new String[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      outgoing[col] = getString(row, col);
+    }
+    return outgoing;
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
-   * Sets the column type. If data already exists, then it'll be converted to
-   * the new type.
-   * @param column the column whose type should be changed
-   * @param newType something fresh, maybe try an int or a float for size?
+   * Return the row that contains the first String that matches.
+   * @param value the String to match
+   * @param column ID number of the column to search
    */
-  public void setColumnType(int column, int newType) {
-    switch (newType) {
-      case INT: {
-        int[] intData = new int[rowCount];
-        for (int row = 0; row < rowCount; row++) {
-          String s = getString(row, column);
-          intData[row] = PApplet.parseInt(s, missingInt);
-        }
-        columns[column] = intData;
-        break;
+  public int findRowIndex(String value, int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      int row = index.findFirst(value);
+      if (row != -2) {
+        return row;
       }
-      case LONG: {
-        long[] longData = new long[rowCount];
+    }
+    if (columnTypes[column] == STRING) {
+      String[] stringData = (String[]) columns[column];
+      if (value == null) {
         for (int row = 0; row < rowCount; row++) {
-          String s = getString(row, column);
-          try {
-            longData[row] = Long.parseLong(s);
-          } catch (NumberFormatException nfe) {
-            longData[row] = missingLong;
-          }
+          if (stringData[row] == null) return row;
         }
-        columns[column] = longData;
-        break;
-      }
-      case FLOAT: {
-        float[] floatData = new float[rowCount];
+      } else {
         for (int row = 0; row < rowCount; row++) {
-          String s = getString(row, column);
-          floatData[row] = PApplet.parseFloat(s, missingFloat);
+          if (stringData[row] != null && stringData[row].equals(value)) {
+            return row;
+          }
         }
-        columns[column] = floatData;
-        break;
       }
-      case DOUBLE: {
-        double[] doubleData = new double[rowCount];
+    } else if (columnTypes[column] == CATEGORY) {
+      int[] indexData = (int[]) columns[column];
+      int code = categoryIndex(column, value);
+      if (code != NO_CATEGORY) {
         for (int row = 0; row < rowCount; row++) {
-          String s = getString(row, column);
-          try {
-            doubleData[row] = Double.parseDouble(s);
-          } catch (NumberFormatException nfe) {
-            doubleData[row] = missingDouble;
-          }
+          if (indexData[row] == code) return row;
         }
-        columns[column] = doubleData;
-        break;
       }
-      case STRING: {
-        if (columnTypes[column] != STRING) {
-          String[] stringData = new String[rowCount];
-          for (int row = 0; row < rowCount; row++) {
-            stringData[row] = getString(row, column);
+    } else {  // less efficient, includes conversion as necessary
+      for (int row = 0; row < rowCount; row++) {
+        String str = getString(row, column);
+        if (str == null) {
+          if (value == null) {
+            return row;
           }
-          columns[column] = stringData;
-        }
-        break;
-      }
-      case CATEGORY: {
-        int[] indexData = new int[rowCount];
-        HashMapBlows categories = new HashMapBlows();
-        for (int row = 0; row < rowCount; row++) {
-          String s = getString(row, column);
-          indexData[row] = categories.index(s);
+        } else if (str.equals(value)) {
+          return row;
         }
-        columnCategories[column] = categories;
-        columns[column] = indexData;
-        break;
-      }
-      default: {
-        throw new IllegalArgumentException("That's not a valid column type.");
       }
     }
-//    System.out.println("new type is " + newType);
-    columnTypes[column] = newType;
+    return -1;
   }
 
 
   /**
-   * Set the entire table to a specific data type.
+   * Return the row that contains the first String that matches.
+   * @param value the String to match
+   * @param columnName title of the column to search
    */
-  public void setTableType(String type) {
-    for (int col = 0; col < getColumnCount(); col++) {
-      setColumnType(col, type);
-    }
+  public int findRowIndex(String value, String columnName) {
+    return findRowIndex(value, getColumnIndex(columnName));
   }
 
 
-  public void setColumnTypes(int[] types) {
-    ensureColumn(types.length - 1);
-    for (int col = 0; col < types.length; col++) {
-      setColumnType(col, types[col]);
+  /** Returned by categoryIndex() for a value that's not in the column. */
+  static final int NO_CATEGORY = -2;
+
+
+  /**
+   * The index stored in a CATEGORY column for this String, or NO_CATEGORY
+   * if the value isn't used in the column. Null gives missingCategory, and
+   * so does the missing String, unless it's also one of the categories.
+   */
+  protected int categoryIndex(int column, String value) {
+    if (value == null) {
+      return missingCategory;
     }
+    Integer code = columnCategories[column].dataToIndex.get(value);
+    if (code != null) {
+      return code;
+    }
+    return value.equals(missingString) ? missingCategory : NO_CATEGORY;
   }
 
 
   /**
-   * Set the titles (and if a second column is present) the data types for
-   * this table based on a file loaded separately. This will look for the
-   * title in column 0, and the type in column 1. Better yet, specify a
-   * column named "title" and another named "type" in the dictionary table
-   * to future-proof the code.
-   * @param dictionary
+   * Return a list of rows that contain the String passed in. If there are no
+   * matches, a zero length array will be returned (not a null array).
+   * @param value the String to match
+   * @param column ID number of the column to search
    */
-  public void setColumnTypes(final Table dictionary) {
-    ensureColumn(dictionary.getRowCount() - 1);
-    int titleCol = 0;
-    int typeCol = 1;
-    if (dictionary.hasColumnTitles()) {
-      titleCol = dictionary.getColumnIndex("title", true);
-      typeCol = dictionary.getColumnIndex("type", true);
+  public int[] findRowIndices(String value, int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      int[] found = index.findAll(value);
+      if (found != null) {
+        return found;
+      }
     }
-    setColumnTitles(dictionary.getStringColumn(titleCol));
-    final String[] typeNames = dictionary.getStringColumn(typeCol);
 
-    if (dictionary.getColumnCount() > 1) {
-      if (getRowCount() > 1000) {
-        int proc = Runtime.getRuntime().availableProcessors();
-        ExecutorService pool = Executors.newFixedThreadPool(proc/2);
-        for (int i = 0; i < dictionary.getRowCount(); i++) {
-          final int col = i;
-          pool.execute(new Runnable() {
-            public void run() {
-              setColumnType(col, typeNames[col]);
-            }
-          });
-        }
-        pool.shutdown();
-        while (!pool.isTerminated()) {
-          Thread.yield();
-        }
+    int[] outgoing = new int[rowCount];
+    int count = 0;
 
+    if (columnTypes[column] == STRING) {
+      String[] stringData = (String[]) columns[column];
+      if (value == null) {
+        for (int row = 0; row < rowCount; row++) {
+          if (stringData[row] == null) {
+            outgoing[count++] = row;
+          }
+        }
       } else {
-        for (int col = 0; col < dictionary.getRowCount(); col++) {
-//          setColumnType(i, dictionary.getString(i, typeCol));
-          setColumnType(col, typeNames[col]);
+        for (int row = 0; row < rowCount; row++) {
+          if (stringData[row] != null && stringData[row].equals(value)) {
+            outgoing[count++] = row;
+          }
+        }
+      }
+    } else if (columnTypes[column] == CATEGORY) {
+      int[] indexData = (int[]) columns[column];
+      int code = categoryIndex(column, value);
+      if (code != NO_CATEGORY) {
+        for (int row = 0; row < rowCount; row++) {
+          if (indexData[row] == code) {
+            outgoing[count++] = row;
+          }
+        }
+      }
+    } else {  // less efficient, includes conversion as necessary
+      for (int row = 0; row < rowCount; row++) {
+        String str = getString(row, column);
+        if (str == null) {
+          if (value == null) {
+            outgoing[count++] = row;
+          }
+        } else if (str.equals(value)) {
+          outgoing[count++] = row;
         }
       }
     }
+    return PApplet.subset(outgoing, 0, count);
   }
 
 
-  public int getColumnType(String columnName) {
-    return getColumnType(getColumnIndex(columnName));
+  /**
+   * Return a list of rows that contain the String passed in. If there are no
+   * matches, a zero length array will be returned (not a null array).
+   * @param value the String to match
+   * @param columnName title of the column to search
+   */
+  public int[] findRowIndices(String value, String columnName) {
+    return findRowIndices(value, getColumnIndex(columnName));
   }
 
 
-  /** Returns one of Table.STRING, Table.INT, etc... */
-  public int getColumnType(int column) {
-    return columnTypes[column];
-  }
-
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-  public int[] getColumnTypes() {
-    return columnTypes;
+  /**
+   * @webref table:method
+   * @brief Finds a row that contains the given value
+   * @param value the value to match
+   * @param column ID number of the column to search
+   * @see Table#getRow(int)
+   * @see Table#rows()
+   * @see Table#findRows(String, int)
+   * @see Table#matchRow(String, int)
+   * @see Table#matchRows(String, int)
+   */
+  public TableRow findRow(String value, int column) {
+    int row = findRowIndex(value, column);
+    return (row == -1) ? null : new RowPointer(this, row);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  /**
+   * @param columnName title of the column to search
+   */
+  public TableRow findRow(String value, String columnName) {
+    return findRow(value, getColumnIndex(columnName));
+  }
 
 
   /**
-   * Remove the first row from the data set, and use it as the column titles.
-   * Use loadTable("table.csv", "header") instead.
+   * @webref table:method
+   * @brief Finds multiple rows that contain the given value
+   * @param value the value to match
+   * @param column ID number of the column to search
+   * @see Table#getRow(int)
+   * @see Table#rows()
+   * @see Table#findRow(String, int)
+   * @see Table#matchRow(String, int)
+   * @see Table#matchRows(String, int)
    */
-  @Deprecated
-  public String[] removeTitleRow() {
-    String[] titles = getStringRow(0);
-    removeRow(0);
-    setColumnTitles(titles);
-    return titles;
+  public Iterable<TableRow> findRows(final String value, final int column) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return findRowIterator(value, column);
+      }
+    };
   }
 
 
-  public void setColumnTitles(String[] titles) {
-    if (titles != null) {
-      ensureColumn(titles.length - 1);
-    }
-    columnTitles = titles;
-    columnIndices = null;  // remove the cache
+  /**
+   * @param columnName title of the column to search
+   */
+  public Iterable<TableRow> findRows(final String value, final String columnName) {
+    return findRows(value, getColumnIndex(columnName));
   }
 
 
-  public void setColumnTitle(int column, String title) {
-    ensureColumn(column);
-    if (columnTitles == null) {
-      columnTitles = new String[getColumnCount()];
-    }
-    columnTitles[column] = title;
-    columnIndices = null;  // reset these fellas
+  /**
+   * @brief Finds multiple rows that contain the given value
+   * @param value the value to match
+   * @param column ID number of the column to search
+   */
+  public Iterator<TableRow> findRowIterator(String value, int column) {
+    return new RowIndexIterator(this, findRowIndices(value, column));
   }
 
 
-  public boolean hasColumnTitles() {
-    return columnTitles != null;
+  /**
+   * @param columnName title of the column to search
+   */
+  public Iterator<TableRow> findRowIterator(String value, String columnName) {
+    return findRowIterator(value, getColumnIndex(columnName));
   }
 
 
-  public String[] getColumnTitles() {
-    return columnTitles;
-  }
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  public String getColumnTitle(int col) {
-    return (columnTitles == null) ? null : columnTitles[col];
+  /**
+   * Return the row that contains the first String that matches.
+   * @param regexp the String to match
+   * @param column ID number of the column to search
+   */
+  public int matchRowIndex(String regexp, int column) {
+    checkColumn(column);
+    if (columnTypes[column] == STRING) {
+      String[] stringData = (String[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        if (stringData[row] != null &&
+            PApplet.match(stringData[row], regexp) != null) {
+          return row;
+        }
+      }
+    } else {  // less efficient, includes conversion as necessary
+      for (int row = 0; row < rowCount; row++) {
+        String str = getString(row, column);
+        if (str != null &&
+            PApplet.match(str, regexp) != null) {
+          return row;
+        }
+      }
+    }
+    return -1;
   }
 
 
-  public int getColumnIndex(String columnName) {
-    return getColumnIndex(columnName, true);
+  /**
+   * Return the row that contains the first String that matches.
+   * @param what the String to match
+   * @param columnName title of the column to search
+   */
+  public int matchRowIndex(String what, String columnName) {
+    return matchRowIndex(what, getColumnIndex(columnName));
   }
 
 
   /**
-   * Get the index of a column.
-   * @param name Name of the column.
-   * @param report Whether to throw an exception if the column wasn't found.
-   * @return index of the found column, or -1 if not found.
+   * Return a list of rows that contain the String passed in. If there are no
+   * matches, a zero length array will be returned (not a null array).
+   * @param what the String to match
+   * @param column ID number of the column to search
    */
-  protected int getColumnIndex(String name, boolean report) {
-    if (columnTitles == null) {
-      if (report) {
-        throw new IllegalArgumentException("This table has no header, so no column titles are set.");
-      }
-      return -1;
-    }
-    // only create this on first get(). subsequent calls to set the title will
-    // also update this array, but only if it exists.
-    if (columnIndices == null) {
-      columnIndices = new HashMap<String, Integer>();
-      for (int col = 0; col < columns.length; col++) {
-        columnIndices.put(columnTitles[col], col);
+  public int[] matchRowIndices(String regexp, int column) {
+    int[] outgoing = new int[rowCount];
+    int count = 0;
+
+    checkColumn(column);
+    if (columnTypes[column] == STRING) {
+      String[] stringData = (String[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        if (stringData[row] != null &&
+            PApplet.match(stringData[row], regexp) != null) {
+          outgoing[count++] = row;
+        }
       }
-    }
-    Integer index = columnIndices.get(name);
-    if (index == null) {
-      if (report) {
-        // Throws an exception here because the name is known and therefore most useful.
-        // (Rather than waiting for it to fail inside, say, getInt())
-        throw new IllegalArgumentException("This table has no column named '" + name + "'");
+    } else {  // less efficient, includes conversion as necessary
+      for (int row = 0; row < rowCount; row++) {
+        String str = getString(row, column);
+        if (str != null &&
+            PApplet.match(str, regexp) != null) {
+          outgoing[count++] = row;
+        }
       }
-      return -1;
     }
-    return index.intValue();
+    return PApplet.subset(outgoing, 0, count);
   }
 
 
   /**
-   * Same as getColumnIndex(), but creates the column if it doesn't exist.
-   * Named this way to not conflict with checkColumn(), an internal function
-   * used to ensure that a columns exists, and also to denote that it returns
-   * an int for the column index.
-   * @param title column title
-   * @return index of a new or previously existing column
+   * Return a list of rows that match the regex passed in. If there are no
+   * matches, a zero length array will be returned (not a null array).
+   * @param what the String to match
+   * @param columnName title of the column to search
    */
-  public int checkColumnIndex(String title) {
-    int index = getColumnIndex(title, false);
-    if (index != -1) {
-      return index;
-    }
-    addColumn(title);
-    return getColumnCount() - 1;
+  public int[] matchRowIndices(String what, String columnName) {
+    return matchRowIndices(what, getColumnIndex(columnName));
   }
 
 
@@ -1740,2006 +4826,3043 @@ public class Table {
 
   /**
    * @webref table:method
-   * @brief Gets the number of rows in a table
-   * @see Table#getColumnCount()
+   * @brief Finds a row that matches the given expression
+   * @param regexp the regular expression to match
+   * @param column ID number of the column to search
+   * @see Table#getRow(int)
+   * @see Table#rows()
+   * @see Table#findRow(String, int)
+   * @see Table#findRows(String, int)
+   * @see Table#matchRows(String, int)
    */
-  public int getRowCount() {
-    return rowCount;
-  }
-
-
-  public int lastRowIndex() {
-    return getRowCount() - 1;
+  public TableRow matchRow(String regexp, int column) {
+    int row = matchRowIndex(regexp, column);
+    return (row == -1) ? null : new RowPointer(this, row);
   }
 
 
   /**
-   * @webref table:method
-   * @brief Removes all rows from a table
-   * @see Table#addRow()
-   * @see Table#removeRow(int)
+   * @param columnName title of the column to search
    */
-  public void clearRows() {
-    setRowCount(0);
-  }
-
-
-  public void setRowCount(int newCount) {
-    if (newCount != rowCount) {
-      if (newCount > 1000000) {
-        System.out.print("Note: setting maximum row count to " + PApplet.nfc(newCount));
-      }
-      long t = System.currentTimeMillis();
-      for (int col = 0; col < columns.length; col++) {
-        switch (columnTypes[col]) {
-          case INT: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
-          case LONG: columns[col] = PApplet.expand((long[]) columns[col], newCount); break;
-          case FLOAT: columns[col] = PApplet.expand((float[]) columns[col], newCount); break;
-          case DOUBLE: columns[col] = PApplet.expand((double[]) columns[col], newCount); break;
-          case STRING: columns[col] = PApplet.expand((String[]) columns[col], newCount); break;
-          case CATEGORY: columns[col] = PApplet.expand((int[]) columns[col], newCount); break;
-        }
-        if (newCount > 1000000) {
-          try {
-            Thread.sleep(10);  // gc time!
-          } catch (InterruptedException e) {
-            e.printStackTrace();
-          }
-        }
-      }
-      if (newCount > 1000000) {
-        int ms = (int) (System.currentTimeMillis() - t);
-        System.out.println(" (resize took " + PApplet.nfc(ms) + " ms)");
-      }
-    }
-    rowCount = newCount;
+  public TableRow matchRow(String regexp, String columnName) {
+    return matchRow(regexp, getColumnIndex(columnName));
   }
 
 
- /**
+  /**
    * @webref table:method
-   * @brief Adds a row to a table
-   * @see Table#removeRow(int)
-   * @see Table#clearRows()
+   * @brief Finds multiple rows that match the given expression
+   * @param regexp the regular expression to match
+   * @param column ID number of the column to search
+   * @see Table#getRow(int)
+   * @see Table#rows()
+   * @see Table#findRow(String, int)
+   * @see Table#findRows(String, int)
+   * @see Table#matchRow(String, int)
    */
-  public TableRow addRow() {
-    //if (rowIncrement == 0) {
-    setRowCount(rowCount + 1);
-    return new RowPointer(this, rowCount - 1);
+  public Iterable<TableRow> matchRows(final String regexp, final int column) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return matchRowIterator(regexp, column);
+      }
+    };
   }
 
 
- /**
-   * @param source a reference to the original row to be duplicated
+  /**
+   * @param columnName title of the column to search
    */
-  public TableRow addRow(TableRow source) {
-    int row = rowCount;
-    // Make sure there are enough columns to add this data
-    ensureBounds(row, source.getColumnCount() - 1);
-
-    for (int col = 0; col < columns.length; col++) {
-      switch (columnTypes[col]) {
-      case CATEGORY:
-      case INT:
-        setInt(row, col, source.getInt(col));
-        break;
-      case LONG:
-        setLong(row, col, source.getLong(col));
-        break;
-      case FLOAT:
-        setFloat(row, col, source.getFloat(col));
-        break;
-      case DOUBLE:
-        setDouble(row, col, source.getDouble(col));
-        break;
-      case STRING:
-        setString(row, col, source.getString(col));
-        break;
-      default:
-        throw new RuntimeException("no types");
-      }
-    }
-    return new RowPointer(this, row);
+  public Iterable<TableRow> matchRows(String regexp, String columnName) {
+    return matchRows(regexp, getColumnIndex(columnName));
   }
 
 
- /**
-   * @nowebref
+  /**
+   * @webref table:method
+   * @brief Finds multiple rows that match the given expression
+   * @param value the regular expression to match
+   * @param column ID number of the column to search
    */
-  public TableRow addRow(Object[] columnData) {
-    setRow(getRowCount(), columnData);
-    return new RowPointer(this, rowCount - 1);
+  public Iterator<TableRow> matchRowIterator(String value, int column) {
+    return new RowIndexIterator(this, matchRowIndices(value, column));
   }
 
 
-  public void insertRow(int insert, Object[] columnData) {
-    for (int col = 0; col < columns.length; col++) {
-      switch (columnTypes[col]) {
-        case CATEGORY:
-        case INT: {
-          int[] intTemp = new int[rowCount+1];
-          System.arraycopy(columns[col], 0, intTemp, 0, insert);
-          System.arraycopy(columns[col], insert, intTemp, insert+1, rowCount - insert);
-          columns[col] = intTemp;
-          break;
-        }
-        case LONG: {
-          long[] longTemp = new long[rowCount+1];
-          System.arraycopy(columns[col], 0, longTemp, 0, insert);
-          System.arraycopy(columns[col], insert, longTemp, insert+1, rowCount - insert);
-          columns[col] = longTemp;
-          break;
-        }
-        case FLOAT: {
-          float[] floatTemp = new float[rowCount+1];
-          System.arraycopy(columns[col], 0, floatTemp, 0, insert);
-          System.arraycopy(columns[col], insert, floatTemp, insert+1, rowCount - insert);
-          columns[col] = floatTemp;
-          break;
-        }
-        case DOUBLE: {
-          double[] doubleTemp = new double[rowCount+1];
-          System.arraycopy(columns[col], 0, doubleTemp, 0, insert);
-          System.arraycopy(columns[col], insert, doubleTemp, insert+1, rowCount - insert);
-          columns[col] = doubleTemp;
-          break;
-        }
-        case STRING: {
-          String[] stringTemp = new String[rowCount+1];
-          System.arraycopy(columns[col], 0, stringTemp, 0, insert);
-          System.arraycopy(columns[col], insert, stringTemp, insert+1, rowCount - insert);
-          columns[col] = stringTemp;
-          break;
-        }
-      }
-    }
-    setRow(insert, columnData);
-    rowCount++;
-  }
-
   /**
-   * @webref table:method
-   * @brief Removes a row from a table
-   * @param row ID number of the row to remove
-   * @see Table#addRow()
-   * @see Table#clearRows()
+   * @param columnName title of the column to search
    */
-  public void removeRow(int row) {
-    for (int col = 0; col < columns.length; col++) {
-      switch (columnTypes[col]) {
-        case CATEGORY:
-        case INT: {
-          int[] intTemp = new int[rowCount-1];
-//          int[] intData = (int[]) columns[col];
-//          System.arraycopy(intData, 0, intTemp, 0, dead);
-//          System.arraycopy(intData, dead+1, intTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, intTemp, 0, row);
-          System.arraycopy(columns[col], row+1, intTemp, row, (rowCount - row) - 1);
-          columns[col] = intTemp;
-          break;
-        }
-        case LONG: {
-          long[] longTemp = new long[rowCount-1];
-//          long[] longData = (long[]) columns[col];
-//          System.arraycopy(longData, 0, longTemp, 0, dead);
-//          System.arraycopy(longData, dead+1, longTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, longTemp, 0, row);
-          System.arraycopy(columns[col], row+1, longTemp, row, (rowCount - row) - 1);
-          columns[col] = longTemp;
-          break;
-        }
-        case FLOAT: {
-          float[] floatTemp = new float[rowCount-1];
-//          float[] floatData = (float[]) columns[col];
-//          System.arraycopy(floatData, 0, floatTemp, 0, dead);
-//          System.arraycopy(floatData, dead+1, floatTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, floatTemp, 0, row);
-          System.arraycopy(columns[col], row+1, floatTemp, row, (rowCount - row) - 1);
-          columns[col] = floatTemp;
-          break;
-        }
-        case DOUBLE: {
-          double[] doubleTemp = new double[rowCount-1];
-//          double[] doubleData = (double[]) columns[col];
-//          System.arraycopy(doubleData, 0, doubleTemp, 0, dead);
-//          System.arraycopy(doubleData, dead+1, doubleTemp, dead, (rowCount - dead) + 1);
-          System.arraycopy(columns[col], 0, doubleTemp, 0, row);
-          System.arraycopy(columns[col], row+1, doubleTemp, row, (rowCount - row) - 1);
-          columns[col] = doubleTemp;
-          break;
-        }
-        case STRING: {
-          String[] stringTemp = new String[rowCount-1];
-          System.arraycopy(columns[col], 0, stringTemp, 0, row);
-          System.arraycopy(columns[col], row+1, stringTemp, row, (rowCount - row) - 1);
-          columns[col] = stringTemp;
+  public Iterator<TableRow> matchRowIterator(String value, String columnName) {
+    return matchRowIterator(value, getColumnIndex(columnName));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Create an index on a column so that findRow(), findRows(), and their
+   * *Index() versions can look up values without scanning the whole column.
+   * INT, LONG, CATEGORY, and STRING columns get a hash index. FLOAT and
+   * DOUBLE columns get a sorted index, which is also used for range
+   * lookups with findRowIndices(min, max, column). The index is kept up to
+   * date as values are set, and rows are added, removed, or sorted.
+   */
+  public void createIndex(String columnName) {
+    createIndex(getColumnIndex(columnName));
+  }
+
+
+  public void createIndex(int column) {
+    checkWritable();
+    checkColumn(column);
+    if (indexes == null) {
+      indexes = new ColumnIndex[columns.length];
+    } else if (indexes.length < columns.length) {
+      indexes = (ColumnIndex[]) PApplet.expand(indexes, columns.length);
+    }
+    indexes[column] = createColumnIndex(column);
+  }
+
+
+  public void removeIndex(String columnName) {
+    removeIndex(getColumnIndex(columnName));
+  }
+
+
+  public void removeIndex(int column) {
+    if (indexes != null && column < indexes.length) {
+      indexes[column] = null;
+    }
+  }
+
+
+  public boolean hasIndex(int column) {
+    return getIndex(column) != null;
+  }
+
+
+  protected ColumnIndex createColumnIndex(int column) {
+    int type = columnTypes[column];
+    if (type == FLOAT || type == DOUBLE) {
+      return new SortedIndex(this, column);
+    }
+    return new HashIndex(this, column);
+  }
+
+
+  /** Returns the index for this column, or null if it has none. */
+  protected ColumnIndex getIndex(int column) {
+    if (indexes != null && column < indexes.length) {
+      return indexes[column];
+    }
+    return null;
+  }
+
+
+  /**
+   * Call before changing a single value that might be indexed. This also
+   * makes sure that the column isn't shared with a snapshot, so the column
+   * array has to be (re)read from 'columns' after this is called.
+   */
+  protected void unindex(int row, int column) {
+    detach(column);
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      index.remove(row);
+    }
+  }
+
+
+  /**
+   * Call before changing values in a column's array in place. If the array
+   * is shared with a snapshot, this table switches to its own copy first.
+   */
+  protected void detach(int column) {
+    checkWritable();
+    if (sharedColumns != null) {
+      Object data = columns[column];
+      if (sharedColumns.remove(data)) {
+        columns[column] = copyColumn(data, columnTypes[column]);
+        if (sharedColumns.isEmpty()) {
+          sharedColumns = null;
         }
       }
     }
-    rowCount--;
   }
 
 
-  /*
-  public void setRow(int row, String[] pieces) {
-    checkSize(row, pieces.length - 1);
-    // pieces.length may be less than columns.length, so loop over pieces
-    for (int col = 0; col < pieces.length; col++) {
-      setRowCol(row, col, pieces[col]);
+  static private Object copyColumn(Object data, int type) {
+    switch (type) {
+    case INT:
+    case CATEGORY: return ((int[]) data).clone();
+    case LONG: return ((long[]) data).clone();
+    case FLOAT: return ((float[]) data).clone();
+    case DOUBLE: return ((double[]) data).clone();
+    case STRING: return ((String[]) data).clone();
     }
+    throw new IllegalArgumentException("Invalid column type: " + type);
   }
 
 
-  protected void setRowCol(int row, int col, String piece) {
-    switch (columnTypes[col]) {
-    case STRING:
-      String[] stringData = (String[]) columns[col];
-      stringData[row] = piece;
-      break;
-    case INT:
-      int[] intData = (int[]) columns[col];
-      intData[row] = PApplet.parseInt(piece, missingInt);
-      break;
-    case LONG:
-      long[] longData = (long[]) columns[col];
-      try {
-        longData[row] = Long.parseLong(piece);
-      } catch (NumberFormatException nfe) {
-        longData[row] = missingLong;
-      }
-      break;
-    case FLOAT:
-      float[] floatData = (float[]) columns[col];
-      floatData[row] = PApplet.parseFloat(piece, missingFloat);
-      break;
-    case DOUBLE:
-      double[] doubleData = (double[]) columns[col];
-      try {
-        doubleData[row] = Double.parseDouble(piece);
-      } catch (NumberFormatException nfe) {
-        doubleData[row] = missingDouble;
-      }
-      break;
-    case CATEGORY:
-      int[] indexData = (int[]) columns[col];
-      indexData[row] = columnCategories[col].index(piece);
-      break;
-    default:
-      throw new IllegalArgumentException("That's not a valid column type.");
+  /** Throw an error if this is a snapshot, which can't be modified. */
+  protected void checkWritable() {
+    if (readOnly) {
+      throw new IllegalArgumentException("This Table is a snapshot and cannot be modified.");
     }
   }
-  */
 
 
-  public void setRow(int row, Object[] pieces) {
-    ensureBounds(row, pieces.length - 1);
-    // pieces.length may be less than columns.length, so loop over pieces
-    for (int col = 0; col < pieces.length; col++) {
-      setRowCol(row, col, pieces[col]);
+  /** Call after changing a single value that might be indexed. */
+  protected void reindex(int row, int column) {
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      index.add(row);
     }
   }
 
 
-  protected void setRowCol(int row, int col, Object piece) {
-    switch (columnTypes[col]) {
-      case STRING:
-        String[] stringData = (String[]) columns[col];
-        if (piece == null) {
-          stringData[row] = null;
-//        } else if (piece instanceof String) {
-//          stringData[row] = (String) piece;
-        } else {
-          // Calls toString() on the object, which is 'return this' for String
-          stringData[row] = String.valueOf(piece);
+  /**
+   * Call after changing a column (or all columns, if column is -1) other
+   * than through the set methods. The index is rebuilt on its next use.
+   */
+  protected void invalidateIndexes(int column) {
+    if (indexes != null) {
+      for (int col = 0; col < indexes.length; col++) {
+        if (indexes[col] != null && (column == -1 || col == column)) {
+          indexes[col].dirty = true;
         }
-        break;
-      case INT:
-        int[] intData = (int[]) columns[col];
-        //intData[row] = PApplet.parseInt(piece, missingInt);
-        if (piece == null) {
-          intData[row] = missingInt;
-        } else if (piece instanceof Integer) {
-          intData[row] = (Integer) piece;
-        } else {
-          intData[row] = PApplet.parseInt(String.valueOf(piece), missingInt);
+      }
+    }
+  }
+
+
+  /**
+   * Return all rows with a value between min and max (inclusive) in the
+   * specified column, in row order. Uses the sorted index on FLOAT or
+   * DOUBLE columns when one has been created, otherwise checks each row.
+   */
+  public int[] findRowIndices(double min, double max, int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index instanceof SortedIndex) {
+      return ((SortedIndex) index).findRange(min, max);
+    }
+    int[] outgoing = new int[rowCount];
+    int count = 0;
+    switch (columnTypes[column]) {
+    case INT: {
+      int[] intData = (int[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        if (intData[row] >= min && intData[row] <= max) {
+          outgoing[count++] = row;
         }
-        break;
-      case LONG:
-        long[] longData = (long[]) columns[col];
-        if (piece == null) {
-          longData[row] = missingLong;
-        } else if (piece instanceof Long) {
-          longData[row] = (Long) piece;
-        } else {
-          try {
-            longData[row] = Long.parseLong(String.valueOf(piece));
-          } catch (NumberFormatException nfe) {
-            longData[row] = missingLong;
-          }
+      }
+      break;
+    }
+    case LONG: {
+      long[] longData = (long[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        if (longData[row] >= min && longData[row] <= max) {
+          outgoing[count++] = row;
         }
-        break;
-      case FLOAT:
-        float[] floatData = (float[]) columns[col];
-        if (piece == null) {
-          floatData[row] = missingFloat;
-        } else if (piece instanceof Float) {
-          floatData[row] = (Float) piece;
-        } else {
-          floatData[row] = PApplet.parseFloat(String.valueOf(piece), missingFloat);
+      }
+      break;
+    }
+    case FLOAT: {
+      float[] floatData = (float[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        if (floatData[row] >= min && floatData[row] <= max) {
+          outgoing[count++] = row;
         }
-        break;
-      case DOUBLE:
-        double[] doubleData = (double[]) columns[col];
-        if (piece == null) {
-          doubleData[row] = missingDouble;
-        } else if (piece instanceof Double) {
-          doubleData[row] = (Double) piece;
-        } else {
-          try {
-            doubleData[row] = Double.parseDouble(String.valueOf(piece));
-          } catch (NumberFormatException nfe) {
-            doubleData[row] = missingDouble;
-          }
+      }
+      break;
+    }
+    case DOUBLE: {
+      double[] doubleData = (double[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        if (doubleData[row] >= min && doubleData[row] <= max) {
+          outgoing[count++] = row;
         }
-        break;
-      case CATEGORY:
-        int[] indexData = (int[]) columns[col];
-        if (piece == null) {
-          indexData[row] = missingCategory;
-        } else {
-          indexData[row] = columnCategories[col].index(String.valueOf(piece));
+      }
+      break;
+    }
+    default: {  // less efficient, includes conversion as necessary
+      for (int row = 0; row < rowCount; row++) {
+        double value = getDouble(row, column);
+        if (value >= min && value <= max) {
+          outgoing[count++] = row;
         }
-        break;
-      default:
-        throw new IllegalArgumentException("That's not a valid column type.");
+      }
+    }
     }
+    return PApplet.subset(outgoing, 0, count);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  public int[] findRowIndices(double min, double max, String columnName) {
+    return findRowIndices(min, max, getColumnIndex(columnName));
+  }
+
 
   /**
-   * @webref table:method
-   * @brief Gets a row from a table
-   * @param row ID number of the row to get
-   * @see Table#rows()
-   * @see Table#findRow(String, int)
-   * @see Table#findRows(String, int)
-   * @see Table#matchRow(String, int)
-   * @see Table#matchRows(String, int)
+   * Return the rows with a value between min and max (inclusive).
+   * @param min lowest value to include
+   * @param max highest value to include
+   * @param column ID number of the column to search
    */
-  public TableRow getRow(int row) {
-    return new RowPointer(this, row);
+  public Iterable<TableRow> findRows(final double min, final double max,
+                                     final int column) {
+    return rows(findRowIndices(min, max, column));
   }
 
 
-  /**
-   * Note that this one iterator instance is shared by any calls to iterate
-   * the rows of this table. This is very efficient, but not thread-safe.
-   * If you want to iterate in a multi-threaded manner, don't use the iterator.
-   *
-   * @webref table:method
-   * @brief Gets multiple rows from a table
-   * @see Table#getRow(int)
-   * @see Table#findRow(String, int)
-   * @see Table#findRows(String, int)
-   * @see Table#matchRow(String, int)
-   * @see Table#matchRows(String, int)
-   */
-  public Iterable<TableRow> rows() {
-    return new Iterable<TableRow>() {
-      public Iterator<TableRow> iterator() {
-        if (rowIterator == null) {
-          rowIterator = new RowIterator(Table.this);
-        } else {
-          rowIterator.reset();
-        }
-        return rowIterator;
+  public Iterable<TableRow> findRows(double min, double max, String columnName) {
+    return findRows(min, max, getColumnIndex(columnName));
+  }
+
+
+  abstract static class ColumnIndex {
+    Table table;
+    int column;
+    boolean dirty = true;
+
+    ColumnIndex(Table table, int column) {
+      this.table = table;
+      this.column = column;
+    }
+
+    /** Rebuild from scratch if anything has changed in bulk. */
+    void check() {
+      if (dirty) {
+        build();
+        dirty = false;
       }
-    };
+    }
+
+    abstract void build();
+
+    /** Returns the first row matching, -1 if none, or -2 to fall back. */
+    abstract int findFirst(String value);
+
+    /** Returns all rows matching, or null to fall back. */
+    abstract int[] findAll(String value);
+
+    /** A single row is about to change. */
+    void remove(int row) {
+      dirty = true;
+    }
+
+    /** A single row has changed. */
+    void add(int row) {
+      dirty = true;
+    }
+
+    /** The row count is changing from oldCount to newCount. */
+    void resize(int oldCount, int newCount) {
+      dirty = true;
+    }
   }
 
+
   /**
-   * @nowebref
+   * Open addressing (linear probing) hash table that maps each distinct value
+   * in the column to the first and last rows that contain it. Rows with the
+   * same value are linked in row order through the next[] and prev[] arrays.
+   * The values themselves aren't copied, they're read from the column.
    */
-  public Iterable<TableRow> rows(final int[] indices) {
-    return new Iterable<TableRow>() {
-      public Iterator<TableRow> iterator() {
-        return new RowIndexIterator(Table.this, indices);
+  static class HashIndex extends ColumnIndex {
+    int[] heads;  // first row for each slot, or -1 if empty
+    int[] tails;  // last row for each slot
+    int mask;
+    int size;  // number of distinct values
+
+    int[] next;
+    int[] prev;
+
+    // value being looked up by probe()
+    int probeInt;
+    long probeLong;
+    String probeString;
+
+    HashIndex(Table table, int column) {
+      super(table, column);
+    }
+
+    @Override
+    void build() {
+      int rowCount = table.rowCount;
+      int capacity = 16;
+      while (capacity < rowCount * 2) {
+        capacity <<= 1;
       }
-    };
-  }
-
+      heads = new int[capacity];
+      tails = new int[capacity];
+      Arrays.fill(heads, -1);
+      mask = capacity - 1;
+      size = 0;
+      next = new int[Math.max(rowCount, 10)];
+      prev = new int[next.length];
+      for (int row = 0; row < rowCount; row++) {
+        insert(row);
+      }
+    }
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+    static int mix(int h) {
+      h *= 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
 
+    int hashRow(int row) {
+      Object data = table.columns[column];
+      switch (table.columnTypes[column]) {
+      case LONG:
+        long v = ((long[]) data)[row];
+        return mix((int) (v ^ (v >>> 32)));
+      case STRING:
+        String s = ((String[]) data)[row];
+        return (s == null) ? 0 : mix(s.hashCode());
+      default:  // INT or CATEGORY
+        return mix(((int[]) data)[row]);
+      }
+    }
 
-  static class RowPointer implements TableRow {
-    Table table;
-    int row;
+    boolean sameValue(int row1, int row2) {
+      Object data = table.columns[column];
+      switch (table.columnTypes[column]) {
+      case LONG:
+        return ((long[]) data)[row1] == ((long[]) data)[row2];
+      case STRING:
+        String s1 = ((String[]) data)[row1];
+        String s2 = ((String[]) data)[row2];
+        return (s1 == null) ? s2 == null : s1.equals(s2);
+      default:
+        return ((int[]) data)[row1] == ((int[]) data)[row2];
+      }
+    }
 
-    public RowPointer(Table table, int row) {
-      this.table = table;
-      this.row = row;
+    /** Slot holding the same value as 'row', or the empty slot for it. */
+    int slotForRow(int row) {
+      int slot = hashRow(row) & mask;
+      while (heads[slot] != -1 && !sameValue(heads[slot], row)) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
     }
 
-    public void setRow(int row) {
-      this.row = row;
+    /** Find the head row for the probe value set by the caller, or -1. */
+    int probe(int hash) {
+      Object data = table.columns[column];
+      int type = table.columnTypes[column];
+      int slot = hash & mask;
+      int row;
+      while ((row = heads[slot]) != -1) {
+        switch (type) {
+        case LONG:
+          if (((long[]) data)[row] == probeLong) return row;
+          break;
+        case STRING:
+          String s = ((String[]) data)[row];
+          if (s == null ? probeString == null : s.equals(probeString)) return row;
+          break;
+        default:
+          if (((int[]) data)[row] == probeInt) return row;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return -1;
     }
 
-    public String getString(int column) {
-      return table.getString(row, column);
+    /**
+     * Find the first row that would match findRowIndex(value), -1 if none,
+     * or -2 if this can only be answered by scanning the column.
+     */
+    int findHead(String value) {
+      check();
+      switch (table.columnTypes[column]) {
+      case STRING:
+        probeString = value;
+        return probe(value == null ? 0 : mix(value.hashCode()));
+      case INT:
+        if (value == null) return -1;
+        try {
+          probeInt = Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+          return -1;
+        }
+        // must be the same text that getString() would produce
+        if (!String.valueOf(probeInt).equals(value)) return -1;
+        return probe(mix(probeInt));
+      case LONG:
+        if (value == null) return -1;
+        try {
+          probeLong = Long.parseLong(value);
+        } catch (NumberFormatException nfe) {
+          return -1;
+        }
+        if (!String.valueOf(probeLong).equals(value)) return -1;
+        return probe(mix((int) (probeLong ^ (probeLong >>> 32))));
+      case CATEGORY:
+        String missing = table.missingString;
+        if (value == null ? missing == null : value.equals(missing)) {
+          return -2;  // missing entries also match, just scan
+        }
+        Integer code = table.columnCategories[column].dataToIndex.get(value);
+        if (code == null) return -1;
+        probeInt = code;
+        return probe(mix(probeInt));
+      }
+      return -2;
     }
 
-    public String getString(String columnName) {
-      return table.getString(row, columnName);
+    @Override
+    int findFirst(String value) {
+      return findHead(value);
     }
 
-    public int getInt(int column) {
-      return table.getInt(row, column);
+    @Override
+    int[] findAll(String value) {
+      int row = findHead(value);
+      if (row == -2) return null;
+      if (row == -1) return new int[0];
+      int count = 0;
+      for (int r = row; r != -1; r = next[r]) {
+        count++;
+      }
+      int[] outgoing = new int[count];
+      count = 0;
+      for (int r = row; r != -1; r = next[r]) {
+        outgoing[count++] = r;
+      }
+      return outgoing;
     }
 
-    public int getInt(String columnName) {
-      return table.getInt(row, columnName);
+    /** Link a row into the list for its value, keeping rows in order. */
+    void insert(int row) {
+      if (row >= next.length) {
+        next = PApplet.expand(next, Math.max(row + 1, next.length << 1));
+        prev = PApplet.expand(prev, next.length);
+      }
+      int slot = slotForRow(row);
+      if (heads[slot] == -1) {
+        heads[slot] = row;
+        tails[slot] = row;
+        next[row] = -1;
+        prev[row] = -1;
+        if (++size * 2 > heads.length) {
+          rehash();
+        }
+      } else if (row > tails[slot]) {  // the usual case when appending
+        next[tails[slot]] = row;
+        prev[row] = tails[slot];
+        next[row] = -1;
+        tails[slot] = row;
+      } else {
+        int after = heads[slot];
+        while (after < row) {
+          after = next[after];
+        }
+        next[row] = after;
+        prev[row] = prev[after];
+        if (prev[after] == -1) {
+          heads[slot] = row;
+        } else {
+          next[prev[after]] = row;
+        }
+        prev[after] = row;
+      }
     }
 
-    public long getLong(int column) {
-      return table.getLong(row, column);
+    /** Unlink a row, removing its value from the table if it was the last. */
+    void delete(int row) {
+      int slot = slotForRow(row);
+      if (prev[row] == -1) {
+        heads[slot] = next[row];
+      } else {
+        next[prev[row]] = next[row];
+      }
+      if (next[row] == -1) {
+        tails[slot] = prev[row];
+      } else {
+        prev[next[row]] = prev[row];
+      }
+      if (heads[slot] == -1) {
+        size--;
+        // shift back any entries that were pushed past this slot
+        int empty = slot;
+        int i = slot;
+        while (true) {
+          i = (i + 1) & mask;
+          if (heads[i] == -1) {
+            break;
+          }
+          int home = hashRow(heads[i]) & mask;
+          boolean stays = (empty <= i) ?
+            (empty < home && home <= i) : (empty < home || home <= i);
+          if (!stays) {
+            heads[empty] = heads[i];
+            tails[empty] = tails[i];
+            heads[i] = -1;
+            empty = i;
+          }
+        }
+      }
     }
 
-    public long getLong(String columnName) {
-      return table.getLong(row, columnName);
+    void rehash() {
+      int[] oldHeads = heads;
+      int[] oldTails = tails;
+      heads = new int[oldHeads.length << 1];
+      tails = new int[heads.length];
+      Arrays.fill(heads, -1);
+      mask = heads.length - 1;
+      for (int i = 0; i < oldHeads.length; i++) {
+        if (oldHeads[i] != -1) {
+          int slot = slotForRow(oldHeads[i]);
+          heads[slot] = oldHeads[i];
+          tails[slot] = oldTails[i];
+        }
+      }
     }
 
-    public float getFloat(int column) {
-      return table.getFloat(row, column);
+    @Override
+    void remove(int row) {
+      if (!dirty) {
+        delete(row);
+      }
     }
 
-    public float getFloat(String columnName) {
-      return table.getFloat(row, columnName);
+    @Override
+    void add(int row) {
+      if (!dirty) {
+        insert(row);
+      }
     }
 
-    public double getDouble(int column) {
-      return table.getDouble(row, column);
+    @Override
+    void resize(int oldCount, int newCount) {
+      if (!dirty) {
+        if (newCount < oldCount) {
+          dirty = true;
+        } else {
+          for (int row = oldCount; row < newCount; row++) {
+            insert(row);
+          }
+        }
+      }
     }
+  }
 
-    public double getDouble(String columnName) {
-      return table.getDouble(row, columnName);
+
+  /**
+   * Rows of a FLOAT or DOUBLE column, ordered by value (using the same
+   * ordering as Float.compare() and Double.compare(), so NaN is last)
+   * and then by row. Any change marks it for rebuilding on the next lookup.
+   */
+  static class SortedIndex extends ColumnIndex {
+    int[] order;
+
+    SortedIndex(Table table, int column) {
+      super(table, column);
     }
 
-    public void setString(int column, String value) {
-      table.setString(row, column, value);
+    @Override
+    void build() {
+      order = IntList.fromRange(table.rowCount).array();
+      boolean wide = table.columnTypes[column] == DOUBLE;
+      sortOrder(order, table.sortKeys(order, column, false), wide ? 64 : 32);
     }
 
-    public void setString(String columnName, String value) {
-      table.setString(row, columnName, value);
+    double value(int i) {
+      Object data = table.columns[column];
+      if (table.columnTypes[column] == FLOAT) {
+        return ((float[]) data)[order[i]];
+      }
+      return ((double[]) data)[order[i]];
     }
 
-    public void setInt(int column, int value) {
-      table.setInt(row, column, value);
+    /** First position where value(i) compares greater or equal. */
+    int lowerBound(double target) {
+      int lo = 0;
+      int hi = order.length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (Double.compare(value(mid), target) < 0) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo;
     }
 
-    public void setInt(String columnName, int value) {
-      table.setInt(row, columnName, value);
+    /** First position where value(i) compares greater. */
+    int upperBound(double target) {
+      int lo = 0;
+      int hi = order.length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (Double.compare(value(mid), target) <= 0) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo;
     }
 
-    public void setLong(int column, long value) {
-      table.setLong(row, column, value);
+    /** Convert to the value that getString() would have produced. */
+    double parse(String value) {
+      if (value == null) return Double.NaN;
+      try {
+        if (table.columnTypes[column] == FLOAT) {
+          float f = Float.parseFloat(value);
+          return String.valueOf(f).equals(value) ? f : Double.NaN;
+        }
+        double d = Double.parseDouble(value);
+        return String.valueOf(d).equals(value) ? d : Double.NaN;
+      } catch (NumberFormatException nfe) {
+        return Double.NaN;
+      }
     }
 
-    public void setLong(String columnName, long value) {
-      table.setLong(row, columnName, value);
+    @Override
+    int findFirst(String value) {
+      check();
+      double target = parse(value);
+      if (Double.isNaN(target) && !"NaN".equals(value)) {
+        return -1;
+      }
+      int start = lowerBound(target);
+      if (start < order.length && Double.compare(value(start), target) == 0) {
+        return order[start];
+      }
+      return -1;
     }
 
-    public void setFloat(int column, float value) {
-      table.setFloat(row, column, value);
+    @Override
+    int[] findAll(String value) {
+      check();
+      double target = parse(value);
+      if (Double.isNaN(target) && !"NaN".equals(value)) {
+        return new int[0];
+      }
+      int start = lowerBound(target);
+      int stop = upperBound(target);
+      // ties are already in row order
+      return PApplet.subset(order, start, stop - start);
+    }
+
+    int[] findRange(double min, double max) {
+      check();
+      // NaN sorts last, so these are only ever true for a prefix of order[]
+      int lo = 0;
+      int hi = order.length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (value(mid) < min) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      int start = lo;
+      hi = order.length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (value(mid) <= max) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      int[] outgoing = PApplet.subset(order, start, lo - start);
+      Arrays.sort(outgoing);
+      return outgoing;
     }
+  }
 
-    public void setFloat(String columnName, float value) {
-      table.setFloat(row, columnName, value);
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Replace a String with another. Set empty entries null by using
+   * replace("", null) or use replace(null, "") to go the other direction.
+   * If this is a typed table, only String (and category) columns will be modified.
+   * @param orig
+   * @param replacement
+   */
+  public void replace(String orig, String replacement) {
+    for (int col = 0; col < columns.length; col++) {
+      replace(orig, replacement, col);
     }
+  }
 
-    public void setDouble(int column, double value) {
-      table.setDouble(row, column, value);
+
+  public void replace(String orig, String replacement, int col) {
+    checkColumn(col);
+    if (columnTypes[col] == STRING) {
+      detach(col);
+      String[] stringData = (String[]) columns[col];
+      for (int row = 0; row < rowCount; row++) {
+        if (stringData[row].equals(orig)) {
+          stringData[row] = replacement;
+        }
+      }
+      invalidateIndexes(col);
+
+    } else if (columnTypes[col] == CATEGORY) {
+      HashMapBlows categories = columnCategories[col];
+      String[] keys = new String[categories.size()];
+      for (int i = 0; i < keys.length; i++) {
+        String key = categories.key(i);
+        keys[i] = key.equals(orig) ? replacement : key;
+      }
+      renameCategories(col, keys);
     }
+  }
 
-    public void setDouble(String columnName, double value) {
-      table.setDouble(row, columnName, value);
+
+  /**
+   * Change the String for each category of a column, where newKeys[i] is
+   * the new value for category i. Categories that end up the same are
+   * merged, and a null makes those entries missing.
+   */
+  protected void renameCategories(int column, String[] newKeys) {
+    HashMapBlows categories = columnCategories[column];
+    boolean changed = false;
+    for (int i = 0; i < newKeys.length; i++) {
+      if (newKeys[i] == null || !newKeys[i].equals(categories.key(i))) {
+        changed = true;
+        break;
+      }
     }
+    if (!changed) {
+      return;
+    }
+    HashMapBlows renamed = new HashMapBlows();
+    int[] remap = new int[newKeys.length];
+    for (int i = 0; i < newKeys.length; i++) {
+      remap[i] = (newKeys[i] == null) ? missingCategory : renamed.index(newKeys[i]);
+    }
+    detach(column);
+    int[] indexData = (int[]) columns[column];
+    for (int row = 0; row < rowCount; row++) {
+      int index = indexData[row];
+      if (index >= 0 && index < remap.length) {
+        indexData[row] = remap[index];
+      }
+    }
+    columnCategories[column] = renamed;
+    invalidateIndexes(column);
+  }
 
-    public int getColumnCount() {
-      return table.getColumnCount();
+
+  public void replace(String orig, String replacement, String colName) {
+    replace(orig, replacement, getColumnIndex(colName));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public void replaceAll(String orig, String replacement) {
+    for (int col = 0; col < columns.length; col++) {
+      replaceAll(orig, replacement, col);
     }
+  }
 
-    public int getColumnType(String columnName) {
-      return table.getColumnType(columnName);
+
+  public void replaceAll(String regex, String replacement, int column) {
+    checkColumn(column);
+    if (columnTypes[column] == STRING) {
+      detach(column);
+      String[] stringData = (String[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        if (stringData[row] != null) {
+          stringData[row] = stringData[row].replaceAll(regex, replacement);
+        }
+      }
+      invalidateIndexes(column);
+    } else if (columnTypes[column] == CATEGORY) {
+      HashMapBlows categories = columnCategories[column];
+      String[] keys = new String[categories.size()];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = categories.key(i).replaceAll(regex, replacement);
+      }
+      renameCategories(column, keys);
+    } else {
+      throw new IllegalArgumentException("replaceAll() can only be used on String columns");
     }
+  }
 
-    public int getColumnType(int column) {
-      return table.getColumnType(column);
+
+  /**
+   * Run String.replaceAll() on all entries in a column.
+   * Only works with columns that are already String (or category) values.
+   * @param what the String to match
+   * @param columnName title of the column to search
+   */
+  public void replaceAll(String regex, String replacement, String columnName) {
+    replaceAll(regex, replacement, getColumnIndex(columnName));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Remove any of the specified characters from the entire table.
+   *
+   * @webref table:method
+   * @brief Removes characters from the table
+   * @param tokens a list of individual characters to be removed
+   * @see Table#trim()
+   */
+  public void removeTokens(String tokens) {
+    for (int col = 0; col < getColumnCount(); col++) {
+      removeTokens(tokens, col);
     }
+  }
 
-    public int[] getColumnTypes() {
-      return table.getColumnTypes();
+
+  /**
+   * Removed any of the specified characters from a column. For instance,
+   * the following code removes dollar signs and commas from column 2:
+   * <pre>
+   * table.removeTokens(",$", 2);
+   * </pre>
+   *
+   * @param column ID number of the column to process
+   */
+  public void removeTokens(String tokens, int column) {
+    for (int row = 0; row < rowCount; row++) {
+      String s = getString(row, column);
+      if (s != null) {
+        char[] c = s.toCharArray();
+        int index = 0;
+        for (int j = 0; j < c.length; j++) {
+          if (tokens.indexOf(c[j]) == -1) {
+            if (index != j) {
+              c[index] = c[j];
+            }
+            index++;
+          }
+        }
+        if (index != c.length) {
+          setString(row, column, new String(c, 0, index));
+        }
+      }
     }
   }
 
+  /**
+   * @param columnName title of the column to process
+   */
+  public void removeTokens(String tokens, String columnName) {
+    removeTokens(tokens, getColumnIndex(columnName));
+  }
 
-  static class RowIterator implements Iterator<TableRow> {
-    Table table;
-    RowPointer rp;
-    int row;
-
-    public RowIterator(Table table) {
-      this.table = table;
-      row = -1;
-      rp = new RowPointer(table, row);
-    }
 
-    public void remove() {
-      table.removeRow(row);
-    }
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-    public TableRow next() {
-      rp.setRow(++row);
-      return rp;
+  /**
+   * @webref table:method
+   * @brief Trims whitespace from values
+   * @see Table#removeTokens(String)
+   */
+  public void trim() {
+    for (int col = 0; col < getColumnCount(); col++) {
+      trim(col);
     }
+  }
 
-    public boolean hasNext() {
-      return row+1 < table.getRowCount();
+  /**
+   * @param column ID number of the column to trim
+   */
+  public void trim(int column) {
+    checkColumn(column);
+    if (columnTypes[column] == STRING) {
+      detach(column);
+      String[] stringData = (String[]) columns[column];
+      for (int row = 0; row < rowCount; row++) {
+        if (stringData[row] != null) {
+          stringData[row] = PApplet.trim(stringData[row]);
+        }
+      }
+      invalidateIndexes(column);
+    } else if (columnTypes[column] == CATEGORY) {
+      HashMapBlows categories = columnCategories[column];
+      String[] keys = new String[categories.size()];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = PApplet.trim(categories.key(i));
+      }
+      renameCategories(column, keys);
     }
+  }
 
-    public void reset() {
-      row = -1;
-    }
+  /**
+   * @param columnName title of the column to trim
+   */
+  public void trim(String columnName) {
+    trim(getColumnIndex(columnName));
   }
 
 
-  static class RowIndexIterator implements Iterator<TableRow> {
-    Table table;
-    RowPointer rp;
-    int[] indices;
-    int index;
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-    public RowIndexIterator(Table table, int[] indices) {
-      this.table = table;
-      this.indices = indices;
-      index = -1;
-      // just set to something arbitrary
-      rp = new RowPointer(table, -1);
-    }
 
-    public void remove() {
-      table.removeRow(indices[index]);
+  /**
+   * Reduce the memory used by this table. String columns where at most
+   * half of the values are unique (country codes, status flags, and the
+   * like) are converted to CATEGORY columns, which store each value once
+   * and an int index for each row. getString() and setString() work the
+   * same way as before on the converted columns.
+   */
+  public void compact() {
+    loadAllColumns();
+    for (int col = 0; col < columns.length; col++) {
+      if (columnTypes[col] == STRING &&
+          isLowCardinality((String[]) columns[col], rowCount)) {
+        setColumnType(col, CATEGORY);
+      }
     }
+  }
 
-    public TableRow next() {
-      rp.setRow(indices[++index]);
-      return rp;
-    }
 
-    public boolean hasNext() {
-      //return row+1 < table.getRowCount();
-      return index + 1 < indices.length;
+  /** True if at most half of the first 'count' values are different. */
+  static protected boolean isLowCardinality(String[] values, int count) {
+    if (count < 2) {
+      return false;
     }
-
-    public void reset() {
-      index = -1;
+    int limit = count / 2;
+    HashSet<String> unique = new HashSet<String>();
+    for (int row = 0; row < count; row++) {
+      if (unique.add(values[row]) && unique.size() > limit) {
+        return false;
+      }
     }
+    return true;
   }
 
 
-  /*
-  static public Iterator<TableRow> createIterator(final ResultSet rs) {
-    return new Iterator<TableRow>() {
-      boolean already;
-
-      public boolean hasNext() {
-        already = true;
-        try {
-          return rs.next();
-        } catch (SQLException e) {
-          throw new RuntimeException(e);
-        }
-      }
-
-
-      public TableRow next() {
-        if (!already) {
-          try {
-            rs.next();
-          } catch (SQLException e) {
-            throw new RuntimeException(e);
-          }
-        } else {
-          already = false;
-        }
-
-        return new TableRow() {
-          public double getDouble(int column) {
-            try {
-              return rs.getDouble(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
-
-          public double getDouble(String columnName) {
-            try {
-              return rs.getDouble(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
-
-          public float getFloat(int column) {
-            try {
-              return rs.getFloat(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
-
-          public float getFloat(String columnName) {
-            try {
-              return rs.getFloat(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-          public int getInt(int column) {
-            try {
-              return rs.getInt(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
 
-          public int getInt(String columnName) {
-            try {
-              return rs.getInt(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
+  /** Make sure this is a legit column, and if not, expand the table. */
+  protected void ensureColumn(int col) {
+    if (col >= columns.length) {
+      setColumnCount(col + 1);
+    } else if (col >= 0 && columns[col] == null) {
+      loadColumn(col);
+    }
+  }
 
-          public long getLong(int column) {
-            try {
-              return rs.getLong(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
 
-          public long getLong(String columnName) {
-            try {
-              return rs.getLong(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
+  /** Make sure this is a legit row, and if not, expand the table. */
+  protected void ensureRow(int row) {
+    if (row >= rowCount) {
+      setRowCount(row + 1);
+    }
+  }
 
-          public String getString(int column) {
-            try {
-              return rs.getString(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
 
-          public String getString(String columnName) {
-            try {
-              return rs.getString(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
+  /** Make sure this is a legit row and column. If not, expand the table. */
+  protected void ensureBounds(int row, int col) {
+    ensureRow(row);
+    ensureColumn(col);
+  }
 
-          public void setString(int column, String value) { immutable(); }
-          public void setString(String columnName, String value) { immutable(); }
-          public void setInt(int column, int value) { immutable(); }
-          public void setInt(String columnName, int value) { immutable(); }
-          public void setLong(int column, long value) { immutable(); }
-          public void setLong(String columnName, long value) { immutable(); }
-          public void setFloat(int column, float value) { immutable(); }
-          public void setFloat(String columnName, float value) { immutable(); }
-          public void setDouble(int column, double value) { immutable(); }
-          public void setDouble(String columnName, double value) { immutable(); }
 
-          private void immutable() {
-            throw new IllegalArgumentException("This TableRow cannot be modified.");
-          }
+  /** Throw an error if this row doesn't exist. */
+  protected void checkRow(int row) {
+    if (row < 0 || row >= rowCount) {
+      throw new ArrayIndexOutOfBoundsException("Row " + row + " does not exist.");
+    }
+  }
 
-          public int getColumnCount() {
-            try {
-              return rs.getMetaData().getColumnCount();
-            } catch (SQLException e) {
-              e.printStackTrace();
-              return -1;
-            }
-          }
 
+  /** Throw an error if this column doesn't exist. */
+  protected void checkColumn(int column) {
+    if (column < 0 || column >= columns.length) {
+      throw new ArrayIndexOutOfBoundsException("Column " + column + " does not exist.");
+    }
+    if (columns[column] == null) {
+      loadColumn(column);
+    }
+  }
 
-          public int getColumnType(String columnName) {
-            // unimplemented
-          }
 
+  /** Throw an error if this entry is out of bounds. */
+  protected void checkBounds(int row, int column) {
+    checkRow(row);
+    checkColumn(column);
+  }
 
-          public int getColumnType(int column) {
-            // unimplemented
-          }
 
-        };
-      }
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-      public void remove() {
-        throw new IllegalArgumentException("remove() not supported");
-      }
-    };
-  }
-  */
 
+  class HashMapBlows {
+    HashMap<String,Integer> dataToIndex = new HashMap<String, Integer>();
+    ArrayList<String> indexToData = new ArrayList<String>();
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+    HashMapBlows() { }
 
+    HashMapBlows(DataInputStream input) throws IOException {
+      read(input);
+    }
 
-  /**
-   * @webref table:method
-   * @brief Get an integer value from the specified row and column
-   * @param row ID number of the row to reference
-   * @param column ID number of the column to reference
-   * @see Table#getFloat(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#getStringColumn(String)
-   * @see Table#setInt(int, int, int)
-   * @see Table#setFloat(int, int, float)
-   * @see Table#setString(int, int, String)
-   */
-  public int getInt(int row, int column) {
-    checkBounds(row, column);
-    if (columnTypes[column] == INT ||
-        columnTypes[column] == CATEGORY) {
-      int[] intData = (int[]) columns[column];
-      return intData[row];
+    HashMapBlows(HashMapBlows source) {
+      dataToIndex = new HashMap<String, Integer>(source.dataToIndex);
+      indexToData = new ArrayList<String>(source.indexToData);
     }
-    String str = getString(row, column);
-    return (str == null || str.equals(missingString)) ?
-      missingInt : PApplet.parseInt(str, missingInt);
-  }
 
-  /**
-   * @param columnName title of the column to reference
-   */
-  public int getInt(int row, String columnName) {
-    return getInt(row, getColumnIndex(columnName));
-  }
+    int index(String key) {
+      Integer value = dataToIndex.get(key);
+      if (value != null) {
+        return value;
+      }
 
+      int v = dataToIndex.size();
+      dataToIndex.put(key, v);
+      indexToData.add(key);
+      return v;
+    }
 
-  public void setMissingInt(int value) {
-    missingInt = value;
-  }
+    String key(int index) {
+      return indexToData.get(index);
+    }
 
+    int size() {
+      return dataToIndex.size();
+    }
 
-  /**
-   * @webref table:method
-   * @brief Store an integer value in the specified row and column
-   * @param row ID number of the target row
-   * @param column ID number of the target column
-   * @param value value to assign
-   * @see Table#setFloat(int, int, float)
-   * @see Table#setString(int, int, String)
-   * @see Table#getInt(int, int)
-   * @see Table#getFloat(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#getStringColumn(String)
-   */
-  public void setInt(int row, int column, int value) {
-    if (columnTypes[column] == STRING) {
-      setString(row, column, String.valueOf(value));
+    void write(DataOutputStream output) throws IOException {
+      output.writeInt(size());
+      for (String str : indexToData) {
+        output.writeUTF(str);
+      }
+    }
 
-    } else {
-      ensureBounds(row, column);
-      if (columnTypes[column] != INT &&
-          columnTypes[column] != CATEGORY) {
-        throw new IllegalArgumentException("Column " + column + " is not an int column.");
+    private void writeln(PrintWriter writer) throws IOException {
+      for (String str : indexToData) {
+        writer.println(str);
       }
-      int[] intData = (int[]) columns[column];
-      intData[row] = value;
+      writer.flush();
+      writer.close();
     }
-  }
 
-  /**
-   * @param columnName title of the target column
-   */
-  public void setInt(int row, String columnName, int value) {
-    setInt(row, getColumnIndex(columnName), value);
+    void read(DataInputStream input) throws IOException {
+      int count = input.readInt();
+      dataToIndex = new HashMap<String, Integer>(count);
+      for (int i = 0; i < count; i++) {
+        String str = input.readUTF();
+        dataToIndex.put(str, i);
+        indexToData.add(str);
+      }
+    }
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-  public int[] getIntColumn(String name) {
-    int col = getColumnIndex(name);
-    return (col == -1) ? null : getIntColumn(col);
+
+//  class HashMapSucks extends HashMap<String,Integer> {
+//
+//    void increment(String what) {
+//      Integer value = get(what);
+//      if (value == null) {
+//        put(what, 1);
+//      } else {
+//        put(what, value + 1);
+//      }
+//    }
+//
+//    void check(String what) {
+//      if (get(what) == null) {
+//        put(what, 0);
+//      }
+//    }
+//  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public void sort(String columnName) {
+    sort(getColumnIndex(columnName), false);
   }
 
 
-  public int[] getIntColumn(int col) {
-    int[] outgoing = new int[rowCount];
-    for (int row = 0; row < rowCount; row++) {
-      outgoing[row] = getInt(row, col);
-    }
-    return outgoing;
+  public void sort(int column) {
+    sort(column, false);
   }
 
 
-  public int[] getIntRow(int row) {
-    int[] outgoing = new int[columns.length];
-    for (int col = 0; col < columns.length; col++) {
-      outgoing[col] = getInt(row, col);
-    }
-    return outgoing;
+  public void sortReverse(String columnName) {
+    sort(getColumnIndex(columnName), true);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  public void sortReverse(int column) {
+    sort(column, true);
+  }
 
 
-  public long getLong(int row, int column) {
-    checkBounds(row, column);
-    if (columnTypes[column] == LONG) {
-      long[] longData = (long[]) columns[column];
-      return longData[row];
-    }
-    String str = getString(row, column);
-    if (str == null || str.equals(missingString)) {
-      return missingLong;
-    }
-    try {
-      return Long.parseLong(str);
-    } catch (NumberFormatException nfe) {
-      return missingLong;
+  /**
+   * Sort by several columns at once. Each entry is a column title,
+   * optionally followed by "asc" or "desc", for instance
+   * sort("country", "year desc"). Rows that are equal in the first column
+   * are ordered by the second, and so on. The sort is stable, so rows that
+   * are equal in all the listed columns stay in their current order.
+   */
+  public void sort(String... columnKeys) {
+    int[] sortColumns = new int[columnKeys.length];
+    boolean[] reverse = new boolean[columnKeys.length];
+    for (int i = 0; i < columnKeys.length; i++) {
+      String key = columnKeys[i];
+      int col = getColumnIndex(key, false);
+      if (col == -1) {
+        String name = PApplet.trim(key);
+        if (name.endsWith(" desc")) {
+          reverse[i] = true;
+          name = name.substring(0, name.length() - 5);
+        } else if (name.endsWith(" asc")) {
+          name = name.substring(0, name.length() - 4);
+        }
+        col = getColumnIndex(PApplet.trim(name));
+      }
+      sortColumns[i] = col;
     }
+    sort(sortColumns, reverse);
   }
 
 
-  public long getLong(int row, String columnName) {
-    return getLong(row, getColumnIndex(columnName));
+  protected void sort(int column, boolean reverse) {
+    sort(new int[] { column }, new boolean[] { reverse });
   }
 
 
-  public void setMissingLong(long value) {
-    missingLong = value;
+  /**
+   * Stable sort on one or more columns. Numeric and category columns are
+   * radix sorted on their bits; String columns (compared ignoring case,
+   * with nulls first) use a merge sort. Later columns are sorted first,
+   * so that earlier columns take precedence. Only the row order is sorted,
+   * then each column is rearranged once to match.
+   */
+  protected void sort(int[] sortColumns, boolean[] reverse) {
+    checkWritable();
+    loadAllColumns();
+    invalidateIndexes(-1);
+    int[] order = IntList.fromRange(getRowCount()).array();
+    for (int i = sortColumns.length - 1; i >= 0; --i) {
+      int column = sortColumns[i];
+      checkColumn(column);
+      if (columnTypes[column] == STRING) {
+        sortOrderByString(order, (String[]) columns[column], reverse[i]);
+      } else {
+        int bits = (columnTypes[column] == LONG ||
+                    columnTypes[column] == DOUBLE) ? 64 : 32;
+        sortOrder(order, sortKeys(order, column, reverse[i]), bits);
+      }
+    }
+    reorderRows(order);
   }
 
 
-  public void setLong(int row, int column, long value) {
-    if (columnTypes[column] == STRING) {
-      setString(row, column, String.valueOf(value));
-
-    } else {
-      ensureBounds(row, column);
-      if (columnTypes[column] != LONG) {
-        throw new IllegalArgumentException("Column " + column + " is not a 'long' column.");
+  /**
+   * Build keys for the rows listed in 'order', as unsigned values that sort
+   * the same way as the column. Floating point values are ordered like
+   * Float.compare() and Double.compare(), so NaN is last. CATEGORY columns
+   * are ordered by the rank of each category's String, so they sort the
+   * same way as the String column they came from.
+   */
+  protected long[] sortKeys(int[] order, int column, boolean reverse) {
+    int count = order.length;
+    long[] keys = new long[count];
+    switch (columnTypes[column]) {
+    case INT: {
+      int[] intData = (int[]) columns[column];
+      for (int i = 0; i < count; i++) {
+        keys[i] = (intData[order[i]] ^ 0x80000000) & 0xffffffffL;
+      }
+      break;
+    }
+    case CATEGORY: {
+      int[] indexData = (int[]) columns[column];
+      int[] ranks = categoryRanks(column);
+      for (int i = 0; i < count; i++) {
+        int index = indexData[order[i]];
+        // missing values act like null Strings, and come first
+        keys[i] = (index < 0 || index >= ranks.length) ? 0 : ranks[index] + 1;
       }
+      break;
+    }
+    case LONG: {
       long[] longData = (long[]) columns[column];
-      longData[row] = value;
+      for (int i = 0; i < count; i++) {
+        keys[i] = longData[order[i]] ^ Long.MIN_VALUE;
+      }
+      break;
     }
+    case FLOAT: {
+      float[] floatData = (float[]) columns[column];
+      for (int i = 0; i < count; i++) {
+        int bits = Float.floatToIntBits(floatData[order[i]]);
+        bits ^= (bits >> 31) & 0x7fffffff;
+        keys[i] = (bits ^ 0x80000000) & 0xffffffffL;
+      }
+      break;
+    }
+    case DOUBLE: {
+      double[] doubleData = (double[]) columns[column];
+      for (int i = 0; i < count; i++) {
+        long bits = Double.doubleToLongBits(doubleData[order[i]]);
+        bits ^= (bits >> 63) & 0x7fffffffffffffffL;
+        keys[i] = bits ^ Long.MIN_VALUE;
+      }
+      break;
+    }
+    default:
+      throw new IllegalArgumentException("Invalid column type: " + columnTypes[column]);
+    }
+    if (reverse) {
+      long mask = (columnTypes[column] == LONG ||
+                   columnTypes[column] == DOUBLE) ? -1L : 0xffffffffL;
+      for (int i = 0; i < count; i++) {
+        keys[i] ^= mask;
+      }
+    }
+    return keys;
   }
 
 
-  public void setLong(int row, String columnName, long value) {
-    setLong(row, getColumnIndex(columnName), value);
-  }
+  /**
+   * The position of each category of a column when its Strings are sorted
+   * ignoring case, the same as sortOrderByString(). Categories that only
+   * differ in case share a rank.
+   */
+  protected int[] categoryRanks(int column) {
+    final HashMapBlows categories = columnCategories[column];
+    final int count = categories.size();
+    final int[] order = IntList.fromRange(count).array();
+    new Sort() {
+      @Override
+      public int size() {
+        return count;
+      }
+
+      @Override
+      public int compare(int a, int b) {
+        return categories.key(order[a]).compareToIgnoreCase(categories.key(order[b]));
+      }
 
+      @Override
+      public void swap(int a, int b) {
+        int temp = order[a];
+        order[a] = order[b];
+        order[b] = temp;
+      }
+    }.run();
 
-  public long[] getLongColumn(String name) {
-    int col = getColumnIndex(name);
-    return (col == -1) ? null : getLongColumn(col);
+    int[] ranks = new int[count];
+    int rank = 0;
+    for (int i = 0; i < count; i++) {
+      if (i > 0 && categories.key(order[i - 1]).compareToIgnoreCase(categories.key(order[i])) != 0) {
+        rank++;
+      }
+      ranks[order[i]] = rank;
+    }
+    return ranks;
   }
 
 
-  public long[] getLongColumn(int col) {
-    long[] outgoing = new long[rowCount];
-    for (int row = 0; row < rowCount; row++) {
-      outgoing[row] = getLong(row, col);
+  /** Rearrange every column so that row i becomes what was row order[i]. */
+  protected void reorderRows(final int[] order) {
+    final int count = order.length;
+    sharedColumns = null;  // every column gets a new array
+    if (count >= PARALLEL_THRESHOLD && columns.length > 1) {
+      new ParallelBlocks(columns.length) {
+        void run(int col) {
+          columns[col] = reorderColumn(columns[col], columnTypes[col], order, count);
+        }
+      }.runBlocks();
+    } else {
+      for (int col = 0; col < columns.length; col++) {
+        columns[col] = reorderColumn(columns[col], columnTypes[col], order, count);
+      }
     }
-    return outgoing;
   }
 
 
-  public long[] getLongRow(int row) {
-    long[] outgoing = new long[columns.length];
-    for (int col = 0; col < columns.length; col++) {
-      outgoing[col] = getLong(row, col);
+  static private Object reorderColumn(Object data, int type, int[] order, int count) {
+    switch (type) {
+    case INT:
+    case CATEGORY:
+      int[] oldInt = (int[]) data;
+      int[] newInt = new int[count];
+      for (int row = 0; row < count; row++) {
+        newInt[row] = oldInt[order[row]];
+      }
+      return newInt;
+    case LONG:
+      long[] oldLong = (long[]) data;
+      long[] newLong = new long[count];
+      for (int row = 0; row < count; row++) {
+        newLong[row] = oldLong[order[row]];
+      }
+      return newLong;
+    case FLOAT:
+      float[] oldFloat = (float[]) data;
+      float[] newFloat = new float[count];
+      for (int row = 0; row < count; row++) {
+        newFloat[row] = oldFloat[order[row]];
+      }
+      return newFloat;
+    case DOUBLE:
+      double[] oldDouble = (double[]) data;
+      double[] newDouble = new double[count];
+      for (int row = 0; row < count; row++) {
+        newDouble[row] = oldDouble[order[row]];
+      }
+      return newDouble;
+    case STRING:
+      String[] oldString = (String[]) data;
+      String[] newString = new String[count];
+      for (int row = 0; row < count; row++) {
+        newString[row] = oldString[order[row]];
+      }
+      return newString;
     }
-    return outgoing;
+    return data;
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
+  /** Below this many rows, sorting, grouping and filtering use one thread. */
+  static final int PARALLEL_THRESHOLD = 1 << 17;
 
-  /**
-   * Get a float value from the specified row and column. If the value is null
-   * or not parseable as a float, the "missing" value is returned. By default,
-   * this is Float.NaN, but can be controlled with setMissingFloat().
-   *
-   * @webref table:method
-   * @brief Get a float value from the specified row and column
-   * @param row ID number of the row to reference
-   * @param column ID number of the column to reference
-   * @see Table#getInt(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#getStringColumn(String)
-   * @see Table#setInt(int, int, int)
-   * @see Table#setFloat(int, int, float)
-   * @see Table#setString(int, int, String)
-   */
-  public float getFloat(int row, int column) {
-    checkBounds(row, column);
-    if (columnTypes[column] == FLOAT) {
-      float[] floatData = (float[]) columns[column];
-      return floatData[row];
-    }
-    String str = getString(row, column);
-    if (str == null || str.equals(missingString)) {
-      return missingFloat;
-    }
-    return PApplet.parseFloat(str, missingFloat);
-  }
 
   /**
-   * @param columnName title of the column to reference
+   * Stable LSD radix sort of 'order', where keys[i] is the unsigned key for
+   * order[i]. Sorts eight bits at a time, skipping any byte that's the same
+   * for every key. Both arrays are rearranged. With enough rows, counting
+   * and scattering are split into blocks and run on the shared pool.
    */
-  public float getFloat(int row, String columnName) {
-    return getFloat(row, getColumnIndex(columnName));
-  }
+  static void sortOrder(int[] order, long[] keys, int bits) {
+    final int count = order.length;
+    int blockCount = 1;
+    if (count >= PARALLEL_THRESHOLD) {
+      blockCount = getParallelPool().getParallelism();
+    }
+    final int blocks = blockCount;
+    final int blockSize = (count + blocks - 1) / Math.max(blocks, 1);
+
+    final int[][] state = new int[][] { order, new int[count] };
+    final long[][] keyState = new long[][] { keys, new long[count] };
+    final int[][] counts = new int[blocks][256];
+
+    for (int pass = 0; pass < bits; pass += 8) {
+      final int shift = pass;
+      final int[] srcOrder = state[0];
+      final long[] srcKeys = keyState[0];
+
+      ParallelBlocks histogram = new ParallelBlocks(blocks) {
+        void run(int block) {
+          int[] c = counts[block];
+          Arrays.fill(c, 0);
+          int stop = Math.min(count, (block + 1) * blockSize);
+          for (int i = block * blockSize; i < stop; i++) {
+            c[(int) (srcKeys[i] >>> shift) & 0xff]++;
+          }
+        }
+      };
+      histogram.runBlocks();
+
+      // turn the counts into starting offsets, digit by digit, then block
+      int total = 0;
+      boolean trivial = false;
+      for (int digit = 0; digit < 256; digit++) {
+        int digitTotal = 0;
+        for (int block = 0; block < blocks; block++) {
+          int c = counts[block][digit];
+          counts[block][digit] = total;
+          total += c;
+          digitTotal += c;
+        }
+        if (digitTotal == count) {
+          trivial = true;  // every key has the same byte here
+        }
+      }
+      if (trivial) {
+        continue;
+      }
 
+      final int[] dstOrder = state[1];
+      final long[] dstKeys = keyState[1];
+      ParallelBlocks scatter = new ParallelBlocks(blocks) {
+        void run(int block) {
+          int[] offset = counts[block];
+          int stop = Math.min(count, (block + 1) * blockSize);
+          for (int i = block * blockSize; i < stop; i++) {
+            int index = offset[(int) (srcKeys[i] >>> shift) & 0xff]++;
+            dstOrder[index] = srcOrder[i];
+            dstKeys[index] = srcKeys[i];
+          }
+        }
+      };
+      scatter.runBlocks();
 
-  public void setMissingFloat(float value) {
-    missingFloat = value;
+      state[0] = dstOrder;
+      state[1] = srcOrder;
+      keyState[0] = dstKeys;
+      keyState[1] = srcKeys;
+    }
+    if (state[0] != order) {
+      System.arraycopy(state[0], 0, order, 0, count);
+      System.arraycopy(keyState[0], 0, keys, 0, count);
+    }
   }
 
 
   /**
-   * @webref table:method
-   * @brief Store a float value in the specified row and column
-   * @param row ID number of the target row
-   * @param column ID number of the target column
-   * @param value value to assign
-   * @see Table#setInt(int, int, int)
-   * @see Table#setString(int, int, String)
-   * @see Table#getInt(int, int)
-   * @see Table#getFloat(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#getStringColumn(String)
+   * Stable merge sort of 'order' by the String values of a column, ignoring
+   * case, with null entries first. Large arrays sort their halves in
+   * parallel on the shared pool.
    */
-  public void setFloat(int row, int column, float value) {
-    if (columnTypes[column] == STRING) {
-      setString(row, column, String.valueOf(value));
-
+  static void sortOrderByString(int[] order, String[] data, boolean reverse) {
+    int[] temp = order.clone();
+    StringMergeSort sorter = new StringMergeSort(temp, order, data, reverse, 0, order.length);
+    if (order.length >= PARALLEL_THRESHOLD) {
+      getParallelPool().invoke(sorter);
     } else {
-      ensureBounds(row, column);
-      if (columnTypes[column] != FLOAT) {
-        throw new IllegalArgumentException("Column " + column + " is not a float column.");
+      sorter.compute();
+    }
+  }
+
+
+  @SuppressWarnings("serial")
+  static class StringMergeSort extends RecursiveAction {
+    // sorts src[lo, hi) into dst[lo, hi); both start with the same contents
+    int[] src;
+    int[] dst;
+    String[] data;
+    boolean reverse;
+    int lo, hi;
+
+    StringMergeSort(int[] src, int[] dst, String[] data, boolean reverse,
+                    int lo, int hi) {
+      this.src = src;
+      this.dst = dst;
+      this.data = data;
+      this.reverse = reverse;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    int compare(int row1, int row2) {
+      String s1 = data[row1];
+      String s2 = data[row2];
+      int diff;
+      if (s1 == null) {
+        diff = (s2 == null) ? 0 : -1;
+      } else if (s2 == null) {
+        diff = 1;
+      } else {
+        diff = s1.compareToIgnoreCase(s2);
       }
-      float[] longData = (float[]) columns[column];
-      longData[row] = value;
+      return reverse ? -diff : diff;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo < 16) {
+        // insertion sort for short runs
+        for (int i = lo + 1; i < hi; i++) {
+          int row = dst[i];
+          int j = i;
+          while (j > lo && compare(dst[j - 1], row) > 0) {
+            dst[j] = dst[j - 1];
+            --j;
+          }
+          dst[j] = row;
+        }
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      // sort each half of dst into src, then merge back into dst
+      StringMergeSort left = new StringMergeSort(dst, src, data, reverse, lo, mid);
+      StringMergeSort right = new StringMergeSort(dst, src, data, reverse, mid, hi);
+      if (hi - lo >= PARALLEL_THRESHOLD) {
+        invokeAll(left, right);
+      } else {
+        left.compute();
+        right.compute();
+      }
+      int i = lo, j = mid, k = lo;
+      while (i < mid && j < hi) {
+        dst[k++] = (compare(src[j], src[i]) < 0) ? src[j++] : src[i++];
+      }
+      while (i < mid) dst[k++] = src[i++];
+      while (j < hi) dst[k++] = src[j++];
     }
   }
 
+
   /**
-   * @param columnName title of the target column
+   * Calls run(block) for block numbers 0 through blocks-1. With more than
+   * one block, they're spread across the shared pool, and runBlocks() waits
+   * for all of them to finish.
    */
-  public void setFloat(int row, String columnName, float value) {
-    setFloat(row, getColumnIndex(columnName), value);
-  }
+  @SuppressWarnings("serial")
+  abstract static class ParallelBlocks extends RecursiveAction {
+    int blocks;
 
+    ParallelBlocks(int blocks) {
+      this.blocks = blocks;
+    }
 
-  public float[] getFloatColumn(String name) {
-    int col = getColumnIndex(name);
-    return (col == -1) ? null : getFloatColumn(col);
-  }
-
+    abstract void run(int block);
 
-  public float[] getFloatColumn(int col) {
-    float[] outgoing = new float[rowCount];
-    for (int row = 0; row < rowCount; row++) {
-      outgoing[row] = getFloat(row, col);
+    @Override
+    protected void compute() {
+      List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+      for (int i = 0; i < blocks; i++) {
+        final int block = i;
+        tasks.add(new RecursiveAction() {
+          @Override
+          protected void compute() {
+            run(block);
+          }
+        });
+      }
+      invokeAll(tasks);
     }
-    return outgoing;
-  }
 
-
-  public float[] getFloatRow(int row) {
-    float[] outgoing = new float[columns.length];
-    for (int col = 0; col < columns.length; col++) {
-      outgoing[col] = getFloat(row, col);
+    /** Run all the blocks, on the shared pool if there's more than one. */
+    void runBlocks() {
+      if (blocks == 1) {
+        run(0);
+      } else if (blocks > 1) {
+        getParallelPool().invoke(this);
+      }
     }
-    return outgoing;
   }
 
 
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  public double getDouble(int row, int column) {
-    checkBounds(row, column);
-    if (columnTypes[column] == DOUBLE) {
-      double[] doubleData = (double[]) columns[column];
-      return doubleData[row];
-    }
-    String str = getString(row, column);
-    if (str == null || str.equals(missingString)) {
-      return missingDouble;
-    }
-    try {
-      return Double.parseDouble(str);
-    } catch (NumberFormatException nfe) {
-      return missingDouble;
-    }
+  public String[] getUnique(String columnName) {
+    return getUnique(getColumnIndex(columnName));
   }
 
 
-  public double getDouble(int row, String columnName) {
-    return getDouble(row, getColumnIndex(columnName));
+  public String[] getUnique(int column) {
+    if (columnTypes[column] == CATEGORY) {
+      return getTally(column).keyArray();
+    }
+    StringList list = new StringList(getStringColumn(column));
+    return list.getUnique();
   }
 
 
-  public void setMissingDouble(double value) {
-    missingDouble = value;
+  public IntDict getTally(String columnName) {
+    return getTally(getColumnIndex(columnName));
   }
 
 
-  public void setDouble(int row, int column, double value) {
-    if (columnTypes[column] == STRING) {
-      setString(row, column, String.valueOf(value));
+  public IntDict getTally(int column) {
+    if (columnTypes[column] == CATEGORY) {
+      return getCategoryTally(column);
+    }
+    StringList list = new StringList(getStringColumn(column));
+    return list.getTally();
+  }
 
-    } else {
-      ensureBounds(row, column);
-      if (columnTypes[column] != DOUBLE) {
-        throw new IllegalArgumentException("Column " + column + " is not a 'double' column.");
+
+  /**
+   * Count the category indices directly instead of creating a String for
+   * every row. Keys are in the order they're first found, same as the
+   * tally of a String column.
+   */
+  protected IntDict getCategoryTally(int column) {
+    checkColumn(column);
+    int[] indexData = (int[]) columns[column];
+    HashMapBlows categories = columnCategories[column];
+    // the extra slot at the end is for missing values
+    int missingSlot = categories.size();
+    int[] counts = new int[missingSlot + 1];
+    int[] order = new int[missingSlot + 1];
+    int found = 0;
+    for (int row = 0; row < rowCount; row++) {
+      int code = indexData[row];
+      int slot = (code == missingCategory) ? missingSlot : code;
+      if (counts[slot]++ == 0) {
+        order[found++] = slot;
       }
-      double[] doubleData = (double[]) columns[column];
-      doubleData[row] = value;
     }
+    String[] keys = new String[found];
+    int[] values = new int[found];
+    for (int i = 0; i < found; i++) {
+      int slot = order[i];
+      keys[i] = (slot == missingSlot) ? missingString : categories.key(slot);
+      values[i] = counts[slot];
+    }
+    return new IntDict(keys, values);
   }
 
 
-  public void setDouble(int row, String columnName, double value) {
-    setDouble(row, getColumnIndex(columnName), value);
+  public IntDict getOrder(String columnName) {
+    return getOrder(getColumnIndex(columnName));
   }
 
 
-  public double[] getDoubleColumn(String name) {
-    int col = getColumnIndex(name);
-    return (col == -1) ? null : getDoubleColumn(col);
+  public IntDict getOrder(int column) {
+    StringList list = new StringList(getStringColumn(column));
+    return list.getOrder();
   }
 
 
-  public double[] getDoubleColumn(int col) {
-    double[] outgoing = new double[rowCount];
-    for (int row = 0; row < rowCount; row++) {
-      outgoing[row] = getDouble(row, col);
-    }
-    return outgoing;
-  }
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  public double[] getDoubleRow(int row) {
-    double[] outgoing = new double[columns.length];
-    for (int col = 0; col < columns.length; col++) {
-      outgoing[col] = getDouble(row, col);
-    }
-    return outgoing;
+  public IntList getIntList(String columnName) {
+    return new IntList(getIntColumn(columnName));
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  public IntList getIntList(int column) {
+    return new IntList(getIntColumn(column));
+  }
 
 
-//public long getTimestamp(String rowName, int column) {
-//return getTimestamp(getRowIndex(rowName), column);
-//}
+  public LongList getLongList(String columnName) {
+    return new LongList(getLongColumn(columnName));
+  }
 
 
-  /**
-   * Returns the time in milliseconds by parsing a SQL Timestamp at this cell.
-   */
-//  public long getTimestamp(int row, int column) {
-//    String str = get(row, column);
-//    java.sql.Timestamp timestamp = java.sql.Timestamp.valueOf(str);
-//    return timestamp.getTime();
-//  }
+  public LongList getLongList(int column) {
+    return new LongList(getLongColumn(column));
+  }
 
 
-//  public long getExcelTimestamp(int row, int column) {
-//    return parseExcelTimestamp(get(row, column));
-//  }
+  public FloatList getFloatList(String columnName) {
+    return new FloatList(getFloatColumn(columnName));
+  }
 
 
-//  static protected DateFormat excelDateFormat;
+  public FloatList getFloatList(int column) {
+    return new FloatList(getFloatColumn(column));
+  }
 
-//  static public long parseExcelTimestamp(String timestamp) {
-//    if (excelDateFormat == null) {
-//      excelDateFormat = new SimpleDateFormat("MM/dd/yy HH:mm");
-//    }
-//    try {
-//      return excelDateFormat.parse(timestamp).getTime();
-//    } catch (ParseException e) {
-//      e.printStackTrace();
-//      return -1;
-//    }
-//  }
 
+  public DoubleList getDoubleList(String columnName) {
+    return new DoubleList(getDoubleColumn(columnName));
+  }
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
+  public DoubleList getDoubleList(int column) {
+    return new DoubleList(getDoubleColumn(column));
+  }
 
-//  public void setObject(int row, int column, Object value) {
-//    if (value == null) {
-//      data[row][column] = null;
-//    } else if (value instanceof String) {
-//      set(row, column, (String) value);
-//    } else if (value instanceof Float) {
-//      setFloat(row, column, ((Float) value).floatValue());
-//    } else if (value instanceof Integer) {
-//      setInt(row, column, ((Integer) value).intValue());
-//    } else {
-//      set(row, column, value.toString());
-//    }
-//  }
+
+  public StringList getStringList(String columnName) {
+    return new StringList(getStringColumn(columnName));
+  }
+
+
+  public StringList getStringList(int column) {
+    return new StringList(getStringColumn(column));
+  }
 
 
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  /**
-   * Get a String value from the table. If the row is longer than the table
-   *
-   * @webref table:method
-   * @brief Get an String value from the specified row and column
-   * @param row ID number of the row to reference
-   * @param column ID number of the column to reference
-   * @see Table#getInt(int, int)
-   * @see Table#getFloat(int, int)
-   * @see Table#getStringColumn(String)
-   * @see Table#setInt(int, int, int)
-   * @see Table#setFloat(int, int, float)
-   * @see Table#setString(int, int, String)
-   */
-  public String getString(int row, int column) {
-    checkBounds(row, column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      return stringData[row];
-    } else if (columnTypes[column] == CATEGORY) {
-      int cat = getInt(row, column);
-      if (cat == missingCategory) {
-        return missingString;
-      }
-      return columnCategories[column].key(cat);
-    } else {
-      return String.valueOf(Array.get(columns[column], row));
-    }
+  public IntDict getIntDict(String keyColumnName, String valueColumnName) {
+    return new IntDict(getStringColumn(keyColumnName),
+                       getIntColumn(valueColumnName));
   }
 
-  /**
-   * @param columnName title of the column to reference
-   */
-  public String getString(int row, String columnName) {
-    return getString(row, getColumnIndex(columnName));
+
+  public IntDict getIntDict(int keyColumn, int valueColumn) {
+    return new IntDict(getStringColumn(keyColumn),
+                       getIntColumn(valueColumn));
   }
 
 
-  public void setMissingString(String value) {
-    missingString = value;
+  public FloatDict getFloatDict(String keyColumnName, String valueColumnName) {
+    return new FloatDict(getStringColumn(keyColumnName),
+                         getFloatColumn(valueColumnName));
   }
 
 
-  /**
-   * @webref table:method
-   * @brief Store a String value in the specified row and column
-   * @param row ID number of the target row
-   * @param column ID number of the target column
-   * @param value value to assign
-   * @see Table#setInt(int, int, int)
-   * @see Table#setFloat(int, int, float)
-   * @see Table#getInt(int, int)
-   * @see Table#getFloat(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#getStringColumn(String)
-   */
-  public void setString(int row, int column, String value) {
-    ensureBounds(row, column);
-    if (columnTypes[column] != STRING) {
-      throw new IllegalArgumentException("Column " + column + " is not a String column.");
-    }
-    String[] stringData = (String[]) columns[column];
-    stringData[row] = value;
+  public FloatDict getFloatDict(int keyColumn, int valueColumn) {
+    return new FloatDict(getStringColumn(keyColumn),
+                       getFloatColumn(valueColumn));
   }
 
-  /**
-   * @param columnName title of the target column
-   */
-  public void setString(int row, String columnName, String value) {
-    int column = checkColumnIndex(columnName);
-    setString(row, column, value);
+
+  public StringDict getStringDict(String keyColumnName, String valueColumnName) {
+    return new StringDict(getStringColumn(keyColumnName),
+                         getStringColumn(valueColumnName));
   }
 
-  /**
-   * @webref table:method
-   * @brief Gets all values in the specified column
-   * @param columnName title of the column to search
-   * @see Table#getInt(int, int)
-   * @see Table#getFloat(int, int)
-   * @see Table#getString(int, int)
-   * @see Table#setInt(int, int, int)
-   * @see Table#setFloat(int, int, float)
-   * @see Table#setString(int, int, String)
-   */
-  public String[] getStringColumn(String columnName) {
-    int col = getColumnIndex(columnName);
-    return (col == -1) ? null : getStringColumn(col);
+
+  public StringDict getStringDict(int keyColumn, int valueColumn) {
+    return new StringDict(getStringColumn(keyColumn),
+                          getStringColumn(valueColumn));
   }
 
 
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
-   * @param column ID number of the column to search
+   * Group the rows of this table by the values in one or more columns.
+   * Rows are grouped on the exact values, without any conversion to String,
+   * and groups appear in the order they're first found in the table. Use
+   * the returned object to calculate the count, sum, mean, min, max, or
+   * number of distinct values for each group, each as a new Table.
+   * <pre>
+   * Table totals = table.groupBy("country", "year").sum("population");
+   * </pre>
    */
-  public String[] getStringColumn(int column) {
-    String[] outgoing = new String[rowCount];
-    for (int i = 0; i < rowCount; i++) {
-      outgoing[i] = getString(i, column);
+  public Grouping groupBy(String... keyColumnNames) {
+    int[] keyColumns = new int[keyColumnNames.length];
+    for (int i = 0; i < keyColumns.length; i++) {
+      keyColumns[i] = getColumnIndex(keyColumnNames[i]);
     }
-    return outgoing;
+    return groupBy(keyColumns);
   }
 
 
-  public String[] getStringRow(int row) {
-    String[] outgoing = new String[columns.length];
-    for (int col = 0; col < columns.length; col++) {
-      outgoing[col] = getString(row, col);
+  public Grouping groupBy(int... keyColumns) {
+    if (keyColumns.length == 0) {
+      throw new IllegalArgumentException("groupBy() needs at least one column");
     }
-    return outgoing;
+    for (int col : keyColumns) {
+      checkColumn(col);
+    }
+    return new Grouping(this, keyColumns, null);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
   /**
-   * Return the row that contains the first String that matches.
-   * @param value the String to match
-   * @param column ID number of the column to search
+   * Rows of a Table sorted into groups by their values in the key columns.
+   * The groups are worked out once, when the Grouping is created; changes to
+   * the Table afterwards are not reflected. Aggregates over numeric columns
+   * use primitive accumulators on the column data directly. Larger tables
+   * are split into blocks of rows that are handled in parallel and then
+   * combined, which gives the same results as doing it all in one pass.
    */
-  public int findRowIndex(String value, int column) {
-    checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      if (value == null) {
-        for (int row = 0; row < rowCount; row++) {
-          if (stringData[row] == null) return row;
-        }
-      } else {
-        for (int row = 0; row < rowCount; row++) {
-          if (stringData[row] != null && stringData[row].equals(value)) {
-            return row;
+  static public class Grouping {
+    Table table;
+    int[] keyColumns;
+    /** Rows of the table that are grouped, or null for all of them */
+    int[] rows;
+    int count;
+
+    int groupCount;
+    /** The group for each row (or each entry of 'rows') */
+    int[] groupOf;
+    /** The first row found for each group */
+    int[] firstRow;
+
+    int blocks;
+    int blockSize;
+
+
+    Grouping(Table table, int[] keyColumns, int[] rows) {
+      this.table = table;
+      this.keyColumns = keyColumns;
+      this.rows = rows;
+      count = (rows == null) ? table.getRowCount() : rows.length;
+      blocks = 1;
+      if (count >= PARALLEL_THRESHOLD) {
+        blocks = getParallelPool().getParallelism();
+      }
+      blockSize = (count + blocks - 1) / blocks;
+      group();
+    }
+
+
+    void group() {
+      groupOf = new int[count];
+      final RowKeyTable[] local = new RowKeyTable[blocks];
+      new ParallelBlocks(blocks) {
+        void run(int block) {
+          RowKeyTable keys = new RowKeyTable(table, keyColumns);
+          int stop = Math.min(count, (block + 1) * blockSize);
+          for (int i = block * blockSize; i < stop; i++) {
+            groupOf[i] = keys.add((rows == null) ? i : rows[i]);
           }
+          local[block] = keys;
         }
+      }.runBlocks();
+
+      if (blocks == 1) {
+        groupCount = local[0].size();
+        firstRow = local[0].firstRows();
+        return;
       }
-    } else {  // less efficient, includes conversion as necessary
-      for (int row = 0; row < rowCount; row++) {
-        String str = getString(row, column);
-        if (str == null) {
-          if (value == null) {
-            return row;
-          }
-        } else if (str.equals(value)) {
-          return row;
+
+      // merge the groups from each block, in order, so that group numbers
+      // are the same as if the whole table had been done at once
+      RowKeyTable merged = new RowKeyTable(table, keyColumns);
+      final int[][] remap = new int[blocks][];
+      for (int block = 0; block < blocks; block++) {
+        int[] first = local[block].firstRows();
+        remap[block] = new int[first.length];
+        for (int i = 0; i < first.length; i++) {
+          remap[block][i] = merged.add(first[i]);
         }
       }
+      new ParallelBlocks(blocks) {
+        void run(int block) {
+          int[] map = remap[block];
+          int stop = Math.min(count, (block + 1) * blockSize);
+          for (int i = block * blockSize; i < stop; i++) {
+            groupOf[i] = map[groupOf[i]];
+          }
+        }
+      }.runBlocks();
+      groupCount = merged.size();
+      firstRow = merged.firstRows();
     }
-    return -1;
-  }
 
 
-  /**
-   * Return the row that contains the first String that matches.
-   * @param value the String to match
-   * @param columnName title of the column to search
-   */
-  public int findRowIndex(String value, String columnName) {
-    return findRowIndex(value, getColumnIndex(columnName));
-  }
+    public int getGroupCount() {
+      return groupCount;
+    }
 
 
-  /**
-   * Return a list of rows that contain the String passed in. If there are no
-   * matches, a zero length array will be returned (not a null array).
-   * @param value the String to match
-   * @param column ID number of the column to search
-   */
-  public int[] findRowIndices(String value, int column) {
-    int[] outgoing = new int[rowCount];
-    int count = 0;
+    /**
+     * Returns the group number for a row of the original table, or -1 if
+     * the row was not part of the grouping.
+     */
+    public int getGroup(int row) {
+      int i = (rows == null) ? row : Arrays.binarySearch(rows, row);
+      return (i < 0 || i >= count) ? -1 : groupOf[i];
+    }
 
-    checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      if (value == null) {
-        for (int row = 0; row < rowCount; row++) {
-          if (stringData[row] == null) {
-            outgoing[count++] = row;
-          }
-        }
-      } else {
-        for (int row = 0; row < rowCount; row++) {
-          if (stringData[row] != null && stringData[row].equals(value)) {
-            outgoing[count++] = row;
-          }
+
+    /** Returns the row numbers of the original table that are in a group. */
+    public int[] getRows(int group) {
+      IntList outgoing = new IntList();
+      for (int i = 0; i < count; i++) {
+        if (groupOf[i] == group) {
+          outgoing.append((rows == null) ? i : rows[i]);
         }
       }
-    } else {  // less efficient, includes conversion as necessary
-      for (int row = 0; row < rowCount; row++) {
-        String str = getString(row, column);
-        if (str == null) {
-          if (value == null) {
-            outgoing[count++] = row;
-          }
-        } else if (str.equals(value)) {
-          outgoing[count++] = row;
-        }
+      return outgoing.array();
+    }
+
+
+    /**
+     * Table with one row per group: the key columns, followed by a column
+     * titled "count" with the number of rows in each group.
+     */
+    public Table count() {
+      int[] counts = new int[groupCount];
+      for (int g : groupOf) {
+        counts[g]++;
       }
+      Table outgoing = createKeyTable();
+      outgoing.addColumn("count", INT);
+      outgoing.columns[keyColumns.length] = counts;
+      return outgoing;
     }
-    return PApplet.subset(outgoing, 0, count);
-  }
 
 
-  /**
-   * Return a list of rows that contain the String passed in. If there are no
-   * matches, a zero length array will be returned (not a null array).
-   * @param value the String to match
-   * @param columnName title of the column to search
-   */
-  public int[] findRowIndices(String value, String columnName) {
-    return findRowIndices(value, getColumnIndex(columnName));
-  }
+    public Table sum(String columnName) {
+      return sum(table.getColumnIndex(columnName));
+    }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+    /**
+     * Sum of a numeric column for each group. INT and LONG columns are
+     * added up as a LONG column, FLOAT and DOUBLE as a DOUBLE column.
+     * Missing (NaN) float and double values are skipped.
+     */
+    public Table sum(int column) {
+      Accumulator acc = accumulate(column);
+      Table outgoing = createKeyTable();
+      if (acc.isFloat) {
+        outgoing.addColumn(table.getColumnTitle(column), DOUBLE);
+        outgoing.columns[keyColumns.length] = acc.doubleSum;
+      } else {
+        outgoing.addColumn(table.getColumnTitle(column), LONG);
+        outgoing.columns[keyColumns.length] = acc.longSum;
+      }
+      return outgoing;
+    }
 
-  /**
-   * @webref table:method
-   * @brief Finds a row that contains the given value
-   * @param value the value to match
-   * @param column ID number of the column to search
-   * @see Table#getRow(int)
-   * @see Table#rows()
-   * @see Table#findRows(String, int)
-   * @see Table#matchRow(String, int)
-   * @see Table#matchRows(String, int)
-   */
-  public TableRow findRow(String value, int column) {
-    int row = findRowIndex(value, column);
-    return (row == -1) ? null : new RowPointer(this, row);
-  }
+
+    public Table mean(String columnName) {
+      return mean(table.getColumnIndex(columnName));
+    }
+
+
+    /**
+     * Average of a numeric column for each group, as a DOUBLE column.
+     * Missing (NaN) float and double values are skipped, and a group with
+     * no values at all gets NaN.
+     */
+    public Table mean(int column) {
+      Accumulator acc = accumulate(column);
+      double[] means = new double[groupCount];
+      for (int g = 0; g < groupCount; g++) {
+        double sum = acc.isFloat ? acc.doubleSum[g] : acc.longSum[g];
+        means[g] = (acc.count[g] == 0) ? Double.NaN : sum / acc.count[g];
+      }
+      Table outgoing = createKeyTable();
+      outgoing.addColumn(table.getColumnTitle(column), DOUBLE);
+      outgoing.columns[keyColumns.length] = means;
+      return outgoing;
+    }
+
+
+    public Table min(String columnName) {
+      return min(table.getColumnIndex(columnName));
+    }
+
+
+    /**
+     * Smallest value of a numeric column for each group, with the same type
+     * as the original column. Missing (NaN) values are skipped.
+     */
+    public Table min(int column) {
+      Accumulator acc = accumulate(column);
+      return createExtremeTable(column, acc.longMin, acc.doubleMin, acc.count);
+    }
 
 
-  /**
-   * @param columnName title of the column to search
-   */
-  public TableRow findRow(String value, String columnName) {
-    return findRow(value, getColumnIndex(columnName));
-  }
+    public Table max(String columnName) {
+      return max(table.getColumnIndex(columnName));
+    }
 
 
-  /**
-   * @webref table:method
-   * @brief Finds multiple rows that contain the given value
-   * @param value the value to match
-   * @param column ID number of the column to search
-   * @see Table#getRow(int)
-   * @see Table#rows()
-   * @see Table#findRow(String, int)
-   * @see Table#matchRow(String, int)
-   * @see Table#matchRows(String, int)
-   */
-  public Iterable<TableRow> findRows(final String value, final int column) {
-    return new Iterable<TableRow>() {
-      public Iterator<TableRow> iterator() {
-        return findRowIterator(value, column);
-      }
-    };
-  }
+    /**
+     * Largest value of a numeric column for each group, with the same type
+     * as the original column. Missing (NaN) values are skipped.
+     */
+    public Table max(int column) {
+      Accumulator acc = accumulate(column);
+      return createExtremeTable(column, acc.longMax, acc.doubleMax, acc.count);
+    }
 
 
-  /**
-   * @param columnName title of the column to search
-   */
-  public Iterable<TableRow> findRows(final String value, final String columnName) {
-    return findRows(value, getColumnIndex(columnName));
-  }
+    public Table distinct(String columnName) {
+      return distinct(table.getColumnIndex(columnName));
+    }
 
 
-  /**
-   * @brief Finds multiple rows that contain the given value
-   * @param value the value to match
-   * @param column ID number of the column to search
-   */
-  public Iterator<TableRow> findRowIterator(String value, int column) {
-    return new RowIndexIterator(this, findRowIndices(value, column));
-  }
+    /**
+     * Number of different values in a column for each group, as an INT
+     * column. Works with columns of any type.
+     */
+    public Table distinct(int column) {
+      table.checkColumn(column);
+      int[] pairColumns = Arrays.copyOf(keyColumns, keyColumns.length + 1);
+      pairColumns[keyColumns.length] = column;
+      // each distinct (key, value) pair adds one to its key's group
+      Grouping pairs = new Grouping(table, pairColumns, rows);
+      boolean[] seen = new boolean[pairs.groupCount];
+      int[] counts = new int[groupCount];
+      for (int i = 0; i < count; i++) {
+        if (!seen[pairs.groupOf[i]]) {
+          seen[pairs.groupOf[i]] = true;
+          counts[groupOf[i]]++;
+        }
+      }
+      Table outgoing = createKeyTable();
+      outgoing.addColumn(table.getColumnTitle(column), INT);
+      outgoing.columns[keyColumns.length] = counts;
+      return outgoing;
+    }
 
 
-  /**
-   * @param columnName title of the column to search
-   */
-  public Iterator<TableRow> findRowIterator(String value, String columnName) {
-    return findRowIterator(value, getColumnIndex(columnName));
-  }
+    /** New table with the key columns filled in, one row per group. */
+    Table createKeyTable() {
+      return table.createSubset(firstRow, keyColumns);
+    }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+    Table createExtremeTable(int column, long[] longData, double[] doubleData,
+                             int[] counts) {
+      int type = table.columnTypes[column];
+      Table outgoing = createKeyTable();
+      outgoing.addColumn(table.getColumnTitle(column), type);
+      Object data = null;
+      switch (type) {
+      case INT:
+        int[] intData = new int[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+          intData[g] = (int) longData[g];
+        }
+        data = intData;
+        break;
+      case LONG:
+        data = longData;
+        break;
+      case FLOAT:
+        float[] floatData = new float[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+          floatData[g] = (counts[g] == 0) ? table.missingFloat : (float) doubleData[g];
+        }
+        data = floatData;
+        break;
+      case DOUBLE:
+        for (int g = 0; g < groupCount; g++) {
+          if (counts[g] == 0) {
+            doubleData[g] = table.missingDouble;
+          }
+        }
+        data = doubleData;
+        break;
+      }
+      outgoing.columns[keyColumns.length] = data;
+      return outgoing;
+    }
 
 
-  /**
-   * Return the row that contains the first String that matches.
-   * @param regexp the String to match
-   * @param column ID number of the column to search
-   */
-  public int matchRowIndex(String regexp, int column) {
-    checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      for (int row = 0; row < rowCount; row++) {
-        if (stringData[row] != null &&
-            PApplet.match(stringData[row], regexp) != null) {
-          return row;
-        }
+    Accumulator accumulate(final int column) {
+      table.checkColumn(column);
+      final int type = table.columnTypes[column];
+      if (type != INT && type != LONG && type != FLOAT && type != DOUBLE) {
+        throw new IllegalArgumentException("Column " + column + " is not numeric");
       }
-    } else {  // less efficient, includes conversion as necessary
-      for (int row = 0; row < rowCount; row++) {
-        String str = getString(row, column);
-        if (str != null &&
-            PApplet.match(str, regexp) != null) {
-          return row;
+      final Object data = table.columns[column];
+      final Accumulator[] partial = new Accumulator[blocks];
+      new ParallelBlocks(blocks) {
+        void run(int block) {
+          Accumulator acc = new Accumulator(groupCount, type == FLOAT || type == DOUBLE);
+          int start = block * blockSize;
+          int stop = Math.min(count, start + blockSize);
+          switch (type) {
+          case INT:
+            int[] intData = (int[]) data;
+            for (int i = start; i < stop; i++) {
+              acc.add(groupOf[i], intData[(rows == null) ? i : rows[i]]);
+            }
+            break;
+          case LONG:
+            long[] longData = (long[]) data;
+            for (int i = start; i < stop; i++) {
+              acc.add(groupOf[i], longData[(rows == null) ? i : rows[i]]);
+            }
+            break;
+          case FLOAT:
+            float[] floatData = (float[]) data;
+            for (int i = start; i < stop; i++) {
+              acc.add(groupOf[i], floatData[(rows == null) ? i : rows[i]]);
+            }
+            break;
+          case DOUBLE:
+            double[] doubleData = (double[]) data;
+            for (int i = start; i < stop; i++) {
+              acc.add(groupOf[i], doubleData[(rows == null) ? i : rows[i]]);
+            }
+            break;
+          }
+          partial[block] = acc;
         }
+      }.runBlocks();
+
+      for (int block = 1; block < blocks; block++) {
+        partial[0].add(partial[block]);
       }
+      return partial[0];
     }
-    return -1;
   }
 
 
   /**
-   * Return the row that contains the first String that matches.
-   * @param what the String to match
-   * @param columnName title of the column to search
+   * Running count, sum, min and max for each group. Integer columns use the
+   * long arrays, floating point columns use the double arrays.
    */
-  public int matchRowIndex(String what, String columnName) {
-    return matchRowIndex(what, getColumnIndex(columnName));
+  static class Accumulator {
+    boolean isFloat;
+    int[] count;
+    long[] longSum, longMin, longMax;
+    double[] doubleSum, doubleMin, doubleMax;
+
+    Accumulator(int groupCount, boolean isFloat) {
+      this.isFloat = isFloat;
+      count = new int[groupCount];
+      if (isFloat) {
+        doubleSum = new double[groupCount];
+        doubleMin = new double[groupCount];
+        doubleMax = new double[groupCount];
+      } else {
+        longSum = new long[groupCount];
+        longMin = new long[groupCount];
+        longMax = new long[groupCount];
+      }
+    }
+
+    void add(int group, long value) {
+      if (count[group]++ == 0) {
+        longMin[group] = value;
+        longMax[group] = value;
+      } else if (value < longMin[group]) {
+        longMin[group] = value;
+      } else if (value > longMax[group]) {
+        longMax[group] = value;
+      }
+      longSum[group] += value;
+    }
+
+    void add(int group, double value) {
+      if (value != value) {
+        return;  // skip NaN, the missing value
+      }
+      if (count[group]++ == 0) {
+        doubleMin[group] = value;
+        doubleMax[group] = value;
+      } else if (value < doubleMin[group]) {
+        doubleMin[group] = value;
+      } else if (value > doubleMax[group]) {
+        doubleMax[group] = value;
+      }
+      doubleSum[group] += value;
+    }
+
+    /** Fold in the results from another block of rows. */
+    void add(Accumulator other) {
+      for (int g = 0; g < count.length; g++) {
+        if (other.count[g] != 0) {
+          if (isFloat) {
+            if (count[g] == 0) {
+              doubleMin[g] = other.doubleMin[g];
+              doubleMax[g] = other.doubleMax[g];
+            } else {
+              doubleMin[g] = Math.min(doubleMin[g], other.doubleMin[g]);
+              doubleMax[g] = Math.max(doubleMax[g], other.doubleMax[g]);
+            }
+            doubleSum[g] += other.doubleSum[g];
+          } else {
+            if (count[g] == 0) {
+              longMin[g] = other.longMin[g];
+              longMax[g] = other.longMax[g];
+            } else {
+              longMin[g] = Math.min(longMin[g], other.longMin[g]);
+              longMax[g] = Math.max(longMax[g], other.longMax[g]);
+            }
+            longSum[g] += other.longSum[g];
+          }
+          count[g] += other.count[g];
+        }
+      }
+    }
   }
 
 
   /**
-   * Return a list of rows that contain the String passed in. If there are no
-   * matches, a zero length array will be returned (not a null array).
-   * @param what the String to match
-   * @param column ID number of the column to search
+   * Assigns a number to each different combination of values found in a set
+   * of key columns, numbered in the order they're added. Open addressing on
+   * the typed column data, with each slot pointing at the first row seen
+   * with that key.
    */
-  public int[] matchRowIndices(String regexp, int column) {
-    int[] outgoing = new int[rowCount];
-    int count = 0;
+  static class RowKeyTable {
+    Table table;
+    int[] keyColumns;
 
-    checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      for (int row = 0; row < rowCount; row++) {
-        if (stringData[row] != null &&
-            PApplet.match(stringData[row], regexp) != null) {
-          outgoing[count++] = row;
+    int[] slots;  // key number + 1, or 0 if empty
+    int mask;
+    int[] firstRows = new int[16];
+    int count;
+
+    RowKeyTable(Table table, int[] keyColumns) {
+      this.table = table;
+      this.keyColumns = keyColumns;
+      slots = new int[64];
+      mask = slots.length - 1;
+    }
+
+    int size() {
+      return count;
+    }
+
+    int[] firstRows() {
+      return Arrays.copyOf(firstRows, count);
+    }
+
+    /** Returns the key number for this row, adding a new one if needed. */
+    int add(int row) {
+      int hash = hashRow(row);
+      int slot = hash & mask;
+      int entry;
+      while ((entry = slots[slot]) != 0) {
+        if (sameKey(firstRows[entry - 1], row)) {
+          return entry - 1;
         }
+        slot = (slot + 1) & mask;
       }
-    } else {  // less efficient, includes conversion as necessary
-      for (int row = 0; row < rowCount; row++) {
-        String str = getString(row, column);
-        if (str != null &&
-            PApplet.match(str, regexp) != null) {
-          outgoing[count++] = row;
+      if (count == firstRows.length) {
+        firstRows = Arrays.copyOf(firstRows, count << 1);
+      }
+      firstRows[count] = row;
+      slots[slot] = ++count;
+      if (count * 2 > slots.length) {
+        rehash();
+      }
+      return count - 1;
+    }
+
+    void rehash() {
+      slots = new int[slots.length << 1];
+      mask = slots.length - 1;
+      for (int i = 0; i < count; i++) {
+        int slot = hashRow(firstRows[i]) & mask;
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & mask;
         }
+        slots[slot] = i + 1;
       }
     }
-    return PApplet.subset(outgoing, 0, count);
-  }
 
+    int hashRow(int row) {
+      int hash = 0;
+      for (int col : keyColumns) {
+        Object data = table.columns[col];
+        int h;
+        switch (table.columnTypes[col]) {
+        case LONG:
+          long lv = ((long[]) data)[row];
+          h = (int) (lv ^ (lv >>> 32));
+          break;
+        case FLOAT:
+          h = Float.floatToIntBits(((float[]) data)[row]);
+          break;
+        case DOUBLE:
+          long dv = Double.doubleToLongBits(((double[]) data)[row]);
+          h = (int) (dv ^ (dv >>> 32));
+          break;
+        case STRING:
+          String s = ((String[]) data)[row];
+          h = (s == null) ? 0 : s.hashCode();
+          break;
+        default:  // INT or CATEGORY
+          h = ((int[]) data)[row];
+        }
+        hash = HashIndex.mix(hash * 31 + h);
+      }
+      return hash;
+    }
 
-  /**
-   * Return a list of rows that match the regex passed in. If there are no
-   * matches, a zero length array will be returned (not a null array).
-   * @param what the String to match
-   * @param columnName title of the column to search
-   */
-  public int[] matchRowIndices(String what, String columnName) {
-    return matchRowIndices(what, getColumnIndex(columnName));
+    boolean sameKey(int row1, int row2) {
+      for (int col : keyColumns) {
+        Object data = table.columns[col];
+        switch (table.columnTypes[col]) {
+        case LONG:
+          if (((long[]) data)[row1] != ((long[]) data)[row2]) return false;
+          break;
+        case FLOAT:
+          if (Float.floatToIntBits(((float[]) data)[row1]) !=
+              Float.floatToIntBits(((float[]) data)[row2])) return false;
+          break;
+        case DOUBLE:
+          if (Double.doubleToLongBits(((double[]) data)[row1]) !=
+              Double.doubleToLongBits(((double[]) data)[row2])) return false;
+          break;
+        case STRING:
+          String s1 = ((String[]) data)[row1];
+          String s2 = ((String[]) data)[row2];
+          if (s1 == null ? s2 != null : !s1.equals(s2)) return false;
+          break;
+        default:
+          if (((int[]) data)[row1] != ((int[]) data)[row2]) return false;
+        }
+      }
+      return true;
+    }
   }
 
 
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
-  /**
-   * @webref table:method
-   * @brief Finds a row that matches the given expression
-   * @param regexp the regular expression to match
-   * @param column ID number of the column to search
-   * @see Table#getRow(int)
-   * @see Table#rows()
-   * @see Table#findRow(String, int)
-   * @see Table#findRows(String, int)
-   * @see Table#matchRows(String, int)
-   */
-  public TableRow matchRow(String regexp, int column) {
-    int row = matchRowIndex(regexp, column);
-    return (row == -1) ? null : new RowPointer(this, row);
+
+  public interface IntFilter {
+    public boolean test(int value);
   }
 
+  public interface LongFilter {
+    public boolean test(long value);
+  }
 
-  /**
-   * @param columnName title of the column to search
-   */
-  public TableRow matchRow(String regexp, String columnName) {
-    return matchRow(regexp, getColumnIndex(columnName));
+  public interface FloatFilter {
+    public boolean test(float value);
   }
 
+  public interface DoubleFilter {
+    public boolean test(double value);
+  }
 
-  /**
-   * @webref table:method
-   * @brief Finds multiple rows that match the given expression
-   * @param regexp the regular expression to match
-   * @param column ID number of the column to search
-   * @see Table#getRow(int)
-   * @see Table#rows()
-   * @see Table#findRow(String, int)
-   * @see Table#findRows(String, int)
-   * @see Table#matchRow(String, int)
-   */
-  public Iterable<TableRow> matchRows(final String regexp, final int column) {
-    return new Iterable<TableRow>() {
-      public Iterator<TableRow> iterator() {
-        return matchRowIterator(regexp, column);
-      }
-    };
+  public interface StringFilter {
+    public boolean test(String value);
   }
 
 
-  /**
-   * @param columnName title of the column to search
-   */
-  public Iterable<TableRow> matchRows(String regexp, String columnName) {
-    return matchRows(regexp, getColumnIndex(columnName));
+  public Selection where(String columnName, String op, double value) {
+    return where(getColumnIndex(columnName), op, value);
   }
 
 
   /**
-   * @webref table:method
-   * @brief Finds multiple rows that match the given expression
-   * @param value the regular expression to match
-   * @param column ID number of the column to search
+   * Select the rows where a numeric column compares to a value. The op can
+   * be "==", "!=", "&lt;", "&lt;=", "&gt;", or "&gt;=". Combine the result
+   * with others using and() and or().
+   * <pre>
+   * Selection adults = table.where("age", "&gt;=", 18);
+   * </pre>
    */
-  public Iterator<TableRow> matchRowIterator(String value, int column) {
-    return new RowIndexIterator(this, matchRowIndices(value, column));
+  public Selection where(int column, String op, double value) {
+    checkColumn(column);
+    // float columns compare to the value as a float, so that
+    // where("x", "==", 0.1) finds the rows holding 0.1f
+    boolean single = columnTypes[column] == FLOAT;
+    if (single) {
+      value = (float) value;
+    }
+    double lo = Double.NEGATIVE_INFINITY;
+    double hi = Double.POSITIVE_INFINITY;
+    boolean negate = false;
+    if (op.equals("==")) {
+      lo = hi = value;
+    } else if (op.equals("!=")) {
+      lo = hi = value;
+      negate = true;
+    } else if (op.equals("<")) {
+      hi = single ?
+        Math.nextAfter((float) value, Double.NEGATIVE_INFINITY) :
+        Math.nextAfter(value, Double.NEGATIVE_INFINITY);
+    } else if (op.equals("<=")) {
+      hi = value;
+    } else if (op.equals(">")) {
+      lo = single ?
+        Math.nextUp((float) value) : Math.nextUp(value);
+    } else if (op.equals(">=")) {
+      lo = value;
+    } else {
+      throw new IllegalArgumentException("'" + op + "' is not a valid comparison");
+    }
+    if (value != value) {
+      // nothing compares to NaN, but everything is != NaN
+      lo = 1;
+      hi = 0;
+    }
+    return selectRange(column, lo, hi, negate);
+  }
+
+
+  public Selection where(String columnName, String op, String value) {
+    return where(getColumnIndex(columnName), op, value);
   }
 
 
   /**
-   * @param columnName title of the column to search
+   * Select the rows where a String or category column is "==" or "!=" to a
+   * value. For numeric columns, the value is parsed as a number and any
+   * of the comparisons from where(column, op, double) can be used.
    */
-  public Iterator<TableRow> matchRowIterator(String value, String columnName) {
-    return matchRowIterator(value, getColumnIndex(columnName));
+  public Selection where(int column, String op, final String value) {
+    checkColumn(column);
+    int type = columnTypes[column];
+    if (type == LONG) {
+      // parsed as a long when possible, so large ids keep every digit
+      try {
+        return compareLong(column, op, Long.parseLong(value.trim()));
+      } catch (NumberFormatException nfe) { }
+    }
+    if (type != STRING && type != CATEGORY) {
+      double number;
+      try {
+        number = Double.parseDouble(value);
+      } catch (Exception e) {
+        throw new IllegalArgumentException("'" + value + "' is not a number, but column " + column + " is numeric");
+      }
+      return where(column, op, number);
+    }
+    boolean negate;
+    if (op.equals("==")) {
+      negate = false;
+    } else if (op.equals("!=")) {
+      negate = true;
+    } else {
+      throw new IllegalArgumentException("Only == and != can be used with String values");
+    }
+    if (type == CATEGORY) {
+      int code = categoryIndex(column, value);
+      return selectCodes(column, code, code, negate);
+    }
+    final String[] stringData = (String[]) columns[column];
+    final boolean keep = !negate;
+    return select(new Scan() {
+      int scan(int start, int stop, int[] out) {
+        int count = 0;
+        for (int row = start; row < stop; row++) {
+          String s = stringData[row];
+          out[count] = row;
+          count += ((value == null ? s == null : value.equals(s)) == keep) ? 1 : 0;
+        }
+        return count;
+      }
+    });
+  }
+
+
+  /** Same as where(column, op, double) for a LONG column, without rounding. */
+  protected Selection compareLong(int column, String op, long value) {
+    checkColumnType(column, LONG);
+    long lo = Long.MIN_VALUE;
+    long hi = Long.MAX_VALUE;
+    boolean negate = false;
+    boolean empty = false;
+    if (op.equals("==")) {
+      lo = hi = value;
+    } else if (op.equals("!=")) {
+      lo = hi = value;
+      negate = true;
+    } else if (op.equals("<")) {
+      empty = (value == Long.MIN_VALUE);
+      hi = value - 1;
+    } else if (op.equals("<=")) {
+      hi = value;
+    } else if (op.equals(">")) {
+      empty = (value == Long.MAX_VALUE);
+      lo = value + 1;
+    } else if (op.equals(">=")) {
+      lo = value;
+    } else {
+      throw new IllegalArgumentException("'" + op + "' is not a valid comparison");
+    }
+    if (empty) {
+      lo = 1;
+      hi = 0;
+    }
+    return selectLongRange(column, lo, hi, negate);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
-  /**
-   * Replace a String with another. Set empty entries null by using
-   * replace("", null) or use replace(null, "") to go the other direction.
-   * If this is a typed table, only String columns will be modified.
-   * @param orig
-   * @param replacement
-   */
-  public void replace(String orig, String replacement) {
-    for (int col = 0; col < columns.length; col++) {
-      replace(orig, replacement, col);
-    }
+  public Selection whereInt(String columnName, IntFilter filter) {
+    return whereInt(getColumnIndex(columnName), filter);
   }
 
 
-  public void replace(String orig, String replacement, int col) {
-    if (columnTypes[col] == STRING) {
-      String[] stringData = (String[]) columns[col];
-      for (int row = 0; row < rowCount; row++) {
-        if (stringData[row].equals(orig)) {
-          stringData[row] = replacement;
+  public Selection whereInt(int column, final IntFilter filter) {
+    checkColumnType(column, INT);
+    final int[] intData = (int[]) columns[column];
+    return select(new Scan() {
+      int scan(int start, int stop, int[] out) {
+        int count = 0;
+        for (int row = start; row < stop; row++) {
+          out[count] = row;
+          count += filter.test(intData[row]) ? 1 : 0;
         }
+        return count;
       }
-    }
+    });
   }
 
 
-  public void replace(String orig, String replacement, String colName) {
-    replace(orig, replacement, getColumnIndex(colName));
+  public Selection whereLong(String columnName, LongFilter filter) {
+    return whereLong(getColumnIndex(columnName), filter);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  public Selection whereLong(int column, final LongFilter filter) {
+    checkColumnType(column, LONG);
+    final long[] longData = (long[]) columns[column];
+    return select(new Scan() {
+      int scan(int start, int stop, int[] out) {
+        int count = 0;
+        for (int row = start; row < stop; row++) {
+          out[count] = row;
+          count += filter.test(longData[row]) ? 1 : 0;
+        }
+        return count;
+      }
+    });
+  }
 
 
-  public void replaceAll(String orig, String replacement) {
-    for (int col = 0; col < columns.length; col++) {
-      replaceAll(orig, replacement, col);
-    }
+  public Selection whereFloat(String columnName, FloatFilter filter) {
+    return whereFloat(getColumnIndex(columnName), filter);
   }
 
 
-  public void replaceAll(String regex, String replacement, int column) {
-    checkColumn(column);
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      for (int row = 0; row < rowCount; row++) {
-        if (stringData[row] != null) {
-          stringData[row] = stringData[row].replaceAll(regex, replacement);
+  public Selection whereFloat(int column, final FloatFilter filter) {
+    checkColumnType(column, FLOAT);
+    final float[] floatData = (float[]) columns[column];
+    return select(new Scan() {
+      int scan(int start, int stop, int[] out) {
+        int count = 0;
+        for (int row = start; row < stop; row++) {
+          out[count] = row;
+          count += filter.test(floatData[row]) ? 1 : 0;
         }
+        return count;
       }
-    } else {
-      throw new IllegalArgumentException("replaceAll() can only be used on String columns");
-    }
+    });
   }
 
 
-  /**
-   * Run String.replaceAll() on all entries in a column.
-   * Only works with columns that are already String values.
-   * @param what the String to match
-   * @param columnName title of the column to search
-   */
-  public void replaceAll(String regex, String replacement, String columnName) {
-    replaceAll(regex, replacement, getColumnIndex(columnName));
+  public Selection whereDouble(String columnName, DoubleFilter filter) {
+    return whereDouble(getColumnIndex(columnName), filter);
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+  public Selection whereDouble(int column, final DoubleFilter filter) {
+    checkColumnType(column, DOUBLE);
+    final double[] doubleData = (double[]) columns[column];
+    return select(new Scan() {
+      int scan(int start, int stop, int[] out) {
+        int count = 0;
+        for (int row = start; row < stop; row++) {
+          out[count] = row;
+          count += filter.test(doubleData[row]) ? 1 : 0;
+        }
+        return count;
+      }
+    });
+  }
 
 
-  /**
-   * Remove any of the specified characters from the entire table.
-   *
-   * @webref table:method
-   * @brief Removes characters from the table
-   * @param tokens a list of individual characters to be removed
-   * @see Table#trim()
-   */
-  public void removeTokens(String tokens) {
-    for (int col = 0; col < getColumnCount(); col++) {
-      removeTokens(tokens, col);
-    }
+  public Selection whereString(String columnName, StringFilter filter) {
+    return whereString(getColumnIndex(columnName), filter);
   }
 
 
   /**
-   * Removed any of the specified characters from a column. For instance,
-   * the following code removes dollar signs and commas from column 2:
-   * <pre>
-   * table.removeTokens(",$", 2);
-   * </pre>
-   *
-   * @param column ID number of the column to process
+   * Select rows using a test on the String values of a column. For a
+   * category column, the test is only run once for each category.
    */
-  public void removeTokens(String tokens, int column) {
-    for (int row = 0; row < rowCount; row++) {
-      String s = getString(row, column);
-      if (s != null) {
-        char[] c = s.toCharArray();
-        int index = 0;
-        for (int j = 0; j < c.length; j++) {
-          if (tokens.indexOf(c[j]) == -1) {
-            if (index != j) {
-              c[index] = c[j];
-            }
-            index++;
+  public Selection whereString(int column, final StringFilter filter) {
+    checkColumn(column);
+    if (columnTypes[column] == CATEGORY) {
+      HashMapBlows categories = columnCategories[column];
+      final boolean[] matches = new boolean[categories.size()];
+      for (int code = 0; code < matches.length; code++) {
+        matches[code] = filter.test(categories.key(code));
+      }
+      final boolean missingMatches = filter.test(missingString);
+      final int[] indexData = (int[]) columns[column];
+      return select(new Scan() {
+        int scan(int start, int stop, int[] out) {
+          int count = 0;
+          for (int row = start; row < stop; row++) {
+            int code = indexData[row];
+            out[count] = row;
+            count += ((code == missingCategory) ? missingMatches : matches[code]) ? 1 : 0;
           }
+          return count;
         }
-        if (index != c.length) {
-          setString(row, column, new String(c, 0, index));
+      });
+    }
+    checkColumnType(column, STRING);
+    final String[] stringData = (String[]) columns[column];
+    return select(new Scan() {
+      int scan(int start, int stop, int[] out) {
+        int count = 0;
+        for (int row = start; row < stop; row++) {
+          out[count] = row;
+          count += filter.test(stringData[row]) ? 1 : 0;
         }
+        return count;
       }
-    }
-  }
-
-  /**
-   * @param columnName title of the column to process
-   */
-  public void removeTokens(String tokens, String columnName) {
-    removeTokens(tokens, getColumnIndex(columnName));
+    });
   }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-  /**
-   * @webref table:method
-   * @brief Trims whitespace from values
-   * @see Table#removeTokens(String)
-   */
-  public void trim() {
-    for (int col = 0; col < getColumnCount(); col++) {
-      trim(col);
+  protected void checkColumnType(int column, int type) {
+    checkColumn(column);
+    if (columnTypes[column] != type) {
+      throw new IllegalArgumentException("Column " + column + " does not have type " + type);
     }
   }
 
+
   /**
-   * @param column ID number of the column to trim
+   * Rows where lo &lt;= value &lt;= hi (or the opposite, if negate is set).
+   * For int and long columns, the bounds are rounded inward to whole
+   * numbers, so that the comparison itself needs no conversion.
    */
-  public void trim(int column) {
-    if (columnTypes[column] == STRING) {
-      String[] stringData = (String[]) columns[column];
-      for (int row = 0; row < rowCount; row++) {
-        if (stringData[row] != null) {
-          stringData[row] = PApplet.trim(stringData[row]);
+  protected Selection selectRange(int column, double lo, double hi,
+                                  final boolean negate) {
+    switch (columnTypes[column]) {
+    case INT: {
+      final int[] intData = (int[]) columns[column];
+      double ceil = Math.ceil(lo);
+      double floor = Math.floor(hi);
+      final int min = (ceil < Integer.MIN_VALUE) ? Integer.MIN_VALUE : (int) ceil;
+      final int max = (floor > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) floor;
+      final boolean empty = (ceil > Integer.MAX_VALUE || floor < Integer.MIN_VALUE || ceil > floor);
+      return select(new Scan() {
+        int scan(int start, int stop, int[] out) {
+          int count = 0;
+          for (int row = start; row < stop; row++) {
+            int v = intData[row];
+            out[count] = row;
+            count += ((v >= min && v <= max && !empty) != negate) ? 1 : 0;
+          }
+          return count;
         }
+      });
+    }
+    case LONG: {
+      if (Math.ceil(lo) > Math.floor(hi)) {
+        return selectLongRange(column, 1, 0, negate);
       }
+      // (long) rounds toward zero and clamps to the range of a long
+      return selectLongRange(column, (long) Math.ceil(lo), (long) Math.floor(hi), negate);
+    }
+    case FLOAT: {
+      final float[] floatData = (float[]) columns[column];
+      // round the bounds inward to floats, then compare as floats
+      float fmin = (float) lo;
+      if (fmin < lo) {
+        fmin = Math.nextUp(fmin);
+      }
+      float fmax = (float) hi;
+      if (fmax > hi) {
+        fmax = Math.nextAfter(fmax, Double.NEGATIVE_INFINITY);
+      }
+      final float min = fmin;
+      final float max = fmax;
+      return select(new Scan() {
+        int scan(int start, int stop, int[] out) {
+          int count = 0;
+          for (int row = start; row < stop; row++) {
+            float v = floatData[row];
+            out[count] = row;
+            count += ((v >= min && v <= max) != negate) ? 1 : 0;
+          }
+          return count;
+        }
+      });
+    }
+    case DOUBLE: {
+      final double[] doubleData = (double[]) columns[column];
+      final double min = lo;
+      final double max = hi;
+      return select(new Scan() {
+        int scan(int start, int stop, int[] out) {
+          int count = 0;
+          for (int row = start; row < stop; row++) {
+            double v = doubleData[row];
+            out[count] = row;
+            count += ((v >= min && v <= max) != negate) ? 1 : 0;
+          }
+          return count;
+        }
+      });
     }
-  }
-
-  /**
-   * @param columnName title of the column to trim
-   */
-  public void trim(String columnName) {
-    trim(getColumnIndex(columnName));
-  }
-
-
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
-  /** Make sure this is a legit column, and if not, expand the table. */
-  protected void ensureColumn(int col) {
-    if (col >= columns.length) {
-      setColumnCount(col + 1);
+    default:
+      throw new IllegalArgumentException("Column " + column + " is not numeric");
     }
   }
 
 
-  /** Make sure this is a legit row, and if not, expand the table. */
-  protected void ensureRow(int row) {
-    if (row >= rowCount) {
-      setRowCount(row + 1);
-    }
+  /** Rows of a LONG column with min &lt;= value &lt;= max (or not, if negate). */
+  protected Selection selectLongRange(int column, final long min, final long max,
+                                      final boolean negate) {
+    final long[] longData = (long[]) columns[column];
+    return select(new Scan() {
+      int scan(int start, int stop, int[] out) {
+        int count = 0;
+        for (int row = start; row < stop; row++) {
+          long v = longData[row];
+          out[count] = row;
+          count += ((v >= min && v <= max) != negate) ? 1 : 0;
+        }
+        return count;
+      }
+    });
   }
 
 
-  /** Make sure this is a legit row and column. If not, expand the table. */
-  protected void ensureBounds(int row, int col) {
-    ensureRow(row);
-    ensureColumn(col);
+  /** Rows of a category column whose index is between min and max. */
+  protected Selection selectCodes(int column, final int min, final int max,
+                                  final boolean negate) {
+    final int[] indexData = (int[]) columns[column];
+    return select(new Scan() {
+      int scan(int start, int stop, int[] out) {
+        int count = 0;
+        for (int row = start; row < stop; row++) {
+          int v = indexData[row];
+          out[count] = row;
+          count += ((v >= min && v <= max) != negate) ? 1 : 0;
+        }
+        return count;
+      }
+    });
   }
 
 
-  /** Throw an error if this row doesn't exist. */
-  protected void checkRow(int row) {
-    if (row < 0 || row >= rowCount) {
-      throw new ArrayIndexOutOfBoundsException("Row " + row + " does not exist.");
-    }
+  /**
+   * A loop that writes the matching rows between start and stop into
+   * 'out' and returns how many were found. Each row is always written,
+   * and only counted if it matches, which avoids a branch in the loop.
+   */
+  abstract static class Scan {
+    abstract int scan(int start, int stop, int[] out);
   }
 
 
-  /** Throw an error if this column doesn't exist. */
-  protected void checkColumn(int column) {
-    if (column < 0 || column >= columns.length) {
-      throw new ArrayIndexOutOfBoundsException("Column " + column + " does not exist.");
+  /**
+   * Run a scan over every row of the table. Large tables are split into
+   * blocks that are scanned in parallel and then joined, in order.
+   */
+  protected Selection select(final Scan scan) {
+    loadAllColumns();
+    final int count = rowCount;
+    int blocks = 1;
+    if (count >= PARALLEL_THRESHOLD) {
+      blocks = getParallelPool().getParallelism();
+    }
+    final int blockSize = (count + blocks - 1) / blocks;
+    final int[][] found = new int[blocks][];
+    final int[] foundCount = new int[blocks];
+    new ParallelBlocks(blocks) {
+      void run(int block) {
+        int start = Math.min(count, block * blockSize);
+        int stop = Math.min(count, start + blockSize);
+        found[block] = new int[stop - start];
+        foundCount[block] = scan.scan(start, stop, found[block]);
+      }
+    }.runBlocks();
+
+    if (blocks == 1) {
+      return new Selection(this, Arrays.copyOf(found[0], foundCount[0]));
     }
+    int total = 0;
+    for (int c : foundCount) {
+      total += c;
+    }
+    int[] rows = new int[total];
+    int index = 0;
+    for (int block = 0; block < blocks; block++) {
+      System.arraycopy(found[block], 0, rows, index, foundCount[block]);
+      index += foundCount[block];
+    }
+    return new Selection(this, rows);
   }
 
 
-  /** Throw an error if this entry is out of bounds. */
-  protected void checkBounds(int row, int column) {
-    checkRow(row);
-    checkColumn(column);
-  }
-
+  /**
+   * A set of rows from a Table, created by where(). Only the row numbers
+   * are stored (in increasing order), the data stays in the original table.
+   * If rows are added to or removed from the table, the selection will be
+   * out of date.
+   */
+  static public class Selection {
+    Table table;
+    int[] rows;
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+    Selection(Table table, int[] rows) {
+      this.table = table;
+      this.rows = rows;
+    }
 
 
-  class HashMapBlows {
-    HashMap<String,Integer> dataToIndex = new HashMap<String, Integer>();
-    ArrayList<String> indexToData = new ArrayList<String>();
+    public int getRowCount() {
+      return rows.length;
+    }
 
-    HashMapBlows() { }
 
-    HashMapBlows(DataInputStream input) throws IOException {
-      read(input);
+    /**
+     * The row numbers in this selection. This is the array used internally,
+     * so don't modify it.
+     */
+    public int[] getRowIndices() {
+      return rows;
     }
 
-    int index(String key) {
-      Integer value = dataToIndex.get(key);
-      if (value != null) {
-        return value;
-      }
 
-      int v = dataToIndex.size();
-      dataToIndex.put(key, v);
-      indexToData.add(key);
-      return v;
+    /** Iterate over the selected rows of the original table. */
+    public Iterable<TableRow> rows() {
+      return table.rows(rows);
     }
 
-    String key(int index) {
-      return indexToData.get(index);
-    }
 
-    int size() {
-      return dataToIndex.size();
+    /** Copy the selected rows into a new Table. */
+    public Table toTable() {
+      return table.createSubset(rows);
     }
 
-    void write(DataOutputStream output) throws IOException {
-      output.writeInt(size());
-      for (String str : indexToData) {
-        output.writeUTF(str);
-      }
-    }
 
-    private void writeln(PrintWriter writer) throws IOException {
-      for (String str : indexToData) {
-        writer.println(str);
+    /** Rows that are in both this selection and the other. */
+    public Selection and(Selection other) {
+      checkTable(other);
+      int[] a = rows;
+      int[] b = other.rows;
+      int[] outgoing = new int[Math.min(a.length, b.length)];
+      int i = 0, j = 0, count = 0;
+      while (i < a.length && j < b.length) {
+        if (a[i] < b[j]) {
+          i++;
+        } else if (a[i] > b[j]) {
+          j++;
+        } else {
+          outgoing[count++] = a[i];
+          i++;
+          j++;
+        }
       }
-      writer.flush();
-      writer.close();
-    }
-
-    void read(DataInputStream input) throws IOException {
-      int count = input.readInt();
-      dataToIndex = new HashMap<String, Integer>(count);
-      for (int i = 0; i < count; i++) {
-        String str = input.readUTF();
-        dataToIndex.put(str, i);
-        indexToData.add(str);
+      return new Selection(table, Arrays.copyOf(outgoing, count));
+    }
+
+
+    /** Rows that are in this selection, the other, or both. */
+    public Selection or(Selection other) {
+      checkTable(other);
+      int[] a = rows;
+      int[] b = other.rows;
+      int[] outgoing = new int[a.length + b.length];
+      int i = 0, j = 0, count = 0;
+      while (i < a.length && j < b.length) {
+        if (a[i] < b[j]) {
+          outgoing[count++] = a[i++];
+        } else if (a[i] > b[j]) {
+          outgoing[count++] = b[j++];
+        } else {
+          outgoing[count++] = a[i];
+          i++;
+          j++;
+        }
       }
-    }
-  }
-
-
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
-
-
-//  class HashMapSucks extends HashMap<String,Integer> {
-//
-//    void increment(String what) {
-//      Integer value = get(what);
-//      if (value == null) {
-//        put(what, 1);
-//      } else {
-//        put(what, value + 1);
-//      }
-//    }
-//
-//    void check(String what) {
-//      if (get(what) == null) {
-//        put(what, 0);
-//      }
-//    }
-//  }
+      while (i < a.length) outgoing[count++] = a[i++];
+      while (j < b.length) outgoing[count++] = b[j++];
+      return new Selection(table, Arrays.copyOf(outgoing, count));
+    }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+    void checkTable(Selection other) {
+      if (other.table != table) {
+        throw new IllegalArgumentException("Both selections must come from the same Table");
+      }
+    }
 
 
-  public void sort(String columnName) {
-    sort(getColumnIndex(columnName), false);
-  }
+    /** Group the selected rows, see Table.groupBy(). */
+    public Grouping groupBy(String... keyColumnNames) {
+      int[] keyColumns = new int[keyColumnNames.length];
+      for (int i = 0; i < keyColumns.length; i++) {
+        keyColumns[i] = table.getColumnIndex(keyColumnNames[i]);
+      }
+      return groupBy(keyColumns);
+    }
 
 
-  public void sort(int column) {
-    sort(column, false);
-  }
+    public Grouping groupBy(int... keyColumns) {
+      if (keyColumns.length == 0) {
+        throw new IllegalArgumentException("groupBy() needs at least one column");
+      }
+      for (int col : keyColumns) {
+        table.checkColumn(col);
+      }
+      return new Grouping(table, keyColumns, rows);
+    }
 
 
-  public void sortReverse(String columnName) {
-    sort(getColumnIndex(columnName), true);
-  }
+    public double sum(String columnName) {
+      return sum(table.getColumnIndex(columnName));
+    }
 
 
-  public void sortReverse(int column) {
-    sort(column, true);
-  }
+    /** Sum of a numeric column over the selected rows, skipping NaN. */
+    public double sum(int column) {
+      Accumulator acc = accumulate(column);
+      return acc.isFloat ? acc.doubleSum[0] : acc.longSum[0];
+    }
+
 
+    public double mean(String columnName) {
+      return mean(table.getColumnIndex(columnName));
+    }
 
-  protected void sort(final int column, final boolean reverse) {
-    final int[] order = IntList.fromRange(getRowCount()).array();
-    Sort s = new Sort() {
 
-      @Override
-      public int size() {
-        return getRowCount();
+    /** Average of a numeric column over the selected rows, skipping NaN. */
+    public double mean(int column) {
+      Accumulator acc = accumulate(column);
+      if (acc.count[0] == 0) {
+        return Double.NaN;
       }
+      return (acc.isFloat ? acc.doubleSum[0] : acc.longSum[0]) / acc.count[0];
+    }
 
-      @Override
-      public float compare(int index1, int index2) {
-        int a = reverse ? order[index2] : order[index1];
-        int b = reverse ? order[index1] : order[index2];
 
-        switch (getColumnType(column)) {
-        case INT:
-          return getInt(a, column) - getInt(b, column);
-        case LONG:
-          return getLong(a, column) - getLong(b, column);
-        case FLOAT:
-          return getFloat(a, column) - getFloat(b, column);
-        case DOUBLE:
-          return (float) (getDouble(a, column) - getDouble(b, column));
-        case STRING:
-          return getString(a, column).compareToIgnoreCase(getString(b, column));
-        case CATEGORY:
-          return getInt(a, column) - getInt(b, column);
-        default:
-          throw new IllegalArgumentException("Invalid column type: " + getColumnType(column));
-        }
+    public double min(String columnName) {
+      return min(table.getColumnIndex(columnName));
+    }
+
+
+    /** Smallest value of a numeric column, or NaN if nothing was selected. */
+    public double min(int column) {
+      Accumulator acc = accumulate(column);
+      if (acc.count[0] == 0) {
+        return Double.NaN;
       }
+      return acc.isFloat ? acc.doubleMin[0] : acc.longMin[0];
+    }
 
-      @Override
-      public void swap(int a, int b) {
-        int temp = order[a];
-        order[a] = order[b];
-        order[b] = temp;
+
+    public double max(String columnName) {
+      return max(table.getColumnIndex(columnName));
+    }
+
+
+    /** Largest value of a numeric column, or NaN if nothing was selected. */
+    public double max(int column) {
+      Accumulator acc = accumulate(column);
+      if (acc.count[0] == 0) {
+        return Double.NaN;
       }
+      return acc.isFloat ? acc.doubleMax[0] : acc.longMax[0];
+    }
 
-    };
-    s.run();
 
-    //Object[] newColumns = new Object[getColumnCount()];
-    for (int col = 0; col < getColumnCount(); col++) {
-      switch (getColumnType(col)) {
-      case INT:
-      case CATEGORY:
-        int[] oldInt = (int[]) columns[col];
-        int[] newInt = new int[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newInt[row] = oldInt[order[row]];
-        }
-        columns[col] = newInt;
-        break;
-      case LONG:
-        long[] oldLong = (long[]) columns[col];
-        long[] newLong = new long[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newLong[row] = oldLong[order[row]];
+    Accumulator accumulate(int column) {
+      table.checkColumn(column);
+      Object data = table.columns[column];
+      switch (table.columnTypes[column]) {
+      case INT: {
+        Accumulator acc = new Accumulator(1, false);
+        int[] intData = (int[]) data;
+        for (int row : rows) {
+          acc.add(0, intData[row]);
         }
-        columns[col] = newLong;
-        break;
-      case FLOAT:
-        float[] oldFloat = (float[]) columns[col];
-        float[] newFloat = new float[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newFloat[row] = oldFloat[order[row]];
+        return acc;
+      }
+      case LONG: {
+        Accumulator acc = new Accumulator(1, false);
+        long[] longData = (long[]) data;
+        for (int row : rows) {
+          acc.add(0, longData[row]);
         }
-        columns[col] = newFloat;
-        break;
-      case DOUBLE:
-        double[] oldDouble = (double[]) columns[col];
-        double[] newDouble = new double[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newDouble[row] = oldDouble[order[row]];
+        return acc;
+      }
+      case FLOAT: {
+        Accumulator acc = new Accumulator(1, true);
+        float[] floatData = (float[]) data;
+        for (int row : rows) {
+          acc.add(0, floatData[row]);
         }
-        columns[col] = newDouble;
-        break;
-      case STRING:
-        String[] oldString = (String[]) columns[col];
-        String[] newString = new String[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
-          newString[row] = oldString[order[row]];
+        return acc;
+      }
+      case DOUBLE: {
+        Accumulator acc = new Accumulator(1, true);
+        double[] doubleData = (double[]) data;
+        for (int row : rows) {
+          acc.add(0, doubleData[row]);
         }
-        columns[col] = newString;
-        break;
+        return acc;
+      }
+      default:
+        throw new IllegalArgumentException("Column " + column + " is not numeric");
       }
     }
   }
@@ -3748,108 +7871,412 @@ public class Table {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  public String[] getUnique(String columnName) {
-    return getUnique(getColumnIndex(columnName));
-  }
+  /** INNER keeps only rows with a match, LEFT keeps every row on the left. */
+  public enum JoinType { INNER, LEFT }
 
 
-  public String[] getUnique(int column) {
-    StringList list = new StringList(getStringColumn(column));
-    return list.getUnique();
+  public Table join(Table other, String leftKey, String rightKey, JoinType type) {
+    return join(other, getColumnIndex(leftKey), other.getColumnIndex(rightKey), type);
   }
 
 
-  public IntDict getTally(String columnName) {
-    return getTally(getColumnIndex(columnName));
-  }
-
+  /**
+   * Combine this table with another, matching rows where the value in the
+   * leftKey column of this table is the same as the rightKey column of the
+   * other. The result has all the columns of this table, followed by the
+   * columns of the other table except its key column. If a title is
+   * already used by this table, "_2" is added to the end of it. Rows are
+   * in the same order as this table, with multiple matches in the order
+   * of the other table. With a LEFT join, rows of this table that have no
+   * match get missing values in the columns from the other table.
+   * <p>
+   * Keys are matched by value: ints and longs with each other, other
+   * numbers as doubles, and anything else as Strings. Missing values (null
+   * or NaN) never match. A hash table is built on the smaller of the two
+   * tables, and rows of the larger one are looked up in parallel.
+   * <pre>
+   * Table readings = measurements.join(stations, "station", "id", Table.JoinType.LEFT);
+   * </pre>
+   */
+  public Table join(Table other, int leftKey, int rightKey, JoinType type) {
+    loadAllColumns();
+    other.loadAllColumns();
+    checkColumn(leftKey);
+    other.checkColumn(rightKey);
+
+    JoinKeys[] keys = JoinKeys.create(this, leftKey, other, rightKey);
+    boolean buildLeft = rowCount < other.rowCount;
+    JoinKeys build = buildLeft ? keys[0] : keys[1];
+    JoinKeys probe = buildLeft ? keys[1] : keys[0];
+    // unmatched rows are only needed when probing from the left
+    boolean keepUnmatched = type == JoinType.LEFT && !buildLeft;
+    int[][] pairs = probe.probe(new KeyMultiMap(build), keepUnmatched);
+    int[] leftRows = buildLeft ? pairs[1] : pairs[0];
+    int[] rightRows = buildLeft ? pairs[0] : pairs[1];
+
+    if (buildLeft) {
+      if (type == JoinType.LEFT) {
+        // add the rows of this table that found nothing
+        boolean[] matched = new boolean[rowCount];
+        for (int row : leftRows) {
+          matched[row] = true;
+        }
+        IntList missing = new IntList();
+        for (int row = 0; row < rowCount; row++) {
+          if (!matched[row]) {
+            missing.append(row);
+          }
+        }
+        int found = leftRows.length;
+        leftRows = Arrays.copyOf(leftRows, found + missing.size());
+        rightRows = Arrays.copyOf(rightRows, found + missing.size());
+        for (int i = 0; i < missing.size(); i++) {
+          leftRows[found + i] = missing.get(i);
+          rightRows[found + i] = -1;
+        }
+      }
+      // pairs are in the order of the other table, put them in left order
+      int[] order = IntList.fromRange(leftRows.length).array();
+      long[] orderKeys = new long[leftRows.length];
+      for (int i = 0; i < orderKeys.length; i++) {
+        orderKeys[i] = leftRows[i];
+      }
+      sortOrder(order, orderKeys, 32);
+      int[] sortedLeft = new int[order.length];
+      int[] sortedRight = new int[order.length];
+      for (int i = 0; i < order.length; i++) {
+        sortedLeft[i] = leftRows[order[i]];
+        sortedRight[i] = rightRows[order[i]];
+      }
+      leftRows = sortedLeft;
+      rightRows = sortedRight;
+    }
 
-  public IntDict getTally(int column) {
-    StringList list = new StringList(getStringColumn(column));
-    return list.getTally();
+    Table outgoing = createSubset(leftRows);
+    for (int col = 0; col < other.getColumnCount(); col++) {
+      if (col != rightKey) {
+        String title = other.getColumnTitle(col);
+        if (title != null && getColumnIndex(title, false) != -1) {
+          title += "_2";
+        }
+        outgoing.addColumn(title, other.columnTypes[col]);
+        int index = outgoing.getColumnCount() - 1;
+        outgoing.columns[index] = outgoing.gatherColumn(other, col, rightRows);
+        if (other.columnTypes[col] == CATEGORY) {
+          HashMapBlows categories = other.columnCategories[col];
+          for (int code = 0; code < categories.size(); code++) {
+            outgoing.columnCategories[index].index(categories.key(code));
+          }
+        }
+      }
+    }
+    return outgoing;
   }
 
 
-  public IntDict getOrder(String columnName) {
-    return getOrder(getColumnIndex(columnName));
+  /**
+   * Copy rows of a column from another table, in the order given. A row
+   * of -1 gets the missing value for the column type from this table.
+   */
+  protected Object gatherColumn(Table source, int column, int[] rows) {
+    Object data = source.columns[column];
+    int count = rows.length;
+    switch (source.columnTypes[column]) {
+    case INT:
+    case CATEGORY:
+      int[] oldInt = (int[]) data;
+      int[] newInt = new int[count];
+      int missing = (source.columnTypes[column] == CATEGORY) ?
+        missingCategory : missingInt;
+      for (int i = 0; i < count; i++) {
+        newInt[i] = (rows[i] == -1) ? missing : oldInt[rows[i]];
+      }
+      return newInt;
+    case LONG:
+      long[] oldLong = (long[]) data;
+      long[] newLong = new long[count];
+      for (int i = 0; i < count; i++) {
+        newLong[i] = (rows[i] == -1) ? missingLong : oldLong[rows[i]];
+      }
+      return newLong;
+    case FLOAT:
+      float[] oldFloat = (float[]) data;
+      float[] newFloat = new float[count];
+      for (int i = 0; i < count; i++) {
+        newFloat[i] = (rows[i] == -1) ? missingFloat : oldFloat[rows[i]];
+      }
+      return newFloat;
+    case DOUBLE:
+      double[] oldDouble = (double[]) data;
+      double[] newDouble = new double[count];
+      for (int i = 0; i < count; i++) {
+        newDouble[i] = (rows[i] == -1) ? missingDouble : oldDouble[rows[i]];
+      }
+      return newDouble;
+    default:
+      String[] oldString = (String[]) data;
+      String[] newString = new String[count];
+      for (int i = 0; i < count; i++) {
+        newString[i] = (rows[i] == -1) ? missingString : oldString[rows[i]];
+      }
+      return newString;
+    }
   }
 
 
-  public IntDict getOrder(int column) {
-    StringList list = new StringList(getStringColumn(column));
-    return list.getOrder();
-  }
+  /**
+   * The key column of one side of a join, as a long for each row, so that
+   * two rows match when their longs are the same. Rows whose value is
+   * missing, or (for Strings) not found on the other side, are flagged
+   * so that they never match.
+   */
+  static class JoinKeys {
+    long[] keys;
+    boolean[] skip;
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+    JoinKeys(int count) {
+      keys = new long[count];
+    }
 
 
-  public IntList getIntList(String columnName) {
-    return new IntList(getIntColumn(columnName));
-  }
+    void setSkip(int row) {
+      if (skip == null) {
+        skip = new boolean[keys.length];
+      }
+      skip[row] = true;
+    }
 
 
-  public IntList getIntList(int column) {
-    return new IntList(getIntColumn(column));
-  }
+    boolean isSkipped(int row) {
+      return skip != null && skip[row];
+    }
 
 
-  public FloatList getFloatList(String columnName) {
-    return new FloatList(getFloatColumn(columnName));
-  }
+    static JoinKeys[] create(Table left, int leftCol, Table right, int rightCol) {
+      int leftType = left.columnTypes[leftCol];
+      int rightType = right.columnTypes[rightCol];
+      if (isWhole(leftType) && isWhole(rightType)) {
+        return new JoinKeys[] {
+          wholeKeys(left, leftCol), wholeKeys(right, rightCol)
+        };
+      }
+      if (isNumber(leftType) && isNumber(rightType)) {
+        return new JoinKeys[] {
+          doubleKeys(left, leftCol), doubleKeys(right, rightCol)
+        };
+      }
+      // match as Strings: number each String found on the right, then
+      // look up the Strings on the left in that same dictionary
+      HashMap<String,Integer> dictionary = new HashMap<String,Integer>();
+      JoinKeys rightKeys = stringKeys(right, rightCol, dictionary, true);
+      JoinKeys leftKeys = stringKeys(left, leftCol, dictionary, false);
+      return new JoinKeys[] { leftKeys, rightKeys };
+    }
 
 
-  public FloatList getFloatList(int column) {
-    return new FloatList(getFloatColumn(column));
-  }
+    static boolean isWhole(int type) {
+      return type == INT || type == LONG;
+    }
 
 
-  public StringList getStringList(String columnName) {
-    return new StringList(getStringColumn(columnName));
-  }
+    static boolean isNumber(int type) {
+      return type == INT || type == LONG || type == FLOAT || type == DOUBLE;
+    }
 
 
-  public StringList getStringList(int column) {
-    return new StringList(getStringColumn(column));
-  }
+    static JoinKeys wholeKeys(Table table, int col) {
+      JoinKeys outgoing = new JoinKeys(table.rowCount);
+      if (table.columnTypes[col] == INT) {
+        int[] intData = (int[]) table.columns[col];
+        for (int row = 0; row < table.rowCount; row++) {
+          outgoing.keys[row] = intData[row];
+        }
+      } else {
+        System.arraycopy(table.columns[col], 0, outgoing.keys, 0, table.rowCount);
+      }
+      return outgoing;
+    }
 
 
-  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+    static JoinKeys doubleKeys(Table table, int col) {
+      JoinKeys outgoing = new JoinKeys(table.rowCount);
+      for (int row = 0; row < table.rowCount; row++) {
+        double value = table.getDouble(row, col);
+        if (value != value) {
+          outgoing.setSkip(row);
+        } else {
+          // adding 0.0 turns -0.0 into 0.0, so the two will match
+          outgoing.keys[row] = Double.doubleToLongBits(value + 0.0);
+        }
+      }
+      return outgoing;
+    }
 
 
-  public IntDict getIntDict(String keyColumnName, String valueColumnName) {
-    return new IntDict(getStringColumn(keyColumnName),
-                       getIntColumn(valueColumnName));
-  }
+    static JoinKeys stringKeys(Table table, int col,
+                               HashMap<String,Integer> dictionary, boolean add) {
+      JoinKeys outgoing = new JoinKeys(table.rowCount);
+      if (table.columnTypes[col] == CATEGORY) {
+        // look up each category once, instead of once per row
+        HashMapBlows categories = table.columnCategories[col];
+        int[] codeKeys = new int[categories.size()];
+        for (int code = 0; code < codeKeys.length; code++) {
+          codeKeys[code] = stringKey(categories.key(code), dictionary, add);
+        }
+        int[] indexData = (int[]) table.columns[col];
+        for (int row = 0; row < table.rowCount; row++) {
+          int code = indexData[row];
+          int key = (code == table.missingCategory) ? -1 : codeKeys[code];
+          if (key == -1) {
+            outgoing.setSkip(row);
+          } else {
+            outgoing.keys[row] = key;
+          }
+        }
+      } else {
+        for (int row = 0; row < table.rowCount; row++) {
+          int key = stringKey(table.getString(row, col), dictionary, add);
+          if (key == -1) {
+            outgoing.setSkip(row);
+          } else {
+            outgoing.keys[row] = key;
+          }
+        }
+      }
+      return outgoing;
+    }
 
 
-  public IntDict getIntDict(int keyColumn, int valueColumn) {
-    return new IntDict(getStringColumn(keyColumn),
-                       getIntColumn(valueColumn));
-  }
+    static int stringKey(String value, HashMap<String,Integer> dictionary,
+                         boolean add) {
+      if (value == null) {
+        return -1;
+      }
+      Integer key = dictionary.get(value);
+      if (key == null) {
+        if (!add) {
+          return -1;
+        }
+        key = dictionary.size();
+        dictionary.put(value, key);
+      }
+      return key;
+    }
 
 
-  public FloatDict getFloatDict(String keyColumnName, String valueColumnName) {
-    return new FloatDict(getStringColumn(keyColumnName),
-                         getFloatColumn(valueColumnName));
+    /**
+     * Look up every row of these keys in the map of the other side. Returns
+     * two arrays: the rows from this side, and the matching rows from the
+     * other (or -1 for no match, if keepUnmatched is set). Pairs are in row
+     * order. Blocks of rows are looked up in parallel and then joined.
+     */
+    int[][] probe(final KeyMultiMap map, final boolean keepUnmatched) {
+      final int count = keys.length;
+      int blockCount = 1;
+      if (count >= PARALLEL_THRESHOLD) {
+        blockCount = getParallelPool().getParallelism();
+      }
+      final int blocks = blockCount;
+      final int blockSize = (count + blocks - 1) / blocks;
+      final IntList[] probeRows = new IntList[blocks];
+      final IntList[] buildRows = new IntList[blocks];
+      new ParallelBlocks(blocks) {
+        void run(int block) {
+          IntList these = new IntList();
+          IntList those = new IntList();
+          int stop = Math.min(count, (block + 1) * blockSize);
+          for (int row = block * blockSize; row < stop; row++) {
+            int match = isSkipped(row) ? -1 : map.first(keys[row]);
+            if (match == -1) {
+              if (keepUnmatched) {
+                these.append(row);
+                those.append(-1);
+              }
+            } else {
+              do {
+                these.append(row);
+                those.append(match);
+                match = map.next[match];
+              } while (match != -1);
+            }
+          }
+          probeRows[block] = these;
+          buildRows[block] = those;
+        }
+      }.runBlocks();
+
+      int total = 0;
+      for (int block = 0; block < blocks; block++) {
+        total += probeRows[block].size();
+      }
+      int[][] outgoing = new int[2][total];
+      int index = 0;
+      for (int block = 0; block < blocks; block++) {
+        int size = probeRows[block].size();
+        System.arraycopy(probeRows[block].values(), 0, outgoing[0], index, size);
+        System.arraycopy(buildRows[block].values(), 0, outgoing[1], index, size);
+        index += size;
+      }
+      return outgoing;
+    }
   }
 
 
-  public FloatDict getFloatDict(int keyColumn, int valueColumn) {
-    return new FloatDict(getStringColumn(keyColumn),
-                       getFloatColumn(valueColumn));
-  }
+  /**
+   * Open addressing hash from long keys to rows. Rows with the same key
+   * are chained through next[], in increasing order.
+   */
+  static class KeyMultiMap {
+    long[] slotKeys;
+    int[] heads;  // first row with this key, or -1 if empty
+    int[] tails;
+    int[] next;
+    int mask;
+
+
+    KeyMultiMap(JoinKeys joinKeys) {
+      long[] keys = joinKeys.keys;
+      int capacity = 16;
+      while (capacity < keys.length * 2) {
+        capacity <<= 1;
+      }
+      slotKeys = new long[capacity];
+      heads = new int[capacity];
+      tails = new int[capacity];
+      Arrays.fill(heads, -1);
+      mask = capacity - 1;
+      next = new int[keys.length];
+      for (int row = 0; row < keys.length; row++) {
+        next[row] = -1;
+        if (!joinKeys.isSkipped(row)) {
+          int slot = slot(keys[row]);
+          if (heads[slot] == -1) {
+            slotKeys[slot] = keys[row];
+            heads[slot] = row;
+          } else {
+            next[tails[slot]] = row;
+          }
+          tails[slot] = row;
+        }
+      }
+    }
 
 
-  public StringDict getStringDict(String keyColumnName, String valueColumnName) {
-    return new StringDict(getStringColumn(keyColumnName),
-                         getStringColumn(valueColumnName));
-  }
+    /** Slot holding this key, or the empty slot where it would go. */
+    int slot(long key) {
+      int slot = HashIndex.mix((int) (key ^ (key >>> 32))) & mask;
+      while (heads[slot] != -1 && slotKeys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
 
 
-  public StringDict getStringDict(int keyColumn, int valueColumn) {
-    return new StringDict(getStringColumn(keyColumn),
-                          getStringColumn(valueColumn));
+    /** First row with this key, or -1. Use next[] for the rest. */
+    int first(long key) {
+      return heads[slot(key)];
+    }
   }
 
 
@@ -3973,20 +8400,39 @@ public class Table {
 
   // TODO naming/whether to include
   protected Table createSubset(int[] rowSubset) {
+    int[] allColumns = new int[columns.length];
+    for (int col = 0; col < allColumns.length; col++) {
+      allColumns[col] = col;
+    }
+    return createSubset(rowSubset, allColumns);
+  }
+
+
+  /**
+   * New table with copies of the listed rows and columns, in that order.
+   * Column titles, types, categories and missing values are carried over.
+   */
+  protected Table createSubset(int[] rowSubset, int[] columnSubset) {
+    loadAllColumns();
     Table newbie = new Table();
-    newbie.setColumnTitles(columnTitles);  // also sets columns.length
-    newbie.columnTypes = columnTypes;
+    newbie.missingString = missingString;
+    newbie.missingInt = missingInt;
+    newbie.missingLong = missingLong;
+    newbie.missingFloat = missingFloat;
+    newbie.missingDouble = missingDouble;
+    newbie.missingCategory = missingCategory;
+    for (int col : columnSubset) {
+      newbie.addColumn(getColumnTitle(col), columnTypes[col]);
+    }
     newbie.setRowCount(rowSubset.length);
-
-    for (int i = 0; i < rowSubset.length; i++) {
-      int row = rowSubset[i];
-      for (int col = 0; col < columns.length; col++) {
-        switch (columnTypes[col]) {
-          case STRING: newbie.setString(i, col, getString(row, col)); break;
-          case INT: newbie.setInt(i, col, getInt(row, col)); break;
-          case LONG: newbie.setLong(i, col, getLong(row, col)); break;
-          case FLOAT: newbie.setFloat(i, col, getFloat(row, col)); break;
-          case DOUBLE: newbie.setDouble(i, col, getDouble(row, col)); break;
+    for (int i = 0; i < columnSubset.length; i++) {
+      int col = columnSubset[i];
+      newbie.columns[i] =
+        reorderColumn(columns[col], columnTypes[col], rowSubset, rowSubset.length);
+      if (columnTypes[col] == CATEGORY) {
+        HashMapBlows categories = columnCategories[col];
+        for (int code = 0; code < categories.size(); code++) {
+          newbie.columnCategories[i].index(categories.key(code));
         }
       }
     }
@@ -3994,6 +8440,62 @@ public class Table {
   }
 
 
+  /**
+   * Return a read-only view of the table as it is right now, which any
+   * number of threads can read at the same time without locking, while
+   * this table carries on being modified (usually from the animation
+   * thread). No data is copied up front: the snapshot shares the column
+   * arrays, and a column is only copied once this table changes a value
+   * in it. Calling a method that would modify the snapshot throws an
+   * IllegalArgumentException. As with any object, hand the snapshot to
+   * other threads through a thread start, a queue, or a volatile field.
+   */
+  public Table snapshot() {
+    if (readOnly) {
+      return this;
+    }
+    loadAllColumns();
+    Table snap = new Table();
+    snap.rowCount = rowCount;
+    snap.missingString = missingString;
+    snap.missingInt = missingInt;
+    snap.missingLong = missingLong;
+    snap.missingFloat = missingFloat;
+    snap.missingDouble = missingDouble;
+    snap.missingCategory = missingCategory;
+    snap.columns = columns.clone();
+    snap.columnTypes = columnTypes.clone();
+    snap.columnCategories = new HashMapBlows[columns.length];
+    for (int col = 0; col < columns.length; col++) {
+      if (columnCategories[col] != null) {
+        // index() adds to these in place, so each side needs its own
+        snap.columnCategories[col] = snap.new HashMapBlows(columnCategories[col]);
+      }
+    }
+    if (columnTitles != null) {
+      snap.columnTitles = columnTitles.clone();
+      // built now rather than on first use by several threads at once
+      snap.getColumnIndex(null, false);
+    }
+    snap.readOnly = true;
+
+    if (sharedColumns == null) {
+      sharedColumns =
+        Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    }
+    for (Object data : columns) {
+      sharedColumns.add(data);
+    }
+    return snap;
+  }
+
+
+  /** Returns true if this table came from snapshot() and can't be changed. */
+  public boolean isSnapshot() {
+    return readOnly;
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
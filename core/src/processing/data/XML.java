@@ -24,6 +24,9 @@
 package processing.data;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.xml.parsers.*;
 
@@ -61,6 +64,18 @@ public class XML implements Serializable {
   /** Child elements, once loaded. */
   protected XML[] children;
 
+  /**
+   * Children grouped by name, built the first time a node with more than
+   * a handful of children is searched by name. Cleared when children are
+   * added, removed, or renamed.
+   */
+  protected HashMap<String, XML[]> childIndex;
+
+  /** Nodes with more children than this get a childIndex when searched. */
+  static final int CHILD_INDEX_THRESHOLD = 8;
+
+  static final XML[] NO_CHILDREN = new XML[0];
+
   /**
    * @nowebref
    */
@@ -318,6 +333,9 @@ public class XML implements Serializable {
     Document document = node.getOwnerDocument();
     node = document.renameNode(node, null, newName);
 //    name = node.getNodeName();
+    if (parent != null) {
+      parent.childIndex = null;
+    }
   }
 
 
@@ -444,15 +462,8 @@ public class XML implements Serializable {
     if (name.indexOf('/') != -1) {
       return getChildRecursive(PApplet.split(name, '/'), 0);
     }
-    int childCount = getChildCount();
-    for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
-      if (kidName != null && kidName.equals(name)) {
-        return kid;
-      }
-    }
-    return null;
+    XML[] matches = getChildrenNamed(name);
+    return (matches.length == 0) ? null : matches[0];
   }
 
 
@@ -510,17 +521,57 @@ public class XML implements Serializable {
     if (Character.isDigit(name.charAt(0))) {
       return new XML[] { getChild(Integer.parseInt(name)) };
     }
-    int childCount = getChildCount();
-    XML[] matches = new XML[childCount];
+    // copied, since the caller may modify the array
+    return getChildrenNamed(name).clone();
+  }
+
+
+  /**
+   * Children with a particular name, in order. Uses (and if necessary
+   * builds) the childIndex for nodes with many children. The array that's
+   * returned may be shared, so it should not be modified.
+   */
+  protected XML[] getChildrenNamed(String name) {
+    checkChildren();
+    if (children.length > CHILD_INDEX_THRESHOLD) {
+      if (childIndex == null) {
+        HashMap<String, ArrayList<XML>> groups =
+          new HashMap<String, ArrayList<XML>>();
+        for (XML kid : children) {
+          ArrayList<XML> group = groups.get(kid.getName());
+          if (group == null) {
+            group = new ArrayList<XML>();
+            groups.put(kid.getName(), group);
+          }
+          group.add(kid);
+        }
+        HashMap<String, XML[]> index = new HashMap<String, XML[]>();
+        for (Map.Entry<String, ArrayList<XML>> entry : groups.entrySet()) {
+          ArrayList<XML> group = entry.getValue();
+          index.put(entry.getKey(), group.toArray(new XML[group.size()]));
+        }
+        childIndex = index;
+      }
+      XML[] matches = childIndex.get(name);
+      return (matches == null) ? NO_CHILDREN : matches;
+    }
     int matchCount = 0;
-    for (int i = 0; i < childCount; i++) {
-      XML kid = getChild(i);
-      String kidName = kid.getName();
-      if (kidName != null && kidName.equals(name)) {
+    for (XML kid : children) {
+      if (name.equals(kid.getName())) {
+        matchCount++;
+      }
+    }
+    if (matchCount == 0) {
+      return NO_CHILDREN;
+    }
+    XML[] matches = new XML[matchCount];
+    matchCount = 0;
+    for (XML kid : children) {
+      if (name.equals(kid.getName())) {
         matches[matchCount++] = kid;
       }
     }
-    return (XML[]) PApplet.subset(matches, 0, matchCount);
+    return matches;
   }
 
 
@@ -538,6 +589,238 @@ public class XML implements Serializable {
   }
 
 
+  /**
+   * Prepare a path for use with getChild(Query) and getChildren(Query).
+   * Parsing the path once and reusing the result is much faster than
+   * passing the same path String over and over, for instance inside draw().
+   * <p>
+   * Each step in the path is an element name, * for any element, or a
+   * number to pick a child by its index, same as getChild(String). A step
+   * can also require an attribute, as in node[@id], or an attribute with a
+   * specific value, as in node[@type='bus'].
+   *
+   * @param path a path like "a/b/c[@id]"
+   */
+  static public Query compile(String path) {
+    return new Query(path);
+  }
+
+
+  /**
+   * Get the first element found by a compiled path. The search continues
+   * through all the elements that match the earlier steps, so (unlike the
+   * String version) a match inside a later sibling will still be found.
+   */
+  public XML getChild(Query query) {
+    return query.first(this, 0);
+  }
+
+
+  /** Get all the elements found by a compiled path, in document order. */
+  public XML[] getChildren(Query query) {
+    ArrayList<XML> matches = new ArrayList<XML>();
+    query.collect(this, 0, matches);
+    return matches.toArray(new XML[matches.size()]);
+  }
+
+
+  /**
+   * A path that has been parsed once by XML.compile(), so that it can be
+   * used many times without splitting or parsing it again.
+   */
+  static public class Query {
+    final String path;
+
+    /** element name for each step, or null for * and index steps */
+    final String[] names;
+
+    /** child index for each step, or -1 */
+    final int[] indices;
+
+    /** attribute names and values (null if any value) that must match */
+    final String[][] attributes;
+    final String[][] values;
+
+
+    Query(String path) {
+      if (path.length() > 0 && path.charAt(0) == '/') {
+        throw new IllegalArgumentException("compile() should not begin with a slash");
+      }
+      this.path = path;
+
+      ArrayList<String> steps = new ArrayList<String>();
+      int start = 0;
+      char quote = 0;
+      for (int i = 0; i < path.length(); i++) {
+        char c = path.charAt(i);
+        if (quote != 0) {
+          if (c == quote) {
+            quote = 0;
+          }
+        } else if (c == '\'' || c == '"') {
+          quote = c;
+        } else if (c == '/') {
+          steps.add(path.substring(start, i));
+          start = i + 1;
+        }
+      }
+      steps.add(path.substring(start));
+
+      int count = steps.size();
+      names = new String[count];
+      indices = new int[count];
+      attributes = new String[count][];
+      values = new String[count][];
+      for (int i = 0; i < count; i++) {
+        parseStep(i, steps.get(i));
+      }
+    }
+
+
+    private void parseStep(int index, String step) {
+      int bracket = step.indexOf('[');
+      String name = (bracket == -1) ? step : step.substring(0, bracket);
+      if (name.length() == 0) {
+        throw new IllegalArgumentException("Empty step in path " + path);
+      }
+      indices[index] = -1;
+      if (Character.isDigit(name.charAt(0))) {
+        indices[index] = Integer.parseInt(name);
+      } else if (!name.equals("*")) {
+        names[index] = name;
+      }
+
+      ArrayList<String> attrs = new ArrayList<String>();
+      ArrayList<String> vals = new ArrayList<String>();
+      while (bracket != -1) {
+        int close = findClose(step, bracket);
+        String test = step.substring(bracket + 1, close).trim();
+        if (!test.startsWith("@")) {
+          throw new IllegalArgumentException("Only [@attribute] and " +
+                                             "[@attribute='value'] are " +
+                                             "supported, not [" + test + "]");
+        }
+        int equals = test.indexOf('=');
+        if (equals == -1) {
+          attrs.add(test.substring(1).trim());
+          vals.add(null);
+        } else {
+          attrs.add(test.substring(1, equals).trim());
+          String value = test.substring(equals + 1).trim();
+          if (value.length() >= 2 &&
+              (value.charAt(0) == '\'' || value.charAt(0) == '"') &&
+              value.charAt(value.length() - 1) == value.charAt(0)) {
+            value = value.substring(1, value.length() - 1);
+          }
+          vals.add(value);
+        }
+        bracket = (close == step.length() - 1) ? -1 : close + 1;
+        if (bracket != -1 && step.charAt(bracket) != '[') {
+          throw new IllegalArgumentException("Unexpected text after ] in " + path);
+        }
+      }
+      if (attrs.size() != 0) {
+        attributes[index] = attrs.toArray(new String[attrs.size()]);
+        values[index] = vals.toArray(new String[vals.size()]);
+      }
+    }
+
+
+    /** Find the ] that closes the [ at start, skipping quoted values. */
+    private int findClose(String step, int start) {
+      char quote = 0;
+      for (int i = start + 1; i < step.length(); i++) {
+        char c = step.charAt(i);
+        if (quote != 0) {
+          if (c == quote) {
+            quote = 0;
+          }
+        } else if (c == '\'' || c == '"') {
+          quote = c;
+        } else if (c == ']') {
+          return i;
+        }
+      }
+      throw new IllegalArgumentException("Missing ] in path " + path);
+    }
+
+
+    /** The children of xml that pass this step, which may be shared. */
+    private XML[] candidates(XML xml, int step) {
+      if (indices[step] != -1) {
+        xml.checkChildren();
+        if (indices[step] < xml.children.length) {
+          return new XML[] { xml.children[indices[step]] };
+        }
+        return NO_CHILDREN;
+      }
+      if (names[step] != null) {
+        return xml.getChildrenNamed(names[step]);
+      }
+      xml.checkChildren();
+      return xml.children;
+    }
+
+
+    private boolean matches(XML kid, int step) {
+      if (kid.node.getNodeType() != Node.ELEMENT_NODE) {
+        // * and [@attr] only apply to elements, not text or comments
+        return attributes[step] == null &&
+          (names[step] != null || indices[step] != -1);
+      }
+      String[] attrs = attributes[step];
+      if (attrs != null) {
+        Element element = (Element) kid.node;
+        for (int i = 0; i < attrs.length; i++) {
+          if (!element.hasAttribute(attrs[i])) {
+            return false;
+          }
+          String value = values[step][i];
+          if (value != null && !value.equals(element.getAttribute(attrs[i]))) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
+
+    XML first(XML xml, int step) {
+      for (XML kid : candidates(xml, step)) {
+        if (matches(kid, step)) {
+          if (step == names.length - 1) {
+            return kid;
+          }
+          XML found = first(kid, step + 1);
+          if (found != null) {
+            return found;
+          }
+        }
+      }
+      return null;
+    }
+
+
+    void collect(XML xml, int step, ArrayList<XML> outgoing) {
+      for (XML kid : candidates(xml, step)) {
+        if (matches(kid, step)) {
+          if (step == names.length - 1) {
+            outgoing.add(kid);
+          } else {
+            collect(kid, step + 1, outgoing);
+          }
+        }
+      }
+    }
+
+
+    @Override
+    public String toString() {
+      return path;
+    }
+  }
+
+
   /**
    * @webref xml:method
    * @brief Appends a new child to the element
@@ -563,6 +846,7 @@ public class XML implements Serializable {
     if (children != null) {
       children = (XML[]) PApplet.concat(children, new XML[] { newbie });
     }
+    childIndex = null;
     return newbie;
   }
 
@@ -574,6 +858,7 @@ public class XML implements Serializable {
   public void removeChild(XML kid) {
     node.removeChild(kid.node);
     children = null;  // TODO not efficient
+    childIndex = null;
   }
 
 
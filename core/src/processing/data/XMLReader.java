@@ -0,0 +1,367 @@
+package processing.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+
+/**
+ * Reads XML one element at a time, for files that are too large to load
+ * with loadXML(). Only the elements that match a path are kept, and each
+ * one is handed back as its own small XML object, with its attributes and
+ * children, that can be thrown away once it's been used. Everything else
+ * in the file is skipped over without being stored.
+ * <pre>
+ * XMLReader reader = new XMLReader(createInput("map.osm"), "osm/node");
+ * for (XML node : reader) {
+ *   float lat = node.getFloat("lat");
+ *   float lon = node.getFloat("lon");
+ * }
+ * reader.close();
+ * </pre>
+ * The path starts with the name of the root element, and each item can
+ * be * to match an element with any name, as in "svg/*&#47;path".
+ *
+ * @see XML
+ * @see JSONReader
+ */
+public class XMLReader implements Iterable<XML> {
+  XMLStreamReader reader;
+  String[] path;
+
+  /** Used to create the nodes for each fragment, never holds onto them. */
+  Document document;
+
+  /** Number of elements currently open, all of which match the path. */
+  int depth;
+
+  /**
+   * Namespace declarations (xmlns attributes) on the open elements, so that
+   * they can be copied to each fragment and it still makes sense on its own.
+   */
+  ArrayList<String> namespaces = new ArrayList<String>();
+  int[] namespaceMarks;
+
+  XML upcoming;
+  boolean finished;
+
+
+  public XMLReader(InputStream input, String path) {
+    this(path);
+    try {
+      reader = createFactory().createXMLStreamReader(input);
+    } catch (XMLStreamException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  public XMLReader(Reader input, String path) {
+    this(path);
+    try {
+      reader = createFactory().createXMLStreamReader(input);
+    } catch (XMLStreamException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  private XMLReader(String path) {
+    if (path == null || path.length() == 0 || path.charAt(0) == '/') {
+      throw new IllegalArgumentException("Use a path like \"osm/node\" " +
+                                         "that begins with the root element");
+    }
+    this.path = path.split("/");
+    namespaceMarks = new int[this.path.length];
+    try {
+      document =
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    } catch (ParserConfigurationException pce) {
+      throw new RuntimeException(pce);
+    }
+  }
+
+
+  static XMLInputFactory createFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    // use qualified names (svg:path) for elements and attributes, same as XML
+    try {
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    } catch (IllegalArgumentException e) { }
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    // keep CDATA sections separate from the text around them, same as XML
+    try {
+      factory.setProperty("http://java.sun.com/xml/stream/properties/report-cdata-event", true);
+    } catch (IllegalArgumentException e) { }
+    // Prevent 503 errors from www.w3.org by never loading a DTD
+    factory.setXMLResolver(new XMLResolver() {
+      public Object resolveEntity(String publicID, String systemID,
+                                  String baseURI, String namespace) {
+        return new ByteArrayInputStream(new byte[0]);
+      }
+    });
+    return factory;
+  }
+
+
+  /**
+   * Returns true if there's another element that matches the path.
+   */
+  public boolean hasNext() {
+    if (upcoming == null && !finished) {
+      try {
+        upcoming = advance();
+      } catch (XMLStreamException e) {
+        throw new RuntimeException(e);
+      }
+      if (upcoming == null) {
+        finished = true;
+      }
+    }
+    return upcoming != null;
+  }
+
+
+  /**
+   * Returns the next element that matches the path, or null once the
+   * end of the file has been reached.
+   */
+  public XML next() {
+    if (!hasNext()) {
+      return null;
+    }
+    XML outgoing = upcoming;
+    upcoming = null;
+    return outgoing;
+  }
+
+
+  /**
+   * Allows the reader to be used in a for() loop. The elements can only be
+   * read once, so there's only one pass through the file.
+   */
+  public Iterator<XML> iterator() {
+    return new Iterator<XML>() {
+      public boolean hasNext() {
+        return XMLReader.this.hasNext();
+      }
+
+      public XML next() {
+        if (!XMLReader.this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return XMLReader.this.next();
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+
+  public void close() {
+    finished = true;
+    upcoming = null;
+    try {
+      reader.close();
+    } catch (XMLStreamException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Move through the file until the next element matching the path,
+   * skipping anything that can't lead to a match.
+   */
+  private XML advance() throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String item = path[depth];
+        if (item.equals("*") || item.equals(elementName())) {
+          if (depth == path.length - 1) {
+            Element element = readElement();
+            // declarations from the outer elements, unless overridden
+            for (int i = namespaces.size() - 2; i >= 0; i -= 2) {
+              if (!element.hasAttribute(namespaces.get(i))) {
+                element.setAttribute(namespaces.get(i), namespaces.get(i+1));
+              }
+            }
+            return new XML(null, element);
+          }
+          namespaceMarks[depth] = namespaces.size();
+          addNamespaces();
+          depth++;
+        } else {
+          skipElement();
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+        while (namespaces.size() > namespaceMarks[depth]) {
+          namespaces.remove(namespaces.size() - 1);
+        }
+      }
+    }
+    return null;
+  }
+
+
+  private void skipElement() throws XMLStreamException {
+    skipElement(reader);
+  }
+
+
+  /** Skip past the end of the element that was just started. */
+  static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int level = 1;
+    while (level != 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        level++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        level--;
+      }
+    }
+  }
+
+
+  /**
+   * Build the element that was just started, along with everything inside
+   * it, the same way that a full DOM parse would have.
+   */
+  private Element readElement() throws XMLStreamException {
+    Element element = document.createElement(elementName());
+    int attributeCount = reader.getAttributeCount();
+    for (int i = 0; i < attributeCount; i++) {
+      element.setAttribute(attributeName(i), reader.getAttributeValue(i));
+    }
+    // only reported separately when the parser is namespace aware
+    int namespaceCount = reader.getNamespaceCount();
+    for (int i = 0; i < namespaceCount; i++) {
+      element.setAttribute(namespaceName(i), reader.getNamespaceURI(i));
+    }
+
+    for (;;) {
+      switch (reader.next()) {
+      case XMLStreamConstants.START_ELEMENT:
+        element.appendChild(readElement());
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.SPACE:
+        // the parser may hand over text in several pieces
+        Node last = element.getLastChild();
+        if (last != null && last.getNodeType() == Node.TEXT_NODE) {
+          ((Text) last).appendData(reader.getText());
+        } else {
+          element.appendChild(document.createTextNode(reader.getText()));
+        }
+        break;
+      case XMLStreamConstants.CDATA:
+        last = element.getLastChild();
+        if (last != null && last.getNodeType() == Node.CDATA_SECTION_NODE) {
+          ((Text) last).appendData(reader.getText());
+        } else {
+          element.appendChild(document.createCDATASection(reader.getText()));
+        }
+        break;
+      case XMLStreamConstants.COMMENT:
+        element.appendChild(document.createComment(reader.getText()));
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        return element;
+      }
+    }
+  }
+
+
+  /** Record the namespace declarations on the element just started. */
+  private void addNamespaces() {
+    int attributeCount = reader.getAttributeCount();
+    for (int i = 0; i < attributeCount; i++) {
+      String name = attributeName(i);
+      if (name.equals("xmlns") || name.startsWith("xmlns:")) {
+        namespaces.add(name);
+        namespaces.add(reader.getAttributeValue(i));
+      }
+    }
+    int namespaceCount = reader.getNamespaceCount();
+    for (int i = 0; i < namespaceCount; i++) {
+      namespaces.add(namespaceName(i));
+      namespaces.add(reader.getNamespaceURI(i));
+    }
+  }
+
+
+  private String attributeName(int index) {
+    return attributeName(reader, index);
+  }
+
+
+  /** Qualified name (like table:name) of an attribute on the current element. */
+  static String attributeName(XMLStreamReader reader, int index) {
+    String prefix = reader.getAttributePrefix(index);
+    String name = reader.getAttributeLocalName(index);
+    if (prefix != null && prefix.length() != 0) {
+      return prefix + ":" + name;
+    }
+    return name;
+  }
+
+
+  /** Value of the attribute with a qualified name, or null if not present. */
+  static String getAttribute(XMLStreamReader reader, String name) {
+    int attributeCount = reader.getAttributeCount();
+    for (int i = 0; i < attributeCount; i++) {
+      if (name.equals(attributeName(reader, i))) {
+        return reader.getAttributeValue(i);
+      }
+    }
+    return null;
+  }
+
+
+  private String namespaceName(int index) {
+    String prefix = reader.getNamespacePrefix(index);
+    if (prefix == null || prefix.length() == 0) {
+      return "xmlns";
+    }
+    return "xmlns:" + prefix;
+  }
+
+
+  private String elementName() {
+    return elementName(reader);
+  }
+
+
+  /** Qualified name (like table:table-row) of the current element. */
+  static String elementName(XMLStreamReader reader) {
+    String prefix = reader.getPrefix();
+    String name = reader.getLocalName();
+    if (prefix != null && prefix.length() != 0) {
+      return prefix + ":" + name;
+    }
+    return name;
+  }
+}